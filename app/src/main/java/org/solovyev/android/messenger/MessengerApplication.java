@@ -70,6 +70,16 @@ public class MessengerApplication extends Application {
 		fillCaches();
 	}
 
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+
+		if (level >= TRIM_MEMORY_UI_HIDDEN) {
+			// application goes to background => good time to store caches for the next start
+			App.getCacheSnapshotService().saveInBackground();
+		}
+	}
+
 	private void fillCaches() {
 		final Collection<Account> accounts = getAccountService().getEnabledAccounts();
 
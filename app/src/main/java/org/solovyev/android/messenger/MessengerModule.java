@@ -37,11 +37,15 @@ import org.solovyev.android.messenger.accounts.connection.DefaultAccountConnecti
 import org.solovyev.android.messenger.chats.ChatDao;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.chats.DefaultChatService;
+import org.solovyev.android.messenger.chats.DraftDao;
 import org.solovyev.android.messenger.chats.SqliteChatDao;
+import org.solovyev.android.messenger.chats.SqliteDraftDao;
 import org.solovyev.android.messenger.messages.DefaultMessageService;
 import org.solovyev.android.messenger.messages.MessageDao;
 import org.solovyev.android.messenger.messages.MessageService;
+import org.solovyev.android.messenger.messages.OutboxDao;
 import org.solovyev.android.messenger.messages.SqliteMessageDao;
+import org.solovyev.android.messenger.messages.SqliteOutboxDao;
 import org.solovyev.android.messenger.notifications.DefaultNotificationService;
 import org.solovyev.android.messenger.notifications.NotificationService;
 import org.solovyev.android.messenger.realms.DefaultRealmService;
@@ -100,10 +104,12 @@ public class MessengerModule extends AbstractModule {
 		bind(UserService.class).to(DefaultUserService.class);
 
 		bind(ChatDao.class).to(SqliteChatDao.class);
+		bind(DraftDao.class).to(SqliteDraftDao.class);
 		bind(ChatService.class).to(DefaultChatService.class);
 
 		bind(MessageDao.class).to(SqliteMessageDao.class);
 		bind(MessageService.class).to(DefaultMessageService.class);
+		bind(OutboxDao.class).to(SqliteOutboxDao.class);
 
 		bind(SyncService.class).to(DefaultSyncService.class);
 		bind(RegistrationService.class).to(DummyRegistrationService.class);
@@ -16,49 +16,30 @@
 
 package org.solovyev.android;
 
-import android.util.Log;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.Background;
 
 import javax.annotation.Nonnull;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
-import static android.os.SystemClock.elapsedRealtime;
 
+/**
+ * Executor of the events: tasks are run in {@link Background.Lane#events} lane of {@link Background} which
+ * logs too long wait/work times and records them to the metrics
+ */
 @Singleton
 public final class TimeLoggingExecutor implements Executor {
 
-	private static final long MAX_WAIT_MILLIS = 100;
-	private static final long MAX_WORK_MILLIS = 100;
+	@Nonnull
+	private final Executor executor;
 
-	private final Executor executor = Executors.newSingleThreadExecutor();
+	@Inject
+	public TimeLoggingExecutor(@Nonnull Background background) {
+		this.executor = background.getExecutor(Background.Lane.events);
+	}
 
 	@Override
 	public void execute(@Nonnull final Runnable command) {
-		executeOnExecutor(executor, command);
-	}
-
-	public static void executeOnExecutor(@Nonnull Executor executor, @Nonnull final Runnable command) {
-		final long addedToQueueTime = elapsedRealtime();
-		executor.execute(new Runnable() {
-			@Override
-			public void run() {
-				final long startTime = elapsedRealtime();
-				try {
-					command.run();
-				} finally {
-					final long endTime = elapsedRealtime();
-					final long waitMillis = startTime - addedToQueueTime;
-					if (waitMillis > MAX_WAIT_MILLIS) {
-						Log.e(App.TAG_TIME, "Wait time is too long (" + waitMillis + " ms) for " + command + "(" + command.getClass().getSimpleName() + ")");
-					}
-					final long workMillis = endTime - startTime;
-					if (workMillis > MAX_WORK_MILLIS) {
-						Log.e(App.TAG_TIME, "Work time is too long (" + workMillis + " ms) for " + command + "(" + command.getClass().getSimpleName() + ")");
-					}
-				}
-			}
-		});
+		executor.execute(command);
 	}
 }
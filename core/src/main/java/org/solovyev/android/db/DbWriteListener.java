@@ -14,33 +14,17 @@
  * limitations under the License.
  */
 
-package org.solovyev.android.messenger.realms.vk.messages;
-
-import javax.annotation.Nullable;
+package org.solovyev.android.db;
 
 /**
- * User: serso
- * Date: 6/13/12
- * Time: 7:24 PM
+ * Listener which is notified by {@link MeasuredDbUtils} before changes are written to the database, see
+ * {@link MeasuredDbUtils#setWriteListener(DbWriteListener)}
  */
-public class JsonMessageAttachmentAudio implements JsonMessageAttachment {
-
-	@Nullable
-	private Integer aid;
-
-	@Nullable
-	private Integer owner_id;
-
-	@Nullable
-	private String performer;
-
-	@Nullable
-	private String title;
-
-	@Nullable
-	private Integer duration;
-
-	@Nullable
-	private String url;
+public interface DbWriteListener {
 
+	/**
+	 * Method is called in the writing thread before the changes are written => if it has persisted something the
+	 * changes can't be written without it (e.g. if process is killed in between)
+	 */
+	void onBeforeWrite();
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.db;
+
+import android.database.sqlite.SQLiteOpenHelper;
+import org.solovyev.android.metrics.Metrics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+import static android.os.SystemClock.elapsedRealtime;
+import static org.solovyev.android.metrics.Metrics.getMetrics;
+
+/**
+ * Same as {@link AndroidDbUtils} but records latency of each query/exec to {@link Metrics}: both total
+ * ("db.query", "db.exec") and per query/exec class (e.g. "db.query.LoadChats"). All writes of the application go through
+ * this class => {@link DbWriteListener} set here is notified before any change is written.
+ */
+public final class MeasuredDbUtils {
+
+	@Nullable
+	private static volatile DbWriteListener writeListener;
+
+	private MeasuredDbUtils() {
+		throw new AssertionError();
+	}
+
+	public static void setWriteListener(@Nullable DbWriteListener listener) {
+		writeListener = listener;
+	}
+
+	public static <R> R doDbQuery(@Nonnull SQLiteOpenHelper sqliteOpenHelper, @Nonnull DbQuery<R> query) {
+		final long start = elapsedRealtime();
+		try {
+			return AndroidDbUtils.doDbQuery(sqliteOpenHelper, query);
+		} finally {
+			update("db.query", query, elapsedRealtime() - start);
+		}
+	}
+
+	public static long doDbExec(@Nonnull SQLiteOpenHelper sqliteOpenHelper, @Nonnull DbExec exec) {
+		onBeforeWrite();
+		final long start = elapsedRealtime();
+		try {
+			return AndroidDbUtils.doDbExec(sqliteOpenHelper, exec);
+		} finally {
+			update("db.exec", exec, elapsedRealtime() - start);
+		}
+	}
+
+	public static void doDbExecs(@Nonnull SQLiteOpenHelper sqliteOpenHelper, @Nonnull List<DbExec> execs) {
+		onBeforeWrite();
+		final long start = elapsedRealtime();
+		try {
+			AndroidDbUtils.doDbExecs(sqliteOpenHelper, execs);
+		} finally {
+			final long millis = elapsedRealtime() - start;
+			final Metrics metrics = getMetrics();
+			metrics.getHistogram("db.execs").update(millis);
+			metrics.getCounter("db.execs.size").add(execs.size());
+		}
+	}
+
+	private static void onBeforeWrite() {
+		final DbWriteListener listener = writeListener;
+		if (listener != null) {
+			listener.onBeforeWrite();
+		}
+	}
+
+	private static void update(@Nonnull String name, @Nonnull Object o, long millis) {
+		final Metrics metrics = getMetrics();
+		metrics.getHistogram(name).update(millis);
+		metrics.getHistogram(name + "." + getName(o.getClass())).update(millis);
+	}
+
+	@Nonnull
+	static String getName(@Nonnull Class<?> c) {
+		final String simpleName = c.getSimpleName();
+		if (simpleName.length() > 0) {
+			return simpleName;
+		} else {
+			// anonymous class
+			final String name = c.getName();
+			return name.substring(name.lastIndexOf('.') + 1);
+		}
+	}
+}
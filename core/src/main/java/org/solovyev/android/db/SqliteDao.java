@@ -32,9 +32,9 @@ import java.util.Collection;
 import java.util.List;
 
 import static com.google.common.collect.Iterables.getFirst;
-import static org.solovyev.android.db.AndroidDbUtils.doDbExec;
-import static org.solovyev.android.db.AndroidDbUtils.doDbExecs;
-import static org.solovyev.android.db.AndroidDbUtils.doDbQuery;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExec;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExecs;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbQuery;
 
 public final class SqliteDao<E extends Identifiable> extends AbstractSQLiteHelper implements Dao<E> {
 
@@ -33,7 +33,7 @@ import javax.annotation.Nonnull;
 import java.util.Collection;
 import java.util.List;
 
-import static org.solovyev.android.db.AndroidDbUtils.doDbQuery;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbQuery;
 
 public class SqliteLinkedEntitiesDao<E extends Identifiable & Mergeable<E>> extends AbstractSQLiteHelper implements LinkedEntitiesDao<E> {
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.http;
+
+import org.solovyev.android.http.PooledHttpClient.Profile;
+import org.solovyev.android.metrics.Metrics;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static android.os.SystemClock.elapsedRealtime;
+import static org.solovyev.android.metrics.Metrics.getMetrics;
+
+/**
+ * Executes transactions on {@link PooledHttpClient} and records latency and failures of each transaction to
+ * {@link Metrics}: both total ("http") and per transaction class (e.g. "http.VkMessagesSendHttpTransaction")
+ */
+public final class MeasuredHttpTransactions {
+
+	private MeasuredHttpTransactions() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Same as {@link #execute(HttpTransaction, PooledHttpClient.Profile)} for transaction which might have side
+	 * effects
+	 */
+	public static <R> R execute(@Nonnull HttpTransaction<R> transaction) throws IOException {
+		return execute(transaction, Profile.api_write);
+	}
+
+	public static <R> R execute(@Nonnull HttpTransaction<R> transaction, @Nonnull Profile profile) throws IOException {
+		final long start = elapsedRealtime();
+		boolean ok = false;
+		try {
+			final R result = PooledHttpClient.getInstance().execute(transaction, profile);
+			ok = true;
+			return result;
+		} finally {
+			update(transaction, elapsedRealtime() - start, ok);
+		}
+	}
+
+	@Nonnull
+	public static <R> List<R> execute(@Nonnull List<? extends HttpTransaction<R>> transactions) throws IOException {
+		final long start = elapsedRealtime();
+		boolean ok = false;
+		try {
+			final PooledHttpClient client = PooledHttpClient.getInstance();
+			final List<R> result = new ArrayList<R>(transactions.size());
+			for (HttpTransaction<R> transaction : transactions) {
+				result.add(client.execute(transaction, Profile.api_write));
+			}
+			ok = true;
+			return result;
+		} finally {
+			final long millis = elapsedRealtime() - start;
+			for (HttpTransaction<R> transaction : transactions) {
+				// time is shared by all transactions in the list
+				update(transaction, millis / transactions.size(), ok);
+			}
+		}
+	}
+
+	private static void update(@Nonnull HttpTransaction<?> transaction, long millis, boolean ok) {
+		final Metrics metrics = getMetrics();
+		final String name = "http." + transaction.getClass().getSimpleName();
+		metrics.getHistogram("http").update(millis);
+		metrics.getHistogram(name).update(millis);
+		if (!ok) {
+			metrics.getCounter("http.errors").inc();
+			metrics.getCounter(name + ".errors").inc();
+		}
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.http;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.net.ssl.SSLException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.solovyev.android.metrics.Metrics.getMetrics;
+
+/**
+ * Application wide HTTP client: connections are pooled and kept alive per host (TLS handshake is done once per
+ * connection instead of once per request), responses are requested compressed with gzip, timeouts are set per
+ * {@link Profile} and requests which can be safely repeated are retried after I/O errors.
+ * <p/>
+ * Client reports to metrics: "http.connections.opened" (= number of handshakes), "http.requests",
+ * "http.bytes.received" (bytes read from network, i.e. before decompression) and "http.retries".
+ */
+@ThreadSafe
+public final class PooledHttpClient {
+
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	private static final int MAX_CONNECTIONS = 10;
+
+	// long poll connection + API calls
+	private static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+	private static final int MAX_RETRIES = 2;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	// ms
+	private static final int CONNECTION_TIMEOUT = 15000;
+
+	// ms
+	private static final int API_SO_TIMEOUT = 30000;
+
+	// ms, should be more than time server keeps long poll request
+	private static final int LONG_POLL_SO_TIMEOUT = 60000;
+
+	// ms, used if server doesn't say how long connection can be kept
+	private static final long KEEP_ALIVE = 30000;
+
+	@Nonnull
+	private static final String GZIP = "gzip";
+
+	@Nonnull
+	private static final PooledHttpClient instance = new PooledHttpClient();
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final ClientConnectionManager connectionManager;
+
+	@Nonnull
+	private final DefaultHttpClient client;
+
+	private PooledHttpClient() {
+		final HttpParams params = new BasicHttpParams();
+		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+		HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+		HttpConnectionParams.setConnectionTimeout(params, CONNECTION_TIMEOUT);
+		HttpConnectionParams.setSoTimeout(params, API_SO_TIMEOUT);
+		HttpConnectionParams.setSocketBufferSize(params, BUFFER_SIZE);
+		// pooled connection might be closed by server
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS_PER_HOST));
+		ConnManagerParams.setTimeout(params, CONNECTION_TIMEOUT);
+
+		final SchemeRegistry schemeRegistry = new SchemeRegistry();
+		schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+		connectionManager = new ThreadSafeClientConnManager(params, schemeRegistry);
+		client = new DefaultHttpClient(connectionManager, params);
+		client.addRequestInterceptor(new AcceptGzipInterceptor());
+		client.addResponseInterceptor(new ResponseInterceptor());
+		client.setHttpRequestRetryHandler(new RetryHandler());
+		client.setKeepAliveStrategy(new KeepAliveStrategy());
+	}
+
+	@Nonnull
+	public static PooledHttpClient getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Executes <var>transaction</var> on one of the pooled connections. Entity of the response is consumed after
+	 * {@link HttpTransaction#getResponse(HttpResponse)} returns, so connection is returned to the pool.
+	 */
+	public <R> R execute(@Nonnull HttpTransaction<R> transaction, @Nonnull Profile profile) throws IOException {
+		connectionManager.closeIdleConnections(KEEP_ALIVE, TimeUnit.MILLISECONDS);
+
+		final HttpUriRequest request = transaction.createRequest();
+		profile.applyTo(request.getParams());
+
+		boolean ok = false;
+		HttpEntity entity = null;
+		try {
+			final HttpResponse response = client.execute(request);
+			entity = response.getEntity();
+			final R result = transaction.getResponse(response);
+			ok = true;
+			return result;
+		} finally {
+			if (ok) {
+				if (entity != null) {
+					entity.consumeContent();
+				}
+			} else {
+				// connection might be in the middle of the response => can't be reused
+				request.abort();
+			}
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	public static enum Profile {
+
+		// API call which doesn't change anything on the server and can be repeated
+		api_read(API_SO_TIMEOUT, true),
+
+		// API call with side effects (e.g. message sending): repeated only if request has not been sent
+		api_write(API_SO_TIMEOUT, false),
+
+		// long poll request: server keeps it open until there are updates
+		long_poll(LONG_POLL_SO_TIMEOUT, true);
+
+		@Nonnull
+		static final String IDEMPOTENT = "org.solovyev.android.http.idempotent";
+
+		private final int soTimeout;
+
+		private final boolean idempotent;
+
+		Profile(int soTimeout, boolean idempotent) {
+			this.soTimeout = soTimeout;
+			this.idempotent = idempotent;
+		}
+
+		void applyTo(@Nonnull HttpParams params) {
+			HttpConnectionParams.setSoTimeout(params, soTimeout);
+			params.setBooleanParameter(IDEMPOTENT, idempotent);
+		}
+	}
+
+	static final class AcceptGzipInterceptor implements HttpRequestInterceptor {
+		@Override
+		public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+			if (!request.containsHeader("Accept-Encoding")) {
+				request.addHeader("Accept-Encoding", GZIP);
+			}
+		}
+	}
+
+	static final class ResponseInterceptor implements HttpResponseInterceptor {
+		@Override
+		public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+			getMetrics().getCounter("http.requests").inc();
+
+			final HttpConnection connection = (HttpConnection) context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+			if (connection != null && connection.getMetrics().getRequestCount() <= 1) {
+				// first request on the connection
+				getMetrics().getCounter("http.connections.opened").inc();
+			}
+
+			final HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				response.setEntity(new DecodingEntity(entity, isGzipped(entity)));
+			}
+		}
+
+		private static boolean isGzipped(@Nonnull HttpEntity entity) {
+			final Header encoding = entity.getContentEncoding();
+			if (encoding != null) {
+				for (HeaderElement element : encoding.getElements()) {
+					if (element.getName().equalsIgnoreCase(GZIP)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Counts bytes received from network and decompresses them if needed
+	 */
+	static final class DecodingEntity extends HttpEntityWrapper {
+
+		private final boolean gzipped;
+
+		DecodingEntity(@Nonnull HttpEntity entity, boolean gzipped) {
+			super(entity);
+			this.gzipped = gzipped;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			final InputStream in = new CountingInputStream(wrappedEntity.getContent());
+			return gzipped ? new GZIPInputStream(in) : in;
+		}
+
+		@Override
+		public long getContentLength() {
+			return gzipped ? -1 : wrappedEntity.getContentLength();
+		}
+
+		@Override
+		public Header getContentEncoding() {
+			return gzipped ? null : wrappedEntity.getContentEncoding();
+		}
+	}
+
+	private static final class CountingInputStream extends FilterInputStream {
+
+		private CountingInputStream(@Nonnull InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int result = super.read();
+			if (result >= 0) {
+				getMetrics().getCounter("http.bytes.received").inc();
+			}
+			return result;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			final int result = super.read(buffer, offset, count);
+			if (result > 0) {
+				getMetrics().getCounter("http.bytes.received").add(result);
+			}
+			return result;
+		}
+	}
+
+	static final class RetryHandler implements HttpRequestRetryHandler {
+		@Override
+		public boolean retryRequest(IOException e, int executionCount, HttpContext context) {
+			if (executionCount > MAX_RETRIES) {
+				return false;
+			}
+
+			if (e instanceof InterruptedIOException || e instanceof UnknownHostException || e instanceof SSLException) {
+				// timeout, no network or handshake error => retry will not help
+				return false;
+			}
+
+			if (isSent(context) && !isIdempotent(context)) {
+				return false;
+			}
+
+			getMetrics().getCounter("http.retries").inc();
+			return true;
+		}
+
+		private static boolean isSent(@Nonnull HttpContext context) {
+			final Boolean sent = (Boolean) context.getAttribute(ExecutionContext.HTTP_REQ_SENT);
+			return sent != null && sent;
+		}
+
+		private static boolean isIdempotent(@Nonnull HttpContext context) {
+			final HttpRequest request = (HttpRequest) context.getAttribute(ExecutionContext.HTTP_REQUEST);
+			if (request == null || !request.getRequestLine().getMethod().equalsIgnoreCase("GET")) {
+				return false;
+			}
+			return request.getParams().getBooleanParameter(Profile.IDEMPOTENT, false);
+		}
+	}
+
+	private static final class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+		@Nonnull
+		private final ConnectionKeepAliveStrategy strategy = new DefaultConnectionKeepAliveStrategy();
+
+		@Override
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			final long result = strategy.getKeepAliveDuration(response, context);
+			return result > 0 ? result : KEEP_ALIVE;
+		}
+	}
+}
@@ -31,6 +31,7 @@ import com.google.inject.Inject;
 import org.solovyev.android.Threads;
 import org.solovyev.android.messenger.accounts.AccountService;
 import org.solovyev.android.messenger.accounts.connection.AccountConnectionsService;
+import org.solovyev.android.messenger.cache.CacheSnapshotService;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.messages.MessageService;
 import org.solovyev.android.messenger.messages.UnreadMessagesCounter;
@@ -150,6 +151,10 @@ public final class App implements SharedPreferences.OnSharedPreferenceChangeList
 	@Nonnull
 	private Wizards wizards;
 
+	@Inject
+	@Nonnull
+	private CacheSnapshotService cacheSnapshotService;
+
 	@Nonnull
 	private Handler uiHandler;
 
@@ -180,8 +185,10 @@ public final class App implements SharedPreferences.OnSharedPreferenceChangeList
 		chatService.init();
 		messageService.init();
 		syncService.init();
+		// fill caches before any UI is shown
+		cacheSnapshotService.init();
 		unreadMessagesNotifier.init();
-		unreadMessagesCounter.init();
+		unreadMessagesCounter.init(cacheSnapshotService.pollUnreadChats());
 
 		// must be done after all loadings
 		accountConnectionsService.init();
@@ -301,6 +308,11 @@ public final class App implements SharedPreferences.OnSharedPreferenceChangeList
 		return instance.securityService;
 	}
 
+	@Nonnull
+	public static CacheSnapshotService getCacheSnapshotService() {
+		return instance.cacheSnapshotService;
+	}
+
 	@Nonnull
 	public static Application getApplication() {
 		return instance.application;
@@ -382,7 +394,7 @@ public final class App implements SharedPreferences.OnSharedPreferenceChangeList
 	}
 
 	public static void executeInBackground(@Nonnull final Runnable runnable) {
-		instance.background.execute(new Runnable() {
+		instance.background.execute(Background.Lane.interactive, new Runnable() {
 			@Override
 			public void run() {
 				try {
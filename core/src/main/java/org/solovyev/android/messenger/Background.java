@@ -16,65 +16,433 @@
 
 package org.solovyev.android.messenger;
 
+import android.os.Looper;
+import android.util.Log;
 import com.google.inject.Singleton;
-import org.solovyev.android.TimeLoggingExecutor;
+import org.solovyev.android.metrics.Counter;
+import org.solovyev.android.metrics.Gauge;
+import org.solovyev.android.metrics.Histogram;
+import org.solovyev.android.metrics.Metrics;
 
 import javax.annotation.Nonnull;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static java.util.concurrent.Executors.newFixedThreadPool;
+import static android.os.SystemClock.elapsedRealtime;
 
+/**
+ * Background executor with separate lanes for different kinds of work (see {@link Lane}). Each lane has its own
+ * pool of threads and bounded queue, overflow of the queue is handled according to lane's policy (main thread is never
+ * blocked and never runs the task itself). Task can be
+ * submitted with a key: queued task with the same key is cancelled (e.g. icon load for a recycled view is replaced by
+ * the load for the new content of the view).
+ * <p/>
+ * Queue depth, wait and work time of each lane are published to {@link Metrics}.
+ */
 @Singleton
+@ThreadSafe
 public final class Background implements Executor {
 
+	private static final String TAG = App.newTag("Background");
+
+	private static final long MAX_WAIT_MILLIS = 100;
+	private static final long MAX_WORK_MILLIS = 100;
+
 	private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
 	private static final int POOL_SIZE = CPU_COUNT + 1;
 
-	private final AtomicInteger count = new AtomicInteger();
+	// seconds
+	private static final int KEEP_ALIVE_TIME = 30;
 
-	@Nonnull
-	private Executor lowPriorityExecutor = newFixedThreadPool(POOL_SIZE, new BackgroundThreadFactory(Thread.MIN_PRIORITY));
+	public static enum Lane {
+
+		// tasks user is waiting for (e.g. progress is shown)
+		ui_blocking(POOL_SIZE, Thread.MAX_PRIORITY, 256, Overflow.caller_runs),
+
+		// tasks started by user or needed to keep UI up to date
+		interactive(POOL_SIZE, Thread.NORM_PRIORITY, 512, Overflow.caller_runs),
+
+		// event dispatching: one thread => events are delivered in the order they are fired, firing thread is never
+		// blocked by the listeners and events are never lost
+		events(1, Thread.NORM_PRIORITY, 1024, Overflow.spill),
+
+		// synchronization and other periodic work
+		sync(POOL_SIZE, Thread.MIN_PRIORITY, 256, Overflow.caller_runs),
+
+		// speculative work which might be not needed anymore when it is run (e.g. loading of icons)
+		prefetch(2, Thread.MIN_PRIORITY, 64, Overflow.drop_oldest);
+
+		private final int threads;
+		private final int priority;
+		private final int capacity;
+
+		@Nonnull
+		private final Overflow overflow;
+
+		Lane(int threads, int priority, int capacity, @Nonnull Overflow overflow) {
+			this.threads = threads;
+			this.priority = priority;
+			this.capacity = capacity;
+			this.overflow = overflow;
+		}
+	}
+
+	private static enum Overflow {
+		// task is run in the thread which has submitted it => producer is slowed down. Tasks submitted from the main
+		// thread are spilled instead
+		caller_runs,
+		// task is put to the unbounded overflow queue and is moved to the lane's queue when it has free place
+		spill,
+		// oldest queued task is cancelled
+		drop_oldest
+	}
 
 	@Nonnull
-	private Executor highPriorityExecutor = newFixedThreadPool(POOL_SIZE, new BackgroundThreadFactory(Thread.MAX_PRIORITY));
+	private final Map<Lane, LaneExecutor> executors = new EnumMap<Lane, LaneExecutor>(Lane.class);
+
+	public Background() {
+		for (Lane lane : Lane.values()) {
+			executors.put(lane, new LaneExecutor(lane, newThreadPool(lane)));
+		}
+	}
+
+	/**
+	 * @param executor executor on which tasks of all lanes are run (e.g. for tests)
+	 */
+	public Background(@Nonnull Executor executor) {
+		for (Lane lane : Lane.values()) {
+			executors.put(lane, new LaneExecutor(lane, executor));
+		}
+	}
 
+	/**
+	 * Same as {@link #execute(Lane, Runnable)} for {@link Lane#sync}
+	 */
 	@Override
 	public void execute(@Nonnull Runnable command) {
-		TimeLoggingExecutor.executeOnExecutor(lowPriorityExecutor, command);
+		execute(Lane.sync, command);
+	}
+
+	public void execute(@Nonnull Lane lane, @Nonnull Runnable command) {
+		submit(lane, null, command);
+	}
+
+	@Nonnull
+	public Future<?> submit(@Nonnull Lane lane, @Nonnull Runnable command) {
+		return submit(lane, null, command);
+	}
+
+	/**
+	 * @param lane    lane
+	 * @param key     key of the task, if task with the same key is waiting in the queue of the <var>lane</var> it is
+	 *                cancelled. Null if task should not replace any other task
+	 * @param command task
+	 * @return future which can be used to cancel the task
+	 */
+	@Nonnull
+	public Future<?> submit(@Nonnull Lane lane, @Nullable Object key, @Nonnull Runnable command) {
+		return executors.get(lane).submit(key, command);
+	}
+
+	/**
+	 * Cancels task with <var>key</var> if it is not started yet
+	 */
+	public void cancel(@Nonnull Lane lane, @Nonnull Object key) {
+		executors.get(lane).cancel(key);
+	}
+
+	@Nonnull
+	public Executor getExecutor(@Nonnull Lane lane) {
+		return executors.get(lane);
 	}
 
 	@Nonnull
 	public Executor getLowPriorityExecutor() {
-		return lowPriorityExecutor;
+		return getExecutor(Lane.sync);
 	}
 
 	@Nonnull
 	public Executor getHighPriorityExecutor() {
-		return highPriorityExecutor;
+		return getExecutor(Lane.ui_blocking);
 	}
 
-	public void setLowPriorityExecutor(@Nonnull Executor lowPriorityExecutor) {
-		this.lowPriorityExecutor = lowPriorityExecutor;
+	@Nonnull
+	private static ThreadPoolExecutor newThreadPool(@Nonnull final Lane lane) {
+		final ThreadPoolExecutor result = new ThreadPoolExecutor(lane.threads, lane.threads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(lane.capacity), new LaneThreadFactory(lane));
+		result.allowCoreThreadTimeOut(true);
+		return result;
 	}
 
-	public void setHighPriorityExecutor(@Nonnull Executor highPriorityExecutor) {
-		this.highPriorityExecutor = highPriorityExecutor;
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class LaneExecutor implements Executor, RejectedExecutionHandler {
+
+		@Nonnull
+		private final Lane lane;
+
+		@Nonnull
+		private final Executor executor;
+
+		// queued tasks submitted with keys
+		@Nonnull
+		private final ConcurrentMap<Object, LaneTask> keyedTasks = new ConcurrentHashMap<Object, LaneTask>();
+
+		// tasks which have not fit into the queue of the executor, in order of submission
+		@Nonnull
+		private final Queue<LaneTask> spilled = new ConcurrentLinkedQueue<LaneTask>();
+
+		@Nonnull
+		private final Histogram waitTime;
+
+		@Nonnull
+		private final Histogram workTime;
+
+		@Nonnull
+		private final Counter dropped;
+
+		@Nonnull
+		private final Counter coalesced;
+
+		@Nonnull
+		private final Counter spills;
+
+		private LaneExecutor(@Nonnull Lane lane, @Nonnull final Executor executor) {
+			this.lane = lane;
+			this.executor = executor;
+
+			final Metrics metrics = Metrics.getMetrics();
+			final String prefix = "background." + lane;
+			waitTime = metrics.getHistogram(prefix + ".wait");
+			workTime = metrics.getHistogram(prefix + ".work");
+			dropped = metrics.getCounter(prefix + ".dropped");
+			coalesced = metrics.getCounter(prefix + ".coalesced");
+			spills = metrics.getCounter(prefix + ".spilled");
+
+			if (executor instanceof ThreadPoolExecutor) {
+				((ThreadPoolExecutor) executor).setRejectedExecutionHandler(this);
+				metrics.registerGauge(prefix + ".queue", new Gauge() {
+					@Override
+					public long getValue() {
+						return ((ThreadPoolExecutor) executor).getQueue().size();
+					}
+				});
+			}
+		}
+
+		@Override
+		public void execute(@Nonnull Runnable command) {
+			submit(null, command);
+		}
+
+		@Nonnull
+		Future<?> submit(@Nullable Object key, @Nonnull Runnable command) {
+			final LaneTask task = new LaneTask(this, key, command);
+			if (key != null) {
+				final LaneTask oldTask = keyedTasks.put(key, task);
+				if (oldTask != null && oldTask.cancel(false)) {
+					coalesced.inc();
+				}
+			}
+			if (spilled.isEmpty()) {
+				executor.execute(task);
+			} else {
+				// spilled tasks must be run first
+				spill(task);
+			}
+			return task;
+		}
+
+		void cancel(@Nonnull Object key) {
+			final LaneTask task = keyedTasks.get(key);
+			if (task != null) {
+				task.cancel(false);
+			}
+		}
+
+		void onCancelled(@Nonnull LaneTask task) {
+			if (task.key != null) {
+				keyedTasks.remove(task.key, task);
+			}
+			if (!spilled.remove(task) && executor instanceof ThreadPoolExecutor) {
+				// free the place in the queue
+				((ThreadPoolExecutor) executor).remove(task);
+			}
+		}
+
+		private void spill(@Nonnull LaneTask task) {
+			spilled.add(task);
+			spills.inc();
+			// place might have been freed while task was spilled
+			moveSpilled();
+		}
+
+		// moves spilled tasks to the queue of the executor while there is free place in it
+		void moveSpilled() {
+			if (spilled.isEmpty() || !(executor instanceof ThreadPoolExecutor)) {
+				return;
+			}
+
+			final ThreadPoolExecutor executor = (ThreadPoolExecutor) this.executor;
+			synchronized (spilled) {
+				LaneTask task = spilled.peek();
+				while (task != null && executor.getQueue().offer(task)) {
+					spilled.poll();
+					task = spilled.peek();
+				}
+			}
+
+			if (executor.getPoolSize() == 0) {
+				// all threads might have timed out before the tasks have been queued
+				executor.prestartCoreThread();
+			}
+		}
+
+		@Override
+		public void rejectedExecution(@Nonnull Runnable r, @Nonnull ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException();
+			}
+
+			switch (lane.overflow) {
+				case caller_runs:
+					if (Looper.myLooper() == Looper.getMainLooper()) {
+						// main thread must not do background work
+						spill((LaneTask) r);
+					} else {
+						r.run();
+					}
+					break;
+				case spill:
+					spill((LaneTask) r);
+					break;
+				case drop_oldest:
+					final Runnable oldest = executor.getQueue().poll();
+					if (oldest instanceof Future) {
+						((Future<?>) oldest).cancel(false);
+					}
+					dropped.inc();
+					executor.execute(r);
+					break;
+			}
+		}
 	}
 
-	private class BackgroundThreadFactory implements ThreadFactory {
+	private static final class LaneTask extends FutureTask<Object> {
 
-		private final int priority;
+		@Nonnull
+		private final LaneExecutor laneExecutor;
 
-		public BackgroundThreadFactory(int priority) {
-			this.priority = priority;
+		@Nullable
+		private final Object key;
+
+		@Nonnull
+		private final Runnable command;
+
+		private final long queuedTime = elapsedRealtime();
+
+		private LaneTask(@Nonnull LaneExecutor laneExecutor, @Nullable Object key, @Nonnull Runnable command) {
+			super(command, null);
+			this.laneExecutor = laneExecutor;
+			this.key = key;
+			this.command = command;
+		}
+
+		@Override
+		public void run() {
+			// task has left the queue => spilled task can take its place
+			laneExecutor.moveSpilled();
+
+			if (key != null) {
+				laneExecutor.keyedTasks.remove(key, this);
+			}
+
+			if (isDone()) {
+				// cancelled
+				return;
+			}
+
+			final long startTime = elapsedRealtime();
+			final long waitMillis = startTime - queuedTime;
+			laneExecutor.waitTime.update(waitMillis);
+			try {
+				super.run();
+			} finally {
+				final long workMillis = elapsedRealtime() - startTime;
+				laneExecutor.workTime.update(workMillis);
+				if (waitMillis > MAX_WAIT_MILLIS && laneExecutor.lane != Lane.prefetch) {
+					Log.e(App.TAG_TIME, "Wait time is too long (" + waitMillis + " ms) in " + laneExecutor.lane + " lane for " + command + "(" + command.getClass().getSimpleName() + ")");
+				}
+				if (workMillis > MAX_WORK_MILLIS) {
+					Log.e(App.TAG_TIME, "Work time is too long (" + workMillis + " ms) in " + laneExecutor.lane + " lane for " + command + "(" + command.getClass().getSimpleName() + ")");
+				}
+			}
+
+			rethrowFailure();
+		}
+
+		// FutureTask stores exception thrown by the task => rethrow it to not to hide it
+		private void rethrowFailure() {
+			if (!isCancelled()) {
+				try {
+					get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					} else {
+						Log.e(TAG, cause.getMessage(), cause);
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			final boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				laneExecutor.onCancelled(this);
+			}
+			return cancelled;
+		}
+
+		@Override
+		public String toString() {
+			return command.toString();
+		}
+	}
+
+	private static final class LaneThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final Lane lane;
+
+		@Nonnull
+		private final AtomicInteger count = new AtomicInteger();
+
+		private LaneThreadFactory(@Nonnull Lane lane) {
+			this.lane = lane;
 		}
 
 		@Override
 		public Thread newThread(@Nonnull Runnable r) {
-			final Thread thread = new Thread(r, "Background thread #" + count.getAndIncrement() + " (priority=" + priority + ")");
-			thread.setPriority(priority);
+			final Thread thread = new Thread(r, "Background thread #" + count.getAndIncrement() + " (" + lane + ")");
+			thread.setPriority(lane.priority);
 			return thread;
 		}
 	}
@@ -14,34 +14,25 @@
  * limitations under the License.
  */
 
-package org.solovyev.android.messenger.realms.vk.longpoll;
-
-import org.solovyev.android.messenger.http.IllegalJsonException;
+package org.solovyev.android.messenger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.Collections;
-import java.util.List;
 
 /**
- * User: serso
- * Date: 6/24/12
- * Time: 12:52 AM
+ * Event which can be merged with the event fired right after it (see {@link CoalescingEventListeners} and
+ * {@link UiThreadEventListener}), e.g. two presence changes of the same account can be delivered as one event
+ * containing contacts of both of them.
+ *
+ * @param <E> type of event
  */
-public class JsonLongPollData {
-
-	@Nullable
-	private Long ts;
+public interface CoalescableEvent<E> {
 
+	/**
+	 * @param next event fired right after this event
+	 * @return event which has the same effect as this event followed by <var>next</var>, null if events can't be
+	 * merged (e.g. they have different types or different targets)
+	 */
 	@Nullable
-	private List<LongPollUpdate> updates;
-
-	@Nonnull
-	public VkLongPollResult toResult() throws IllegalJsonException {
-		if (ts == null) {
-			throw new IllegalJsonException();
-		}
-
-		return new VkLongPollResult(ts, updates == null ? Collections.<LongPollUpdate>emptyList() : updates);
-	}
+	E coalesce(@Nonnull E next);
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import android.util.Log;
+import org.solovyev.android.metrics.Counter;
+import org.solovyev.android.metrics.Metrics;
+import org.solovyev.common.listeners.JEvent;
+import org.solovyev.common.listeners.JEventListener;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Event listeners which are notified on <var>executor</var>. Unlike listeners created by
+ * {@link org.solovyev.common.listeners.Listeners#newEventListenersBuilderFor(Class)}, events are not dispatched one
+ * by one: each listener has its own queue of events which is drained by one task (=> listener is notified from one
+ * thread at a time and in the order in which events were fired). Events fired while the task is waiting in the
+ * executor's queue or is notifying the listener are coalesced (see {@link CoalescableEvent}), e.g. a presence storm
+ * results in a couple of events containing many contacts instead of thousands of events with one contact each.
+ *
+ * @param <E> type of event
+ */
+@ThreadSafe
+public final class CoalescingEventListeners<E extends JEvent> {
+
+	@Nonnull
+	private static final String TAG = App.newTag("Events");
+
+	@Nonnull
+	private final Executor executor;
+
+	@Nonnull
+	private final List<ListenerQueue> queues = new CopyOnWriteArrayList<ListenerQueue>();
+
+	@Nonnull
+	private final Counter firedEvents;
+
+	@Nonnull
+	private final Counter deliveredEvents;
+
+	private CoalescingEventListeners(@Nonnull Class<E> eventType, @Nonnull Executor executor) {
+		this.executor = executor;
+		final Metrics metrics = Metrics.getMetrics();
+		this.firedEvents = metrics.getCounter("events." + eventType.getSimpleName() + ".fired");
+		this.deliveredEvents = metrics.getCounter("events." + eventType.getSimpleName() + ".delivered");
+	}
+
+	@Nonnull
+	public static <E extends JEvent> CoalescingEventListeners<E> newCoalescingEventListeners(@Nonnull Class<E> eventType, @Nonnull Executor executor) {
+		return new CoalescingEventListeners<E>(eventType, executor);
+	}
+
+	public boolean addListener(@Nonnull JEventListener<? extends E> listener) {
+		synchronized (queues) {
+			if (findQueue(listener) != null) {
+				return false;
+			}
+			return queues.add(new ListenerQueue(listener));
+		}
+	}
+
+	public boolean removeListener(@Nonnull JEventListener<? extends E> listener) {
+		synchronized (queues) {
+			final ListenerQueue queue = findQueue(listener);
+			if (queue != null) {
+				queue.removed = true;
+				return queues.remove(queue);
+			}
+			return false;
+		}
+	}
+
+	public void removeListeners() {
+		synchronized (queues) {
+			for (ListenerQueue queue : queues) {
+				queue.removed = true;
+			}
+			queues.clear();
+		}
+	}
+
+	public void fireEvent(@Nonnull E event) {
+		fireEvents(asList(event));
+	}
+
+	public void fireEvents(@Nonnull Collection<? extends E> events) {
+		if (!events.isEmpty()) {
+			firedEvents.add(events.size());
+			for (ListenerQueue queue : queues) {
+				queue.add(events);
+			}
+		}
+	}
+
+	private ListenerQueue findQueue(@Nonnull JEventListener<? extends E> listener) {
+		for (ListenerQueue queue : queues) {
+			if (queue.listener.equals(listener)) {
+				return queue;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param events list to which <var>event</var> should be added. If last event in the list can be merged with
+	 *               <var>event</var> it is replaced by the merged event.
+	 * @param event  event to be added
+	 */
+	@SuppressWarnings("unchecked")
+	static <E> void addCoalesced(@Nonnull List<E> events, @Nonnull E event) {
+		final int last = events.size() - 1;
+		if (last >= 0) {
+			final E lastEvent = events.get(last);
+			if (lastEvent instanceof CoalescableEvent) {
+				final E coalesced = ((CoalescableEvent<E>) lastEvent).coalesce(event);
+				if (coalesced != null) {
+					events.set(last, coalesced);
+					return;
+				}
+			}
+		}
+		events.add(event);
+	}
+
+	private final class ListenerQueue implements Runnable {
+
+		@Nonnull
+		private final JEventListener<? extends E> listener;
+
+		@GuardedBy("this")
+		@Nonnull
+		private List<E> events = new ArrayList<E>();
+
+		// true if task draining the queue is submitted to executor or is running
+		@GuardedBy("this")
+		private boolean scheduled;
+
+		private volatile boolean removed;
+
+		private ListenerQueue(@Nonnull JEventListener<? extends E> listener) {
+			this.listener = listener;
+		}
+
+		void add(@Nonnull Collection<? extends E> newEvents) {
+			final Class<?> eventType = listener.getEventType();
+
+			final boolean schedule;
+			synchronized (this) {
+				for (E event : newEvents) {
+					if (eventType.isInstance(event)) {
+						addCoalesced(events, event);
+					}
+				}
+				schedule = !scheduled && !events.isEmpty();
+				if (schedule) {
+					scheduled = true;
+				}
+			}
+
+			if (schedule) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// task will never run => let the next event to schedule new task
+					synchronized (this) {
+						scheduled = false;
+					}
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			boolean finished = false;
+			try {
+				List<E> batch;
+				while ((batch = poll()) != null) {
+					for (E event : batch) {
+						if (removed) {
+							break;
+						}
+						notifyListener(event);
+					}
+					deliveredEvents.add(batch.size());
+				}
+				finished = true;
+			} finally {
+				if (!finished) {
+					// task has been aborted by an error => let the next event to schedule new task
+					synchronized (this) {
+						scheduled = false;
+					}
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void notifyListener(@Nonnull E event) {
+			try {
+				((JEventListener<E>) listener).onEvent(event);
+			} catch (RuntimeException e) {
+				// failure of one event must not stop delivery of the others
+				Log.e(TAG, e.getMessage(), e);
+			}
+		}
+
+		// returns null (and marks queue as not scheduled) if there are no events
+		private synchronized List<E> poll() {
+			if (events.isEmpty()) {
+				scheduled = false;
+				return null;
+			}
+			final List<E> result = events;
+			events = new ArrayList<E>();
+			return result;
+		}
+	}
+}
@@ -51,7 +51,11 @@ import roboguice.event.Observes;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.solovyev.android.messenger.App.*;
 import static org.solovyev.android.messenger.MessengerPreferences.isNewInstallation;
@@ -565,6 +569,11 @@ public final class MainActivity extends BaseFragmentActivity {
 		@Nonnull
 		private ChatService chatService;
 
+		// key: chat, value: messages waiting to be marked as read
+		@GuardedBy("readMessages")
+		@Nonnull
+		private final Map<Chat, List<Message>> readMessages = new HashMap<Chat, List<Message>>();
+
 		public ChatUiEventListener(@Nonnull BaseFragmentActivity activity) {
 			this.activity = activity;
 		}
@@ -618,12 +627,30 @@ public final class MainActivity extends BaseFragmentActivity {
 		}
 
 		public void onMessageReadEvent(@Observes @Nonnull final ChatUiEvent.MarkMessageRead event) {
-			executeInBackground(withAccountException(new AccountRunnable() {
-				@Override
-				public void run() throws AccountConnectionException {
-					chatService.markMessageRead(event.chat, event.message);
+			final boolean scheduled;
+			synchronized (readMessages) {
+				List<Message> messages = readMessages.get(event.chat);
+				scheduled = messages != null;
+				if (messages == null) {
+					messages = new ArrayList<Message>();
+					readMessages.put(event.chat, messages);
 				}
-			}));
+				messages.add(event.message);
+			}
+
+			if (!scheduled) {
+				// list items are bound one by one => all messages bound before the task starts are marked as read at once
+				executeInBackground(withAccountException(new AccountRunnable() {
+					@Override
+					public void run() throws AccountConnectionException {
+						final List<Message> messages;
+						synchronized (readMessages) {
+							messages = readMessages.remove(event.chat);
+						}
+						chatService.markMessagesRead(event.chat, messages);
+					}
+				}));
+			}
 		}
 
 		public void onChatClickedEvent(@Observes @Nonnull final ChatUiEvent.Clicked event) {
@@ -66,6 +66,12 @@ public final class MessengerPreferences {
 	public static Preference<Integer> startCount = IntegerPreference.of("startCount", 0);
 
 
+	public static final class Cache {
+		public static Preference<Boolean> snapshot = BooleanPreference.of("cache.snapshot", true);
+		// generation of persisted data for which last cache snapshot was done
+		public static Preference<Integer> snapshotGeneration = IntegerPreference.of("cache.snapshot.generation", 0);
+	}
+
 	public static final class Security {
 		public static Preference<String> uuid = StringPreference.of("security.uuid", null);
 		public static Preference<String> salt = StringPreference.of("security.salt", null);
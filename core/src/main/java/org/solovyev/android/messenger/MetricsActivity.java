@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.TextView;
+import com.github.rtyley.android.sherlock.roboguice.activity.RoboSherlockActivity;
+import org.solovyev.android.Threads;
+import org.solovyev.android.messenger.core.R;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+
+import static org.solovyev.android.metrics.Metrics.getMetrics;
+
+/**
+ * Debug screen which shows current application metrics (cache hit ratios, DB and HTTP latencies). Each time the
+ * screen is shown metrics are also dumped to "metrics.json" in the external files directory of the application, so
+ * they can be pulled from the device with adb.
+ */
+public class MetricsActivity extends RoboSherlockActivity {
+
+	@Nonnull
+	private static final String TAG = App.newTag("Metrics");
+
+	@Nonnull
+	private static final String FILE_NAME = "metrics.json";
+
+	@Nonnull
+	private TextView console;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		setContentView(R.layout.mpp_metrics_activity);
+
+		console = (TextView) findViewById(R.id.mpp_metrics_console_textview);
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+
+		App.getBackground().execute(Background.Lane.interactive, new Runnable() {
+			@Override
+			public void run() {
+				final String json = getMetrics().toJsonString();
+				final String text = dump() + "\n\n" + json;
+				Threads.tryRunOnUiThread(MetricsActivity.this, new Runnable() {
+					@Override
+					public void run() {
+						console.setText(text);
+					}
+				});
+			}
+		});
+	}
+
+	@Nonnull
+	private String dump() {
+		File dir = getExternalFilesDir(null);
+		if (dir == null) {
+			// external storage is not available
+			dir = getFilesDir();
+		}
+
+		final File file = new File(dir, FILE_NAME);
+		try {
+			getMetrics().dump(file);
+			return "Dumped to " + file.getPath();
+		} catch (IOException e) {
+			Log.e(TAG, e.getMessage(), e);
+			return "Dump failed: " + e.getMessage();
+		}
+	}
+}
@@ -17,21 +17,59 @@
 package org.solovyev.android.messenger;
 
 import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
 import org.solovyev.android.Threads;
+import org.solovyev.android.metrics.Histogram;
+import org.solovyev.android.metrics.Metrics;
 import org.solovyev.common.listeners.JEvent;
 import org.solovyev.common.listeners.JEventListener;
 
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Listener which notifies wrapped listener on the UI thread. First event is posted to the UI thread immediately, events
+ * fired while the post is pending are delivered together with it and consecutive events are coalesced (see
+ * {@link CoalescableEvent}) => burst of events results in one UI update instead of many.
+ */
 public final class UiThreadEventListener<E extends JEvent> implements JEventListener<E> {
 
+	@Nonnull
+	private static final Handler handler = new Handler(Looper.getMainLooper());
+
+	// time spent on the UI thread for delivering one batch of events
+	@Nonnull
+	private static final Histogram dispatchTime = Metrics.getMetrics().getHistogram("events.ui.dispatch");
+
 	private final Activity activity;
 	private final Fragment fragment;
 
 	@Nonnull
 	private final JEventListener<E> eventListener;
 
+	@GuardedBy("this")
+	@Nonnull
+	private List<E> events = new ArrayList<E>();
+
+	@Nonnull
+	private final Runnable postRunnable = new Runnable() {
+		@Override
+		public void run() {
+			// events are polled even if activity/fragment is gone => they are dropped as before
+			final Runnable dispatchRunnable = new DispatchRunnable(poll());
+			if (activity != null) {
+				Threads.tryRunOnUiThread(activity, dispatchRunnable);
+			} else {
+				Threads.tryRunOnUiThread(fragment, dispatchRunnable);
+			}
+		}
+	};
+
 	private UiThreadEventListener(Activity activity, Fragment fragment, @Nonnull JEventListener<E> eventListener) {
 		this.activity = activity;
 		this.fragment = fragment;
@@ -56,20 +94,41 @@ public final class UiThreadEventListener<E extends JEvent> implements JEventList
 
 	@Override
 	public void onEvent(@Nonnull final E event) {
-		if (activity != null) {
-			Threads.tryRunOnUiThread(activity, new Runnable() {
-				@Override
-				public void run() {
-					eventListener.onEvent(event);
-				}
-			});
-		} else {
-			Threads.tryRunOnUiThread(fragment, new Runnable() {
-				@Override
-				public void run() {
-					eventListener.onEvent(event);
-				}
-			});
+		final boolean post;
+		synchronized (this) {
+			post = events.isEmpty();
+			CoalescingEventListeners.addCoalesced(events, event);
+		}
+
+		if (post) {
+			// no post is pending => events fired until the post is run will be delivered together
+			handler.post(postRunnable);
+		}
+	}
+
+	@Nonnull
+	private synchronized List<E> poll() {
+		final List<E> result = events;
+		events = new ArrayList<E>();
+		return result;
+	}
+
+	private final class DispatchRunnable implements Runnable {
+
+		@Nonnull
+		private final List<E> events;
+
+		private DispatchRunnable(@Nonnull List<E> events) {
+			this.events = events;
+		}
+
+		@Override
+		public void run() {
+			final long start = SystemClock.uptimeMillis();
+			for (E event : events) {
+				eventListener.onEvent(event);
+			}
+			dispatchTime.update(SystemClock.uptimeMillis() - start);
 		}
 	}
 }
@@ -22,6 +22,7 @@ import org.solovyev.android.messenger.chats.Chat;
 import org.solovyev.android.messenger.entities.Entities;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.realms.Realm;
+import org.solovyev.android.messenger.sync.SyncSchedule;
 import org.solovyev.android.messenger.users.CompositeUser;
 import org.solovyev.android.messenger.users.CompositeUserChoice;
 import org.solovyev.android.messenger.users.User;
@@ -180,6 +181,14 @@ public abstract class AbstractAccount<C extends AccountConfiguration> extends JO
 		return clone;
 	}
 
+	@Nonnull
+	@Override
+	public AbstractAccount<C> updateSyncSchedule(@Nonnull SyncSchedule schedule) {
+		final AbstractAccount<C> clone = this.clone();
+		clone.syncData = clone.syncData.updateSchedule(schedule);
+		return clone;
+	}
+
 	@Nonnull
 	@Override
 	public AccountSyncData getSyncData() {
@@ -23,6 +23,7 @@ import org.solovyev.android.messenger.chats.AccountChatService;
 import org.solovyev.android.messenger.chats.Chat;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.realms.Realm;
+import org.solovyev.android.messenger.sync.SyncSchedule;
 import org.solovyev.android.messenger.users.AccountUserService;
 import org.solovyev.android.messenger.users.CompositeUserChoice;
 import org.solovyev.android.messenger.users.User;
@@ -158,6 +159,9 @@ public interface Account<C extends AccountConfiguration> extends Identifiable {
 	@Nonnull
 	Account<C> updateUserIconsSyncDate();
 
+	@Nonnull
+	Account<C> updateSyncSchedule(@Nonnull SyncSchedule schedule);
+
 	@Nonnull
 	AccountSyncData getSyncData();
 }
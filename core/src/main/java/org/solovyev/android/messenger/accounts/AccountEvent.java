@@ -19,9 +19,10 @@ package org.solovyev.android.messenger.accounts;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.solovyev.android.messenger.CoalescableEvent;
 import org.solovyev.common.listeners.AbstractTypedJEvent;
 
-public final class AccountEvent extends AbstractTypedJEvent<Account, AccountEventType> {
+public final class AccountEvent extends AbstractTypedJEvent<Account, AccountEventType> implements CoalescableEvent<AccountEvent> {
 
 	AccountEvent(@Nonnull Account account, @Nonnull AccountEventType type, @Nullable Object data) {
 		super(account, type, data);
@@ -31,4 +32,14 @@ public final class AccountEvent extends AbstractTypedJEvent<Account, AccountEven
 	public Account getAccount() {
 		return getEventObject();
 	}
+
+	@Nullable
+	@Override
+	public AccountEvent coalesce(@Nonnull AccountEvent next) {
+		if (getType() == AccountEventType.sync_data_changed && next.getType() == AccountEventType.sync_data_changed && getAccount().equals(next.getAccount())) {
+			// only the latest sync data matters
+			return next;
+		}
+		return null;
+	}
 }
@@ -67,7 +67,7 @@ public class AccountMapper<C extends AccountConfiguration> implements Converter<
 
 		final C decryptedConfiguration = decryptConfiguration(realm, encryptedConfiguration);
 
-		final AccountSyncData syncData = Accounts.newUserSyncData(c.getString(5), c.getString(6), c.getString(7));
+		final AccountSyncData syncData = Accounts.newUserSyncData(c.getString(5), c.getString(6), c.getString(7), c.getString(8));
 
 		return realm.newAccount(accountId, user, decryptedConfiguration, AccountState.valueOf(state), syncData);
 	}
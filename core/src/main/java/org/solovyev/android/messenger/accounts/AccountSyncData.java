@@ -17,6 +17,7 @@
 package org.solovyev.android.messenger.accounts;
 
 import org.joda.time.DateTime;
+import org.solovyev.android.messenger.sync.SyncSchedule;
 import org.solovyev.common.JCloneable;
 
 import javax.annotation.Nonnull;
@@ -35,6 +36,9 @@ public interface AccountSyncData extends JCloneable<AccountSyncData> {
 	@Nullable
 	DateTime getLastUserIconsSyncData();
 
+	@Nonnull
+	SyncSchedule getSchedule();
+
     /*
 	**********************************************************************
     *
@@ -51,4 +55,7 @@ public interface AccountSyncData extends JCloneable<AccountSyncData> {
 
 	@Nonnull
 	AccountSyncData updateUserIconsSyncDate();
+
+	@Nonnull
+	AccountSyncData updateSchedule(@Nonnull SyncSchedule schedule);
 }
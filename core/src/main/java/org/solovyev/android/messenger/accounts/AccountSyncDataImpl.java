@@ -22,6 +22,7 @@ import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
+import org.solovyev.android.messenger.sync.SyncSchedule;
 import org.solovyev.common.JObject;
 
 class AccountSyncDataImpl extends JObject implements MutableAccountSyncData {
@@ -35,38 +36,45 @@ class AccountSyncDataImpl extends JObject implements MutableAccountSyncData {
 	@Nullable
 	private DateTime lastUserIconsSyncDate;
 
+	@Nonnull
+	private SyncSchedule schedule = SyncSchedule.newEmptySchedule();
+
 	private AccountSyncDataImpl() {
 	}
 
 	AccountSyncDataImpl(@Nullable DateTime lastContactsSyncDate,
 						@Nullable DateTime lastChatsSyncDate,
-						@Nullable DateTime lastUserIconsSyncDate) {
+						@Nullable DateTime lastUserIconsSyncDate,
+						@Nonnull SyncSchedule schedule) {
 		this.lastContactsSyncDate = lastContactsSyncDate;
 		this.lastChatsSyncDate = lastChatsSyncDate;
 		this.lastUserIconsSyncDate = lastUserIconsSyncDate;
+		this.schedule = schedule;
 	}
 
 	@Nonnull
 	static AccountSyncDataImpl newInstance(@Nullable DateTime lastContactsSyncDate,
 										   @Nullable DateTime lastChatsSyncDate,
-										   @Nullable DateTime lastUserIconsSyncDate) {
-		return new AccountSyncDataImpl(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate);
+										   @Nullable DateTime lastUserIconsSyncDate,
+										   @Nonnull SyncSchedule schedule) {
+		return new AccountSyncDataImpl(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate, schedule);
 	}
 
 	@Nonnull
 	static AccountSyncDataImpl copyOf(@Nonnull AccountSyncData accountSyncData) {
-		return new AccountSyncDataImpl(accountSyncData.getLastContactsSyncDate(), accountSyncData.getLastChatsSyncDate(), accountSyncData.getLastUserIconsSyncData());
+		return new AccountSyncDataImpl(accountSyncData.getLastContactsSyncDate(), accountSyncData.getLastChatsSyncDate(), accountSyncData.getLastUserIconsSyncData(), accountSyncData.getSchedule());
 	}
 
 	@Nonnull
 	static AccountSyncDataImpl newInstance(@Nullable String lastContactsSyncDateString,
 										   @Nullable String lastChatsSyncDateString,
-										   @Nullable String lastUserIconsSyncDateString) {
+										   @Nullable String lastUserIconsSyncDateString,
+										   @Nullable String scheduleString) {
 		final DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.basicDateTime();
 		final DateTime lastContactsSyncDate = lastContactsSyncDateString == null ? null : dateTimeFormatter.parseDateTime(lastContactsSyncDateString);
 		final DateTime lastChatsSyncDate = lastChatsSyncDateString == null ? null : dateTimeFormatter.parseDateTime(lastChatsSyncDateString);
 		final DateTime lastUserIconsSyncDate = lastUserIconsSyncDateString == null ? null : dateTimeFormatter.parseDateTime(lastUserIconsSyncDateString);
-		return AccountSyncDataImpl.newInstance(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate);
+		return AccountSyncDataImpl.newInstance(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate, SyncSchedule.fromJson(scheduleString));
 	}
 
 	@Override
@@ -86,6 +94,12 @@ class AccountSyncDataImpl extends JObject implements MutableAccountSyncData {
 		return lastUserIconsSyncDate;
 	}
 
+	@Nonnull
+	@Override
+	public SyncSchedule getSchedule() {
+		return schedule;
+	}
+
 	@Nonnull
 	@Override
 	public MutableAccountSyncData updateChatsSyncDate() {
@@ -110,6 +124,14 @@ class AccountSyncDataImpl extends JObject implements MutableAccountSyncData {
 		return clone;
 	}
 
+	@Nonnull
+	@Override
+	public MutableAccountSyncData updateSchedule(@Nonnull SyncSchedule schedule) {
+		final AccountSyncDataImpl clone = this.clone();
+		clone.schedule = schedule;
+		return clone;
+	}
+
 	@Override
 	public boolean isFirstSyncDone() {
 		return getLastContactsSyncDate() != null;
@@ -118,7 +140,7 @@ class AccountSyncDataImpl extends JObject implements MutableAccountSyncData {
 	@Nonnull
 	@Override
 	public AccountSyncDataImpl clone() {
-		// dates are immutable => can leave links as is
+		// dates and schedule are immutable => can leave links as is
 		return (AccountSyncDataImpl) super.clone();
 	}
 }
@@ -3,6 +3,7 @@ package org.solovyev.android.messenger.accounts;
 import android.content.Context;
 import android.os.Bundle;
 import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.sync.SyncSchedule;
 import org.solovyev.android.messenger.users.BaseEditUserFragment;
 
 import javax.annotation.Nonnull;
@@ -22,14 +23,15 @@ public final class Accounts {
 
 	@Nonnull
 	public static AccountSyncData newNeverSyncedData() {
-		return new AccountSyncDataImpl(null, null, null);
+		return new AccountSyncDataImpl(null, null, null, SyncSchedule.newEmptySchedule());
 	}
 
 	@Nonnull
 	public static AccountSyncData newUserSyncData(@Nullable String lastContactsSyncDate,
 												  @Nullable String lastChatsSyncDate,
-												  @Nullable String lastUserIconsSyncDate) {
-		return AccountSyncDataImpl.newInstance(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate);
+												  @Nullable String lastUserIconsSyncDate,
+												  @Nullable String schedule) {
+		return AccountSyncDataImpl.newInstance(lastContactsSyncDate, lastChatsSyncDate, lastUserIconsSyncDate, schedule);
 	}
 
 	@Nonnull
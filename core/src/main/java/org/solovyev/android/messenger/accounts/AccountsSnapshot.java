@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts;
+
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.*;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Immutable view of all accounts with precomputed collections which are requested often (enabled accounts, their
+ * users, accounts by realm). Snapshot is never changed: any change of accounts produces a new snapshot which is
+ * published by {@link DefaultAccountService} => readers need no synchronization.
+ */
+@Immutable
+final class AccountsSnapshot {
+
+	@Nonnull
+	static final AccountsSnapshot EMPTY = new AccountsSnapshot(new LinkedHashMap<String, Account>());
+
+	// key: account id
+	@Nonnull
+	private final Map<String, Account> accountsById;
+
+	@Nonnull
+	private final List<Account> accounts;
+
+	@Nonnull
+	private final List<Account> enabledAccounts;
+
+	@Nonnull
+	private final List<User> accountUsers;
+
+	@Nonnull
+	private final List<User> enabledAccountUsers;
+
+	// key: realm id
+	@Nonnull
+	private final Map<String, List<Account>> accountsByRealm;
+
+	// map must not be changed after this call
+	private AccountsSnapshot(@Nonnull LinkedHashMap<String, Account> accountsById) {
+		this.accountsById = accountsById;
+
+		final List<Account> enabledAccounts = new ArrayList<Account>(accountsById.size());
+		final List<User> accountUsers = new ArrayList<User>(accountsById.size());
+		final List<User> enabledAccountUsers = new ArrayList<User>(accountsById.size());
+		final Map<String, List<Account>> accountsByRealm = new HashMap<String, List<Account>>();
+		for (Account account : accountsById.values()) {
+			final User user = account.getUser();
+			accountUsers.add(user);
+			if (account.isEnabled()) {
+				enabledAccounts.add(account);
+				enabledAccountUsers.add(user);
+			}
+
+			final String realmId = account.getRealm().getId();
+			List<Account> realmAccounts = accountsByRealm.get(realmId);
+			if (realmAccounts == null) {
+				realmAccounts = new ArrayList<Account>();
+				accountsByRealm.put(realmId, realmAccounts);
+			}
+			realmAccounts.add(account);
+		}
+
+		this.accounts = unmodifiableList(new ArrayList<Account>(accountsById.values()));
+		this.enabledAccounts = unmodifiableList(enabledAccounts);
+		this.accountUsers = unmodifiableList(accountUsers);
+		this.enabledAccountUsers = unmodifiableList(enabledAccountUsers);
+		for (Map.Entry<String, List<Account>> entry : accountsByRealm.entrySet()) {
+			entry.setValue(unmodifiableList(entry.getValue()));
+		}
+		this.accountsByRealm = accountsByRealm;
+	}
+
+	@Nonnull
+	static AccountsSnapshot newAccountsSnapshot(@Nonnull Collection<Account> accounts) {
+		final LinkedHashMap<String, Account> accountsById = new LinkedHashMap<String, Account>();
+		for (Account account : accounts) {
+			accountsById.put(account.getId(), account);
+		}
+		return new AccountsSnapshot(accountsById);
+	}
+
+	/**
+	 * @return new snapshot in which <var>account</var> is added or replaced
+	 */
+	@Nonnull
+	AccountsSnapshot with(@Nonnull Account account) {
+		final LinkedHashMap<String, Account> accountsById = new LinkedHashMap<String, Account>(this.accountsById);
+		accountsById.put(account.getId(), account);
+		return new AccountsSnapshot(accountsById);
+	}
+
+	/**
+	 * @return new snapshot without account with <var>accountId</var>
+	 */
+	@Nonnull
+	AccountsSnapshot without(@Nonnull String accountId) {
+		if (!accountsById.containsKey(accountId)) {
+			return this;
+		}
+
+		final LinkedHashMap<String, Account> accountsById = new LinkedHashMap<String, Account>(this.accountsById);
+		accountsById.remove(accountId);
+		return new AccountsSnapshot(accountsById);
+	}
+
+	/**
+	 * Accounts are mutable (e.g. account user can be changed) => precomputed collections must be recalculated after
+	 * such changes
+	 *
+	 * @return new snapshot for the same accounts
+	 */
+	@Nonnull
+	AccountsSnapshot refresh() {
+		return new AccountsSnapshot(new LinkedHashMap<String, Account>(accountsById));
+	}
+
+	@Nullable
+	Account get(@Nonnull String accountId) {
+		return accountsById.get(accountId);
+	}
+
+	int size() {
+		return accountsById.size();
+	}
+
+	@Nonnull
+	List<Account> getAccounts() {
+		return accounts;
+	}
+
+	@Nonnull
+	List<Account> getEnabledAccounts() {
+		return enabledAccounts;
+	}
+
+	@Nonnull
+	List<User> getAccountUsers() {
+		return accountUsers;
+	}
+
+	@Nonnull
+	List<User> getEnabledAccountUsers() {
+		return enabledAccountUsers;
+	}
+
+	@Nonnull
+	List<Account> getAccountsByRealm(@Nonnull String realmId) {
+		final List<Account> result = accountsByRealm.get(realmId);
+		return result == null ? Collections.<Account>emptyList() : result;
+	}
+}
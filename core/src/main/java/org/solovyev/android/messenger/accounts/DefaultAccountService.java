@@ -23,6 +23,7 @@ import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.CoalescingEventListeners;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.realms.Realm;
 import org.solovyev.android.messenger.realms.RealmService;
@@ -36,25 +37,28 @@ import org.solovyev.android.messenger.users.UserService;
 import org.solovyev.android.properties.AProperty;
 import org.solovyev.common.listeners.AbstractJEventListener;
 import org.solovyev.common.listeners.JEventListener;
-import org.solovyev.common.listeners.JEventListeners;
-import org.solovyev.common.listeners.Listeners;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.collect.Iterables.any;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Lists.newArrayList;
+import static org.solovyev.android.messenger.CoalescingEventListeners.newCoalescingEventListeners;
 import static org.solovyev.android.messenger.accounts.AccountEventType.configuration_changed;
 import static org.solovyev.android.messenger.accounts.AccountState.*;
 
 @Singleton
 public class DefaultAccountService implements AccountService {
 
+	// max time to wait for running synchronization before account is saved/removed
+	private static final long SYNC_TIMEOUT_SECONDS = 30;
+
     /*
 	**********************************************************************
     *
@@ -83,20 +87,23 @@ public class DefaultAccountService implements AccountService {
 	@Nonnull
 	private final Object lock;
 
-	@GuardedBy("accounts")
+	// writers are serialized by accountsLock, readers just read the latest published snapshot
+	@Nonnull
+	private volatile AccountsSnapshot accounts = AccountsSnapshot.EMPTY;
+
 	@Nonnull
-	private final Map<String, Account> accounts = new HashMap<String, Account>();
+	private final Object accountsLock = new Object();
 
 	@Nonnull
 	private AtomicInteger accountCounter = new AtomicInteger(0);
 
 	@Nonnull
-	private final JEventListeners<JEventListener<? extends AccountEvent>, AccountEvent> listeners;
+	private final CoalescingEventListeners<AccountEvent> listeners;
 
 	@Inject
 	public DefaultAccountService(@Nonnull PersistenceLock lock, @Nonnull Executor eventExecutor) {
 		this.lock = lock;
-		this.listeners = Listeners.newEventListenersBuilderFor(AccountEvent.class).withHardReferences().withExecutor(eventExecutor).create();
+		this.listeners = newCoalescingEventListeners(AccountEvent.class, eventExecutor);
 	}
 
 	@Override
@@ -113,19 +120,14 @@ public class DefaultAccountService implements AccountService {
 			// remove all scheduled to remove realms
 			for (Account account : accountDao.loadAccountsInState(removed)) {
 				this.accountDao.deleteById(account.getId());
-				this.accounts.remove(account.getId());
+				synchronized (accountsLock) {
+					this.accounts = this.accounts.without(account.getId());
+				}
 			}
 
 			for (final Realm<? extends AccountConfiguration> realm : realmService.getRealms()) {
 				if (!realm.isEnabled()) {
-					final Iterable<Account> accounts = filter(this.accounts.values(), new Predicate<Account>() {
-						@Override
-						public boolean apply(Account account) {
-							return account.getRealm().equals(realm);
-						}
-					});
-
-					for (Account account : accounts) {
+					for (Account account : this.accounts.getAccountsByRealm(realm.getId())) {
 						changeAccountState(account, disabled_by_app, false);
 					}
 				}
@@ -138,48 +140,26 @@ public class DefaultAccountService implements AccountService {
 	@Nonnull
 	@Override
 	public Collection<Account> getAccounts() {
-		synchronized (this.accounts) {
-			// must copy as concurrent modification might occur (e.g. realm removal)
-			return new ArrayList<Account>(this.accounts.values());
-		}
+		// snapshot is immutable => no copy is needed
+		return this.accounts.getAccounts();
 	}
 
 	@Nonnull
 	@Override
 	public Collection<Account> getEnabledAccounts() {
-		synchronized (this.accounts) {
-			final List<Account> result = new ArrayList<Account>(this.accounts.size());
-			for (Account account : this.accounts.values()) {
-				if (account.isEnabled()) {
-					result.add(account);
-				}
-			}
-			return result;
-		}
+		return this.accounts.getEnabledAccounts();
 	}
 
 	@Nonnull
 	@Override
 	public Collection<User> getEnabledAccountUsers() {
-		final List<User> result = new ArrayList<User>();
-
-		for (Account account : getEnabledAccounts()) {
-			result.add(account.getUser());
-		}
-
-		return result;
+		return this.accounts.getEnabledAccountUsers();
 	}
 
 	@Nonnull
 	@Override
 	public Collection<User> getAccountUsers() {
-		final List<User> result = new ArrayList<User>();
-		synchronized (this.accounts) {
-			for (Account account : this.accounts.values()) {
-				result.add(account.getUser());
-			}
-		}
-		return result;
+		return this.accounts.getAccountUsers();
 	}
 
 	@Nonnull
@@ -195,7 +175,7 @@ public class DefaultAccountService implements AccountService {
 	@Nonnull
 	@Override
 	public <A extends Account> A saveAccount(@Nonnull AccountBuilder<A> accountBuilder) throws InvalidCredentialsException, AccountAlreadyExistsException {
-		syncService.waitWhileSyncFinished();
+		waitWhileSyncFinished();
 
 		A result;
 
@@ -222,8 +202,8 @@ public class DefaultAccountService implements AccountService {
 				}
 				final A newAccount = accountBuilder.build(new AccountBuilder.Data(newAccountId));
 
-				synchronized (accounts) {
-					final boolean alreadyExists = Iterables.any(accounts.values(), new Predicate<Account>() {
+				synchronized (accountsLock) {
+					final boolean alreadyExists = Iterables.any(accounts.getAccounts(), new Predicate<Account>() {
 						@Override
 						public boolean apply(@Nullable Account account) {
 							return account != null && account.getState() != removed && newAccount.same(account);
@@ -271,7 +251,7 @@ public class DefaultAccountService implements AccountService {
 	}
 
 	private void createOrUpdateAccount(@Nullable Account oldAccount, @Nonnull Account newAccount) throws AccountException, InvalidCredentialsException {
-		assert Thread.holdsLock(accounts);
+		assert Thread.holdsLock(accountsLock);
 
 		synchronized (lock) {
 			try {
@@ -281,7 +261,7 @@ public class DefaultAccountService implements AccountService {
 					if (oldUser.equals(newUser)) {
 						accountDao.update(newAccount);
 						userService.saveAccountUser(newAccount.getUser());
-						accounts.put(newAccount.getId(), newAccount);
+						accounts = accounts.with(newAccount);
 						listeners.fireEvent(AccountEventType.changed.newEvent(newAccount, null));
 					} else {
 						throw new InvalidCredentialsException("Account user has been changed: remove account and create new");
@@ -289,7 +269,7 @@ public class DefaultAccountService implements AccountService {
 				} else {
 					accountDao.create(newAccount);
 					userService.saveAccountUser(newAccount.getUser());
-					accounts.put(newAccount.getId(), newAccount);
+					accounts = accounts.with(newAccount);
 					listeners.fireEvent(AccountEventType.created.newEvent(newAccount, null));
 				}
 			} catch (AccountRuntimeException e) {
@@ -310,8 +290,8 @@ public class DefaultAccountService implements AccountService {
 			try {
 				final Account result = account.copyForNewState(newState);
 
-				synchronized (accounts) {
-					this.accounts.put(account.getId(), result);
+				synchronized (accountsLock) {
+					this.accounts = this.accounts.with(result);
 					synchronized (lock) {
 						this.accountDao.update(result);
 					}
@@ -334,8 +314,8 @@ public class DefaultAccountService implements AccountService {
 
 	@Override
 	public void saveAccountSyncData(@Nonnull Account account) {
-		synchronized (accounts) {
-			this.accounts.put(account.getId(), account);
+		synchronized (accountsLock) {
+			this.accounts = this.accounts.with(account);
 			synchronized (lock) {
 				this.accountDao.update(account);
 			}
@@ -344,16 +324,21 @@ public class DefaultAccountService implements AccountService {
 		listeners.fireEvent(AccountEventType.sync_data_changed.newEvent(account, null));
 	}
 
+	private void waitWhileSyncFinished() {
+		try {
+			if (!syncService.waitWhileSyncFinished(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				Log.w(TAG, "Synchronization is not finished in " + SYNC_TIMEOUT_SECONDS + " seconds, continuing");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	@Override
 	public void removeAccount(@Nonnull String accountId) {
-		syncService.waitWhileSyncFinished();
-
-		final Account account;
-
-		synchronized (accounts) {
-			account = this.accounts.get(accountId);
-		}
+		waitWhileSyncFinished();
 
+		final Account account = this.accounts.get(accountId);
 		if (account != null) {
 			changeAccountState(account, removed);
 		}
@@ -361,8 +346,8 @@ public class DefaultAccountService implements AccountService {
 
 	@Override
 	public void removeAllAccounts() {
-		synchronized (accounts) {
-			accounts.clear();
+		synchronized (accountsLock) {
+			accounts = AccountsSnapshot.EMPTY;
 		}
 
 		synchronized (lock) {
@@ -372,26 +357,12 @@ public class DefaultAccountService implements AccountService {
 
 	@Override
 	public boolean isOneAccount() {
-		synchronized (accounts) {
-			return accounts.size() == 1;
-		}
+		return accounts.size() == 1;
 	}
 
 	@Override
 	public boolean isOneAccount(@Nonnull Realm realm) {
-		synchronized (accounts) {
-			int count = 0;
-			for (Account account : accounts.values()) {
-				if (account.getRealm().equals(realm)) {
-					count++;
-					if (count > 1) {
-						return false;
-					}
-				}
-			}
-
-			return true;
-		}
+		return accounts.getAccountsByRealm(realm.getId()).size() <= 1;
 	}
 
 	@Nonnull
@@ -407,13 +378,12 @@ public class DefaultAccountService implements AccountService {
 
 	private void loadAccounts() {
 		final Collection<Account> realmsFromDb = accountDao.readAll();
-		synchronized (accounts) {
+		synchronized (accountsLock) {
 			int maxRealmIndex = 0;
 
-			accounts.clear();
+			accounts = AccountsSnapshot.newAccountsSnapshot(realmsFromDb);
 			for (Account account : realmsFromDb) {
 				final String realmId = account.getId();
-				accounts.put(realmId, account);
 
 				// +1 for '~' symbol between realm and index
 				String realmIndexString = realmId.substring(account.getRealm().getId().length() + 1);
@@ -474,9 +444,18 @@ public class DefaultAccountService implements AccountService {
 			switch (event.getType()) {
 				case changed:
 					final User user = event.getUser();
-					for (Account account : getAccounts()) {
-						if (account.getUser().equals(user)) {
-							account.setUser(user);
+					synchronized (accountsLock) {
+						boolean changed = false;
+						for (Account account : accounts.getAccounts()) {
+							if (account.getUser().equals(user)) {
+								account.setUser(user);
+								changed = true;
+							}
+						}
+
+						if (changed) {
+							// users of accounts are cached in snapshot
+							accounts = accounts.refresh();
 						}
 					}
 					break;
@@ -16,6 +16,8 @@
 
 package org.solovyev.android.messenger.accounts;
 
+import org.solovyev.android.messenger.sync.SyncSchedule;
+
 import javax.annotation.Nonnull;
 
 public interface MutableAccountSyncData extends AccountSyncData {
@@ -29,4 +31,7 @@ public interface MutableAccountSyncData extends AccountSyncData {
 	@Nonnull
 	MutableAccountSyncData updateUserIconsSyncDate();
 
+	@Nonnull
+	MutableAccountSyncData updateSchedule(@Nonnull SyncSchedule schedule);
+
 }
@@ -47,7 +47,7 @@ import com.google.gson.Gson;
 import com.google.inject.Singleton;
 
 import static java.util.Collections.emptyList;
-import static org.solovyev.android.db.AndroidDbUtils.doDbQuery;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbQuery;
 import static org.solovyev.android.messenger.App.getExceptionHandler;
 import static org.solovyev.android.messenger.App.getSecurityService;
 
@@ -185,6 +185,7 @@ public class SqliteAccountDao extends AbstractSQLiteHelper implements AccountDao
 			values.put("last_contacts_sync_date", lastContactsSyncDate == null ? null : dateTimeFormatter.print(lastContactsSyncDate));
 			values.put("last_chats_sync_date", lastChatsSyncDate == null ? null : dateTimeFormatter.print(lastChatsSyncDate));
 			values.put("last_user_icons_sync_date", lastUserIconsSyncDate == null ? null : dateTimeFormatter.print(lastUserIconsSyncDate));
+			values.put("sync_schedule", syncData.getSchedule().toJson());
 
 			return values;
 		}
@@ -36,10 +36,23 @@ public interface AccountConnection {
 	Account getAccount();
 
 	/**
-	 * Method starts listening to remote realm events
+	 * Method starts listening to remote realm events. Method should return as soon as connection is established,
+	 * the only exception is a connection which listens to the events on the calling thread (e.g. long polling): such
+	 * connection returns only after it has been stopped or has failed.
 	 */
 	void start() throws AccountConnectionException;
 
+	/**
+	 * Method checks that started connection is still alive and reconnects if it is not. Method is called by
+	 * {@link ConnectionSupervisor} on a background thread each {@link #getCheckIntervalMillis()} milliseconds.
+	 */
+	void check() throws AccountConnectionException;
+
+	/**
+	 * @return time between two consecutive {@link #check()} calls, 0 if connection doesn't need to be checked
+	 */
+	long getCheckIntervalMillis();
+
 	/**
 	 * Method stops listening to remove realm events
 	 */
@@ -40,4 +40,10 @@ public interface AccountConnections {
 	void restartConnectionForChangedAccount(@Nonnull Account account, boolean internetConnectionExists);
 
 	void updateAccount(@Nonnull Account account);
+
+	/**
+	 * @param account account
+	 * @return true if connection of <var>account</var> is running (and, thus, data is delivered by it)
+	 */
+	boolean isConnected(@Nonnull Account account);
 }
@@ -16,6 +16,10 @@
 
 package org.solovyev.android.messenger.accounts.connection;
 
+import org.solovyev.android.messenger.accounts.Account;
+
+import javax.annotation.Nonnull;
+
 public interface AccountConnectionsService {
 
 	void init();
@@ -24,6 +28,12 @@ public interface AccountConnectionsService {
 
 	void tryStartAll();
 
+	/**
+	 * @param account account
+	 * @return true if connection of <var>account</var> is running
+	 */
+	boolean isConnected(@Nonnull Account account);
+
 	// todo serso: move this method to ACL's NetworkStateService
 	@Deprecated
 	boolean isInternetConnectionExists();
@@ -22,6 +22,7 @@ import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.solovyev.android.messenger.App.newTag;
@@ -48,6 +49,10 @@ public abstract class BaseAccountConnection<A extends Account> implements Accoun
 
 	private final int retryCount;
 
+	// set by supervisor, see requestCheck()
+	@Nullable
+	private volatile Runnable checkRequestListener;
+
 	protected BaseAccountConnection(@Nonnull A account, @Nonnull Context context) {
 		this(account, context, DEFAULT_RETRY_COUNT);
 	}
@@ -105,6 +110,30 @@ public abstract class BaseAccountConnection<A extends Account> implements Accoun
 		stopping.set(true);
 	}
 
+	@Override
+	public void check() throws AccountConnectionException {
+	}
+
+	@Override
+	public long getCheckIntervalMillis() {
+		return 0;
+	}
+
+	void setCheckRequestListener(@Nullable Runnable checkRequestListener) {
+		this.checkRequestListener = checkRequestListener;
+	}
+
+	/**
+	 * Method asks supervisor to call {@link #check()} as soon as possible (e.g. if connection has been closed by
+	 * remote side)
+	 */
+	protected final void requestCheck() {
+		final Runnable listener = checkRequestListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
 	@Override
 	public boolean isInternetConnectionRequired() {
 		return getAccount().getRealm().isInternetConnectionRequired();
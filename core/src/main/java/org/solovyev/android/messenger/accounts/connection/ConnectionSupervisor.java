@@ -0,0 +1,425 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts.connection;
+
+import android.os.SystemClock;
+import android.util.Log;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.solovyev.android.messenger.App.getAccountService;
+import static org.solovyev.android.messenger.App.getExceptionHandler;
+import static org.solovyev.android.messenger.accounts.AccountState.disabled_by_app;
+import static org.solovyev.android.messenger.accounts.connection.DefaultAccountConnections.TAG;
+
+/**
+ * Class drives lifecycle of account connections: starts them, periodically checks them (see
+ * {@link AccountConnection#check()}) and restarts failed connections with exponential backoff. All waiting is done by
+ * one {@link ConnectionTimer} => thread of I/O executor is occupied only while connection is actually doing I/O
+ * (connecting, checking or, in case of long polling, listening).
+ */
+@ThreadSafe
+final class ConnectionSupervisor {
+
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	static final long MIN_RETRY_DELAY_MILLIS = 3000L;
+
+	static final long MAX_RETRY_DELAY_MILLIS = 5L * 60L * 1000L;
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final ConnectionTimer timer;
+
+	@Nonnull
+	private final Executor ioExecutor;
+
+	@GuardedBy("this")
+	@Nonnull
+	private final Map<AccountConnection, Supervised> supervised = new HashMap<AccountConnection, Supervised>();
+
+	ConnectionSupervisor(@Nonnull ConnectionTimer timer, @Nonnull Executor ioExecutor) {
+		this.timer = timer;
+		this.ioExecutor = ioExecutor;
+	}
+
+	@Nonnull
+	static ConnectionTimer newConnectionTimer(@Nonnull final ScheduledExecutorService scheduler) {
+		return new ConnectionTimer() {
+			@Override
+			public long currentTimeMillis() {
+				return SystemClock.elapsedRealtime();
+			}
+
+			@Nonnull
+			@Override
+			public Future<?> schedule(@Nonnull Runnable task, long delayMillis) {
+				return scheduler.schedule(task, delayMillis, MILLISECONDS);
+			}
+		};
+	}
+
+	/**
+	 * Method starts <var>connection</var> on I/O executor. Any pending retry or check of the connection is cancelled.
+	 *
+	 * @param connection connection to be started
+	 */
+	void start(@Nonnull AccountConnection connection) {
+		final StartTask task;
+		synchronized (this) {
+			Supervised s = supervised.get(connection);
+			if (s == null) {
+				s = new Supervised(connection);
+				supervised.put(connection, s);
+				if (connection instanceof BaseAccountConnection) {
+					((BaseAccountConnection) connection).setCheckRequestListener(new CheckRequestListener(connection));
+				}
+			}
+			s.reset(State.connecting);
+			s.failures = 0;
+			task = new StartTask(s, s.generation);
+		}
+		ioExecutor.execute(task);
+	}
+
+	/**
+	 * Method cancels all pending work of <var>connection</var>. Note that connection itself is not stopped by this
+	 * method, {@link AccountConnection#stop()} must be called afterwards.
+	 *
+	 * @param connection connection to be stopped
+	 */
+	synchronized void stop(@Nonnull AccountConnection connection) {
+		final Supervised s = supervised.get(connection);
+		if (s != null) {
+			s.reset(State.stopped);
+		}
+	}
+
+	/**
+	 * Same as {@link #stop(AccountConnection)} but also forgets about <var>connection</var>
+	 *
+	 * @param connection connection to be removed
+	 */
+	void remove(@Nonnull AccountConnection connection) {
+		synchronized (this) {
+			final Supervised s = supervised.remove(connection);
+			if (s != null) {
+				s.reset(State.stopped);
+			}
+		}
+
+		if (connection instanceof BaseAccountConnection) {
+			((BaseAccountConnection) connection).setCheckRequestListener(null);
+		}
+	}
+
+	@Nonnull
+	synchronized State getState(@Nonnull AccountConnection connection) {
+		final Supervised s = supervised.get(connection);
+		return s == null ? State.stopped : s.state;
+	}
+
+	/**
+	 * @param failures number of consecutive failures, > 0
+	 * @return delay before next connection attempt
+	 */
+	static long getRetryDelay(int failures) {
+		final int shift = Math.min(failures - 1, 16);
+		return Math.min(MIN_RETRY_DELAY_MILLIS << shift, MAX_RETRY_DELAY_MILLIS);
+	}
+
+	private void requestCheck(@Nonnull AccountConnection connection) {
+		synchronized (this) {
+			final Supervised s = supervised.get(connection);
+			if (s != null && s.state == State.connected) {
+				s.cancelPending();
+				s.pending = timer.schedule(new CheckTask(s, s.generation), 0);
+			}
+		}
+	}
+
+	private void onStarted(@Nonnull Supervised s, int generation) {
+		synchronized (this) {
+			if (s.generation != generation) {
+				return;
+			}
+
+			if (s.connection.isStopped()) {
+				// either stopped while starting or connection listened to the events until it was stopped
+				s.state = State.stopped;
+			} else {
+				s.state = State.connected;
+				s.failures = 0;
+				scheduleCheck(s);
+			}
+		}
+	}
+
+	@GuardedBy("this")
+	private void scheduleCheck(@Nonnull Supervised s) {
+		final long checkInterval = s.connection.getCheckIntervalMillis();
+		if (checkInterval > 0) {
+			s.pending = timer.schedule(new CheckTask(s, s.generation), checkInterval);
+		}
+	}
+
+	private void onFailed(@Nonnull Supervised s, int generation, long startTime, @Nonnull AccountConnectionException e) {
+		final AccountConnection connection = s.connection;
+
+		boolean maxAttemptsReached = false;
+		synchronized (this) {
+			if (s.generation != generation) {
+				return;
+			}
+
+			if (timer.currentTimeMillis() - startTime >= MAX_RETRY_DELAY_MILLIS) {
+				// connection was working long enough => previous failures are not relevant any more
+				s.failures = 0;
+			}
+			s.failures++;
+			Log.w(TAG, "Account connection error occurred, failures: " + s.failures, e);
+
+			if (connection.isStopped()) {
+				s.state = State.stopped;
+			} else if (s.failures > connection.getRetryCount()) {
+				s.reset(State.stopped);
+				maxAttemptsReached = true;
+			} else {
+				s.state = State.waiting_for_retry;
+				s.pending = timer.schedule(new RetryTask(s, generation), getRetryDelay(s.failures));
+			}
+		}
+
+		if (maxAttemptsReached) {
+			onMaxAttemptsReached(connection, e);
+		}
+	}
+
+	private static void onMaxAttemptsReached(@Nonnull AccountConnection connection, @Nonnull AccountConnectionException lastError) {
+		Log.d(TAG, "Max retry count reached => stopping...");
+
+		if (!connection.isStopped()) {
+			connection.stop();
+			getExceptionHandler().handleException(lastError);
+			getAccountService().changeAccountState(connection.getAccount(), disabled_by_app);
+		}
+	}
+
+	@Nonnull
+	private static AccountConnectionException toConnectionException(@Nonnull AccountConnection connection, @Nonnull Throwable e) {
+		if (e instanceof AccountConnectionException) {
+			return (AccountConnectionException) e;
+		} else {
+			return new AccountConnectionException(connection.getAccount().getId(), e);
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	static enum State {
+		stopped,
+		connecting,
+		connected,
+		checking,
+		waiting_for_retry
+	}
+
+	private static final class Supervised {
+
+		@Nonnull
+		private final AccountConnection connection;
+
+		@Nonnull
+		private State state = State.stopped;
+
+		// incremented on each start/stop => tasks scheduled before can detect that they are outdated
+		private int generation;
+
+		private int failures;
+
+		@Nullable
+		private Future<?> pending;
+
+		private Supervised(@Nonnull AccountConnection connection) {
+			this.connection = connection;
+		}
+
+		private void reset(@Nonnull State state) {
+			cancelPending();
+			this.generation++;
+			this.state = state;
+		}
+
+		private void cancelPending() {
+			if (pending != null) {
+				pending.cancel(false);
+				pending = null;
+			}
+		}
+	}
+
+	private final class StartTask implements Runnable {
+
+		@Nonnull
+		private final Supervised s;
+
+		private final int generation;
+
+		private StartTask(@Nonnull Supervised s, int generation) {
+			this.s = s;
+			this.generation = generation;
+		}
+
+		@Override
+		public void run() {
+			final AccountConnection connection = s.connection;
+			if (!connection.getAccount().isEnabled()) {
+				synchronized (ConnectionSupervisor.this) {
+					if (s.generation == generation) {
+						s.state = State.stopped;
+					}
+				}
+				return;
+			}
+
+			final long startTime = timer.currentTimeMillis();
+			try {
+				Log.d(TAG, "Account is enabled => starting connection...");
+				connection.start();
+				onStarted(s, generation);
+			} catch (Throwable e) {
+				onFailed(s, generation, startTime, toConnectionException(connection, e));
+			}
+		}
+	}
+
+	private final class RetryTask implements Runnable {
+
+		@Nonnull
+		private final Supervised s;
+
+		private final int generation;
+
+		private RetryTask(@Nonnull Supervised s, int generation) {
+			this.s = s;
+			this.generation = generation;
+		}
+
+		@Override
+		public void run() {
+			synchronized (ConnectionSupervisor.this) {
+				if (s.generation != generation || s.state != State.waiting_for_retry) {
+					return;
+				}
+				s.pending = null;
+				s.state = State.connecting;
+			}
+			ioExecutor.execute(new StartTask(s, generation));
+		}
+	}
+
+	private final class CheckTask implements Runnable {
+
+		@Nonnull
+		private final Supervised s;
+
+		private final int generation;
+
+		private CheckTask(@Nonnull Supervised s, int generation) {
+			this.s = s;
+			this.generation = generation;
+		}
+
+		@Override
+		public void run() {
+			synchronized (ConnectionSupervisor.this) {
+				if (s.generation != generation || s.state != State.connected) {
+					return;
+				}
+				s.pending = null;
+				s.state = State.checking;
+			}
+
+			ioExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					final long startTime = timer.currentTimeMillis();
+					try {
+						s.connection.check();
+						onChecked();
+					} catch (Throwable e) {
+						onFailed(s, generation, startTime, toConnectionException(s.connection, e));
+					}
+				}
+			});
+		}
+
+		private void onChecked() {
+			synchronized (ConnectionSupervisor.this) {
+				if (s.generation == generation) {
+					s.state = State.connected;
+					s.failures = 0;
+					scheduleCheck(s);
+				}
+			}
+		}
+	}
+
+	private final class CheckRequestListener implements Runnable {
+
+		@Nonnull
+		private final AccountConnection connection;
+
+		private CheckRequestListener(@Nonnull AccountConnection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public void run() {
+			requestCheck(connection);
+		}
+	}
+}
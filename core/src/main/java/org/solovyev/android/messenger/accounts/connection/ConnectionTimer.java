@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts.connection;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.Future;
+
+/**
+ * Source of time and delayed execution for {@link ConnectionSupervisor}. Real implementation is backed by
+ * {@link java.util.concurrent.ScheduledExecutorService}, tests use fake one in order to control time.
+ */
+interface ConnectionTimer {
+
+	/**
+	 * @return current time in milliseconds, time must be monotonic
+	 */
+	long currentTimeMillis();
+
+	/**
+	 * Method schedules <var>task</var> to be run after <var>delayMillis</var>. Task must be short: it is run on the
+	 * timer's thread.
+	 *
+	 * @param task        task to be run
+	 * @param delayMillis delay in milliseconds
+	 * @return future which can be used to cancel the task
+	 */
+	@Nonnull
+	Future<?> schedule(@Nonnull Runnable task, long delayMillis);
+}
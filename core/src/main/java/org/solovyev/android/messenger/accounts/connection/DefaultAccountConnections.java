@@ -17,12 +17,8 @@
 package org.solovyev.android.messenger.accounts.connection;
 
 import android.content.Context;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import org.solovyev.android.PredicateSpy;
-import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.Background;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.sync.SyncAllTaskIsAlreadyRunning;
@@ -31,21 +27,26 @@ import org.solovyev.android.messenger.sync.SyncTask;
 import org.solovyev.android.messenger.sync.TaskIsAlreadyRunningException;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.google.common.collect.Iterables.find;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static org.solovyev.android.messenger.App.getSyncService;
 import static org.solovyev.android.messenger.App.newTag;
+import static org.solovyev.android.messenger.accounts.connection.ConnectionSupervisor.newConnectionTimer;
 
+/**
+ * Registry of account connections. Connections are indexed by account id, start/stop/remove of a connection is
+ * guarded by the lock of its account only => operations on different accounts don't block each other.
+ */
 @Singleton
 public final class DefaultAccountConnections implements AccountConnections {
 
@@ -77,19 +78,35 @@ public final class DefaultAccountConnections implements AccountConnections {
 	@Nonnull
 	private Background background;
 
-	@GuardedBy("connections")
+	// key: account id
 	@Nonnull
-	private final Set<AccountConnection> connections = new HashSet<AccountConnection>();
+	private final ConcurrentMap<String, Entry> connections = new ConcurrentHashMap<String, Entry>();
 
 	@Nonnull
 	private final AtomicInteger threadCounter = new AtomicInteger(0);
 
+	// the only thread which is alive while connections are idle: schedules checks/retries of connections and post start work
 	@Nonnull
-	private final ScheduledExecutorService postStartExecutor = newSingleThreadScheduledExecutor();
+	private final ScheduledExecutorService scheduler = newSingleThreadScheduledExecutor(new SchedulerThreadFactory());
 
+	// threads are created only for connection I/O and are terminated after being idle
 	@Nonnull
 	private Executor executor = newCachedThreadPool(new ConnectionThreadFactory());
 
+	@Nonnull
+	private ConnectionSupervisor supervisor = new ConnectionSupervisor(newConnectionTimer(scheduler), executor);
+
+	// accounts started since the last post start sync, key: account id
+	@GuardedBy("postStartLock")
+	@Nonnull
+	private final Map<String, Account> postStartAccounts = new HashMap<String, Account>();
+
+	@GuardedBy("postStartLock")
+	private boolean postStartScheduled = false;
+
+	@Nonnull
+	private final Object postStartLock = new Object();
+
 	@Inject
 	public DefaultAccountConnections(@Nonnull Context context) {
 		this.context = context.getApplicationContext();
@@ -97,6 +114,7 @@ public final class DefaultAccountConnections implements AccountConnections {
 
 	void setExecutor(@Nonnull Executor executor) {
 		this.executor = executor;
+		this.supervisor = new ConnectionSupervisor(newConnectionTimer(scheduler), executor);
 	}
 
 	void setBackground(@Nonnull Background background) {
@@ -107,96 +125,68 @@ public final class DefaultAccountConnections implements AccountConnections {
 	public void startConnectionsFor(@Nonnull Collection<Account> accounts, boolean internetConnectionExists) {
 		final Collection<Account> startedAccounts = new ArrayList<Account>(accounts.size());
 
-		synchronized (connections) {
-			for (final Account account : accounts) {
-				// are there any connections for current account?
-				AccountConnection connection = find(connections, new ConnectionFinder(account), null);
-
-				if (connection == null) {
-					// there is no connection for current account => need to add
-					connection = account.newConnection(context);
-					connections.add(connection);
+		for (final Account account : accounts) {
+			// are there any connections for current account?
+			Entry entry = connections.get(account.getId());
+			if (entry == null) {
+				// there is no connection for current account => need to add
+				final Entry newEntry = new Entry(account.newConnection(context));
+				entry = connections.putIfAbsent(account.getId(), newEntry);
+				if (entry == null) {
+					entry = newEntry;
 				}
+			}
 
-				if (connection.isStopped()) {
-					if (internetConnectionExists || !connection.isInternetConnectionRequired()) {
-						startConnection(connection);
-						startedAccounts.add(account);
-					}
-				}
+			if (entry.tryStart(internetConnectionExists)) {
+				startedAccounts.add(account);
 			}
 		}
 
 		onConnectionsStarted(startedAccounts);
 	}
 
-	private void startConnection(@Nonnull final AccountConnection connection) {
-		executor.execute(new ConnectionRunnable(connection));
-	}
-
 	private void onConnectionsStarted(@Nonnull final Collection<Account> startedAccounts) {
-		postStartExecutor.schedule(new Runnable() {
-			@Override
-			public void run() {
-				final SyncService syncService = getSyncService();
-
-				try {
-					App.getSyncService().sync(SyncTask.user_contacts_statuses, null);
-				} catch (TaskIsAlreadyRunningException e) {
-					// don't care
-				}
-
-				try {
-					App.getSyncService().sync(SyncTask.chat_messages, null);
-				} catch (TaskIsAlreadyRunningException e) {
-					// don't care
-				}
+		if (startedAccounts.isEmpty()) {
+			return;
+		}
 
-				for (Account startedAccount : startedAccounts) {
-					try {
-						syncService.syncAllForAccount(startedAccount, false);
-					} catch (SyncAllTaskIsAlreadyRunning syncAllTaskIsAlreadyRunning) {
-						// don't care
-					}
-				}
+		synchronized (postStartLock) {
+			for (Account startedAccount : startedAccounts) {
+				postStartAccounts.put(startedAccount.getId(), startedAccount);
+			}
 
+			if (postStartScheduled) {
+				// accounts will be synced by already scheduled job
+				return;
 			}
-		}, POST_START_DELAY, TimeUnit.SECONDS);
+			postStartScheduled = true;
+		}
+
+		scheduler.schedule(new PostStartRunnable(), POST_START_DELAY, TimeUnit.SECONDS);
 	}
 
 	@Override
 	public void tryStopAll() {
-		final List<AccountConnection> toBeStopped = new ArrayList<AccountConnection>();
-
-		synchronized (this.connections) {
-			for (AccountConnection connection : connections) {
-				toBeStopped.add(connection);
-			}
-		}
-
-		stopConnections(toBeStopped);
+		stopConnections(new ArrayList<Entry>(connections.values()));
 	}
 
 	@Override
 	public boolean onNoInternetConnection() {
 		boolean stopped = false;
 
-		final List<AccountConnection> toBeStopped = new ArrayList<AccountConnection>();
-
-		synchronized (this.connections) {
-			for (AccountConnection connection : connections) {
-				if (connection.isInternetConnectionRequired()) {
-					stopped = true;
-					toBeStopped.add(connection);
-				}
+		final List<Entry> toBeStopped = new ArrayList<Entry>();
+		for (Entry entry : connections.values()) {
+			if (entry.connection.isInternetConnectionRequired()) {
+				stopped = true;
+				toBeStopped.add(entry);
 			}
 		}
 
-		for (AccountConnection connection : toBeStopped) {
-			connection.stopDelayed();
+		for (Entry entry : toBeStopped) {
+			entry.connection.stopDelayed();
 		}
 
-		background.getHighPriorityExecutor().execute(new Runnable() {
+		background.execute(Background.Lane.interactive, new Runnable() {
 			@Override
 			public void run() {
 				stopConnections(toBeStopped);
@@ -208,31 +198,19 @@ public final class DefaultAccountConnections implements AccountConnections {
 
 	@Override
 	public void tryStopFor(@Nonnull Account account) {
-		final List<AccountConnection> toBeStopped = new ArrayList<AccountConnection>();
-
-		synchronized (this.connections) {
-			for (AccountConnection connection : this.connections) {
-				if (account.equals(connection.getAccount())) {
-					toBeStopped.add(connection);
-				}
-			}
+		final Entry entry = connections.get(account.getId());
+		if (entry != null) {
+			entry.stop();
 		}
-
-		stopConnections(toBeStopped);
 	}
 
 	@Override
 	public void tryStartAll(boolean internetConnectionExists) {
-		final Collection<Account> startedAccounts = new ArrayList<Account>(connections.size());
-
-		synchronized (this.connections) {
-			for (AccountConnection connection : connections) {
-				if (connection.isStopped()) {
-					if (!connection.isInternetConnectionRequired() || internetConnectionExists) {
-						startConnection(connection);
-						startedAccounts.add(connection.getAccount());
-					}
-				}
+		final Collection<Account> startedAccounts = new ArrayList<Account>();
+
+		for (Entry entry : connections.values()) {
+			if (entry.tryStart(internetConnectionExists)) {
+				startedAccounts.add(entry.connection.getAccount());
 			}
 		}
 
@@ -241,55 +219,124 @@ public final class DefaultAccountConnections implements AccountConnections {
 
 	@Override
 	public void removeConnectionFor(@Nonnull Account account) {
-		final List<AccountConnection> removedConnections = new ArrayList<AccountConnection>();
-
-		synchronized (this.connections) {
-			// remove account connections belonged to specified realm
-			Iterables.removeIf(this.connections, PredicateSpy.spyOn(new ConnectionFinder(account), removedConnections));
+		final Entry entry = connections.remove(account.getId());
+		if (entry != null) {
+			entry.remove();
 		}
-
-		stopConnections(removedConnections);
 	}
 
-	private void stopConnections(@Nonnull List<AccountConnection> connections) {
-		assert !Thread.holdsLock(this.connections);
-
-		for (AccountConnection connection : connections) {
-			connection.stop();
+	private static void stopConnections(@Nonnull List<Entry> entries) {
+		for (Entry entry : entries) {
+			entry.stop();
 		}
 	}
 
 	@Override
 	public void restartConnectionForChangedAccount(@Nonnull Account account, boolean internetConnectionExists) {
 		removeConnectionFor(account);
+		startConnectionsFor(Arrays.asList(account), internetConnectionExists);
+	}
 
-		synchronized (this.connections) {
-			startConnectionsFor(Arrays.asList(account), internetConnectionExists);
+	@Override
+	public void updateAccount(@Nonnull Account account) {
+		final Entry entry = connections.get(account.getId());
+		if (entry != null && entry.connection instanceof BaseAccountConnection) {
+			((BaseAccountConnection) entry.connection).setAccount(account);
 		}
 	}
 
 	@Override
-	public void updateAccount(@Nonnull Account account) {
-		synchronized (this.connections) {
-			final AccountConnection connection = find(this.connections, new ConnectionFinder(account), null);
-			if (connection instanceof BaseAccountConnection) {
-				((BaseAccountConnection) connection).setAccount(account);
+	public boolean isConnected(@Nonnull Account account) {
+		final Entry entry = connections.get(account.getId());
+		return entry != null && !entry.connection.isStopped();
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	/**
+	 * Connection of one account. Object itself is used as a lock for state transitions of the connection.
+	 */
+	private final class Entry {
+
+		@Nonnull
+		private final AccountConnection connection;
+
+		// connection was removed from registry and must not be started any more
+		@GuardedBy("this")
+		private boolean removed = false;
+
+		private Entry(@Nonnull AccountConnection connection) {
+			this.connection = connection;
+		}
+
+		private synchronized boolean tryStart(boolean internetConnectionExists) {
+			if (!removed && connection.isStopped()) {
+				if (internetConnectionExists || !connection.isInternetConnectionRequired()) {
+					supervisor.start(connection);
+					return true;
+				}
 			}
+			return false;
+		}
+
+		private synchronized void stop() {
+			supervisor.stop(connection);
+			connection.stop();
+		}
+
+		private synchronized void remove() {
+			removed = true;
+			supervisor.remove(connection);
+			connection.stop();
 		}
 	}
 
-	private static class ConnectionFinder implements Predicate<AccountConnection> {
+	private final class PostStartRunnable implements Runnable {
+		@Override
+		public void run() {
+			final Collection<Account> startedAccounts;
+			synchronized (postStartLock) {
+				startedAccounts = new ArrayList<Account>(postStartAccounts.values());
+				postStartAccounts.clear();
+				postStartScheduled = false;
+			}
 
-		@Nonnull
-		private final Account account;
+			final SyncService syncService = getSyncService();
+
+			try {
+				syncService.sync(SyncTask.user_contacts_statuses, null);
+			} catch (TaskIsAlreadyRunningException e) {
+				// don't care
+			}
 
-		public ConnectionFinder(@Nonnull Account account) {
-			this.account = account;
+			try {
+				syncService.sync(SyncTask.chat_messages, null);
+			} catch (TaskIsAlreadyRunningException e) {
+				// don't care
+			}
+
+			for (Account startedAccount : startedAccounts) {
+				try {
+					syncService.syncAllForAccount(startedAccount, false);
+				} catch (SyncAllTaskIsAlreadyRunning syncAllTaskIsAlreadyRunning) {
+					// don't care
+				}
+			}
 		}
+	}
+
+	private static class SchedulerThreadFactory implements ThreadFactory {
 
+		@Nonnull
 		@Override
-		public boolean apply(@Nullable AccountConnection connection) {
-			return connection != null && connection.getAccount().equals(account);
+		public Thread newThread(@Nonnull Runnable r) {
+			return new Thread(r, "Account connections scheduler");
 		}
 	}
 
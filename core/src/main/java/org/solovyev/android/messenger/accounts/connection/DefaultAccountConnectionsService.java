@@ -94,6 +94,11 @@ public class DefaultAccountConnectionsService implements AccountConnectionsServi
 		accountConnections.tryStartAll(isInternetConnectionExists());
 	}
 
+	@Override
+	public boolean isConnected(@Nonnull Account account) {
+		return accountConnections.isConnected(account);
+	}
+
 	void tryStartConnectionsFor(@Nonnull Collection<Account> accounts) {
 		accountConnections.startConnectionsFor(accounts, isInternetConnectionExists());
 	}
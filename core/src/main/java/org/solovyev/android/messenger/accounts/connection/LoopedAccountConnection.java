@@ -22,11 +22,12 @@ import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import java.util.concurrent.TimeUnit;
 
-import static java.lang.Thread.currentThread;
-
+/**
+ * Connection which should be periodically checked and reconnected if it has been lost. Checks are scheduled by
+ * {@link ConnectionSupervisor} => no thread is occupied by connection between two checks.
+ */
 public abstract class LoopedAccountConnection<A extends Account> extends BaseAccountConnection<A> {
 
 	private static final long DEFAULT_WAIT_MILLIS = 30L * 60L * 1000L;
@@ -34,9 +35,6 @@ public abstract class LoopedAccountConnection<A extends Account> extends BaseAcc
 
 	private final long waitMillis;
 
-	@Nullable
-	private volatile Thread thread;
-
 	protected LoopedAccountConnection(@Nonnull A account, @Nonnull Context context) {
 		this(account, context, DEFAULT_WAIT_MILLIS);
 	}
@@ -55,37 +53,32 @@ public abstract class LoopedAccountConnection<A extends Account> extends BaseAcc
 
 	@Override
 	protected final void start0() throws AccountConnectionException {
-		thread = currentThread();
+		reconnectIfDisconnected();
+	}
 
-		// Try to create connection (if not exists)
-		while (!isStopped()) {
+	@Override
+	public final void check() throws AccountConnectionException {
+		if (!isStopped()) {
 			Log.d(TAG, "Connection is not stopped trying to reconnect");
-
 			reconnectIfDisconnected();
-			try {
-				Thread.sleep(waitMillis);
-			} catch (InterruptedException e) {
-			}
 		}
+	}
 
-		thread = null;
+	@Override
+	public final long getCheckIntervalMillis() {
+		return waitMillis;
 	}
 
+	/**
+	 * Method requests immediate connection check (instead of waiting for the next scheduled one)
+	 */
 	public void continueLoop() {
-		final Thread localThread = thread;
-		if (localThread != null) {
-			localThread.interrupt();
-		}
+		requestCheck();
 	}
 
 	@Override
 	protected final void stop0() {
-		try {
-			disconnect();
-		} finally {
-			// finish loop
-			continueLoop();
-		}
+		disconnect();
 	}
 
 	protected abstract void disconnect();
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.cache;
+
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Working set of the application (recent chats with last messages and participants, unread messages counters)
+ * which is stored on disk and is used to fill in-memory caches on application start
+ */
+@Immutable
+final class CacheSnapshot {
+
+	// generation of the persisted data for which snapshot was done, see {@link CacheSnapshotService}
+	private final int generation;
+
+	// ids of accounts which were enabled when snapshot was done
+	@Nonnull
+	private final Set<String> accountIds;
+
+	@Nonnull
+	private final List<User> users;
+
+	@Nonnull
+	private final List<ChatEntry> chats;
+
+	@Nonnull
+	private final Map<Entity, Integer> unreadChats;
+
+	CacheSnapshot(int generation,
+				  @Nonnull Set<String> accountIds,
+				  @Nonnull List<User> users,
+				  @Nonnull List<ChatEntry> chats,
+				  @Nonnull Map<Entity, Integer> unreadChats) {
+		this.generation = generation;
+		this.accountIds = unmodifiableSet(accountIds);
+		this.users = unmodifiableList(users);
+		this.chats = unmodifiableList(chats);
+		this.unreadChats = unmodifiableMap(unreadChats);
+	}
+
+	int getGeneration() {
+		return generation;
+	}
+
+	@Nonnull
+	Set<String> getAccountIds() {
+		return accountIds;
+	}
+
+	@Nonnull
+	List<User> getUsers() {
+		return users;
+	}
+
+	@Nonnull
+	List<ChatEntry> getChats() {
+		return chats;
+	}
+
+	@Nonnull
+	Map<Entity, Integer> getUnreadChats() {
+		return unreadChats;
+	}
+
+	@Immutable
+	static final class ChatEntry {
+
+		@Nonnull
+		private final Chat chat;
+
+		@Nullable
+		private final Message lastMessage;
+
+		@Nonnull
+		private final List<Entity> participants;
+
+		ChatEntry(@Nonnull Chat chat, @Nullable Message lastMessage, @Nonnull List<Entity> participants) {
+			this.chat = chat;
+			this.lastMessage = lastMessage;
+			this.participants = unmodifiableList(participants);
+		}
+
+		@Nonnull
+		Chat getChat() {
+			return chat;
+		}
+
+		@Nullable
+		Message getLastMessage() {
+			return lastMessage;
+		}
+
+		@Nonnull
+		List<Entity> getParticipants() {
+			return participants;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.cache;
+
+import org.joda.time.DateTime;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageState;
+import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.solovyev.android.messenger.chats.Chats.newChat;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+import static org.solovyev.android.messenger.users.Users.newUser;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+/**
+ * Compact binary format of {@link CacheSnapshot}. Entities are written as separate fields, properties as list of
+ * name-value pairs, dates as milliseconds.
+ */
+final class CacheSnapshotFormat {
+
+	private static final int MAGIC = 0x4D505043;
+
+	// must be incremented every time format is changed
+	private static final int VERSION = 1;
+
+	private static final long NO_DATE = Long.MIN_VALUE;
+
+	private CacheSnapshotFormat() {
+		throw new AssertionError();
+	}
+
+	static void write(@Nonnull CacheSnapshot snapshot, @Nonnull DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(snapshot.getGeneration());
+
+		final Set<String> accountIds = snapshot.getAccountIds();
+		out.writeInt(accountIds.size());
+		for (String accountId : accountIds) {
+			writeString(out, accountId);
+		}
+
+		final List<User> users = snapshot.getUsers();
+		out.writeInt(users.size());
+		for (User user : users) {
+			writeEntity(out, user.getEntity());
+			writeProperties(out, user.getPropertiesCollection());
+		}
+
+		final List<CacheSnapshot.ChatEntry> chats = snapshot.getChats();
+		out.writeInt(chats.size());
+		for (CacheSnapshot.ChatEntry entry : chats) {
+			final Chat chat = entry.getChat();
+			writeEntity(out, chat.getEntity());
+			writeProperties(out, chat.getPropertiesCollection());
+			writeDate(out, chat.getLastMessagesSyncDate());
+
+			final Message lastMessage = entry.getLastMessage();
+			out.writeBoolean(lastMessage != null);
+			if (lastMessage != null) {
+				writeMessage(out, lastMessage);
+			}
+
+			final List<Entity> participants = entry.getParticipants();
+			out.writeInt(participants.size());
+			for (Entity participant : participants) {
+				writeEntity(out, participant);
+			}
+		}
+
+		final Map<Entity, Integer> unreadChats = snapshot.getUnreadChats();
+		out.writeInt(unreadChats.size());
+		for (Map.Entry<Entity, Integer> entry : unreadChats.entrySet()) {
+			writeEntity(out, entry.getKey());
+			out.writeInt(entry.getValue());
+		}
+	}
+
+	/**
+	 * @param in input stream
+	 * @return snapshot read from <var>in</var>, null if snapshot was written in another format
+	 * @throws IOException if snapshot can't be read
+	 */
+	@Nullable
+	static CacheSnapshot read(@Nonnull DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			return null;
+		}
+
+		final int generation = in.readInt();
+
+		final int accountsCount = in.readInt();
+		final Set<String> accountIds = new HashSet<String>(accountsCount);
+		for (int i = 0; i < accountsCount; i++) {
+			accountIds.add(readString(in));
+		}
+
+		final int usersCount = in.readInt();
+		final List<User> users = new ArrayList<User>(usersCount);
+		for (int i = 0; i < usersCount; i++) {
+			final Entity entity = readEntity(in);
+			users.add(newUser(entity, readProperties(in)));
+		}
+
+		final int chatsCount = in.readInt();
+		final List<CacheSnapshot.ChatEntry> chats = new ArrayList<CacheSnapshot.ChatEntry>(chatsCount);
+		for (int i = 0; i < chatsCount; i++) {
+			final Entity entity = readEntity(in);
+			final List<AProperty> properties = readProperties(in);
+			final Chat chat = newChat(entity, properties, readDate(in));
+
+			final Message lastMessage = in.readBoolean() ? readMessage(in) : null;
+
+			final int participantsCount = in.readInt();
+			final List<Entity> participants = new ArrayList<Entity>(participantsCount);
+			for (int j = 0; j < participantsCount; j++) {
+				participants.add(readEntity(in));
+			}
+
+			chats.add(new CacheSnapshot.ChatEntry(chat, lastMessage, participants));
+		}
+
+		final int unreadChatsCount = in.readInt();
+		final Map<Entity, Integer> unreadChats = new HashMap<Entity, Integer>(unreadChatsCount);
+		for (int i = 0; i < unreadChatsCount; i++) {
+			final Entity chat = readEntity(in);
+			unreadChats.put(chat, in.readInt());
+		}
+
+		return new CacheSnapshot(generation, accountIds, users, chats, unreadChats);
+	}
+
+	private static void writeMessage(@Nonnull DataOutputStream out, @Nonnull Message message) throws IOException {
+		writeEntity(out, message.getEntity());
+		writeEntity(out, message.getChat());
+		writeEntity(out, message.getAuthor());
+
+		final Entity recipient = message.getRecipient();
+		out.writeBoolean(recipient != null);
+		if (recipient != null) {
+			writeEntity(out, recipient);
+		}
+
+		writeString(out, message.getState().name());
+		writeDate(out, message.getSendDate());
+		writeString(out, message.getTitle());
+		writeString(out, message.getBody());
+		out.writeBoolean(message.isRead());
+		writeProperties(out, message.getProperties().getPropertiesCollection());
+	}
+
+	@Nonnull
+	private static Message readMessage(@Nonnull DataInputStream in) throws IOException {
+		final MutableMessage message = newMessage(readEntity(in));
+		message.setChat(readEntity(in));
+		message.setAuthor(readEntity(in));
+		if (in.readBoolean()) {
+			message.setRecipient(readEntity(in));
+		}
+		message.setState(MessageState.valueOf(readString(in)));
+		final DateTime sendDate = readDate(in);
+		if (sendDate == null) {
+			throw new IOException("Message must have send date");
+		}
+		message.setSendDate(sendDate);
+		message.setTitle(readString(in));
+		message.setBody(readString(in));
+		message.setRead(in.readBoolean());
+		message.setProperties(readProperties(in));
+		return message;
+	}
+
+	private static void writeEntity(@Nonnull DataOutputStream out, @Nonnull Entity entity) throws IOException {
+		writeString(out, entity.getAccountId());
+		writeString(out, entity.getAccountEntityId());
+		writeString(out, entity.getEntityId());
+	}
+
+	@Nonnull
+	private static Entity readEntity(@Nonnull DataInputStream in) throws IOException {
+		final String accountId = readString(in);
+		final String accountEntityId = readString(in);
+		final String entityId = readString(in);
+		return newEntity(accountId, accountEntityId, entityId);
+	}
+
+	private static void writeProperties(@Nonnull DataOutputStream out, @Nonnull Collection<AProperty> properties) throws IOException {
+		out.writeInt(properties.size());
+		for (AProperty property : properties) {
+			writeString(out, property.getName());
+			writeNullableString(out, property.getValue());
+		}
+	}
+
+	@Nonnull
+	private static List<AProperty> readProperties(@Nonnull DataInputStream in) throws IOException {
+		final int count = in.readInt();
+		final List<AProperty> properties = new ArrayList<AProperty>(count);
+		for (int i = 0; i < count; i++) {
+			final String name = readString(in);
+			properties.add(newProperty(name, readNullableString(in)));
+		}
+		return properties;
+	}
+
+	private static void writeDate(@Nonnull DataOutputStream out, @Nullable DateTime date) throws IOException {
+		out.writeLong(date != null ? date.getMillis() : NO_DATE);
+	}
+
+	@Nullable
+	private static DateTime readDate(@Nonnull DataInputStream in) throws IOException {
+		final long millis = in.readLong();
+		return millis != NO_DATE ? new DateTime(millis) : null;
+	}
+
+	private static void writeNullableString(@Nonnull DataOutputStream out, @Nullable String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			writeString(out, s);
+		}
+	}
+
+	@Nullable
+	private static String readNullableString(@Nonnull DataInputStream in) throws IOException {
+		return in.readBoolean() ? readString(in) : null;
+	}
+
+	// NOTE: DataOutputStream#writeUTF can't be used as it is limited to 64Kb
+	private static void writeString(@Nonnull DataOutputStream out, @Nonnull String s) throws IOException {
+		final byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	@Nonnull
+	private static String readString(@Nonnull DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Negative string length: " + length);
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
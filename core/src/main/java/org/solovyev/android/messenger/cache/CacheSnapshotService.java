@@ -0,0 +1,354 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.cache;
+
+import android.app.Application;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.solovyev.android.db.DbWriteListener;
+import org.solovyev.android.db.MeasuredDbUtils;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.Background;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.accounts.AccountService;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.UnreadMessagesCounter;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserService;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.util.*;
+
+import static android.os.SystemClock.elapsedRealtime;
+import static org.solovyev.android.messenger.App.getPreferences;
+import static org.solovyev.android.messenger.App.newTag;
+import static org.solovyev.android.messenger.MessengerPreferences.Cache.snapshot;
+import static org.solovyev.android.messenger.MessengerPreferences.Cache.snapshotGeneration;
+
+/**
+ * Service stores the working set of the hot caches (recent chats with last messages and participants, unread messages
+ * counters) to the disk and restores it on the next application start. Snapshot is valid only if persisted data has
+ * not been changed since snapshot was written: first write to the database after the snapshot increments generation
+ * counter stored in preferences (before the write is done, see {@link DbWriteListener}) and snapshot is accepted only
+ * for the same generation.
+ */
+@Singleton
+@ThreadSafe
+public final class CacheSnapshotService {
+
+	@Nonnull
+	private static final String TAG = newTag("CacheSnapshot");
+
+	@Nonnull
+	private static final String TAG_TIME = App.newSubTag(App.TAG_TIME, "CacheSnapshot");
+
+	@Nonnull
+	private static final String FILE_NAME = "cache_snapshot";
+
+	// max number of chats stored in snapshot, should be enough for the first screen of chats
+	private static final int MAX_CHATS = 30;
+
+	/*
+	**********************************************************************
+	*
+	*                           AUTO INJECTED FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Inject
+	@Nonnull
+	private Application application;
+
+	@Inject
+	@Nonnull
+	private AccountService accountService;
+
+	@Inject
+	@Nonnull
+	private UserService userService;
+
+	@Inject
+	@Nonnull
+	private ChatService chatService;
+
+	@Inject
+	@Nonnull
+	private UnreadMessagesCounter unreadMessagesCounter;
+
+	@Inject
+	@Nonnull
+	private Background background;
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	// true if persisted data has been changed since the last snapshot was written/read (=> generation stored in
+	// preferences doesn't match the snapshot on disk)
+	@GuardedBy("generationLock")
+	private volatile boolean changed = true;
+
+	@Nonnull
+	private final Object fileLock = new Object();
+
+	// never held while services are called: it is taken by writing threads which might hold locks of the services
+	@Nonnull
+	private final Object generationLock = new Object();
+
+	@Nullable
+	private volatile Map<Entity, Integer> unreadChats;
+
+	public CacheSnapshotService() {
+	}
+
+	/**
+	 * Method loads snapshot (if any) and fills user and chat caches with it. Must be called after all services are
+	 * initialized but before any UI is shown.
+	 */
+	public void init() {
+		if (snapshot.getPreference(getPreferences())) {
+			final CacheSnapshot cacheSnapshot = load();
+			if (cacheSnapshot != null) {
+				apply(cacheSnapshot);
+				unreadChats = cacheSnapshot.getUnreadChats();
+				synchronized (generationLock) {
+					changed = false;
+				}
+			}
+		}
+
+		MeasuredDbUtils.setWriteListener(new DbWriteListener() {
+			@Override
+			public void onBeforeWrite() {
+				onDataChanged();
+			}
+		});
+	}
+
+	/**
+	 * @return unread messages counters from loaded snapshot (can be returned only once), null if no snapshot was loaded
+	 */
+	@Nullable
+	public Map<Entity, Integer> pollUnreadChats() {
+		final Map<Entity, Integer> result = unreadChats;
+		unreadChats = null;
+		return result;
+	}
+
+	public void saveInBackground() {
+		if (snapshot.getPreference(getPreferences()) && changed) {
+			// one pending save is enough
+			background.submit(Background.Lane.sync, FILE_NAME, new Runnable() {
+				@Override
+				public void run() {
+					save();
+				}
+			});
+		}
+	}
+
+	private void save() {
+		synchronized (fileLock) {
+			final SharedPreferences preferences = getPreferences();
+			final int generation;
+			synchronized (generationLock) {
+				if (!changed) {
+					// nothing changed since the last snapshot
+					return;
+				}
+				changed = false;
+				generation = snapshotGeneration.getPreference(preferences) + 1;
+			}
+
+			final long start = elapsedRealtime();
+
+			final File file = getFile();
+			final File tmpFile = new File(file.getPath() + ".tmp");
+
+			boolean saved = false;
+			DataOutputStream out = null;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+				CacheSnapshotFormat.write(newSnapshot(generation), out);
+				out.close();
+				out = null;
+				saved = tmpFile.renameTo(file);
+			} catch (IOException e) {
+				Log.e(TAG, e.getMessage(), e);
+			} catch (RuntimeException e) {
+				// snapshot is just an optimization => should not crash the application
+				Log.e(TAG, e.getMessage(), e);
+			} finally {
+				closeQuietly(out);
+			}
+
+			synchronized (generationLock) {
+				if (saved) {
+					if (changed) {
+						// data has been changed while snapshot was written => snapshot must not be accepted
+						snapshotGeneration.putPreference(preferences, generation + 1);
+					} else {
+						snapshotGeneration.putPreference(preferences, generation);
+					}
+					Log.d(TAG_TIME, "Cache snapshot saved in " + (elapsedRealtime() - start) + " ms");
+				} else {
+					tmpFile.delete();
+					changed = true;
+				}
+			}
+		}
+	}
+
+	@Nonnull
+	private CacheSnapshot newSnapshot(int generation) {
+		final Set<String> accountIds = getEnabledAccountIds();
+
+		final Map<Entity, User> users = new LinkedHashMap<Entity, User>();
+		final List<CacheSnapshot.ChatEntry> chats = new ArrayList<CacheSnapshot.ChatEntry>();
+		for (Chat chat : chatService.getLastChats(false, MAX_CHATS)) {
+			if (chat != null) {
+				final Message lastMessage = chatService.getLastMessage(chat.getEntity());
+
+				final List<User> participants = chatService.getParticipants(chat.getEntity());
+				final List<Entity> participantEntities = new ArrayList<Entity>(participants.size());
+				for (User participant : participants) {
+					users.put(participant.getEntity(), participant);
+					participantEntities.add(participant.getEntity());
+				}
+
+				chats.add(new CacheSnapshot.ChatEntry(chat, lastMessage, participantEntities));
+			}
+		}
+
+		return new CacheSnapshot(generation, accountIds, new ArrayList<User>(users.values()), chats, unreadMessagesCounter.getUnreadChats());
+	}
+
+	@Nullable
+	private CacheSnapshot load() {
+		synchronized (fileLock) {
+			final File file = getFile();
+			if (!file.exists()) {
+				return null;
+			}
+
+			final long start = elapsedRealtime();
+
+			CacheSnapshot result = null;
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				result = CacheSnapshotFormat.read(in);
+			} catch (IOException e) {
+				Log.e(TAG, e.getMessage(), e);
+			} catch (RuntimeException e) {
+				Log.e(TAG, e.getMessage(), e);
+			} finally {
+				closeQuietly(in);
+			}
+
+			if (result != null && !isValid(result)) {
+				Log.d(TAG, "Cache snapshot is outdated");
+				result = null;
+			}
+
+			if (result == null) {
+				file.delete();
+			} else {
+				Log.d(TAG_TIME, "Cache snapshot loaded in " + (elapsedRealtime() - start) + " ms");
+			}
+
+			return result;
+		}
+	}
+
+	private boolean isValid(@Nonnull CacheSnapshot cacheSnapshot) {
+		if (cacheSnapshot.getGeneration() != snapshotGeneration.getPreference(getPreferences())) {
+			return false;
+		}
+
+		return cacheSnapshot.getAccountIds().equals(getEnabledAccountIds());
+	}
+
+	private void apply(@Nonnull CacheSnapshot cacheSnapshot) {
+		userService.cacheUsers(cacheSnapshot.getUsers());
+
+		for (CacheSnapshot.ChatEntry entry : cacheSnapshot.getChats()) {
+			final List<Entity> participantEntities = entry.getParticipants();
+			final List<User> participants = new ArrayList<User>(participantEntities.size());
+			for (Entity participant : participantEntities) {
+				// users have been already cached
+				participants.add(userService.getUserById(participant));
+			}
+
+			chatService.cacheChat(entry.getChat(), entry.getLastMessage(), participants);
+		}
+	}
+
+	@Nonnull
+	private Set<String> getEnabledAccountIds() {
+		final Set<String> result = new HashSet<String>();
+		for (Account account : accountService.getEnabledAccounts()) {
+			result.add(account.getId());
+		}
+		return result;
+	}
+
+	@Nonnull
+	private File getFile() {
+		return new File(application.getCacheDir(), FILE_NAME);
+	}
+
+	// called synchronously before data is written => snapshot can't stay valid for changed data even if process is
+	// killed right after the write
+	private void onDataChanged() {
+		if (!changed) {
+			// invalidate snapshot on disk: only first change after snapshot is stored. Other writers wait until new
+			// generation is stored
+			synchronized (generationLock) {
+				if (!changed) {
+					final SharedPreferences preferences = getPreferences();
+					snapshotGeneration.putPreference(preferences, snapshotGeneration.getPreference(preferences) + 1);
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private static void closeQuietly(@Nullable Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				Log.e(TAG, e.getMessage(), e);
+			}
+		}
+	}
+}
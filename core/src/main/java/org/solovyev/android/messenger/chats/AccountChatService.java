@@ -24,6 +24,7 @@ import org.solovyev.android.messenger.users.User;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
 
 public interface AccountChatService {
@@ -58,4 +59,8 @@ public interface AccountChatService {
 
 	// true if message status has been changed (not read -> read)
 	boolean markMessageRead(@Nonnull Message message) throws AccountConnectionException;
+
+	// same as markMessageRead but for many messages of one chat at once, returns messages which statuses have been changed
+	@Nonnull
+	Collection<Message> markMessagesRead(@Nonnull Collection<Message> messages) throws AccountConnectionException;
 }
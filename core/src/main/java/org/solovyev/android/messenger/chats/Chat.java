@@ -31,7 +31,6 @@ public interface Chat extends Identifiable, EntityAware, Mergeable<Chat> {
 
 	String PROPERTY_PRIVATE = "private";
 	String PROPERTY_TITLE = "title";
-	String PROPERTY_DRAFT_MESSAGE = "draft_message";
 
 	@Nonnull
 	Entity getEntity();
@@ -23,6 +23,10 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.metrics.Counter;
+import org.solovyev.android.metrics.Gauge;
+
+import static org.solovyev.android.metrics.Metrics.getMetrics;
 
 class ChatCache {
 
@@ -30,6 +34,23 @@ class ChatCache {
 	@Nonnull
 	private final Map<Entity, Chat> chats = new HashMap<Entity, Chat>();
 
+	@Nonnull
+	private final Counter hits = getMetrics().getCounter("cache.chats.hit");
+
+	@Nonnull
+	private final Counter misses = getMetrics().getCounter("cache.chats.miss");
+
+	ChatCache() {
+		getMetrics().registerGauge("cache.chats.size", new Gauge() {
+			@Override
+			public long getValue() {
+				synchronized (chats) {
+					return chats.size();
+				}
+			}
+		});
+	}
+
 	public void put(@Nonnull Chat chat) {
 		synchronized (chats) {
 			chats.put(chat.getEntity(), chat);
@@ -38,9 +59,17 @@ class ChatCache {
 
 	@Nullable
 	public Chat get(@Nonnull Entity chat) {
+		final Chat result;
 		synchronized (chats) {
-			return chats.get(chat);
+			result = chats.get(chat);
+		}
+
+		if (result != null) {
+			hits.inc();
+		} else {
+			misses.inc();
 		}
+		return result;
 	}
 
 	public void onEvent(@Nonnull ChatEvent event) {
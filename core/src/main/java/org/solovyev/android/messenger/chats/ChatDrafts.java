@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.solovyev.android.messenger.Background;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.solovyev.common.text.Strings.isEmpty;
+
+/**
+ * In-memory store of draft messages backed by {@link DraftDao}. Drafts are changed in memory immediately while
+ * writes to the database are delayed and batched: typing in a chat produces at most one write per
+ * {@link #SAVE_DELAY_MILLIS}.
+ */
+@Singleton
+@ThreadSafe
+public final class ChatDrafts {
+
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	static final long SAVE_DELAY_MILLIS = 1000L;
+
+	/*
+	**********************************************************************
+	*
+	*                           AUTO INJECTED FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Inject
+	@Nonnull
+	private DraftDao dao;
+
+	@Inject
+	@Nonnull
+	private Background background;
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	// key: chat id, value: draft message
+	@GuardedBy("this")
+	@Nullable
+	private Map<String, String> drafts;
+
+	// drafts which are not saved yet, empty draft message => draft must be removed
+	@GuardedBy("this")
+	@Nonnull
+	private Map<String, String> unsavedDrafts = new HashMap<String, String>();
+
+	@GuardedBy("this")
+	private boolean saveScheduled = false;
+
+	@Nonnull
+	private final Object saveLock = new Object();
+
+	@Nonnull
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	@Nonnull
+	private final Runnable saveRunnable = new Runnable() {
+		@Override
+		public void run() {
+			save();
+		}
+	};
+
+	@Nonnull
+	private final Runnable delayedSave = new Runnable() {
+		@Override
+		public void run() {
+			background.submit(Background.Lane.sync, ChatDrafts.this, saveRunnable);
+		}
+	};
+
+	@Nullable
+	public synchronized String get(@Nonnull String chatId) {
+		return getDrafts().get(chatId);
+	}
+
+	/**
+	 * @param chatId  chat id
+	 * @param message new draft message, empty => draft is removed
+	 * @return true if chat has got or has lost its draft message
+	 */
+	public synchronized boolean put(@Nonnull String chatId, @Nullable String message) {
+		final Map<String, String> drafts = getDrafts();
+		final String oldMessage = drafts.get(chatId);
+		if (isEmpty(message)) {
+			message = "";
+			if (oldMessage == null) {
+				return false;
+			}
+			drafts.remove(chatId);
+		} else {
+			if (message.equals(oldMessage)) {
+				return false;
+			}
+			drafts.put(chatId, message);
+		}
+
+		unsavedDrafts.put(chatId, message);
+		scheduleSave();
+
+		return isEmpty(oldMessage) != isEmpty(message);
+	}
+
+	/**
+	 * Method forgets the draft of removed chat. Draft stored in the database is removed together with the chat.
+	 *
+	 * @param chatId id of removed chat
+	 */
+	public synchronized void remove(@Nonnull String chatId) {
+		if (drafts != null) {
+			drafts.remove(chatId);
+		}
+		unsavedDrafts.remove(chatId);
+	}
+
+	/**
+	 * Method starts writing of unsaved drafts without waiting for {@link #SAVE_DELAY_MILLIS} (e.g. when user leaves the
+	 * chat and process might be killed soon)
+	 */
+	public synchronized void flush() {
+		if (saveScheduled) {
+			handler.removeCallbacks(delayedSave);
+			delayedSave.run();
+		}
+	}
+
+	@GuardedBy("this")
+	@Nonnull
+	private Map<String, String> getDrafts() {
+		if (drafts == null) {
+			drafts = dao.readDrafts();
+		}
+		return drafts;
+	}
+
+	@GuardedBy("this")
+	private void scheduleSave() {
+		if (!saveScheduled) {
+			saveScheduled = true;
+			handler.postDelayed(delayedSave, SAVE_DELAY_MILLIS);
+		}
+	}
+
+	private void save() {
+		// batches must be written in the same order as they have been taken
+		synchronized (saveLock) {
+			final Map<String, String> drafts;
+			synchronized (this) {
+				drafts = unsavedDrafts;
+				unsavedDrafts = new HashMap<String, String>();
+				saveScheduled = false;
+			}
+
+			dao.update(drafts);
+		}
+	}
+}
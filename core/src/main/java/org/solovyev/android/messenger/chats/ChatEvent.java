@@ -16,15 +16,18 @@
 
 package org.solovyev.android.messenger.chats;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.solovyev.android.messenger.CoalescableEvent;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.common.listeners.AbstractTypedJEvent;
 
-public class ChatEvent extends AbstractTypedJEvent<Chat, ChatEventType> {
+public class ChatEvent extends AbstractTypedJEvent<Chat, ChatEventType> implements CoalescableEvent<ChatEvent> {
 
 	ChatEvent(@Nonnull Chat chat, @Nonnull ChatEventType type, Object data) {
 		super(chat, type, data);
@@ -55,6 +58,37 @@ public class ChatEvent extends AbstractTypedJEvent<Chat, ChatEventType> {
 		return (Entity) getData();
 	}
 
+	@Nullable
+	@Override
+	public ChatEvent coalesce(@Nonnull ChatEvent next) {
+		final ChatEventType type = getType();
+		if (type != next.getType() || !getChat().equals(next.getChat())) {
+			return null;
+		}
+
+		switch (type) {
+			case changed:
+			case draft_message_changed:
+			case last_message_changed:
+			case unread_message_count_changed:
+				// only the latest state matters
+				return next;
+			case message_changed:
+			case message_state_changed:
+				if (getDataAsMessage().getEntity().equals(next.getDataAsMessage().getEntity())) {
+					return next;
+				}
+				return null;
+			case messages_added:
+			case messages_read:
+				final List<Message> messages = new ArrayList<Message>(getDataAsMessages());
+				messages.addAll(next.getDataAsMessages());
+				return type.newEvent(next.getChat(), messages);
+			default:
+				return null;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "ChatEvent{chat=" + getChat().getId() + ", type=" + getType() + ", data=" + getData() + "}";
@@ -92,10 +92,19 @@ public enum ChatEventType {
 		}
 	},
 
-	message_read {
+	// data == true if chat has draft message
+	draft_message_changed {
 		@Override
 		protected void checkData(@Nullable Object data) {
-			assert data instanceof Message;
+			assert data instanceof Boolean;
+		}
+	},
+
+	// data == list of messages which have been read
+	messages_read {
+		@Override
+		protected void checkData(@Nullable Object data) {
+			assert data instanceof List;
 		}
 	};
 
@@ -34,7 +34,7 @@ class ChatParticipants {
 
 	// key: chat id, value: list of participants
 	@Nonnull
-	private final ThreadSafeMultimap<Entity, User> participants = newThreadSafeMultimap();
+	private final ThreadSafeMultimap<Entity, User> participants = newThreadSafeMultimap("cache.chat_participants");
 
 	@Nonnull
 	public List<User> get(@Nonnull Entity chat) {
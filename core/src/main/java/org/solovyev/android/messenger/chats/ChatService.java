@@ -115,6 +115,16 @@ public interface ChatService extends JEventListeners<JEventListener<ChatEvent>,
 
 	void removeEmptyChats(@Nonnull User user);
 
+	/**
+	 * Method puts chat with its last message and participants to the in-memory caches without touching persistence
+	 * (e.g. to fill the caches from snapshot on start)
+	 *
+	 * @param chat         chat to be cached
+	 * @param lastMessage  last message of the chat
+	 * @param participants participants of the chat
+	 */
+	void cacheChat(@Nonnull Chat chat, @Nullable Message lastMessage, @Nonnull List<User> participants);
+
 	/*
 	**********************************************************************
 	*
@@ -132,6 +142,17 @@ public interface ChatService extends JEventListeners<JEventListener<ChatEvent>,
 
 	void markMessageRead(@Nonnull Chat chat, @Nonnull Message message) throws AccountConnectionException;
 
+	/**
+	 * Method marks all <var>messages</var> of <var>chat</var> as read with one request to the account and one update
+	 * of the local storage. {@link ChatEventType#messages_read} event is fired once for all messages which have
+	 * been changed.
+	 *
+	 * @param chat     chat to which messages belong
+	 * @param messages messages to be marked as read
+	 * @throws AccountConnectionException if messages can't be marked as read in the account
+	 */
+	void markMessagesRead(@Nonnull Chat chat, @Nonnull Collection<Message> messages) throws AccountConnectionException;
+
 	void removeChat(@Nonnull Entity chat);
 
 	void saveDraftMessage(@Nonnull Chat chat, @Nullable String message);
@@ -141,6 +162,11 @@ public interface ChatService extends JEventListeners<JEventListener<ChatEvent>,
 	@Nullable
 	String getDraftMessage(@Nonnull Chat chat);
 
+	/**
+	 * Method starts writing of draft messages which are not saved yet (drafts are written with a delay)
+	 */
+	void flushDraftMessages();
+
 	void removeMessage(@Nonnull Message message);
 
 	void updateMessageState(@Nonnull Message message);
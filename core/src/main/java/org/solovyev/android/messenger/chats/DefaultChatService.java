@@ -29,6 +29,7 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.solovyev.android.list.PrefixFilter;
 import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.CoalescingEventListeners;
 import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.accounts.*;
 import org.solovyev.android.messenger.core.R;
@@ -38,8 +39,6 @@ import org.solovyev.android.messenger.users.*;
 import org.solovyev.common.collections.multimap.ThreadSafeMultimap;
 import org.solovyev.common.listeners.AbstractJEventListener;
 import org.solovyev.common.listeners.JEventListener;
-import org.solovyev.common.listeners.JEventListeners;
-import org.solovyev.common.listeners.Listeners;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
@@ -53,13 +52,12 @@ import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Lists.transform;
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
-import static org.solovyev.android.messenger.chats.Chat.PROPERTY_DRAFT_MESSAGE;
+import static org.solovyev.android.messenger.CoalescingEventListeners.newCoalescingEventListeners;
 import static org.solovyev.android.messenger.chats.Chats.newEmptyAccountChat;
 import static org.solovyev.android.messenger.chats.UiChat.loadUiChat;
 import static org.solovyev.android.messenger.entities.Entities.newEntity;
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 import static org.solovyev.android.messenger.users.Users.newEmptyUser;
-import static org.solovyev.android.properties.Properties.newProperty;
 import static org.solovyev.common.text.Strings.isEmpty;
 
 @Singleton
@@ -113,6 +111,10 @@ public class DefaultChatService implements ChatService {
 	@Nonnull
 	private UnreadMessagesCounter unreadMessagesCounter;
 
+	@Inject
+	@Nonnull
+	private ChatDrafts drafts;
+
 
 	/*
 	**********************************************************************
@@ -123,7 +125,7 @@ public class DefaultChatService implements ChatService {
 	*/
 
 	@Nonnull
-	private final JEventListeners<JEventListener<? extends ChatEvent>, ChatEvent> listeners;
+	private final CoalescingEventListeners<ChatEvent> listeners;
 
 	@Nonnull
 	private final ChatParticipants participants = new ChatParticipants();
@@ -139,7 +141,7 @@ public class DefaultChatService implements ChatService {
 
 	@Inject
 	public DefaultChatService(@Nonnull PersistenceLock lock, @Nonnull Executor eventExecutor) {
-		this.listeners = Listeners.newEventListenersBuilderFor(ChatEvent.class).withHardReferences().withExecutor(eventExecutor).create();
+		this.listeners = newCoalescingEventListeners(ChatEvent.class, eventExecutor);
 		this.listeners.addListener(new ChatEventListener());
 		this.lock = lock;
 	}
@@ -492,16 +494,13 @@ public class DefaultChatService implements ChatService {
 
 		events.add(ChatEventType.messages_added.newEvent(chat, result.getAddedObjects()));
 
-		final List<Message> updatedMessages = result.getUpdatedObjects();
-		for (Message updatedMessage : updatedMessages) {
+		for (Message updatedMessage : result.getUpdatedObjects()) {
 			events.add(ChatEventType.message_changed.newEvent(chat, updatedMessage));
 		}
 
-		for (Message readMessage : result.getReadMessages()) {
-			if (!updatedMessages.contains(readMessage)) {
-				events.add(ChatEventType.message_changed.newEvent(chat, readMessage));
-			}
-			events.add(ChatEventType.message_read.newEvent(chat, readMessage));
+		final List<Message> readMessages = result.getReadMessages();
+		if (!readMessages.isEmpty()) {
+			events.add(ChatEventType.messages_read.newEvent(chat, readMessages));
 		}
 
 		fireEvents(events);
@@ -509,21 +508,43 @@ public class DefaultChatService implements ChatService {
 
 	@Override
 	public void markMessageRead(@Nonnull Chat chat, @Nonnull Message message) throws AccountConnectionException {
-		if (!message.isRead()) {
-			message = message.cloneRead();
+		markMessagesRead(chat, Collections.singletonList(message));
+	}
+
+	@Override
+	public void markMessagesRead(@Nonnull Chat chat, @Nonnull Collection<Message> messages) throws AccountConnectionException {
+		if (messages.isEmpty()) {
+			return;
+		}
+
+		final List<Message> readMessages = new ArrayList<Message>(messages.size());
+		for (Message message : messages) {
+			readMessages.add(message.isRead() ? message : message.cloneRead());
 		}
 
-		final Account account = getAccountByEntity(message.getEntity());
+		final Account account = getAccountByEntity(chat.getEntity());
+
+		// only messages confirmed by realm are updated locally, others stay unread and will be marked again later
+		final Collection<Message> confirmedMessages = account.getAccountChatService().markMessagesRead(readMessages);
+		if (!confirmedMessages.isEmpty()) {
+			final List<String> readMessageIds = new ArrayList<String>(confirmedMessages.size());
+			for (Message confirmedMessage : confirmedMessages) {
+				readMessageIds.add(confirmedMessage.getId());
+			}
 
-		if (account.getAccountChatService().markMessageRead(message)) {
-			final boolean changed;
+			final Set<String> changedIds;
 			synchronized (lock) {
-				changed = messageDao.changeReadStatus(message.getId(), true);
+				changedIds = messageDao.changeReadStatus(readMessageIds, true);
 			}
 
-			if (changed) {
-				fireEvent(ChatEventType.message_changed.newEvent(chat, message));
-				fireEvent(ChatEventType.message_read.newEvent(chat, message));
+			if (!changedIds.isEmpty()) {
+				final List<Message> changedMessages = new ArrayList<Message>(changedIds.size());
+				for (Message readMessage : confirmedMessages) {
+					if (changedIds.contains(readMessage.getId())) {
+						changedMessages.add(readMessage);
+					}
+				}
+				fireEvent(ChatEventType.messages_read.newEvent(chat, changedMessages));
 			}
 		}
 	}
@@ -619,37 +640,48 @@ public class DefaultChatService implements ChatService {
 			final Message lastMessage = getLastMessage(chat.getEntity());
 			if (lastMessage == null) {
 				chatDao.delete(user, chat);
+				drafts.remove(chat.getId());
 			}
 		}
 	}
 
+	@Override
+	public void cacheChat(@Nonnull Chat chat, @Nullable Message lastMessage, @Nonnull List<User> participants) {
+		cache.put(chat);
+		this.participants.put(chat.getEntity(), participants);
+		if (lastMessage != null) {
+			lastMessages.putIfAbsent(chat.getEntity(), lastMessage);
+		}
+	}
+
 	@Override
 	public void removeChat(@Nonnull Entity chat) {
 		chatDao.deleteById(chat.getEntityId());
+		drafts.remove(chat.getEntityId());
 	}
 
 	@Override
 	public void saveDraftMessage(@Nonnull Chat chat, @Nullable String message) {
-		if (!Strings.isEmpty(message)) {
-			updateChat(chat.cloneWithNewProperty(newProperty(PROPERTY_DRAFT_MESSAGE, message)));
-		} else {
-			// empty draft message => try to remove it from the chat
-			removeDraftMessage(chat);
+		// chat itself is not changed => only presence of draft is published
+		if (drafts.put(chat.getId(), message)) {
+			fireEvent(ChatEventType.draft_message_changed.newEvent(chat, !isEmpty(message)));
 		}
 	}
 
 	@Override
 	public void removeDraftMessage(@Nonnull Chat chat) {
-		final String draftMessage = chat.getPropertyValueByName(PROPERTY_DRAFT_MESSAGE);
-		if (!Strings.isEmpty(draftMessage)) {
-			updateChat(chat.cloneWithoutProperty(PROPERTY_DRAFT_MESSAGE));
-		}
+		saveDraftMessage(chat, null);
 	}
 
 	@Nullable
 	@Override
 	public String getDraftMessage(@Nonnull Chat chat) {
-		return chat.getPropertyValueByName(PROPERTY_DRAFT_MESSAGE);
+		return drafts.get(chat.getId());
+	}
+
+	@Override
+	public void flushDraftMessages() {
+		drafts.flush();
 	}
 
 	@Nonnull
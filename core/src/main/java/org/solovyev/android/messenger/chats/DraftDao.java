@@ -14,28 +14,27 @@
  * limitations under the License.
  */
 
-package org.solovyev.android.messenger.realms.vk.users;
-
-import com.google.gson.Gson;
+package org.solovyev.android.messenger.chats;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-import java.util.Collections;
-import java.util.List;
-
-class JsonUserIds {
+import java.util.Map;
 
-	@Nullable
-	private List<String> response;
+/**
+ * Storage of draft messages of chats. Drafts are stored separately from chats => saving of a draft doesn't touch
+ * chat and its properties.
+ */
+public interface DraftDao {
 
+	/**
+	 * @return key: chat id, value: draft message
+	 */
 	@Nonnull
-	public List<String> getIds() {
-		return response == null ? Collections.<String>emptyList() : response;
-	}
+	Map<String, String> readDrafts();
 
-	@Nonnull
-	static JsonUserIds newFromJson(@Nonnull String json) {
-		final Gson gson = new Gson();
-		return gson.fromJson(json, JsonUserIds.class);
-	}
+	/**
+	 * Method saves all <var>drafts</var> in one transaction
+	 *
+	 * @param drafts key: chat id, value: draft message (empty draft message => draft is removed)
+	 */
+	void update(@Nonnull Map<String, String> drafts);
 }
@@ -26,8 +26,11 @@ import javax.annotation.Nullable;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.messages.MessageService;
+import org.solovyev.android.metrics.Counter;
+import org.solovyev.android.metrics.Gauge;
 
 import static org.solovyev.android.messenger.chats.ChatEventType.last_message_changed;
+import static org.solovyev.android.metrics.Metrics.getMetrics;
 
 class LastMessages {
 
@@ -35,6 +38,12 @@ class LastMessages {
 	@Nonnull
 	private final Map<Entity, Message> lastMessagesCache = new HashMap<Entity, Message>();
 
+	@Nonnull
+	private final Counter hits = getMetrics().getCounter("cache.last_messages.hit");
+
+	@Nonnull
+	private final Counter misses = getMetrics().getCounter("cache.last_messages.miss");
+
 	@Nonnull
 	private final ChatService chatService;
 
@@ -44,6 +53,15 @@ class LastMessages {
 	LastMessages(@Nonnull ChatService chatService, @Nonnull MessageService messageService) {
 		this.chatService = chatService;
 		this.messageService = messageService;
+
+		getMetrics().registerGauge("cache.last_messages.size", new Gauge() {
+			@Override
+			public long getValue() {
+				synchronized (lastMessagesCache) {
+					return lastMessagesCache.size();
+				}
+			}
+		});
 	}
 
 	public void onEvent(@Nonnull ChatEvent event) {
@@ -84,6 +102,19 @@ class LastMessages {
 					}
 				}
 				break;
+				case messages_read: {
+					final Message messageFromCache = lastMessagesCache.get(chat.getEntity());
+					if (messageFromCache != null) {
+						for (Message message : event.getDataAsMessages()) {
+							if (messageFromCache.equals(message)) {
+								lastMessagesCache.put(chat.getEntity(), message);
+								changedLastMessages.put(chat, message);
+								break;
+							}
+						}
+					}
+				}
+				break;
 			}
 		}
 
@@ -104,12 +135,23 @@ class LastMessages {
 		}
 	}
 
+	public void putIfAbsent(@Nonnull Entity chat, @Nonnull Message message) {
+		synchronized (lastMessagesCache) {
+			if (!lastMessagesCache.containsKey(chat)) {
+				lastMessagesCache.put(chat, message);
+			}
+		}
+	}
+
 	public Message getLastMessage(Entity chat) {
 		Message result;
 
 		synchronized (lastMessagesCache) {
 			result = lastMessagesCache.get(chat);
-			if (result == null) {
+			if (result != null) {
+				hits.inc();
+			} else {
+				misses.inc();
 				result = messageService.getLastMessage(chat.getEntityId());
 				if (result != null) {
 					lastMessagesCache.put(chat, result);
@@ -51,7 +51,9 @@ import java.util.*;
 
 import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Iterables.transform;
-import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExec;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExecs;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbQuery;
 import static org.solovyev.common.text.Strings.isEmpty;
 
 @Singleton
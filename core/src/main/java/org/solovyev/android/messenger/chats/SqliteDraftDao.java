@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.chats;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.solovyev.android.db.AbstractDbQuery;
+import org.solovyev.android.db.AbstractSQLiteHelper;
+import org.solovyev.android.db.DbExec;
+
+import javax.annotation.Nonnull;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExecs;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbQuery;
+import static org.solovyev.common.text.Strings.isEmpty;
+
+@Singleton
+public class SqliteDraftDao extends AbstractSQLiteHelper implements DraftDao {
+
+	@Inject
+	public SqliteDraftDao(@Nonnull Application context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+		super(context, sqliteOpenHelper);
+	}
+
+	@Nonnull
+	@Override
+	public Map<String, String> readDrafts() {
+		return doDbQuery(getSqliteOpenHelper(), new LoadDrafts(getContext(), getSqliteOpenHelper()));
+	}
+
+	@Override
+	public void update(@Nonnull Map<String, String> drafts) {
+		if (!drafts.isEmpty()) {
+			final List<DbExec> execs = new ArrayList<DbExec>(drafts.size());
+			for (Map.Entry<String, String> entry : drafts.entrySet()) {
+				final String message = entry.getValue();
+				if (isEmpty(message)) {
+					execs.add(new DeleteDraft(entry.getKey()));
+				} else {
+					execs.add(new ReplaceDraft(entry.getKey(), message));
+				}
+			}
+			doDbExecs(getSqliteOpenHelper(), execs);
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class ReplaceDraft implements DbExec {
+
+		@Nonnull
+		private final String chatId;
+
+		@Nonnull
+		private final String message;
+
+		private ReplaceDraft(@Nonnull String chatId, @Nonnull String message) {
+			this.chatId = chatId;
+			this.message = message;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			final ContentValues values = new ContentValues();
+			values.put("chat_id", chatId);
+			values.put("message", message);
+			// chat might be already removed => constraint violation is logged and ignored
+			return db.replace("drafts", null, values);
+		}
+	}
+
+	private static final class DeleteDraft implements DbExec {
+
+		@Nonnull
+		private final String chatId;
+
+		private DeleteDraft(@Nonnull String chatId) {
+			this.chatId = chatId;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			return db.delete("drafts", "chat_id = ?", new String[]{chatId});
+		}
+	}
+
+	private static final class LoadDrafts extends AbstractDbQuery<Map<String, String>> {
+
+		private LoadDrafts(@Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery("select chat_id, message from drafts", null);
+		}
+
+		@Nonnull
+		@Override
+		public Map<String, String> retrieveData(@Nonnull Cursor cursor) {
+			final Map<String, String> result = new HashMap<String, String>(cursor.getCount());
+			while (cursor.moveToNext()) {
+				result.put(cursor.getString(0), cursor.getString(1));
+			}
+			return result;
+		}
+	}
+}
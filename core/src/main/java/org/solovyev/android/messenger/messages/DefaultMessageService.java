@@ -22,7 +22,6 @@ import com.google.inject.Singleton;
 import org.joda.time.DateTime;
 import org.solovyev.android.http.ImageLoader;
 import org.solovyev.android.messenger.accounts.*;
-import org.solovyev.android.messenger.chats.AccountChatService;
 import org.solovyev.android.messenger.chats.Chat;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.entities.Entity;
@@ -34,10 +33,6 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import java.util.List;
 
-import static java.util.Arrays.asList;
-import static org.solovyev.android.messenger.accounts.AccountService.NO_ACCOUNT_ID;
-import static org.solovyev.android.messenger.messages.Messages.copySentMessage;
-
 @Singleton
 public class DefaultMessageService implements MessageService {
 
@@ -70,6 +65,10 @@ public class DefaultMessageService implements MessageService {
 	@Nonnull
 	private MessageDao dao;
 
+	@Inject
+	@Nonnull
+	private MessageOutbox outbox;
+
 	@Nonnull
 	private final PersistenceLock lock;
 
@@ -80,6 +79,7 @@ public class DefaultMessageService implements MessageService {
 
 	@Override
 	public void init() {
+		outbox.init();
 	}
 
 	@Nonnull
@@ -111,23 +111,11 @@ public class DefaultMessageService implements MessageService {
 	@Nonnull
 	@Override
 	public Message sendMessage(@Nonnull Chat chat, @Nonnull Message message) throws AccountException {
-		final Account account = getAccountByUser(chat.getEntity());
-		final AccountChatService acs = account.getAccountChatService();
-
-		// id returned by account
-		final String accountMessageId = sendMessage(chat, message, acs);
+		// check that account exists
+		getAccountByUser(chat.getEntity());
 
-		final MutableMessage result = copySentMessage(message, account, accountMessageId);
-
-		chatService.saveMessages(chat.getEntity(), asList(result));
-
-		return result;
-	}
-
-	@Nonnull
-	private String sendMessage(@Nonnull Chat chat, @Nonnull Message message, @Nonnull AccountChatService acs) throws AccountConnectionException {
-		final String accountMessageId = acs.sendMessage(chat, message);
-		return accountMessageId == null ? NO_ACCOUNT_ID : accountMessageId;
+		// message is sent asynchronously by outbox
+		return outbox.enqueue(message);
 	}
 
 	@Nullable
@@ -25,6 +25,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface MessageDao extends Dao<Message> {
 
@@ -53,6 +54,12 @@ public interface MessageDao extends Dao<Message> {
 
 	boolean changeReadStatus(@Nonnull String messageId, boolean read);
 
+	/**
+	 * @return ids of messages which read status has been changed
+	 */
+	@Nonnull
+	Set<String> changeReadStatus(@Nonnull Collection<String> messageIds, boolean read);
+
 	boolean changeMessageState(@Nonnull String messageId, @Nonnull MessageState state);
 
 	void deleteAll();
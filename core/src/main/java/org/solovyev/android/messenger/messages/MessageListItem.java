@@ -129,7 +129,11 @@ public final class MessageListItem extends BaseMessengerListItem<Message> /*, Ch
 		} else {
 			messageDate.setVisibility(VISIBLE);
 			messageProgress.setVisibility(GONE);
-			messageDate.setText(Messages.getMessageTime(message));
+			if (message.getState() == MessageState.failed) {
+				messageDate.setText(R.string.mpp_message_not_sent);
+			} else {
+				messageDate.setText(Messages.getMessageTime(message));
+			}
 			animation.stop();
 		}
 
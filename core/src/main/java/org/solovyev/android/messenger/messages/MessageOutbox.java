@@ -0,0 +1,389 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.solovyev.android.messenger.Background;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.accounts.AccountService;
+import org.solovyev.android.messenger.accounts.UnsupportedAccountException;
+import org.solovyev.android.messenger.chats.AccountChatService;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.metrics.Counter;
+import org.solovyev.android.metrics.Histogram;
+import org.solovyev.android.metrics.Metrics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static org.solovyev.android.messenger.App.newTag;
+import static org.solovyev.android.messenger.accounts.AccountService.NO_ACCOUNT_ID;
+import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
+import static org.solovyev.android.messenger.messages.MessageState.created;
+import static org.solovyev.android.messenger.messages.MessageState.failed;
+import static org.solovyev.android.messenger.messages.MessageState.removed;
+import static org.solovyev.android.messenger.messages.MessageState.sending;
+import static org.solovyev.android.messenger.messages.Messages.copySentMessage;
+import static org.solovyev.android.messenger.messages.OutboxEntry.newOutboxEntry;
+
+/**
+ * Outgoing messages are stored in outbox ({@link OutboxDao}) together with the message itself and are sent
+ * asynchronously: each account has its own sender which sends all queued messages of the account one after another
+ * and retries messages which have failed because of connection problems with exponential backoff. Message state is
+ * changed through {@link ChatService#updateMessageState(Message)}: {@link MessageState#created} (queued) ->
+ * {@link MessageState#sending} -> state of sent message (see {@link Messages#copySentMessage(Message, Account, String)})
+ * or {@link MessageState#failed} if message has been rejected by realm or has not been sent in
+ * {@link #MAX_ATTEMPTS} attempts.
+ */
+@Singleton
+@ThreadSafe
+public final class MessageOutbox {
+
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private static final String TAG = newTag("Outbox");
+
+	static final long MIN_RETRY_DELAY_MILLIS = 3000L;
+
+	static final long MAX_RETRY_DELAY_MILLIS = 10L * 60L * 1000L;
+
+	// ~2.5 hours of retries
+	static final int MAX_ATTEMPTS = 20;
+
+	/*
+	**********************************************************************
+	*
+	*                           AUTO INJECTED FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Inject
+	@Nonnull
+	private OutboxDao dao;
+
+	@Inject
+	@Nonnull
+	private MessageDao messageDao;
+
+	@Inject
+	@Nonnull
+	private AccountService accountService;
+
+	@Inject
+	@Nonnull
+	private ChatService chatService;
+
+	@Inject
+	@Nonnull
+	private Background background;
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	// delayed retries are posted to the main thread which just submits senders to the background
+	@Nonnull
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	// key: account id
+	@GuardedBy("senders")
+	@Nonnull
+	private final Map<String, AccountSender> senders = new HashMap<String, AccountSender>();
+
+	@Nonnull
+	private final Counter sentCounter = Metrics.getMetrics().getCounter("outbox.sent");
+
+	@Nonnull
+	private final Counter retriedCounter = Metrics.getMetrics().getCounter("outbox.retried");
+
+	@Nonnull
+	private final Counter failedCounter = Metrics.getMetrics().getCounter("outbox.failed");
+
+	@Nonnull
+	private final Histogram sendTime = Metrics.getMetrics().getHistogram("outbox.send");
+
+	/**
+	 * Method restarts sending of the messages which were left in outbox by the previous application run
+	 */
+	public void init() {
+		for (String accountId : dao.readAccountIds()) {
+			getSender(accountId).wakeUp(0);
+		}
+	}
+
+	/**
+	 * Method stores <var>message</var> in outbox and in chat (=> message is shown immediately) and schedules sending
+	 *
+	 * @param message message to be sent
+	 * @return queued message
+	 */
+	@Nonnull
+	public Message enqueue(@Nonnull Message message) {
+		final Message result = message.cloneWithNewState(created);
+
+		// message must be stored first: sender may run at any moment and should always find the message of the entry
+		chatService.saveMessages(result.getChat(), asList(result));
+		dao.insert(newOutboxEntry(result));
+
+		getSender(result.getEntity().getAccountId()).wakeUp(0);
+		return result;
+	}
+
+	@Nonnull
+	private AccountSender getSender(@Nonnull String accountId) {
+		synchronized (senders) {
+			AccountSender sender = senders.get(accountId);
+			if (sender == null) {
+				sender = new AccountSender(accountId);
+				senders.put(accountId, sender);
+			}
+			return sender;
+		}
+	}
+
+	static long getRetryDelay(int attempts) {
+		final int shift = Math.min(attempts - 1, 16);
+		return Math.min(MIN_RETRY_DELAY_MILLIS << shift, MAX_RETRY_DELAY_MILLIS);
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static enum SendResult {
+		sent,
+		// connection problem => message should be sent again later
+		failed,
+		// message has been rejected by realm => sending it again won't help
+		rejected
+	}
+
+	private final class AccountSender implements Runnable {
+
+		@Nonnull
+		private final String accountId;
+
+		@Nonnull
+		private final Runnable delayedWakeUp = new Runnable() {
+			@Override
+			public void run() {
+				wakeUp(0);
+			}
+		};
+
+		private AccountSender(@Nonnull String accountId) {
+			this.accountId = accountId;
+		}
+
+		private void wakeUp(long delayMillis) {
+			if (delayMillis <= 0) {
+				// one pending run is enough: it will send everything queued before it starts. Sending blocks on the
+				// network => it is not done on the interactive lane
+				background.submit(Background.Lane.sync, this, this);
+			} else {
+				handler.removeCallbacks(delayedWakeUp);
+				handler.postDelayed(delayedWakeUp, delayMillis);
+			}
+		}
+
+		@Override
+		public void run() {
+			// two runs may overlap if sender was woken up while running => must not send the same message twice
+			synchronized (this) {
+				send();
+			}
+		}
+
+		private void send() {
+			final List<OutboxEntry> entries = dao.readEntries(accountId);
+			if (entries.isEmpty()) {
+				return;
+			}
+
+			final Account account;
+			try {
+				account = accountService.getAccountById(accountId);
+			} catch (UnsupportedAccountException e) {
+				// account was removed => nothing can be sent
+				dao.delete(getMessageIds(entries));
+				return;
+			}
+
+			final AccountChatService acs = account.getAccountChatService();
+
+			final long now = System.currentTimeMillis();
+			final List<String> done = new ArrayList<String>();
+			final List<OutboxEntry> retried = new ArrayList<OutboxEntry>();
+			// messages in one chat must be sent in order => if one message is retried others from the same chat wait for it
+			final Set<String> blockedChats = new HashSet<String>();
+
+			for (OutboxEntry entry : entries) {
+				if (blockedChats.contains(entry.getChatId())) {
+					continue;
+				}
+
+				if (entry.getNextAttemptTime() > now) {
+					blockedChats.add(entry.getChatId());
+					continue;
+				}
+
+				final Chat chat = chatService.getChatById(newEntityFromEntityId(entry.getChatId()));
+				if (chat == null) {
+					// chat was removed together with its messages
+					done.add(entry.getMessageId());
+					continue;
+				}
+
+				final Message message = messageDao.read(entry.getMessageId());
+				if (message == null) {
+					// message is stored before the entry => it has been removed but the entry has not (e.g. process was
+					// killed in between). Entry is checked again later and is expired after max attempts
+					Log.w(TAG, "Message is not found for outbox entry: " + entry.getMessageId());
+					if (isLastAttempt(entry)) {
+						done.add(entry.getMessageId());
+					} else {
+						retried.add(entry.failed(now + getRetryDelay(entry.getAttempts() + 1)));
+					}
+					continue;
+				}
+
+				if (message.getState() == removed) {
+					done.add(entry.getMessageId());
+					continue;
+				}
+
+				switch (trySend(account, acs, chat, message)) {
+					case sent:
+						done.add(entry.getMessageId());
+						break;
+					case failed:
+						if (isLastAttempt(entry)) {
+							fail(message);
+							done.add(entry.getMessageId());
+						} else {
+							blockedChats.add(entry.getChatId());
+							retried.add(entry.failed(now + getRetryDelay(entry.getAttempts() + 1)));
+						}
+						break;
+					case rejected:
+						// sending the same message again won't help => next messages of the chat are not blocked
+						fail(message);
+						done.add(entry.getMessageId());
+						break;
+				}
+			}
+
+			dao.delete(done);
+			dao.update(retried);
+
+			scheduleNextRun(entries, done);
+		}
+
+		private boolean isLastAttempt(@Nonnull OutboxEntry entry) {
+			return entry.getAttempts() + 1 >= MAX_ATTEMPTS;
+		}
+
+		private void fail(@Nonnull Message message) {
+			failedCounter.inc();
+			Log.e(TAG, "Message is not sent: " + message.getId());
+			chatService.updateMessageState(message.cloneWithNewState(failed));
+		}
+
+		@Nonnull
+		private SendResult trySend(@Nonnull Account account, @Nonnull AccountChatService acs, @Nonnull Chat chat, @Nonnull Message message) {
+			chatService.updateMessageState(message.cloneWithNewState(sending));
+
+			final long start = SystemClock.elapsedRealtime();
+			try {
+				final String accountMessageId = acs.sendMessage(chat, message);
+				final Message sentMessage = copySentMessage(message, account, accountMessageId == null ? NO_ACCOUNT_ID : accountMessageId);
+				if (sentMessage.getId().equals(message.getId())) {
+					chatService.updateMessageState(sentMessage);
+				} else {
+					// realm has assigned its own id => replace queued message with sent one
+					chatService.saveMessages(chat.getEntity(), asList(sentMessage));
+					chatService.removeMessage(message);
+				}
+
+				sentCounter.inc();
+				return SendResult.sent;
+			} catch (AccountConnectionException e) {
+				Log.w(TAG, "Message sending failed, will retry later", e);
+			} catch (RuntimeException e) {
+				// realm has rejected the message
+				Log.e(TAG, e.getMessage(), e);
+				return SendResult.rejected;
+			} finally {
+				sendTime.update(SystemClock.elapsedRealtime() - start);
+			}
+
+			retriedCounter.inc();
+			// back to queue
+			chatService.updateMessageState(message.cloneWithNewState(created));
+			return SendResult.failed;
+		}
+
+		private void scheduleNextRun(@Nonnull List<OutboxEntry> entries, @Nonnull List<String> done) {
+			// entries which are not sent yet are re-read from dao in order to get their new attempt times
+			if (done.size() < entries.size()) {
+				long nextAttemptTime = Long.MAX_VALUE;
+				for (OutboxEntry entry : dao.readEntries(accountId)) {
+					nextAttemptTime = Math.min(nextAttemptTime, entry.getNextAttemptTime());
+				}
+
+				if (nextAttemptTime != Long.MAX_VALUE) {
+					wakeUp(Math.max(nextAttemptTime - System.currentTimeMillis(), MIN_RETRY_DELAY_MILLIS));
+				}
+			}
+		}
+	}
+
+	@Nonnull
+	private static List<String> getMessageIds(@Nonnull List<OutboxEntry> entries) {
+		final List<String> result = new ArrayList<String>(entries.size());
+		for (OutboxEntry entry : entries) {
+			result.add(entry.getMessageId());
+		}
+		return result;
+	}
+}
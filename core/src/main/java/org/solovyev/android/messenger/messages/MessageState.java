@@ -18,11 +18,14 @@ package org.solovyev.android.messenger.messages;
 
 public enum MessageState {
 
-	created(false, false),
+	// outgoing message is waiting in outbox
+	created(true, false),
 	removed(false, false),
 
 	sending(true, false),
 	sent(true, false),
+	// outgoing message has been rejected by realm or has not been sent in max number of attempts
+	failed(true, false),
 
 	delivered(true, false),
 
@@ -128,6 +128,9 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 				case message_changed:
 					onMessageChanged(event);
 					break;
+				case messages_read:
+					onMessagesRead(event.getDataAsMessages());
+					break;
 				case user_is_typing:
 				case user_is_not_typing:
 					onTypingEvent(type, event.getDataAsEntity(), chat);
@@ -145,6 +148,21 @@ public class MessagesAdapter extends BaseListItemAdapter<MessageListItem> {
 		}
 	}
 
+	private void onMessagesRead(@Nonnull List<Message> messages) {
+		boolean changed = false;
+		for (Message message : messages) {
+			final MessageListItem listItem = findInAllElements(message);
+			if (listItem != null) {
+				listItem.onMessageChanged(message);
+				changed = true;
+			}
+		}
+
+		if (changed) {
+			notifyDataSetChanged();
+		}
+	}
+
 	void addSendingMessage(@Nonnull Message message) {
 		final MessageListItem listItem = newMessageListItem(message);
 		add(listItem);
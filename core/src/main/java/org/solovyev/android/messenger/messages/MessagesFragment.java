@@ -266,6 +266,8 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 
 			@Override
 			public void afterTextChanged(Editable s) {
+				// draft is kept in memory and is written to the database later (see ChatDrafts)
+				getChatService().saveDraftMessage(chat, s.toString());
 			}
 		});
 
@@ -441,12 +443,12 @@ public final class MessagesFragment extends BaseAsyncListFragment<Message, Messa
 		if (chat != null && messageBody != null) {
 			final String message = messageBody.getText().toString();
 			if (!Strings.isEmpty(message)) {
-				// todo serso: here chat might be already deleted and we will get SQLite exception in logs, need to add
-				// check
 				getChatService().saveDraftMessage(chat, message);
 			} else {
 				getChatService().removeDraftMessage(chat);
 			}
+			// draft must not be lost if process is killed in background
+			getChatService().flushDraftMessages();
 		}
 	}
 
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistent queue of outgoing messages. Entries are removed only after messages have been sent => messages survive
+ * application restarts.
+ */
+public interface OutboxDao {
+
+	void insert(@Nonnull OutboxEntry entry);
+
+	/**
+	 * @param accountId account id
+	 * @return entries of account in the order they have been inserted
+	 */
+	@Nonnull
+	List<OutboxEntry> readEntries(@Nonnull String accountId);
+
+	/**
+	 * @return ids of accounts which have at least one entry in outbox
+	 */
+	@Nonnull
+	List<String> readAccountIds();
+
+	/**
+	 * Method updates attempts and next attempt times of <var>entries</var> in one transaction
+	 */
+	void update(@Nonnull Collection<OutboxEntry> entries);
+
+	/**
+	 * Method removes entries for <var>messageIds</var> in one transaction
+	 */
+	void delete(@Nonnull Collection<String> messageIds);
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Message waiting in outbox to be sent, see {@link MessageOutbox}
+ */
+@Immutable
+public final class OutboxEntry {
+
+	@Nonnull
+	private final String messageId;
+
+	@Nonnull
+	private final String accountId;
+
+	@Nonnull
+	private final String chatId;
+
+	// number of failed attempts to send the message
+	private final int attempts;
+
+	// wall clock time
+	private final long nextAttemptTime;
+
+	OutboxEntry(@Nonnull String messageId, @Nonnull String accountId, @Nonnull String chatId, int attempts, long nextAttemptTime) {
+		this.messageId = messageId;
+		this.accountId = accountId;
+		this.chatId = chatId;
+		this.attempts = attempts;
+		this.nextAttemptTime = nextAttemptTime;
+	}
+
+	@Nonnull
+	static OutboxEntry newOutboxEntry(@Nonnull Message message) {
+		return new OutboxEntry(message.getId(), message.getEntity().getAccountId(), message.getChat().getEntityId(), 0, 0);
+	}
+
+	@Nonnull
+	public String getMessageId() {
+		return messageId;
+	}
+
+	@Nonnull
+	public String getAccountId() {
+		return accountId;
+	}
+
+	@Nonnull
+	public String getChatId() {
+		return chatId;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public long getNextAttemptTime() {
+		return nextAttemptTime;
+	}
+
+	@Nonnull
+	OutboxEntry failed(long nextAttemptTime) {
+		return new OutboxEntry(messageId, accountId, chatId, attempts + 1, nextAttemptTime);
+	}
+}
@@ -43,10 +43,14 @@ import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static com.google.common.collect.Iterables.getFirst;
-import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExec;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExecs;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbQuery;
 import static org.solovyev.android.messenger.entities.Entities.newEntityFromEntityId;
 import static org.solovyev.android.messenger.messages.MessageState.removed;
 
@@ -54,6 +58,9 @@ import static org.solovyev.android.messenger.messages.MessageState.removed;
 @Singleton
 public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao {
 
+	// SQLite limits number of host parameters in one statement (999 by default)
+	private static final int MAX_IDS_PER_QUERY = 500;
+
     /*
 	**********************************************************************
     *
@@ -178,6 +185,25 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		return rows != 0;
 	}
 
+	@Nonnull
+	@Override
+	public Set<String> changeReadStatus(@Nonnull Collection<String> messageIds, boolean read) {
+		final Set<String> result = new HashSet<String>(messageIds.size());
+
+		final List<String> ids = new ArrayList<String>(messageIds);
+		for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+			final List<String> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+			// caller holds persistence lock => nobody can change read statuses between query and update
+			final List<String> changedIds = doDbQuery(getSqliteOpenHelper(), new LoadMessageIdsByReadStatus(getContext(), getSqliteOpenHelper(), chunk, !read));
+			if (!changedIds.isEmpty()) {
+				doDbExec(getSqliteOpenHelper(), new ReadStatusesUpdater(changedIds, read));
+				result.addAll(changedIds);
+			}
+		}
+
+		return result;
+	}
+
 	@Override
 	public boolean changeMessageState(@Nonnull String messageId, @Nonnull MessageState state) {
 		final Long rows = doDbExec(getSqliteOpenHelper(), new StateUpdater(messageId, state));
@@ -507,6 +533,64 @@ public class SqliteMessageDao extends AbstractSQLiteHelper implements MessageDao
 		}
 	}
 
+	private static final class LoadMessageIdsByReadStatus extends AbstractDbQuery<List<String>> {
+
+		@Nonnull
+		private final List<String> messageIds;
+
+		private final boolean read;
+
+		private LoadMessageIdsByReadStatus(@Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper, @Nonnull List<String> messageIds, boolean read) {
+			super(context, sqliteOpenHelper);
+			this.messageIds = messageIds;
+			this.read = read;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			final String[] args = messageIds.toArray(new String[messageIds.size() + 1]);
+			args[messageIds.size()] = read ? "1" : "0";
+			return db.query("messages", new String[]{"id"}, newIdsInClause(messageIds.size()) + " and read = ?", args, null, null, null);
+		}
+
+		@Nonnull
+		@Override
+		public List<String> retrieveData(@Nonnull Cursor cursor) {
+			return new ListMapper<String>(StringIdMapper.getInstance()).convert(cursor);
+		}
+	}
+
+	private static final class ReadStatusesUpdater implements DbExec {
+
+		@Nonnull
+		private final List<String> messageIds;
+
+		private final boolean read;
+
+		private ReadStatusesUpdater(@Nonnull List<String> messageIds, boolean read) {
+			this.messageIds = messageIds;
+			this.read = read;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			final ContentValues values = new ContentValues();
+			values.put("read", read ? 1 : 0);
+			return db.update("messages", values, newIdsInClause(messageIds.size()), messageIds.toArray(new String[messageIds.size()]));
+		}
+	}
+
+	@Nonnull
+	private static String newIdsInClause(int count) {
+		final StringBuilder result = new StringBuilder("id in (");
+		for (int i = 0; i < count; i++) {
+			result.append(i == 0 ? "?" : ", ?");
+		}
+		result.append(")");
+		return result.toString();
+	}
+
 	private static class StateUpdater implements DbExec {
 
 		@Nonnull
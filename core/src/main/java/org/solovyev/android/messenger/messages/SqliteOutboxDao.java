@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import com.google.inject.Inject;
+import org.solovyev.android.db.AbstractDbQuery;
+import org.solovyev.android.db.AbstractSQLiteHelper;
+import org.solovyev.android.db.DbExec;
+
+import javax.annotation.Nonnull;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExec;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExecs;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbQuery;
+
+@Singleton
+public class SqliteOutboxDao extends AbstractSQLiteHelper implements OutboxDao {
+
+	@Inject
+	public SqliteOutboxDao(@Nonnull Application context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+		super(context, sqliteOpenHelper);
+	}
+
+	@Override
+	public void insert(@Nonnull OutboxEntry entry) {
+		doDbExec(getSqliteOpenHelper(), new InsertEntry(entry));
+	}
+
+	@Nonnull
+	@Override
+	public List<OutboxEntry> readEntries(@Nonnull String accountId) {
+		return doDbQuery(getSqliteOpenHelper(), new LoadEntries(getContext(), getSqliteOpenHelper(), accountId));
+	}
+
+	@Nonnull
+	@Override
+	public List<String> readAccountIds() {
+		return doDbQuery(getSqliteOpenHelper(), new LoadAccountIds(getContext(), getSqliteOpenHelper()));
+	}
+
+	@Override
+	public void update(@Nonnull Collection<OutboxEntry> entries) {
+		if (!entries.isEmpty()) {
+			final List<DbExec> execs = new ArrayList<DbExec>(entries.size());
+			for (OutboxEntry entry : entries) {
+				execs.add(new UpdateEntry(entry));
+			}
+			doDbExecs(getSqliteOpenHelper(), execs);
+		}
+	}
+
+	@Override
+	public void delete(@Nonnull Collection<String> messageIds) {
+		if (!messageIds.isEmpty()) {
+			doDbExec(getSqliteOpenHelper(), new DeleteEntries(messageIds));
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	private static final class InsertEntry implements DbExec {
+
+		@Nonnull
+		private final OutboxEntry entry;
+
+		private InsertEntry(@Nonnull OutboxEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			final ContentValues values = new ContentValues();
+			values.put("message_id", entry.getMessageId());
+			values.put("account_id", entry.getAccountId());
+			values.put("chat_id", entry.getChatId());
+			values.put("attempts", entry.getAttempts());
+			values.put("next_attempt_time", entry.getNextAttemptTime());
+			return db.insert("outbox", null, values);
+		}
+	}
+
+	private static final class UpdateEntry implements DbExec {
+
+		@Nonnull
+		private final OutboxEntry entry;
+
+		private UpdateEntry(@Nonnull OutboxEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			final ContentValues values = new ContentValues();
+			values.put("attempts", entry.getAttempts());
+			values.put("next_attempt_time", entry.getNextAttemptTime());
+			return db.update("outbox", values, "message_id = ?", new String[]{entry.getMessageId()});
+		}
+	}
+
+	private static final class DeleteEntries implements DbExec {
+
+		@Nonnull
+		private final Collection<String> messageIds;
+
+		private DeleteEntries(@Nonnull Collection<String> messageIds) {
+			this.messageIds = messageIds;
+		}
+
+		@Override
+		public long exec(@Nonnull SQLiteDatabase db) {
+			final StringBuilder where = new StringBuilder("message_id in (");
+			for (int i = 0; i < messageIds.size(); i++) {
+				where.append(i == 0 ? "?" : ", ?");
+			}
+			where.append(")");
+			return db.delete("outbox", where.toString(), messageIds.toArray(new String[messageIds.size()]));
+		}
+	}
+
+	private static final class LoadEntries extends AbstractDbQuery<List<OutboxEntry>> {
+
+		@Nonnull
+		private final String accountId;
+
+		private LoadEntries(@Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper, @Nonnull String accountId) {
+			super(context, sqliteOpenHelper);
+			this.accountId = accountId;
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery("select message_id, account_id, chat_id, attempts, next_attempt_time from outbox where account_id = ? order by rowid asc", new String[]{accountId});
+		}
+
+		@Nonnull
+		@Override
+		public List<OutboxEntry> retrieveData(@Nonnull Cursor cursor) {
+			final List<OutboxEntry> result = new ArrayList<OutboxEntry>(cursor.getCount());
+			while (cursor.moveToNext()) {
+				result.add(new OutboxEntry(cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getInt(3), cursor.getLong(4)));
+			}
+			return result;
+		}
+	}
+
+	private static final class LoadAccountIds extends AbstractDbQuery<List<String>> {
+
+		private LoadAccountIds(@Nonnull Context context, @Nonnull SQLiteOpenHelper sqliteOpenHelper) {
+			super(context, sqliteOpenHelper);
+		}
+
+		@Nonnull
+		@Override
+		public Cursor createCursor(@Nonnull SQLiteDatabase db) {
+			return db.rawQuery("select distinct account_id from outbox", null);
+		}
+
+		@Nonnull
+		@Override
+		public List<String> retrieveData(@Nonnull Cursor cursor) {
+			final List<String> result = new ArrayList<String>(cursor.getCount());
+			while (cursor.moveToNext()) {
+				result.add(cursor.getString(0));
+			}
+			return result;
+		}
+	}
+}
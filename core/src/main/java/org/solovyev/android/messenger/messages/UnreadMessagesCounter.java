@@ -32,18 +32,26 @@ import org.solovyev.common.listeners.AbstractJEventListener;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.GuardedBy;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
 
+/**
+ * Counts unread messages in total and by chats. Counters are changed under {@link #countersLock} (so total counter is
+ * always the sum of counters by chats) and are read without locking, changed chats are collected in a dirty set and
+ * events are dispatched in a background thread once per debounce window: only for chats which counters have been
+ * changed in this window.
+ */
 @Singleton
+@ThreadSafe
 public final class UnreadMessagesCounter {
 
     /*
@@ -92,74 +100,115 @@ public final class UnreadMessagesCounter {
 	@Nonnull
 	private final Object lock;
 
+	// guards changes of the counters, short-lived => unlike persistence lock can be taken for each event
+	@Nonnull
+	private final Object countersLock = new Object();
+
+	// changed only under countersLock
 	@Nonnull
 	private final AtomicInteger counter = new AtomicInteger(0);
 
-	@GuardedBy("counter")
+	// changed only under countersLock
+	@Nonnull
+	private final ConcurrentMap<Entity, AtomicInteger> countersByChats = new ConcurrentHashMap<Entity, AtomicInteger>();
+
+	// chats which counters have been changed since last dispatch
 	@Nonnull
-	private final Map<Entity, AtomicInteger> countersByChats = new HashMap<Entity, AtomicInteger>();
+	private final Set<Entity> dirtyChats = Collections.newSetFromMap(new ConcurrentHashMap<Entity, Boolean>());
 
 	@Nonnull
-	private final AtomicInteger runnablesCounter = new AtomicInteger(0);
+	private final AtomicBoolean shortDispatchScheduled = new AtomicBoolean(false);
 
 	@Nonnull
-	private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+	private final AtomicBoolean longDispatchScheduled = new AtomicBoolean(false);
+
+	// accessed only from executorService's thread
+	private int lastDispatchedCount = -1;
+
+	@Nonnull
+	private final ScheduledExecutorService executorService;
 
 	@Inject
 	public UnreadMessagesCounter(@Nonnull PersistenceLock lock) {
+		this(lock, Executors.newSingleThreadScheduledExecutor());
+	}
+
+	// for tests
+	UnreadMessagesCounter(@Nonnull PersistenceLock lock, @Nonnull ScheduledExecutorService executorService) {
 		this.lock = lock;
+		this.executorService = executorService;
 	}
 
 	public void init() {
-		updateCounters();
+		init(null);
+	}
+
+	/**
+	 * @param unreadChats initial unread messages counters (e.g. from cache snapshot), if null counters are loaded from persistence
+	 */
+	public void init(@Nullable Map<Entity, Integer> unreadChats) {
+		if (unreadChats != null) {
+			updateCounters(unreadChats);
+		} else {
+			updateCounters();
+		}
 
 		chatService.addListener(new ChatEventListener());
 		accountService.addListener(new AccountEventListener());
 	}
 
 	private void updateCounters() {
+		updateCounters(chatService.getUnreadChats());
+	}
+
+	private void updateCounters(@Nonnull Map<Entity, Integer> unreadChats) {
 		synchronized (lock) {
-			countersByChats.clear();
-			counter.set(0);
-
-			for (Map.Entry<Entity, Integer> entry : chatService.getUnreadChats().entrySet()) {
-				final Integer unreadInChat = entry.getValue();
-				if (unreadInChat > 0) {
-					final Entity chat = entry.getKey();
-					final Account account = accountService.getAccountByEntity(chat);
-					if (account.isEnabled()) {
-						countersByChats.put(chat, new AtomicInteger(unreadInChat));
-						counter.addAndGet(unreadInChat);
+			synchronized (countersLock) {
+				// old chats must be dispatched as their counters might be reset
+				dirtyChats.addAll(countersByChats.keySet());
+				countersByChats.clear();
+
+				int count = 0;
+				for (Map.Entry<Entity, Integer> entry : unreadChats.entrySet()) {
+					final Integer unreadInChat = entry.getValue();
+					if (unreadInChat > 0) {
+						final Entity chat = entry.getKey();
+						final Account account = accountService.getAccountByEntity(chat);
+						if (account.isEnabled()) {
+							countersByChats.put(chat, new AtomicInteger(unreadInChat));
+							dirtyChats.add(chat);
+							count += unreadInChat;
+						}
 					}
 				}
+				counter.set(count);
 			}
 
-			fireCounterChanged(false);
+			scheduleDispatch(false);
 		}
 	}
 
-	private void onMessageRead(@Nonnull Chat chat) {
-		changeCounter(chat, -1);
+	private void onMessagesRead(@Nonnull Chat chat, @Nonnull List<Message> messages) {
+		changeCounter(chat.getEntity(), -messages.size());
 		// many messages can be read at once (e.g. chat was opened => wait a little bit for them, too)
-		fireCounterChanged(false);
+		scheduleDispatch(false);
 	}
 
-	private void changeCounter(@Nonnull Chat chat, int increment) {
-		synchronized (counter) {
-			counter.addAndGet(increment);
-			if (counter.get() < 0) {
-				counter.set(0);
-			}
-
-			AtomicInteger counterByChat = countersByChats.get(chat.getEntity());
+	private void changeCounter(@Nonnull Entity chat, int increment) {
+		synchronized (countersLock) {
+			AtomicInteger counterByChat = countersByChats.get(chat);
 			if (counterByChat == null) {
 				counterByChat = new AtomicInteger();
-				countersByChats.put(chat.getEntity(), counterByChat);
+				countersByChats.put(chat, counterByChat);
 			}
 
-			counterByChat.addAndGet(increment);
-			if (counterByChat.get() < 0) {
-				counterByChat.set(0);
+			// counter can't be negative => total counter is changed only by the real change of chat counter
+			final int oldValue = counterByChat.get();
+			final int newValue = Math.max(0, oldValue + increment);
+			if (newValue != oldValue) {
+				counterByChat.set(newValue);
+				counter.addAndGet(newValue - oldValue);
+				dirtyChats.add(chat);
 			}
 		}
 	}
@@ -173,43 +222,43 @@ public final class UnreadMessagesCounter {
 		}
 
 		if (unread > 0) {
-			changeCounter(chat, unread);
-			fireCounterChanged(true);
+			changeCounter(chat.getEntity(), unread);
+			scheduleDispatch(true);
 		}
 	}
 
-	private void fireCounterChanged(boolean longDelay) {
-		final int runnableIndex = runnablesCounter.incrementAndGet();
-
-		// a little delay for performance improvement
-		executorService.schedule(new Runnable() {
-			@Override
-			public void run() {
-				if (runnableIndex == runnablesCounter.get()) {
-
-					final int unreadMessagesCount;
-					final Map<Entity, Integer> countersByChatsCopy = new HashMap<Entity, Integer>(countersByChats.size());
-					synchronized (counter) {
-						unreadMessagesCount = counter.get();
-
-						for (Map.Entry<Entity, AtomicInteger> entry : countersByChats.entrySet()) {
-							countersByChatsCopy.put(entry.getKey(), entry.getValue().get());
-						}
-					}
-
-					// no new runnables scheduled => can continue
-					messengerListeners.fireEvent(MessengerEventType.unread_messages_count_changed.newEvent(unreadMessagesCount));
+	private void scheduleDispatch(boolean longDelay) {
+		// a little delay for performance improvement: all changes done in the window are dispatched at once
+		final AtomicBoolean scheduled = longDelay ? longDispatchScheduled : shortDispatchScheduled;
+		if (scheduled.compareAndSet(false, true)) {
+			executorService.schedule(new Runnable() {
+				@Override
+				public void run() {
+					scheduled.set(false);
+					dispatch();
+				}
+			}, longDelay ? DELAY_LONG : DELAY_SHORT, TimeUnit.MILLISECONDS);
+		}
+	}
 
-					for (Map.Entry<Entity, Integer> entry : countersByChatsCopy.entrySet()) {
-						final Entity chatEntity = entry.getKey();
-						final Integer counter = entry.getValue();
+	/**
+	 * Method fires one event for each dirty chat and total counter event (if total counter has been changed).
+	 * Must be called from {@link #executorService}'s thread (or from tests).
+	 */
+	void dispatch() {
+		final int unreadMessagesCount = counter.get();
+		if (unreadMessagesCount != lastDispatchedCount) {
+			lastDispatchedCount = unreadMessagesCount;
+			messengerListeners.fireEvent(MessengerEventType.unread_messages_count_changed.newEvent(unreadMessagesCount));
+		}
 
-						// fire chat event
-						chatService.onUnreadMessagesCountChanged(chatEntity, counter);
-					}
-				}
-			}
-		}, longDelay ? DELAY_LONG : DELAY_SHORT, TimeUnit.MILLISECONDS);
+		final Iterator<Entity> it = dirtyChats.iterator();
+		while (it.hasNext()) {
+			final Entity chat = it.next();
+			// remove before reading the counter => all changes done after this point will be dispatched next time
+			it.remove();
+			chatService.onUnreadMessagesCountChanged(chat, getUnreadMessagesCountForChat(chat));
+		}
 	}
 
 	public int getUnreadMessagesCount() {
@@ -218,27 +267,37 @@ public final class UnreadMessagesCounter {
 
 	@Nullable
 	public Entity getUnreadChat() {
-		synchronized (counter) {
-			for (Map.Entry<Entity, AtomicInteger> entry : countersByChats.entrySet()) {
-				final AtomicInteger counterByChat = entry.getValue();
-				if (counterByChat != null && counterByChat.get() > 0) {
-					return entry.getKey();
-				}
+		for (Map.Entry<Entity, AtomicInteger> entry : countersByChats.entrySet()) {
+			if (entry.getValue().get() > 0) {
+				return entry.getKey();
 			}
 		}
 
 		return null;
 	}
 
-	public int getUnreadMessagesCountForChat(@Nonnull Entity chat) {
-		synchronized (counter) {
-			final AtomicInteger counterByChat = countersByChats.get(chat);
-			if (counterByChat == null) {
-				return 0;
-			} else {
-				return counterByChat.get();
+	/**
+	 * @return copy of unread messages counters by chats (only chats with unread messages are returned)
+	 */
+	@Nonnull
+	public Map<Entity, Integer> getUnreadChats() {
+		final Map<Entity, Integer> result = new HashMap<Entity, Integer>();
+		for (Map.Entry<Entity, AtomicInteger> entry : countersByChats.entrySet()) {
+			final int counterByChat = entry.getValue().get();
+			if (counterByChat > 0) {
+				result.put(entry.getKey(), counterByChat);
 			}
 		}
+		return result;
+	}
+
+	public int getUnreadMessagesCountForChat(@Nonnull Entity chat) {
+		final AtomicInteger counterByChat = countersByChats.get(chat);
+		if (counterByChat == null) {
+			return 0;
+		} else {
+			return counterByChat.get();
+		}
 	}
 
 	private final class ChatEventListener extends AbstractJEventListener<ChatEvent> {
@@ -250,8 +309,8 @@ public final class UnreadMessagesCounter {
 		@Override
 		public void onEvent(@Nonnull ChatEvent event) {
 			switch (event.getType()) {
-				case message_read:
-					onMessageRead(event.getChat());
+				case messages_read:
+					onMessagesRead(event.getChat(), event.getDataAsMessages());
 					break;
 				case message_added:
 					onMessageAdded(event.getChat(), asList(event.getDataAsMessage()));
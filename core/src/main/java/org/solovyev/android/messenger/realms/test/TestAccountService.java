@@ -337,4 +337,10 @@ public class TestAccountService implements AccountUserService, AccountChatServic
 	public boolean markMessageRead(@Nonnull Message message) throws AccountConnectionException {
 		return true;
 	}
+
+	@Nonnull
+	@Override
+	public Collection<Message> markMessagesRead(@Nonnull Collection<Message> messages) throws AccountConnectionException {
+		return messages;
+	}
 }
@@ -20,6 +20,7 @@ import android.util.Log;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.joda.time.DateTime;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountEvent;
@@ -30,19 +31,40 @@ import org.solovyev.common.listeners.JEventListener;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.EnumSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.System.currentTimeMillis;
 
+/**
+ * Synchronization of different accounts is done in parallel on a bounded pool of workers (with additional limit of
+ * simultaneously synchronized accounts of the same realm), tasks of one account are done sequentially in order of
+ * {@link SyncTask} declaration (user_contacts -> user_chats -> chat_messages).
+ */
 @Singleton
 public class DefaultSyncService implements SyncService {
 
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	private static final String TAG_TIME = App.newSubTag(App.TAG_TIME, "ServiceSync");
+
+	// max number of accounts synchronized simultaneously
+	private static final int MAX_PARALLEL_ACCOUNTS = 4;
+
+	// max number of accounts of the same realm synchronized simultaneously (e.g. to avoid hitting the rate limits of the server)
+	private static final int MAX_PARALLEL_ACCOUNTS_PER_REALM = 2;
+
     /*
 	**********************************************************************
     *
@@ -63,15 +85,34 @@ public class DefaultSyncService implements SyncService {
     **********************************************************************
     */
 
+	// tasks started by sync(SyncTask, Runnable) (for all accounts)
+	@GuardedBy("runningTasks")
 	@Nonnull
 	private final Set<SyncTask> runningTasks = EnumSet.noneOf(SyncTask.class);
 
-	@GuardedBy("syncAllTaskRunning")
+	// tasks started by 'all synchronization task': key: task, value: number of accounts for which task is running
+	@GuardedBy("runningTasks")
+	@Nonnull
+	private final Map<SyncTask, Integer> runningAccountTasks = new EnumMap<SyncTask, Integer>(SyncTask.class);
+
+	// not null if 'all synchronization task' is running, counted down when it is finished
+	@GuardedBy("syncAllLock")
+	@Nullable
+	private CountDownLatch syncAllLatch;
+
 	@Nonnull
-	private final AtomicBoolean syncAllTaskRunning = new AtomicBoolean(false);
+	private final Object syncAllLock = new Object();
 
 	@Nonnull
-	private final Executor executor = Executors.newSingleThreadExecutor();
+	private final AtomicInteger threadsCounter = new AtomicInteger();
+
+	@Nonnull
+	private final Executor executor = Executors.newFixedThreadPool(MAX_PARALLEL_ACCOUNTS, new ThreadFactory() {
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			return new Thread(r, "Sync thread #" + threadsCounter.getAndIncrement());
+		}
+	});
 
 	@Nonnull
 	private final JEventListener<AccountEvent> realmEventListener = new RealmEventListener();
@@ -88,8 +129,8 @@ public class DefaultSyncService implements SyncService {
 
 	@Override
 	public boolean isSyncAllTaskRunning() {
-		synchronized (syncAllTaskRunning) {
-			return syncAllTaskRunning.get();
+		synchronized (syncAllLock) {
+			return syncAllLatch != null;
 		}
 	}
 
@@ -101,15 +142,17 @@ public class DefaultSyncService implements SyncService {
 	 * @throws SyncAllTaskIsAlreadyRunning thrown when task if 'all synchronization task' is already running
 	 */
 	private void startSyncAllTask(@Nonnull Collection<Account> accounts, boolean force) throws SyncAllTaskIsAlreadyRunning {
-		synchronized (syncAllTaskRunning) {
-			if (syncAllTaskRunning.get()) {
+		final CountDownLatch latch;
+		synchronized (syncAllLock) {
+			if (syncAllLatch != null) {
 				throw new SyncAllTaskIsAlreadyRunning();
 			} else {
-				syncAllTaskRunning.set(true);
+				latch = new CountDownLatch(1);
+				syncAllLatch = latch;
 			}
 		}
 
-		executor.execute(new SyncRunnable(force, accounts));
+		new SyncAllRun(force, accounts, latch).start();
 	}
 
 	@Override
@@ -126,7 +169,7 @@ public class DefaultSyncService implements SyncService {
 
 	private void checkRunningTask(SyncTask syncTask) throws TaskIsAlreadyRunningException {
 		synchronized (runningTasks) {
-			if (runningTasks.contains(syncTask)) {
+			if (runningTasks.contains(syncTask) || runningAccountTasks.containsKey(syncTask)) {
 				throw new TaskIsAlreadyRunningException(syncTask);
 			}
 			runningTasks.add(syncTask);
@@ -135,14 +178,44 @@ public class DefaultSyncService implements SyncService {
 
 	@Override
 	public void waitWhileSyncFinished() {
-		while (this.isSyncAllTaskRunning()) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
+		final CountDownLatch latch;
+		synchronized (syncAllLock) {
+			latch = syncAllLatch;
+		}
+
+		if (latch != null) {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					latch.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
 			}
 		}
 	}
 
+	@Override
+	public boolean waitWhileSyncFinished(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+		final CountDownLatch latch;
+		synchronized (syncAllLock) {
+			latch = syncAllLatch;
+		}
+
+		return latch == null || latch.await(timeout, unit);
+	}
+
+	@Nonnull
+	@Override
+	public DateTime getNextSyncDate(@Nonnull Account account, @Nonnull SyncTask syncTask) {
+		return new DateTime(syncTask.getNextRunTime(account));
+	}
+
     /*
 	**********************************************************************
     *
@@ -210,56 +283,166 @@ public class DefaultSyncService implements SyncService {
 		}
 	}
 
-	private class SyncRunnable implements Runnable {
+	/**
+	 * @return true if task can be run for account (same task is not started for all accounts by {@link #sync(SyncTask, Runnable)})
+	 */
+	private boolean tryStartAccountTask(@Nonnull SyncTask syncTask) {
+		synchronized (runningTasks) {
+			if (runningTasks.contains(syncTask)) {
+				return false;
+			}
 
-		private final String TAG_TIME = App.newSubTag(App.TAG_TIME, "ServiceSync");
+			final Integer count = runningAccountTasks.get(syncTask);
+			runningAccountTasks.put(syncTask, count == null ? 1 : count + 1);
+			return true;
+		}
+	}
+
+	private void finishAccountTask(@Nonnull SyncTask syncTask) {
+		synchronized (runningTasks) {
+			final Integer count = runningAccountTasks.get(syncTask);
+			if (count == null || count <= 1) {
+				runningAccountTasks.remove(syncTask);
+			} else {
+				runningAccountTasks.put(syncTask, count - 1);
+			}
+		}
+	}
+
+	/**
+	 * One run of 'all synchronization task': accounts are submitted to the pool respecting per-realm limits, latch is
+	 * counted down after the last account is synchronized
+	 */
+	private final class SyncAllRun {
 
 		private final boolean force;
 
 		@Nonnull
-		private final Collection<Account> accounts;
+		private final CountDownLatch latch;
+
+		@GuardedBy("this")
+		@Nonnull
+		private final List<Account> pendingAccounts;
+
+		// key: realm id, value: number of accounts of the realm being synchronized
+		@GuardedBy("this")
+		@Nonnull
+		private final Map<String, Integer> runningByRealms = new HashMap<String, Integer>();
 
-		public SyncRunnable(boolean force, @Nonnull Collection<Account> accounts) {
+		@GuardedBy("this")
+		private int remaining;
+
+		private final long startTime = currentTimeMillis();
+
+		private SyncAllRun(boolean force, @Nonnull Collection<Account> accounts, @Nonnull CountDownLatch latch) {
 			this.force = force;
-			this.accounts = accounts;
+			this.latch = latch;
+			this.pendingAccounts = new LinkedList<Account>(accounts);
+			this.remaining = accounts.size();
 		}
 
-		@Override
-		public void run() {
-			try {
+		void start() {
+			final boolean empty;
+			synchronized (this) {
+				empty = remaining == 0;
+			}
 
-				for (Account account : accounts) {
-					final SyncData syncData = new SyncDataImpl(account.getId());
+			if (empty) {
+				finish();
+			} else {
+				submitPendingAccounts();
+			}
+		}
 
-					for (SyncTask syncTask : SyncTask.values()) {
+		private void submitPendingAccounts() {
+			final List<Account> accounts = new ArrayList<Account>();
+
+			synchronized (this) {
+				final Iterator<Account> it = pendingAccounts.iterator();
+				while (it.hasNext()) {
+					final Account account = it.next();
+					final String realmId = account.getRealm().getId();
+					final Integer running = runningByRealms.get(realmId);
+					if (running == null || running < MAX_PARALLEL_ACCOUNTS_PER_REALM) {
+						runningByRealms.put(realmId, running == null ? 1 : running + 1);
+						accounts.add(account);
+						it.remove();
+					}
+				}
+			}
+
+			for (final Account account : accounts) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							syncAccount(account);
+						} finally {
+							onAccountSynced(account);
+						}
+					}
+				});
+			}
+		}
+
+		private void syncAccount(@Nonnull Account account) {
+			final SyncData syncData = new SyncDataImpl(account.getId());
+
+			for (SyncTask syncTask : SyncTask.values()) {
+				try {
+					if (tryStartAccountTask(syncTask)) {
 						try {
-							try {
-								checkRunningTask(syncTask);
-								if (force || syncTask.isTime(syncData)) {
-									final long start = currentTimeMillis();
-									syncTask.doTask(syncData);
-									final long end = currentTimeMillis();
-									final long duration = end - start;
-									if (duration > 1000) {
-										Log.e(TAG_TIME, "Work time is too long for account: " + account + " and task: " + syncTask + ". Time: " + duration + "ms");
-									}
+							if (force || syncTask.isTime(syncData)) {
+								final long start = currentTimeMillis();
+								syncTask.doTask(syncData);
+								final long end = currentTimeMillis();
+								final long duration = end - start;
+								if (duration > 1000) {
+									Log.e(TAG_TIME, "Work time is too long for account: " + account + " and task: " + syncTask + ". Time: " + duration + "ms");
 								}
-							} finally {
-								releaseRunningTask(syncTask);
 							}
-						} catch (TaskIsAlreadyRunningException e) {
-							// ok, task is already running => start another task
-						} catch (RuntimeException e) {
-							App.getExceptionHandler().handleException(e);
+						} finally {
+							finishAccountTask(syncTask);
 						}
 					}
+					// else: task is already running for all accounts => start another task
+				} catch (RuntimeException e) {
+					App.getExceptionHandler().handleException(e);
 				}
+			}
+		}
+
+		private void onAccountSynced(@Nonnull Account account) {
+			final boolean finished;
+			synchronized (this) {
+				final String realmId = account.getRealm().getId();
+				final Integer running = runningByRealms.get(realmId);
+				if (running == null || running <= 1) {
+					runningByRealms.remove(realmId);
+				} else {
+					runningByRealms.put(realmId, running - 1);
+				}
+
+				remaining--;
+				finished = remaining == 0;
+			}
+
+			if (finished) {
+				finish();
+			} else {
+				submitPendingAccounts();
+			}
+		}
+
+		private void finish() {
+			Log.d(TAG_TIME, "Synchronization of all accounts done in " + (currentTimeMillis() - startTime) + " ms");
 
-			} finally {
-				synchronized (syncAllTaskRunning) {
-					syncAllTaskRunning.set(false);
+			synchronized (syncAllLock) {
+				if (syncAllLatch == latch) {
+					syncAllLatch = null;
 				}
 			}
+			latch.countDown();
 		}
 	}
 
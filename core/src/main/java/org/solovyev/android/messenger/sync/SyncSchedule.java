@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.sync;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Schedules of all {@link SyncTask}s of one account. Stored as JSON in accounts table.
+ */
+@Immutable
+public final class SyncSchedule {
+
+	@Nonnull
+	private static final SyncSchedule EMPTY = new SyncSchedule(new EnumMap<SyncTask, SyncTaskSchedule>(SyncTask.class));
+
+	@Nonnull
+	private final Map<SyncTask, SyncTaskSchedule> schedules;
+
+	private SyncSchedule(@Nonnull EnumMap<SyncTask, SyncTaskSchedule> schedules) {
+		this.schedules = unmodifiableMap(schedules);
+	}
+
+	@Nonnull
+	public static SyncSchedule newEmptySchedule() {
+		return EMPTY;
+	}
+
+	/**
+	 * @return schedule of the task, null if task has never been run
+	 */
+	@Nullable
+	public SyncTaskSchedule get(@Nonnull SyncTask task) {
+		return schedules.get(task);
+	}
+
+	@Nonnull
+	public SyncSchedule with(@Nonnull SyncTask task, @Nonnull SyncTaskSchedule schedule) {
+		final EnumMap<SyncTask, SyncTaskSchedule> result = new EnumMap<SyncTask, SyncTaskSchedule>(SyncTask.class);
+		result.putAll(schedules);
+		result.put(task, schedule);
+		return new SyncSchedule(result);
+	}
+
+	@Nonnull
+	public String toJson() {
+		final JsonObject result = new JsonObject();
+		for (Map.Entry<SyncTask, SyncTaskSchedule> entry : schedules.entrySet()) {
+			final SyncTaskSchedule schedule = entry.getValue();
+			final JsonObject json = new JsonObject();
+			json.addProperty("last", schedule.getLastRunTime());
+			json.addProperty("next", schedule.getNextRunTime());
+			json.addProperty("interval", schedule.getInterval());
+			json.addProperty("failures", schedule.getFailures());
+			json.addProperty("fingerprint", schedule.getFingerprint());
+			result.add(entry.getKey().name(), json);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param json JSON produced by {@link #toJson()}
+	 * @return schedule, empty schedule if <var>json</var> is null or can't be parsed
+	 */
+	@Nonnull
+	public static SyncSchedule fromJson(@Nullable String json) {
+		if (json == null) {
+			return EMPTY;
+		}
+
+		try {
+			final EnumMap<SyncTask, SyncTaskSchedule> result = new EnumMap<SyncTask, SyncTaskSchedule>(SyncTask.class);
+			final JsonObject root = new JsonParser().parse(json).getAsJsonObject();
+			for (Map.Entry<String, JsonElement> entry : root.entrySet()) {
+				final SyncTask task = findTask(entry.getKey());
+				if (task != null) {
+					final JsonObject schedule = entry.getValue().getAsJsonObject();
+					result.put(task, new SyncTaskSchedule(schedule.get("last").getAsLong(),
+							schedule.get("next").getAsLong(),
+							schedule.get("interval").getAsLong(),
+							schedule.get("failures").getAsInt(),
+							schedule.get("fingerprint").getAsLong()));
+				}
+			}
+			return new SyncSchedule(result);
+		} catch (RuntimeException e) {
+			// JsonParseException or ClassCastException/NullPointerException for JSON of unexpected structure
+			return EMPTY;
+		}
+	}
+
+	@Nullable
+	private static SyncTask findTask(@Nonnull String name) {
+		for (SyncTask task : SyncTask.values()) {
+			if (task.name().equals(name)) {
+				return task;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "SyncSchedule" + schedules;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.sync;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Adaptive scheduling of {@link SyncTask}s:
+ * <ul>
+ * <li>interval between runs starts from {@link SyncTask#getMinInterval()} and is doubled (up to
+ * {@link SyncTask#getMaxInterval()}) every time task returns the same data as in the previous run</li>
+ * <li>tasks covered by push connection (see {@link SyncTask#isCoveredByPush()}) are run only once per max interval
+ * while push connection is alive</li>
+ * <li>failed task is retried with exponential backoff with jitter</li>
+ * </ul>
+ * All methods are pure functions of their arguments.
+ */
+final class SyncScheduler {
+
+	static final long MIN_BACKOFF = MINUTES.toMillis(1);
+	static final long MAX_BACKOFF = HOURS.toMillis(6);
+
+	// jitter is +-20% of backoff
+	private static final double JITTER = 0.2;
+
+	// interval of the task with zero min interval after first run without changes
+	private static final long MIN_GROWN_INTERVAL = MINUTES.toMillis(1);
+
+	private SyncScheduler() {
+		throw new AssertionError();
+	}
+
+	static boolean isTime(@Nonnull SyncTask task, @Nullable SyncTaskSchedule schedule, long now, boolean pushConnected) {
+		if (schedule == null) {
+			// never run
+			return true;
+		}
+
+		if (schedule.getFailures() > 0) {
+			// backoff
+			return now >= schedule.getNextRunTime();
+		}
+
+		if (pushConnected && task.isCoveredByPush()) {
+			// data is delivered by push connection => only safety check once per max interval
+			return now >= schedule.getLastRunTime() + task.getMaxInterval();
+		}
+
+		return now >= schedule.getNextRunTime();
+	}
+
+	static long getNextRunTime(@Nonnull SyncTask task, @Nullable SyncTaskSchedule schedule, long now, boolean pushConnected) {
+		if (schedule == null) {
+			return now;
+		}
+
+		if (schedule.getFailures() == 0 && pushConnected && task.isCoveredByPush()) {
+			return schedule.getLastRunTime() + task.getMaxInterval();
+		}
+
+		return schedule.getNextRunTime();
+	}
+
+	@Nonnull
+	static SyncTaskSchedule onSuccess(@Nonnull SyncTask task, @Nullable SyncTaskSchedule schedule, long fingerprint, long now) {
+		final boolean changed = schedule == null || fingerprint == SyncTaskSchedule.NO_FINGERPRINT || fingerprint != schedule.getFingerprint();
+
+		final long interval;
+		if (changed) {
+			interval = task.getMinInterval();
+		} else {
+			final long grownInterval = Math.max(schedule.getInterval() * 2, MIN_GROWN_INTERVAL);
+			interval = Math.min(Math.max(grownInterval, task.getMinInterval()), task.getMaxInterval());
+		}
+
+		return new SyncTaskSchedule(now, now + interval, interval, 0, fingerprint);
+	}
+
+	@Nonnull
+	static SyncTaskSchedule onFailure(@Nonnull SyncTask task, @Nullable SyncTaskSchedule schedule, long now, @Nonnull Random random) {
+		final int failures = schedule == null ? 1 : schedule.getFailures() + 1;
+
+		final long backoff = getBackoff(failures);
+		final long jitter = (long) (backoff * JITTER * (2 * random.nextDouble() - 1));
+		final long nextRunTime = now + backoff + jitter;
+
+		if (schedule == null) {
+			return new SyncTaskSchedule(0, nextRunTime, task.getMinInterval(), failures, SyncTaskSchedule.NO_FINGERPRINT);
+		} else {
+			return new SyncTaskSchedule(schedule.getLastRunTime(), nextRunTime, schedule.getInterval(), failures, schedule.getFingerprint());
+		}
+	}
+
+	static long getBackoff(int failures) {
+		// 1, 2, 4, 8... minutes
+		final int shift = Math.min(failures - 1, 20);
+		return Math.min(MIN_BACKOFF << shift, MAX_BACKOFF);
+	}
+}
@@ -16,10 +16,12 @@
 
 package org.solovyev.android.messenger.sync;
 
+import org.joda.time.DateTime;
 import org.solovyev.android.messenger.accounts.Account;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
 
 public interface SyncService {
 
@@ -48,5 +50,23 @@ public interface SyncService {
 
 	void sync(@Nonnull SyncTask syncTask, @Nullable Runnable afterSyncCallback) throws TaskIsAlreadyRunningException;
 
+	/**
+	 * Method blocks current thread until 'all synchronization task' is finished (returns immediately if task is not running)
+	 */
 	void waitWhileSyncFinished();
+
+	/**
+	 * Same as {@link #waitWhileSyncFinished()} but waits not more than <var>timeout</var>
+	 *
+	 * @return true if 'all synchronization task' is finished (or was not running), false if timeout elapsed
+	 * @throws InterruptedException if current thread was interrupted while waiting
+	 */
+	boolean waitWhileSyncFinished(long timeout, @Nonnull TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * @return date of the next planned run of <var>syncTask</var> for <var>account</var> (might be in the past if task
+	 * is overdue)
+	 */
+	@Nonnull
+	DateTime getNextSyncDate(@Nonnull Account account, @Nonnull SyncTask syncTask);
 }
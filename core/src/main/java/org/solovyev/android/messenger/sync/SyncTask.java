@@ -17,120 +17,176 @@
 package org.solovyev.android.messenger.sync;
 
 import android.util.Log;
-import org.joda.time.DateTime;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.accounts.AccountService;
-import org.solovyev.android.messenger.accounts.UnsupportedAccountException;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
 
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.solovyev.android.messenger.App.*;
+import static org.solovyev.android.messenger.sync.SyncTaskSchedule.NO_FINGERPRINT;
 
+/**
+ * Synchronization tasks. Each task is scheduled by {@link SyncScheduler}: see {@link #getMinInterval()},
+ * {@link #getMaxInterval()} and {@link #isCoveredByPush()}.
+ */
 public enum SyncTask {
 
-	user_contacts {
+	user_contacts(HOURS.toMillis(1), DAYS.toMillis(1), false) {
 		@Override
-		public boolean isTime(@Nonnull SyncData syncData) {
-			boolean result = false;
-
-			final Account account = getAccountService().getAccountById(syncData.getAccountId());
-			final DateTime lastContactsSyncDate = account.getSyncData().getLastContactsSyncDate();
-			if (lastContactsSyncDate == null || lastContactsSyncDate.plusHours(1).isBefore(DateTime.now())) {
-				result = true;
-			}
-
-			return result;
-		}
-
-		@Override
-		protected void doTask0(@Nonnull SyncData syncData) throws AccountException {
-			getUserService().syncContacts(getAccountService().getAccountById(syncData.getAccountId()));
+		protected long doTask0(@Nonnull Account account) throws AccountException {
+			return getUsersFingerprint(getUserService().syncContacts(account));
 		}
 	},
 
-	user_icons {
-		@Override
-		public boolean isTime(@Nonnull SyncData syncData) {
-			boolean result = false;
-
-			final Account account = getAccountService().getAccountById(syncData.getAccountId());
-			final DateTime lastUserIconsSyncDate = account.getSyncData().getLastUserIconsSyncData();
-			if (lastUserIconsSyncDate == null || lastUserIconsSyncDate.plusDays(1).isBefore(DateTime.now())) {
-				result = true;
-			}
-
-			return result;
-		}
-
+	user_icons(DAYS.toMillis(1), DAYS.toMillis(7), false) {
 		@Override
-		protected void doTask0(@Nonnull SyncData syncData) throws UnsupportedAccountException {
-			final Account account = getAccountService().getAccountById(syncData.getAccountId());
+		protected long doTask0(@Nonnull Account account) {
 			getUserService().getIconsService().fetchUserAndContactsIcons(account);
+			return NO_FINGERPRINT;
 		}
 	},
 
-	user_contacts_statuses {
+	// statuses are delivered by connection (if any) => while it is running task has to be run only rarely
+	user_contacts_statuses(0, MINUTES.toMillis(30), true) {
 		@Override
-		public boolean isTime(@Nonnull SyncData syncData) {
-			return true;
-		}
-
-		@Override
-		protected void doTask0(@Nonnull SyncData syncData) throws AccountException {
-			final Account account = getAccountService().getAccountById(syncData.getAccountId());
+		protected long doTask0(@Nonnull Account account) throws AccountException {
 			getUserService().syncContactStatuses(account);
+			return NO_FINGERPRINT;
 		}
 	},
 
-	user_chats {
-		@Override
-		public boolean isTime(@Nonnull SyncData syncData) {
-			return isTimeForChatsUpdate(syncData);
-		}
-
+	user_chats(HOURS.toMillis(1), DAYS.toMillis(1), false) {
 		@Override
-		protected void doTask0(@Nonnull SyncData syncData) throws AccountException {
-			getUserService().syncChats(getAccountService().getAccountById(syncData.getAccountId()));
+		protected long doTask0(@Nonnull Account account) throws AccountException {
+			return getChatsFingerprint(getUserService().syncChats(account));
 		}
 	},
 
-	chat_messages {
+	// new messages are delivered by connection (if any) => while it is running task has to be run only rarely
+	chat_messages(HOURS.toMillis(1), DAYS.toMillis(1), true) {
 		@Override
-		public boolean isTime(@Nonnull SyncData syncData) {
-			return isTimeForChatsUpdate(syncData);
-		}
-
-		@Override
-		protected void doTask0(@Nonnull SyncData syncData) throws AccountException {
-			getChatService().syncMessages(getAccountService().getAccountById(syncData.getAccountId()));
+		protected long doTask0(@Nonnull Account account) throws AccountException {
+			return getMessagesFingerprint(getChatService().syncMessages(account));
 		}
 	};
 
 	private static final String TAG = newTag("SyncTask");
 
+	// schedule of all tasks of the account is stored in one field => updates must be serialized
+	@Nonnull
+	private static final Object scheduleLock = new Object();
+
+	@Nonnull
+	private static final Random random = new Random();
+
+	// ms
+	private final long minInterval;
+
+	// ms
+	private final long maxInterval;
+
+	private final boolean coveredByPush;
+
+	SyncTask(long minInterval, long maxInterval, boolean coveredByPush) {
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		this.coveredByPush = coveredByPush;
+	}
+
 	@Nonnull
 	private static AccountService getAccountService() {
 		return App.getAccountService();
 	}
 
-	public abstract boolean isTime(@Nonnull SyncData syncData);
+	/**
+	 * @return interval between runs if data has changed in the last run, ms
+	 */
+	public long getMinInterval() {
+		return minInterval;
+	}
+
+	/**
+	 * @return max interval between runs (reached if data is not changed run after run), ms
+	 */
+	public long getMaxInterval() {
+		return maxInterval;
+	}
+
+	/**
+	 * @return true if data synchronized by this task is also delivered by account connection
+	 */
+	public boolean isCoveredByPush() {
+		return coveredByPush;
+	}
+
+	public boolean isTime(@Nonnull SyncData syncData) {
+		final Account account = getAccountService().getAccountById(syncData.getAccountId());
+		final SyncTaskSchedule schedule = account.getSyncData().getSchedule().get(this);
+		return SyncScheduler.isTime(this, schedule, currentTimeMillis(), isPushConnected(account));
+	}
+
+	/**
+	 * @return time of the next planned run of the task for the <var>account</var>, ms
+	 */
+	public long getNextRunTime(@Nonnull Account account) {
+		final SyncTaskSchedule schedule = account.getSyncData().getSchedule().get(this);
+		return SyncScheduler.getNextRunTime(this, schedule, currentTimeMillis(), isPushConnected(account));
+	}
 
 	public final void doTask(@Nonnull SyncData syncData) {
 		logTaskStarted(syncData);
 
 		try {
-			doTask0(syncData);
+			final long fingerprint = doTask0(getAccountService().getAccountById(syncData.getAccountId()));
+			updateSchedule(syncData, true, fingerprint);
 		} catch (AccountException e) {
 			// ok, user is not logged in
+			updateSchedule(syncData, false, NO_FINGERPRINT);
 			getExceptionHandler().handleException(e);
 		} finally {
 			logTaskFinished(syncData);
 		}
 	}
 
-	protected abstract void doTask0(@Nonnull SyncData syncData) throws AccountException;
+	/**
+	 * @return fingerprint of the synchronized data or {@link SyncTaskSchedule#NO_FINGERPRINT} if task can't tell whether
+	 * data has been changed
+	 */
+	protected abstract long doTask0(@Nonnull Account account) throws AccountException;
+
+	private void updateSchedule(@Nonnull SyncData syncData, boolean success, long fingerprint) {
+		synchronized (scheduleLock) {
+			// account might be changed during the task => reload it
+			final Account account = getAccountService().getAccountById(syncData.getAccountId());
+			final SyncSchedule schedule = account.getSyncData().getSchedule();
+			final SyncTaskSchedule taskSchedule = schedule.get(this);
+
+			final long now = currentTimeMillis();
+			final SyncTaskSchedule newTaskSchedule;
+			if (success) {
+				newTaskSchedule = SyncScheduler.onSuccess(this, taskSchedule, fingerprint, now);
+			} else {
+				newTaskSchedule = SyncScheduler.onFailure(this, taskSchedule, now, random);
+			}
+			Log.d(TAG, "Sync task " + this + " for account: " + account.getId() + " is scheduled: " + newTaskSchedule);
+
+			getAccountService().saveAccountSyncData(account.updateSyncSchedule(schedule.with(this, newTaskSchedule)));
+		}
+	}
 
 	protected void logTaskStarted(@Nonnull SyncData syncData) {
 		Log.i(TAG, "Sync task started: " + this + " for account: " + syncData.getAccountId());
@@ -140,15 +196,70 @@ public enum SyncTask {
 		Log.i(TAG, "Sync task finished: " + this + " for account: " + syncData.getAccountId());
 	}
 
-	private static boolean isTimeForChatsUpdate(@Nonnull SyncData syncData) {
-		boolean result = false;
+	private static boolean isPushConnected(@Nonnull Account account) {
+		return getAccountConnectionsService().isConnected(account);
+	}
 
-		final Account account = getAccountService().getAccountById(syncData.getAccountId());
-		final DateTime lastChatsSyncDate = account.getSyncData().getLastChatsSyncDate();
-		if (lastChatsSyncDate == null || lastChatsSyncDate.plusHours(1).isBefore(DateTime.now())) {
-			result = true;
+	/*
+	**********************************************************************
+	*
+	*                           FINGERPRINTS
+	*
+	**********************************************************************
+	*/
+
+	// NOTE: fingerprints don't depend on the order of the elements
+
+	private static long getUsersFingerprint(@Nonnull List<User> users) {
+		long result = users.size();
+		for (User user : users) {
+			result += mix(31L * user.getEntity().getEntityId().hashCode() + getPropertiesHash(user.getPropertiesCollection()));
 		}
+		return toFingerprint(result);
+	}
 
+	private static long getChatsFingerprint(@Nonnull List<Chat> chats) {
+		long result = chats.size();
+		for (Chat chat : chats) {
+			result += mix(31L * chat.getEntity().getEntityId().hashCode() + getPropertiesHash(chat.getPropertiesCollection()));
+		}
+		return toFingerprint(result);
+	}
+
+	private static long getMessagesFingerprint(@Nonnull List<Message> messages) {
+		long result = messages.size();
+		for (Message message : messages) {
+			long hash = message.getEntity().getEntityId().hashCode();
+			hash = 31L * hash + message.getState().ordinal();
+			hash = 31L * hash + (message.isRead() ? 1 : 0);
+			result += mix(hash);
+		}
+		return toFingerprint(result);
+	}
+
+	private static long getPropertiesHash(@Nonnull Collection<AProperty> properties) {
+		long result = 0;
+		for (AProperty property : properties) {
+			result += mix(31L * property.getName().hashCode() + hash(property.getValue()));
+		}
 		return result;
 	}
+
+	private static int hash(@Nullable String s) {
+		return s == null ? 0 : s.hashCode();
+	}
+
+	private static long mix(long h) {
+		// finalizer of MurmurHash3
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long toFingerprint(long hash) {
+		return hash == NO_FINGERPRINT ? 1 : hash;
+	}
 }
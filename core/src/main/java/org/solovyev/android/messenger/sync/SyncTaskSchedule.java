@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.sync;
+
+import org.joda.time.DateTime;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * State of {@link SyncScheduler} for one task of one account
+ */
+@Immutable
+public final class SyncTaskSchedule {
+
+	// value of fingerprint if task can't tell whether data has been changed
+	static final long NO_FINGERPRINT = 0;
+
+	// time of the last successful run, ms
+	private final long lastRunTime;
+
+	// time of the next planned run, ms
+	private final long nextRunTime;
+
+	// current interval between successful runs, ms
+	private final long interval;
+
+	// number of failures in a row
+	private final int failures;
+
+	// fingerprint of the data received in the last successful run
+	private final long fingerprint;
+
+	SyncTaskSchedule(long lastRunTime, long nextRunTime, long interval, int failures, long fingerprint) {
+		this.lastRunTime = lastRunTime;
+		this.nextRunTime = nextRunTime;
+		this.interval = interval;
+		this.failures = failures;
+		this.fingerprint = fingerprint;
+	}
+
+	public long getLastRunTime() {
+		return lastRunTime;
+	}
+
+	public long getNextRunTime() {
+		return nextRunTime;
+	}
+
+	@Nonnull
+	public DateTime getNextRunDate() {
+		return new DateTime(nextRunTime);
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public String toString() {
+		return "SyncTaskSchedule{" +
+				"nextRunDate=" + getNextRunDate() +
+				", interval=" + interval +
+				", failures=" + failures +
+				'}';
+	}
+}
@@ -21,6 +21,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.solovyev.android.messenger.CoalescingEventListeners;
 import org.solovyev.android.messenger.EntityAwareByIdFinder;
 import org.solovyev.android.messenger.MergeDaoResult;
 import org.solovyev.android.messenger.accounts.Account;
@@ -36,8 +37,6 @@ import org.solovyev.android.messenger.messages.UnreadMessagesCounter;
 import org.solovyev.common.collections.multimap.ThreadSafeMultimap;
 import org.solovyev.common.listeners.AbstractJEventListener;
 import org.solovyev.common.listeners.JEventListener;
-import org.solovyev.common.listeners.JEventListeners;
-import org.solovyev.common.listeners.Listeners;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -51,6 +50,7 @@ import static java.lang.Math.min;
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 import static org.solovyev.android.Threads.isUiThread;
+import static org.solovyev.android.messenger.CoalescingEventListeners.newCoalescingEventListeners;
 import static org.solovyev.android.messenger.users.ContactsDisplayMode.all_contacts;
 import static org.solovyev.android.messenger.users.UiContact.loadRecentUiContact;
 import static org.solovyev.android.messenger.users.UiContact.loadUiContact;
@@ -101,7 +101,7 @@ public class DefaultUserService implements UserService {
 	private final Object lock;
 
 	@Nonnull
-	private final JEventListeners<JEventListener<? extends UserEvent>, UserEvent> listeners;
+	private final CoalescingEventListeners<UserEvent> listeners;
 
 	@Nonnull
 	private final UserContacts contacts = new UserContacts();
@@ -117,7 +117,7 @@ public class DefaultUserService implements UserService {
 
 	@Inject
 	public DefaultUserService(@Nonnull PersistenceLock lock, @Nonnull Executor eventExecutor) {
-		this.listeners = Listeners.newEventListenersBuilderFor(UserEvent.class).withHardReferences().withExecutor(eventExecutor).create();
+		this.listeners = newCoalescingEventListeners(UserEvent.class, eventExecutor);
 		this.listeners.addListener(new UserEventListener());
 		this.lock = lock;
 	}
@@ -199,6 +199,13 @@ public class DefaultUserService implements UserService {
 		return result;
 	}
 
+	@Override
+	public void cacheUsers(@Nonnull Collection<User> users) {
+		for (User user : users) {
+			cache.put(user);
+		}
+	}
+
 	@Nonnull
 	private Account getAccountByEntity(@Nonnull Entity entity) throws UnsupportedAccountException {
 		return accountService.getAccountById(entity.getAccountId());
@@ -314,12 +321,18 @@ public class DefaultUserService implements UserService {
 
 	@Override
 	public void onContactPresenceChanged(@Nonnull User user, @Nonnull final User contact, final boolean available) {
-		final User newContact = contact.cloneWithNewStatus(available);
-		synchronized (lock) {
-			userDao.updateOnlineStatus(newContact);
-		}
+		onContactsPresenceChanged(user, asList(contact.cloneWithNewStatus(available)));
+	}
+
+	@Override
+	public void onContactsPresenceChanged(@Nonnull User user, @Nonnull Collection<User> contacts) {
+		if (!contacts.isEmpty()) {
+			synchronized (lock) {
+				userDao.updateOnlineStatuses(contacts);
+			}
 
-		listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(newContact)));
+			listeners.fireEvent(contacts_presence_changed.newEvent(user, new ArrayList<User>(contacts)));
+		}
 	}
 
 	@Nonnull
@@ -525,19 +538,19 @@ public class DefaultUserService implements UserService {
 		final List<User> offlineContacts = new ArrayList<User>();
 
 		synchronized (lock) {
-			for (User contact : contacts) {
-				userDao.updateOnlineStatus(contact);
-			}
-
 			final List<User> oldContacts = getOnlineContacts(user.getEntity());
 			for (User oldContact : oldContacts) {
 				if (!any(contacts, new EntityAwareByIdFinder(oldContact.getId()))) {
 					// contact was online, but now is not => update database
-					final User offlineContact = oldContact.cloneWithNewStatus(false);
-					userDao.updateOnlineStatus(offlineContact);
-					offlineContacts.add(offlineContact);
+					offlineContacts.add(oldContact.cloneWithNewStatus(false));
 				}
 			}
+
+			// both online and offline statuses are written in one transaction
+			final List<User> changedContacts = new ArrayList<User>(contacts.size() + offlineContacts.size());
+			changedContacts.addAll(contacts);
+			changedContacts.addAll(offlineContacts);
+			userDao.updateOnlineStatuses(changedContacts);
 		}
 
 		listeners.fireEvent(contacts_presence_changed.newEvent(user, contacts));
@@ -82,6 +82,15 @@ public final class PhoneNumber {
 		return sendable;
 	}
 
+	/**
+	 * @return canonical form of phone number: two phone numbers with equal canonical numbers are {@link #same(PhoneNumber)}
+	 * (note that {@link #same(PhoneNumber)} is also true for equal raw numbers). Might be used as a key in hash based indices
+	 */
+	@Nonnull
+	public String getCanonicalNumber() {
+		return getFormattedNumber();
+	}
+
 	@Nonnull
 	private String getFormattedNumber() {
 		if (formattedNumber == null) {
@@ -116,6 +125,6 @@ public final class PhoneNumber {
 			return true;
 		}
 
-		return this.getFormattedNumber().equals(that.getFormattedNumber());
+		return this.getCanonicalNumber().equals(that.getCanonicalNumber());
 	}
 }
@@ -44,7 +44,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
-import static org.solovyev.android.db.AndroidDbUtils.*;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExec;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbExecs;
+import static org.solovyev.android.db.MeasuredDbUtils.doDbQuery;
 import static org.solovyev.android.messenger.users.Users.newOnlineProperty;
 
 /**
@@ -190,6 +192,17 @@ public final class SqliteUserDao extends AbstractSQLiteHelper implements UserDao
 		doDbExec(getSqliteOpenHelper(), newReplacePropertyExec(user, newOnlineProperty(user.isOnline())));
 	}
 
+	@Override
+	public void updateOnlineStatuses(@Nonnull Collection<User> users) {
+		if (!users.isEmpty()) {
+			final List<DbExec> execs = new ArrayList<DbExec>(users.size());
+			for (User user : users) {
+				execs.add(newReplacePropertyExec(user, newOnlineProperty(user.isOnline())));
+			}
+			doDbExecs(getSqliteOpenHelper(), execs);
+		}
+	}
+
 	@Nonnull
 	private ReplacePropertyExec newReplacePropertyExec(@Nonnull User user,
 													   @Nonnull AProperty property) {
@@ -17,6 +17,8 @@
 package org.solovyev.android.messenger.users;
 
 import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.metrics.Counter;
+import org.solovyev.android.metrics.Gauge;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -26,6 +28,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.solovyev.android.metrics.Metrics.getMetrics;
+
 @ThreadSafe
 class UserCache {
 
@@ -34,11 +38,36 @@ class UserCache {
 	@Nonnull
 	private final Map<Entity, User> users = new HashMap<Entity, User>();
 
+	@Nonnull
+	private final Counter hits = getMetrics().getCounter("cache.users.hit");
+
+	@Nonnull
+	private final Counter misses = getMetrics().getCounter("cache.users.miss");
+
+	UserCache() {
+		getMetrics().registerGauge("cache.users.size", new Gauge() {
+			@Override
+			public long getValue() {
+				synchronized (users) {
+					return users.size();
+				}
+			}
+		});
+	}
+
 	@Nullable
 	public User get(@Nonnull Entity key) {
+		final User user;
 		synchronized (users) {
-			return users.get(key);
+			user = users.get(key);
+		}
+
+		if (user != null) {
+			hits.inc();
+		} else {
+			misses.inc();
 		}
+		return user;
 	}
 
 	public void put(@Nonnull User user) {
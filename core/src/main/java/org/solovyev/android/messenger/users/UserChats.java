@@ -35,7 +35,7 @@ class UserChats {
 
 	// key: user entity, value: list of user chats
 	@Nonnull
-	private final ThreadSafeMultimap<Entity, Chat> chats = newThreadSafeMultimap();
+	private final ThreadSafeMultimap<Entity, Chat> chats = newThreadSafeMultimap("cache.user_chats");
 
 	@Nonnull
 	public List<Chat> getChats(@Nonnull Entity user) {
@@ -35,7 +35,7 @@ class UserContacts {
 
 	// key: user entity, value: list of user contacts
 	@Nonnull
-	private final ThreadSafeMultimap<Entity, User> contacts = newThreadSafeMultimap();
+	private final ThreadSafeMultimap<Entity, User> contacts = newThreadSafeMultimap("cache.user_contacts");
 
 	@Nonnull
 	public List<User> getContacts(@Nonnull Entity user) {
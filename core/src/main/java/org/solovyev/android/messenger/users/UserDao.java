@@ -128,4 +128,11 @@ public interface UserDao extends LinkedEntitiesDao<User>, Dao<User> {
 													 boolean allowUpdate);
 
 	void updateOnlineStatus(@Nonnull User contact);
+
+	/**
+	 * Method updates online statuses of all <var>contacts</var> in one transaction
+	 *
+	 * @param contacts contacts with new online statuses
+	 */
+	void updateOnlineStatuses(@Nonnull Collection<User> contacts);
 }
@@ -16,12 +16,17 @@
 
 package org.solovyev.android.messenger.users;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.solovyev.android.messenger.CoalescableEvent;
 import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.common.listeners.AbstractTypedJEvent;
 
 /**
@@ -29,7 +34,7 @@ import org.solovyev.common.listeners.AbstractTypedJEvent;
  * Date: 3/9/13
  * Time: 2:44 PM
  */
-public class UserEvent extends AbstractTypedJEvent<User, UserEventType> {
+public class UserEvent extends AbstractTypedJEvent<User, UserEventType> implements CoalescableEvent<UserEvent> {
 
 	UserEvent(@Nonnull User user, @Nonnull UserEventType type, @Nullable Object data) {
 		super(user, type, data);
@@ -74,4 +79,46 @@ public class UserEvent extends AbstractTypedJEvent<User, UserEventType> {
 	public Integer getDataAsInteger() {
 		return (Integer) getData();
 	}
+
+	@Nullable
+	@Override
+	public UserEvent coalesce(@Nonnull UserEvent next) {
+		final UserEventType type = getType();
+		if (type != next.getType() || !getUser().equals(next.getUser())) {
+			return null;
+		}
+
+		switch (type) {
+			case changed:
+			case unread_messages_count_changed:
+				// only the latest state matters
+				return next;
+			case contacts_changed:
+			case contacts_presence_changed:
+				return type.newEvent(next.getUser(), mergeUsers(getDataAsUsers(), next.getDataAsUsers()));
+			case contacts_added:
+				final List<User> contacts = new ArrayList<User>(getDataAsUsers());
+				contacts.addAll(next.getDataAsUsers());
+				return type.newEvent(next.getUser(), contacts);
+			case chats_added:
+				final List<Chat> chats = new ArrayList<Chat>(getDataAsChats());
+				chats.addAll(next.getDataAsChats());
+				return type.newEvent(next.getUser(), chats);
+			default:
+				return null;
+		}
+	}
+
+	// later version of the user replaces the earlier one
+	@Nonnull
+	private static List<User> mergeUsers(@Nonnull List<User> users, @Nonnull List<User> nextUsers) {
+		final Map<Entity, User> result = new LinkedHashMap<Entity, User>(users.size() + nextUsers.size());
+		for (User user : users) {
+			result.put(user.getEntity(), user);
+		}
+		for (User user : nextUsers) {
+			result.put(user.getEntity(), user);
+		}
+		return new ArrayList<User>(result.values());
+	}
 }
@@ -98,6 +98,13 @@ public interface UserService {
 	@Nonnull
 	UserIconsService getIconsService();
 
+	/**
+	 * Method puts users to the in-memory cache without touching persistence (e.g. to fill the cache from snapshot on start)
+	 *
+	 * @param users users to be cached
+	 */
+	void cacheUsers(@Nonnull Collection<User> users);
+
 	/*
 	**********************************************************************
     *
@@ -131,6 +138,15 @@ public interface UserService {
 	 */
 	void onContactPresenceChanged(@Nonnull User user, @Nonnull User contact, boolean available);
 
+	/**
+	 * Call this method when presences of several user's contacts have been changed at once: statuses are saved in one
+	 * transaction and only one event is fired
+	 *
+	 * @param user     user
+	 * @param contacts user's contacts with new presence values
+	 */
+	void onContactsPresenceChanged(@Nonnull User user, @Nonnull Collection<User> contacts);
+
 	@Nonnull
 	List<UiContact> findContacts(@Nonnull User user, @Nullable String query, int count, @Nonnull ContactsSearchStrategy strategy, @Nonnull Collection<UiContact> except);
 
@@ -14,34 +14,36 @@
  * limitations under the License.
  */
 
-package org.solovyev.android.messenger.realms.vk.messages;
 
-import javax.annotation.Nullable;
+package org.solovyev.android.metrics;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * User: serso
- * Date: 6/13/12
- * Time: 7:24 PM
+ * Monotonically increasing counter, e.g. number of cache hits
  */
-public class JsonMessageAttachmentDoc implements JsonMessageAttachment {
-
-	@Nullable
-	private Integer did;
-
-	@Nullable
-	private Integer owner_id;
+@ThreadSafe
+public final class Counter {
 
-	@Nullable
-	private String title;
+	private final AtomicLong value = new AtomicLong();
 
-	@Nullable
-	private Integer size;
+	Counter() {
+	}
 
-	@Nullable
-	private String ext;
+	public void inc() {
+		value.incrementAndGet();
+	}
 
-	@Nullable
-	private String url;
+	public void add(long delta) {
+		value.addAndGet(delta);
+	}
 
+	public long getValue() {
+		return value.get();
+	}
 
+	void reset() {
+		value.set(0);
+	}
 }
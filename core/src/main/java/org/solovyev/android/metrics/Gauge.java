@@ -14,12 +14,14 @@
  * limitations under the License.
  */
 
-package org.solovyev.android.messenger.realms.vk.messages;
+
+package org.solovyev.android.metrics;
 
 /**
- * User: serso
- * Date: 6/13/12
- * Time: 7:24 PM
+ * Value which is calculated on demand, e.g. size of the cache. Implementation must be thread safe and cheap as it
+ * might be called from any thread.
  */
-public interface JsonMessageAttachment {
+public interface Gauge {
+
+	long getValue();
 }
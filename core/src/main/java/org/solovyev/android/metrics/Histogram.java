@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.metrics;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with fixed buckets (in milliseconds). Percentiles are estimated as upper bound of the bucket
+ * => they are precise enough to see the order of the latency but not the exact value.
+ */
+@ThreadSafe
+public final class Histogram {
+
+	// upper bounds of the buckets in ms, last bucket (not listed) contains everything bigger than last bound
+	private static final long[] BOUNDS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	Histogram() {
+	}
+
+	public void update(long millis) {
+		if (millis < 0) {
+			millis = 0;
+		}
+
+		buckets.incrementAndGet(getBucket(millis));
+		count.incrementAndGet();
+		sum.addAndGet(millis);
+
+		long oldMax = max.get();
+		while (millis > oldMax && !max.compareAndSet(oldMax, millis)) {
+			oldMax = max.get();
+		}
+	}
+
+	private static int getBucket(long millis) {
+		for (int i = 0; i < BOUNDS.length; i++) {
+			if (millis <= BOUNDS[i]) {
+				return i;
+			}
+		}
+		return BOUNDS.length;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		final long count = getCount();
+		return count == 0 ? 0 : getSum() / count;
+	}
+
+	/**
+	 * @param percentile percentile in range (0, 100]
+	 * @return upper bound of the bucket containing <var>percentile</var> of all values, 0 if there are no values
+	 */
+	public long getPercentile(int percentile) {
+		final long[] counts = getBucketCounts();
+
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		final long threshold = (total * percentile + 99) / 100;
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			if (cumulative >= threshold) {
+				return i < BOUNDS.length ? Math.min(BOUNDS[i], getMax()) : getMax();
+			}
+		}
+
+		return getMax();
+	}
+
+	long[] getBucketCounts() {
+		final long[] result = new long[buckets.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = buckets.get(i);
+		}
+		return result;
+	}
+
+	static String getBucketName(int bucket) {
+		if (bucket < BOUNDS.length) {
+			return "<=" + BOUNDS[bucket];
+		} else {
+			return ">" + BOUNDS[BOUNDS.length - 1];
+		}
+	}
+
+	void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.metrics;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of application metrics (counters, gauges and latency histograms). Metrics are identified by name, names
+ * are dot-separated, e.g. "cache.users.hit". Pairs of counters "*.hit" and "*.miss" are reported together with the
+ * hit ratio.
+ */
+@ThreadSafe
+public final class Metrics {
+
+	@Nonnull
+	private static final String HIT = ".hit";
+
+	@Nonnull
+	private static final String MISS = ".miss";
+
+	@Nonnull
+	private static final Metrics instance = new Metrics();
+
+	@Nonnull
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+	@Nonnull
+	private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+	@Nonnull
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	Metrics() {
+	}
+
+	@Nonnull
+	public static Metrics getMetrics() {
+		return instance;
+	}
+
+	@Nonnull
+	public Counter getCounter(@Nonnull String name) {
+		Counter counter = counters.get(name);
+		if (counter == null) {
+			counter = new Counter();
+			final Counter oldCounter = counters.putIfAbsent(name, counter);
+			if (oldCounter != null) {
+				counter = oldCounter;
+			}
+		}
+		return counter;
+	}
+
+	@Nonnull
+	public Histogram getHistogram(@Nonnull String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = new Histogram();
+			final Histogram oldHistogram = histograms.putIfAbsent(name, histogram);
+			if (oldHistogram != null) {
+				histogram = oldHistogram;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Method registers gauge with specified name. If gauge with the same name has been already registered it will be
+	 * replaced.
+	 */
+	public void registerGauge(@Nonnull String name, @Nonnull Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Method resets all counters and histograms, gauges are not affected
+	 */
+	public void reset() {
+		for (Counter counter : counters.values()) {
+			counter.reset();
+		}
+		for (Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	@Nonnull
+	public JsonObject toJson() {
+		final JsonObject result = new JsonObject();
+
+		final Map<String, Counter> counters = new TreeMap<String, Counter>(this.counters);
+		final JsonObject countersJson = new JsonObject();
+		final JsonObject ratiosJson = new JsonObject();
+		for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+			final String name = entry.getKey();
+			countersJson.addProperty(name, entry.getValue().getValue());
+
+			if (name.endsWith(HIT)) {
+				final String prefix = name.substring(0, name.length() - HIT.length());
+				final Counter misses = counters.get(prefix + MISS);
+				if (misses != null) {
+					final long hitsCount = entry.getValue().getValue();
+					final long total = hitsCount + misses.getValue();
+					ratiosJson.addProperty(prefix, total == 0 ? 0d : (double) hitsCount / total);
+				}
+			}
+		}
+		result.add("counters", countersJson);
+		result.add("hit_ratios", ratiosJson);
+
+		final JsonObject gaugesJson = new JsonObject();
+		for (Map.Entry<String, Gauge> entry : new TreeMap<String, Gauge>(gauges).entrySet()) {
+			gaugesJson.addProperty(entry.getKey(), entry.getValue().getValue());
+		}
+		result.add("gauges", gaugesJson);
+
+		final JsonObject histogramsJson = new JsonObject();
+		for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(histograms).entrySet()) {
+			histogramsJson.add(entry.getKey(), toJson(entry.getValue()));
+		}
+		result.add("histograms", histogramsJson);
+
+		return result;
+	}
+
+	@Nonnull
+	private static JsonObject toJson(@Nonnull Histogram histogram) {
+		final JsonObject result = new JsonObject();
+		result.addProperty("count", histogram.getCount());
+		result.addProperty("mean", histogram.getMean());
+		result.addProperty("p50", histogram.getPercentile(50));
+		result.addProperty("p95", histogram.getPercentile(95));
+		result.addProperty("p99", histogram.getPercentile(99));
+		result.addProperty("max", histogram.getMax());
+
+		final JsonObject bucketsJson = new JsonObject();
+		final long[] buckets = histogram.getBucketCounts();
+		for (int i = 0; i < buckets.length; i++) {
+			if (buckets[i] > 0) {
+				bucketsJson.addProperty(Histogram.getBucketName(i), buckets[i]);
+			}
+		}
+		result.add("buckets", bucketsJson);
+		return result;
+	}
+
+	@Nonnull
+	public String toJsonString() {
+		return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(toJson());
+	}
+
+	/**
+	 * Method writes JSON dump of all metrics to the <var>file</var>
+	 */
+	public void dump(@Nonnull File file) throws IOException {
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(toJsonString());
+		} finally {
+			writer.close();
+		}
+	}
+}
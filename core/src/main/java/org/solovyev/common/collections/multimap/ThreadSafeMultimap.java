@@ -22,10 +22,13 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.util.*;
 
 import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.metrics.Counter;
+import org.solovyev.android.metrics.Gauge;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
+import static org.solovyev.android.metrics.Metrics.getMetrics;
 
 @ThreadSafe
 public final class ThreadSafeMultimap<K, V> {
@@ -36,8 +39,13 @@ public final class ThreadSafeMultimap<K, V> {
 	@Nonnull
 	private volatile Map<K, List<V>> map;
 
-	private ThreadSafeMultimap(@Nonnull Map<K, List<V>> map) {
+	// not null only for named multimaps
+	@Nullable
+	private final Stats stats;
+
+	private ThreadSafeMultimap(@Nonnull Map<K, List<V>> map, @Nullable Stats stats) {
 		this.map = map;
+		this.stats = stats;
 	}
 
 	@Nonnull
@@ -47,23 +55,49 @@ public final class ThreadSafeMultimap<K, V> {
 
 	@Nonnull
 	public static <K, V> ThreadSafeMultimap<K, V> newThreadSafeMultimap(@Nonnull Map<K, List<V>> map) {
-		return new ThreadSafeMultimap<K, V>(map);
+		return new ThreadSafeMultimap<K, V>(map, null);
+	}
+
+	/**
+	 * @param name name of the multimap under which its hits/misses/updates and size are reported to the metrics
+	 * @return multimap with metrics
+	 */
+	@Nonnull
+	public static <K, V> ThreadSafeMultimap<K, V> newThreadSafeMultimap(@Nonnull String name) {
+		final ThreadSafeMultimap<K, V> result = new ThreadSafeMultimap<K, V>(new HashMap<K, List<V>>(), new Stats(name));
+		getMetrics().registerGauge(name + ".size", new Gauge() {
+			@Override
+			public long getValue() {
+				return result.map.size();
+			}
+		});
+		return result;
 	}
 
 	@Nonnull
 	public List<V> get(@Nonnull K key) {
 		final List<V> values = map.get(key);
 		if (values == null) {
+			if (stats != null) {
+				stats.misses.inc();
+			}
 			return (List<V>) NO_VALUE;
 		} else {
+			if (stats != null) {
+				stats.hits.inc();
+			}
 			return unmodifiableList(values);
 		}
 	}
 
 	public synchronized boolean update(@Nonnull K key, @Nonnull ListUpdater<V> updater) {
-		final List<V> newValue = updater.update(get(key));
+		final List<V> oldValue = map.get(key);
+		final List<V> newValue = updater.update(oldValue == null ? (List<V>) NO_VALUE : unmodifiableList(oldValue));
 		if (newValue != null) {
 			map.put(key, newValue);
+			if (stats != null) {
+				stats.updates.inc();
+			}
 			return true;
 		} else {
 			return false;
@@ -74,6 +108,9 @@ public final class ThreadSafeMultimap<K, V> {
 		Map<K, List<V>> newMap = updater.update(unmodifiableMap(map));
 		if (newMap != null) {
 			map = newMap;
+			if (stats != null) {
+				stats.updates.inc();
+			}
 			return true;
 		} else {
 			return false;
@@ -98,6 +135,24 @@ public final class ThreadSafeMultimap<K, V> {
     **********************************************************************
     */
 
+	private static final class Stats {
+
+		@Nonnull
+		private final Counter hits;
+
+		@Nonnull
+		private final Counter misses;
+
+		@Nonnull
+		private final Counter updates;
+
+		private Stats(@Nonnull String name) {
+			hits = getMetrics().getCounter(name + ".hit");
+			misses = getMetrics().getCounter(name + ".miss");
+			updates = getMetrics().getCounter(name + ".update");
+		}
+	}
+
 	public static interface ListUpdater<V> {
 		@Nullable
 		List<V> update(@Nonnull List<V> values);
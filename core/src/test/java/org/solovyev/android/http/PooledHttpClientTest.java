@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.http;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.metrics.Counter;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.net.SocketTimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.metrics.Metrics.getMetrics;
+
+@RunWith(RobolectricTestRunner.class)
+public class PooledHttpClientTest {
+
+	@Test
+	public void testShouldAskForGzip() throws Exception {
+		final HttpGet request = new HttpGet("https://api.vk.com/method/users.get");
+		new PooledHttpClient.AcceptGzipInterceptor().process(request, new BasicHttpContext());
+		assertEquals("gzip", request.getFirstHeader("Accept-Encoding").getValue());
+	}
+
+	@Test
+	public void testGzippedResponseShouldBeDecoded() throws Exception {
+		final String json = newJson();
+		final byte[] plain = json.getBytes("UTF-8");
+		final byte[] gzipped = gzip(plain);
+		final Counter received = getMetrics().getCounter("http.bytes.received");
+
+		long before = received.getValue();
+		assertEquals(json, EntityUtils.toString(process(newResponse(plain, false)).getEntity()));
+		assertEquals(plain.length, received.getValue() - before);
+
+		// bytes read from the network are counted before decompression
+		before = received.getValue();
+		assertEquals(json, EntityUtils.toString(process(newResponse(gzipped, true)).getEntity()));
+		assertEquals(gzipped.length, received.getValue() - before);
+		assertTrue(gzipped.length < plain.length);
+	}
+
+	@Test
+	public void testGetShouldBeRetriedOnlyIfIdempotent() throws Exception {
+		final PooledHttpClient.RetryHandler handler = new PooledHttpClient.RetryHandler();
+
+		assertTrue(handler.retryRequest(new NoHttpResponseException(""), 1, newContext(new HttpGet("http://test"), PooledHttpClient.Profile.api_read, true)));
+		assertTrue(handler.retryRequest(new NoHttpResponseException(""), 1, newContext(new HttpGet("http://test"), PooledHttpClient.Profile.long_poll, true)));
+		assertFalse(handler.retryRequest(new NoHttpResponseException(""), 1, newContext(new HttpGet("http://test"), PooledHttpClient.Profile.api_write, true)));
+		assertFalse(handler.retryRequest(new NoHttpResponseException(""), 1, newContext(new HttpPost("http://test"), PooledHttpClient.Profile.api_read, true)));
+	}
+
+	@Test
+	public void testNotSentRequestShouldBeRetried() throws Exception {
+		final PooledHttpClient.RetryHandler handler = new PooledHttpClient.RetryHandler();
+
+		assertTrue(handler.retryRequest(new NoHttpResponseException(""), 1, newContext(new HttpPost("http://test"), PooledHttpClient.Profile.api_write, false)));
+		assertFalse(handler.retryRequest(new NoHttpResponseException(""), 3, newContext(new HttpPost("http://test"), PooledHttpClient.Profile.api_write, false)));
+	}
+
+	@Test
+	public void testTimeoutShouldNotBeRetried() throws Exception {
+		final PooledHttpClient.RetryHandler handler = new PooledHttpClient.RetryHandler();
+		assertFalse(handler.retryRequest(new SocketTimeoutException(), 1, newContext(new HttpGet("http://test"), PooledHttpClient.Profile.long_poll, true)));
+	}
+
+	@Nonnull
+	private static HttpContext newContext(@Nonnull HttpUriRequest request, @Nonnull PooledHttpClient.Profile profile, boolean sent) {
+		profile.applyTo(request.getParams());
+
+		final HttpContext result = new BasicHttpContext();
+		result.setAttribute(ExecutionContext.HTTP_REQUEST, request);
+		result.setAttribute(ExecutionContext.HTTP_REQ_SENT, sent);
+		return result;
+	}
+
+	@Nonnull
+	private static HttpResponse process(@Nonnull HttpResponse response) throws Exception {
+		new PooledHttpClient.ResponseInterceptor().process(response, new BasicHttpContext());
+		return response;
+	}
+
+	@Nonnull
+	private static HttpResponse newResponse(@Nonnull byte[] content, boolean gzipped) {
+		final ByteArrayEntity entity = new ByteArrayEntity(content);
+		entity.setContentType("application/json; charset=utf-8");
+		if (gzipped) {
+			entity.setContentEncoding("gzip");
+		}
+
+		final HttpResponse result = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		result.setEntity(entity);
+		return result;
+	}
+
+	@Nonnull
+	private static byte[] gzip(@Nonnull byte[] bytes) throws Exception {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final GZIPOutputStream out = new GZIPOutputStream(result);
+		out.write(bytes);
+		out.close();
+		return result.toByteArray();
+	}
+
+	// similar to response of users.get
+	@Nonnull
+	private static String newJson() {
+		final StringBuilder sb = new StringBuilder("{\"response\":[");
+		for (int i = 0; i < 300; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"uid\":").append(i)
+					.append(",\"first_name\":\"Name").append(i % 17)
+					.append("\",\"last_name\":\"Surname").append(i % 23)
+					.append("\",\"online\":").append(i % 2)
+					.append(",\"photo\":\"http://cs").append(i % 50).append(".vk.me/u").append(i).append("/e_1.jpg\"}");
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+}
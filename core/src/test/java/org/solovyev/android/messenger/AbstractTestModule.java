@@ -35,11 +35,15 @@ import org.solovyev.android.messenger.accounts.connection.DefaultAccountConnecti
 import org.solovyev.android.messenger.chats.ChatDao;
 import org.solovyev.android.messenger.chats.ChatService;
 import org.solovyev.android.messenger.chats.DefaultChatService;
+import org.solovyev.android.messenger.chats.DraftDao;
 import org.solovyev.android.messenger.chats.SqliteChatDao;
+import org.solovyev.android.messenger.chats.SqliteDraftDao;
 import org.solovyev.android.messenger.messages.DefaultMessageService;
 import org.solovyev.android.messenger.messages.MessageDao;
 import org.solovyev.android.messenger.messages.MessageService;
+import org.solovyev.android.messenger.messages.OutboxDao;
 import org.solovyev.android.messenger.messages.SqliteMessageDao;
+import org.solovyev.android.messenger.messages.SqliteOutboxDao;
 import org.solovyev.android.messenger.notifications.DefaultNotificationService;
 import org.solovyev.android.messenger.notifications.NotificationService;
 import org.solovyev.android.messenger.realms.DefaultRealmService;
@@ -80,12 +84,14 @@ public abstract class AbstractTestModule extends AbstractModule {
 
 	@Override
 	protected void configure() {
-		bind(Executor.class).toInstance(new Executor() {
+		final Executor executor = new Executor() {
 			@Override
 			public void execute(Runnable command) {
 				command.run();
 			}
-		});
+		};
+		bind(Executor.class).toInstance(executor);
+		bind(Background.class).toInstance(new Background(executor));
 		bind(SQLiteOpenHelperConfiguration.class).to(TestMessengerDbConfiguration.class);
 		bind(SQLiteOpenHelper.class).to(TestSQLiteOpenHelper.class);
 
@@ -110,10 +116,12 @@ public abstract class AbstractTestModule extends AbstractModule {
 		bind(UserService.class).to(DefaultUserService.class);
 
 		bind(ChatDao.class).to(SqliteChatDao.class);
+		bind(DraftDao.class).to(SqliteDraftDao.class);
 		bind(ChatService.class).to(DefaultChatService.class);
 
 		bind(MessageDao.class).to(SqliteMessageDao.class);
 		bind(MessageService.class).to(DefaultMessageService.class);
+		bind(OutboxDao.class).to(SqliteOutboxDao.class);
 
 		bind(SyncService.class).toInstance(mock(SyncService.class));
 
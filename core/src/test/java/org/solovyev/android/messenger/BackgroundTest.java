@@ -0,0 +1,255 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import android.os.Looper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.solovyev.android.messenger.Background.Lane.events;
+import static org.solovyev.android.messenger.Background.Lane.interactive;
+import static org.solovyev.android.messenger.Background.Lane.prefetch;
+
+@RunWith(RobolectricTestRunner.class)
+public class BackgroundTest {
+
+	@Test
+	public void testTaskShouldBeReplacedByTaskWithSameKey() throws Exception {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final Background background = new Background(executor);
+
+		final AtomicInteger result = new AtomicInteger();
+		final Future<?> first = background.submit(prefetch, "key", new SetRunnable(result, 1));
+		final Future<?> second = background.submit(prefetch, "key", new SetRunnable(result, 2));
+		executor.runAll();
+
+		assertTrue(first.isCancelled());
+		assertFalse(second.isCancelled());
+		assertEquals(2, result.get());
+	}
+
+	@Test
+	public void testTaskShouldBeCancelledByKey() throws Exception {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final Background background = new Background(executor);
+
+		final AtomicInteger result = new AtomicInteger();
+		background.submit(prefetch, "key", new SetRunnable(result, 1));
+		background.cancel(prefetch, "key");
+		executor.runAll();
+
+		assertEquals(0, result.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testExceptionShouldNotBeHidden() throws Exception {
+		final Background background = new Background(new Executor() {
+			@Override
+			public void execute(@Nonnull Runnable command) {
+				command.run();
+			}
+		});
+
+		background.execute(interactive, new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException();
+			}
+		});
+	}
+
+	@Test
+	public void testOldestPrefetchTaskShouldBeDroppedOnOverflow() throws Exception {
+		final Background background = new Background();
+
+		// occupy all threads of the lane
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < 2; i++) {
+			background.submit(prefetch, new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		final AtomicInteger result = new AtomicInteger();
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < 65; i++) {
+			futures.add(background.submit(prefetch, new SetRunnable(result, i)));
+		}
+
+		// queue capacity is 64 => the first task is dropped
+		assertTrue(futures.get(0).isCancelled());
+		for (int i = 1; i < futures.size(); i++) {
+			assertFalse(futures.get(i).isCancelled());
+		}
+
+		release.countDown();
+		futures.get(futures.size() - 1).get(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testEventTaskShouldNotBeDroppedOnOverflow() throws Exception {
+		final Background background = new Background();
+		final CountDownLatch release = occupy(background, events, 1);
+
+		final Thread caller = Thread.currentThread();
+		final List<Thread> threads = new ArrayList<Thread>();
+		final List<Integer> order = new ArrayList<Integer>();
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < 1100; i++) {
+			final int position = i;
+			futures.add(background.submit(events, new Runnable() {
+				@Override
+				public void run() {
+					synchronized (threads) {
+						threads.add(Thread.currentThread());
+						order.add(position);
+					}
+				}
+			}));
+		}
+
+		// queue capacity is 1024 => the last tasks are spilled, not dropped and not run by the caller
+		for (Future<?> future : futures) {
+			assertFalse(future.isCancelled());
+		}
+
+		release.countDown();
+		futures.get(futures.size() - 1).get(5, TimeUnit.SECONDS);
+		synchronized (threads) {
+			assertEquals(futures.size(), threads.size());
+			assertFalse(threads.contains(caller));
+			for (int i = 0; i < order.size(); i++) {
+				assertEquals(Integer.valueOf(i), order.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testMainThreadShouldNotRunTaskOnOverflow() throws Exception {
+		assertSame(Looper.getMainLooper(), Looper.myLooper());
+
+		final Background background = new Background();
+		final int threadsCount = Runtime.getRuntime().availableProcessors() + 1;
+		final CountDownLatch release = occupy(background, interactive, threadsCount);
+
+		final Thread caller = Thread.currentThread();
+		final List<Thread> threads = new ArrayList<Thread>();
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < 600; i++) {
+			futures.add(background.submit(interactive, new Runnable() {
+				@Override
+				public void run() {
+					synchronized (threads) {
+						threads.add(Thread.currentThread());
+					}
+				}
+			}));
+		}
+
+		// queue capacity is 512 => the last tasks are spilled
+		synchronized (threads) {
+			assertTrue(threads.isEmpty());
+		}
+
+		release.countDown();
+		for (Future<?> future : futures) {
+			future.get(5, TimeUnit.SECONDS);
+		}
+		synchronized (threads) {
+			assertEquals(futures.size(), threads.size());
+			assertFalse(threads.contains(caller));
+		}
+	}
+
+	// occupies <var>threadsCount</var> threads of the <var>lane</var>, returned latch releases them
+	@Nonnull
+	private static CountDownLatch occupy(@Nonnull Background background, @Nonnull Background.Lane lane, int threadsCount) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(threadsCount);
+		final CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < threadsCount; i++) {
+			background.submit(lane, new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return release;
+	}
+
+	private static final class SetRunnable implements Runnable {
+
+		@Nonnull
+		private final AtomicInteger result;
+
+		private final int value;
+
+		private SetRunnable(@Nonnull AtomicInteger result, int value) {
+			this.result = result;
+			this.value = value;
+		}
+
+		@Override
+		public void run() {
+			result.set(value);
+		}
+	}
+
+	private static final class QueuedExecutor implements Executor {
+
+		@Nonnull
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(@Nonnull Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			while (!tasks.isEmpty()) {
+				tasks.remove(0).run();
+			}
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserEvent;
+import org.solovyev.common.listeners.AbstractJEventListener;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.messenger.CoalescingEventListeners.newCoalescingEventListeners;
+import static org.solovyev.android.messenger.users.UserEventType.changed;
+import static org.solovyev.android.messenger.users.UserEventType.contacts_presence_changed;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+@RunWith(RobolectricTestRunner.class)
+public class CoalescingEventListenersTest {
+
+	private static final int CONTACTS_COUNT = 500;
+
+	@Nonnull
+	private User user;
+
+	@Nonnull
+	private List<User> contacts;
+
+	@Before
+	public void setUp() throws Exception {
+		user = newEmptyUser("test~1:user");
+		contacts = new ArrayList<User>(CONTACTS_COUNT);
+		for (int i = 0; i < CONTACTS_COUNT; i++) {
+			contacts.add(newEmptyUser("test~1:contact" + i));
+		}
+	}
+
+	@Test
+	public void testPresenceStormShouldBeCoalesced() throws Exception {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final CoalescingEventListeners<UserEvent> listeners = newCoalescingEventListeners(UserEvent.class, executor);
+		final RecordingListener listener = new RecordingListener();
+		listeners.addListener(listener);
+
+		// each contact changes presence 10 times
+		for (int i = 0; i < 10; i++) {
+			for (User contact : contacts) {
+				listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(contact)));
+			}
+		}
+
+		assertEquals(1, executor.tasks.size());
+		executor.runAll();
+
+		assertEquals(1, listener.events.size());
+		assertEquals(contacts, listener.events.get(0).getDataAsUsers());
+	}
+
+	@Test
+	public void testEventsShouldBeDeliveredInOrder() throws Exception {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final CoalescingEventListeners<UserEvent> listeners = newCoalescingEventListeners(UserEvent.class, executor);
+		final RecordingListener listener = new RecordingListener();
+		listeners.addListener(listener);
+
+		listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(contacts.get(0))));
+		listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(contacts.get(1))));
+		listeners.fireEvent(changed.newEvent(user));
+		listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(contacts.get(2))));
+		executor.runAll();
+
+		assertEquals(3, listener.events.size());
+		assertEquals(asList(contacts.get(0), contacts.get(1)), listener.events.get(0).getDataAsUsers());
+		assertEquals(changed, listener.events.get(1).getType());
+		assertEquals(asList(contacts.get(2)), listener.events.get(2).getDataAsUsers());
+	}
+
+	@Test
+	public void testEventsShouldBeDeliveredSynchronouslyWithSynchronousExecutor() throws Exception {
+		final CoalescingEventListeners<UserEvent> listeners = newCoalescingEventListeners(UserEvent.class, new Executor() {
+			@Override
+			public void execute(@Nonnull Runnable command) {
+				command.run();
+			}
+		});
+		final RecordingListener listener = new RecordingListener();
+		listeners.addListener(listener);
+
+		listeners.fireEvent(changed.newEvent(user));
+		assertEquals(1, listener.events.size());
+
+		listeners.removeListener(listener);
+		listeners.fireEvent(changed.newEvent(user));
+		assertEquals(1, listener.events.size());
+	}
+
+	@Test
+	public void testFailedEventShouldNotStopDelivery() throws Exception {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final CoalescingEventListeners<UserEvent> listeners = newCoalescingEventListeners(UserEvent.class, executor);
+		final List<UserEvent> events = new ArrayList<UserEvent>();
+		listeners.addListener(new AbstractJEventListener<UserEvent>(UserEvent.class) {
+			@Override
+			public void onEvent(@Nonnull UserEvent event) {
+				events.add(event);
+				if (events.size() == 1) {
+					throw new IllegalStateException("test");
+				}
+			}
+		});
+
+		listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(contacts.get(0))));
+		listeners.fireEvent(changed.newEvent(user));
+		listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(contacts.get(1))));
+		executor.runAll();
+
+		assertEquals(3, events.size());
+
+		// queue is not stalled
+		listeners.fireEvent(changed.newEvent(user));
+		assertEquals(1, executor.tasks.size());
+		executor.runAll();
+		assertEquals(4, events.size());
+	}
+
+	@Test
+	public void testEventsFiredFromManyThreadsShouldBeDelivered() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final CoalescingEventListeners<UserEvent> listeners = newCoalescingEventListeners(UserEvent.class, executor);
+
+			final int eventsCount = 100000;
+			final CountDownLatch latch = new CountDownLatch(1);
+			final Set<User> changedContacts = new HashSet<User>();
+			listeners.addListener(new AbstractJEventListener<UserEvent>(UserEvent.class) {
+				@Override
+				public void onEvent(@Nonnull UserEvent event) {
+					// listener is notified from one thread at a time => no synchronization is needed
+					if (event.getType() == changed) {
+						// last event
+						latch.countDown();
+					} else {
+						changedContacts.addAll(event.getDataAsUsers());
+					}
+				}
+			});
+
+			for (int i = 0; i < eventsCount; i++) {
+				listeners.fireEvent(contacts_presence_changed.newEvent(user, asList(contacts.get(i % CONTACTS_COUNT))));
+			}
+			listeners.fireEvent(changed.newEvent(user));
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+			assertEquals(CONTACTS_COUNT, changedContacts.size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static final class RecordingListener extends AbstractJEventListener<UserEvent> {
+
+		@Nonnull
+		private final List<UserEvent> events = new ArrayList<UserEvent>();
+
+		private RecordingListener() {
+			super(UserEvent.class);
+		}
+
+		@Override
+		public void onEvent(@Nonnull UserEvent event) {
+			events.add(event);
+		}
+	}
+
+	private static final class QueuedExecutor implements Executor {
+
+		@Nonnull
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(@Nonnull Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			while (!tasks.isEmpty()) {
+				tasks.remove(0).run();
+			}
+		}
+	}
+}
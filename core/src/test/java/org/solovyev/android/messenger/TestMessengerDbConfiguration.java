@@ -38,6 +38,6 @@ public class TestMessengerDbConfiguration implements SQLiteOpenHelperConfigurati
 
 	@Override
 	public int getVersion() {
-		return 1;
+		return 4;
 	}
 }
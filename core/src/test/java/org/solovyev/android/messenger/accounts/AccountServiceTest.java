@@ -26,8 +26,16 @@ import org.solovyev.android.messenger.realms.test.TestRealm;
 import org.solovyev.android.messenger.users.UserDao;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
+import static org.solovyev.android.messenger.accounts.AccountState.disabled_by_user;
+import static org.solovyev.android.messenger.accounts.AccountState.enabled;
 import static org.solovyev.android.messenger.accounts.AccountState.removed;
 
 public class AccountServiceTest extends DefaultMessengerTest {
@@ -66,4 +74,61 @@ public class AccountServiceTest extends DefaultMessengerTest {
 		assertEquals("test_user_34", account.getUser().getEntity().getAccountEntityId());
 		assertNotNull(userDao.read(account.getUser().getEntity().getEntityId()));
 	}
+
+	@Test
+	public void testReadersShouldSeeConsistentAccountsWhileStatesAreChanged() throws Exception {
+		final String accountId = getAccount1().getId();
+		final int accountsCount = service.getAccounts().size();
+
+		final AtomicBoolean stopped = new AtomicBoolean(false);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final AtomicInteger reads = new AtomicInteger();
+
+		final List<Thread> readers = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			readers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (!stopped.get()) {
+							// account must always be found
+							assertEquals(accountId, service.getAccountById(accountId).getId());
+
+							final Collection<Account> enabledAccounts = service.getEnabledAccounts();
+							for (Account account : enabledAccounts) {
+								assertTrue(account.isEnabled());
+							}
+							assertTrue(enabledAccounts.size() == accountsCount || enabledAccounts.size() == accountsCount - 1);
+							assertEquals(accountsCount, service.getAccounts().size());
+							reads.incrementAndGet();
+						}
+					} catch (Throwable e) {
+						error.compareAndSet(null, e);
+					}
+				}
+			}));
+		}
+
+		for (Thread reader : readers) {
+			reader.start();
+		}
+
+		for (int i = 0; i < 200; i++) {
+			final Account account = service.getAccountById(accountId);
+			service.changeAccountState(account, account.isEnabled() ? disabled_by_user : enabled);
+		}
+
+		stopped.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		final Throwable e = error.get();
+		if (e != null) {
+			throw new AssertionError(e);
+		}
+		assertTrue(reads.get() > 0);
+		assertTrue(service.getAccountById(accountId).isEnabled());
+		assertEquals(accountsCount, service.getEnabledAccounts().size());
+	}
 }
@@ -29,6 +29,7 @@ import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertFalse;
@@ -36,6 +37,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 import static org.robolectric.Robolectric.application;
+import static org.solovyev.android.messenger.realms.Realms.makeAccountId;
 
 @RunWith(RobolectricTestRunner.class)
 public class AccountConnectionsTest {
@@ -62,10 +64,7 @@ public class AccountConnectionsTest {
 	public void setUp() throws Exception {
 		connections = new DefaultAccountConnections(application);
 		connections.setExecutor(executor);
-		final Background background = new Background();
-		background.setHighPriorityExecutor(executor);
-		background.setLowPriorityExecutor(executor);
-		connections.setBackground(background);
+		connections.setBackground(new Background(executor));
 		account = AccountsTest.newMockAccountWithStaticConnection();
 		connection = AccountsTest.prepareStaticConnectionForAccount(account);
 	}
@@ -257,6 +256,39 @@ public class AccountConnectionsTest {
 		}
 	}
 
+	@Test
+	public void testShouldSurviveChurnOfManyAccounts() throws Exception {
+		final int accountsCount = 500;
+		final int rounds = 20;
+		final Connections c = new Connections(accountsCount);
+
+		connections.startConnectionsFor(c.accounts, true);
+		c.assertAllRunning();
+
+		final Random random = new Random(42);
+		for (int round = 0; round < rounds; round++) {
+			// whole device goes offline and online
+			connections.onNoInternetConnection();
+			connections.tryStartAll(true);
+
+			// some accounts are toggled one by one
+			for (int i = 0; i < accountsCount / 10; i++) {
+				final Account account = c.getAccount(random.nextInt(accountsCount));
+				connections.tryStopFor(account);
+				assertFalse(connections.isConnected(account));
+				connections.startConnectionsFor(Arrays.asList(account), true);
+				assertTrue(connections.isConnected(account));
+			}
+		}
+
+		c.assertAllRunning();
+		for (int i = 0; i < accountsCount; i++) {
+			// connections must be reused
+			verify(c.getAccount(i), times(1)).newConnection(any(Context.class));
+			verify(c.getConnection(i), atLeast(rounds + 1)).start();
+		}
+	}
+
 	private static final class Connections {
 		@Nonnull
 		private final List<Account> accounts = new ArrayList<Account>();
@@ -270,6 +302,7 @@ public class AccountConnectionsTest {
 			this.count = count;
 			for (int i = 0; i < count; i++) {
 				final Account account = AccountsTest.newMockAccountWithStaticConnection();
+				when(account.getId()).thenReturn(makeAccountId("test", i));
 				accounts.add(account);
 				connections.add(account.newConnection(application));
 			}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.accounts.connection;
+
+import android.content.Context;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.accounts.AccountState;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+import static org.robolectric.Robolectric.application;
+import static org.solovyev.android.messenger.AppTest.mockApp;
+import static org.solovyev.android.messenger.accounts.AccountsTest.newMockAccountWithStaticConnection;
+import static org.solovyev.android.messenger.accounts.connection.ConnectionSupervisor.MIN_RETRY_DELAY_MILLIS;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConnectionSupervisorTest {
+
+	private static final long CHECK_INTERVAL = 10L * 60L * 1000L;
+
+	@Nonnull
+	private Account account;
+
+	@Nonnull
+	private FakeTimer timer;
+
+	@Nonnull
+	private CountingExecutor executor;
+
+	@Nonnull
+	private ConnectionSupervisor supervisor;
+
+	@Before
+	public void setUp() throws Exception {
+		mockApp();
+		account = newMockAccountWithStaticConnection();
+		timer = new FakeTimer();
+		executor = new CountingExecutor();
+		supervisor = new ConnectionSupervisor(timer, executor);
+	}
+
+	@Test
+	public void testShouldStartConnectionIfAccountEnabled() throws Exception {
+		final AccountConnection connection = account.newConnection(application);
+
+		supervisor.start(connection);
+
+		verify(connection, times(1)).start();
+		assertEquals(ConnectionSupervisor.State.connected, supervisor.getState(connection));
+	}
+
+	@Test
+	public void testShouldNotStartConnectionIfAccountDisabled() throws Exception {
+		when(account.isEnabled()).thenReturn(false);
+		final AccountConnection connection = account.newConnection(application);
+
+		supervisor.start(connection);
+
+		verify(connection, times(0)).start();
+		assertEquals(ConnectionSupervisor.State.stopped, supervisor.getState(connection));
+	}
+
+	@Test
+	public void testShouldRetryWithExponentialBackoff() throws Exception {
+		final AccountConnection connection = newBrokenConnection(account);
+
+		supervisor.start(connection);
+		verify(connection, times(1)).start();
+		assertEquals(ConnectionSupervisor.State.waiting_for_retry, supervisor.getState(connection));
+
+		timer.advance(MIN_RETRY_DELAY_MILLIS - 1);
+		verify(connection, times(1)).start();
+		timer.advance(1);
+		verify(connection, times(2)).start();
+
+		timer.advance(2 * MIN_RETRY_DELAY_MILLIS - 1);
+		verify(connection, times(2)).start();
+		timer.advance(1);
+		verify(connection, times(3)).start();
+
+		timer.advance(4 * MIN_RETRY_DELAY_MILLIS);
+		verify(connection, times(4)).start();
+	}
+
+	@Test
+	public void testShouldLimitRetryDelay() throws Exception {
+		assertEquals(MIN_RETRY_DELAY_MILLIS, ConnectionSupervisor.getRetryDelay(1));
+		assertEquals(2 * MIN_RETRY_DELAY_MILLIS, ConnectionSupervisor.getRetryDelay(2));
+		assertEquals(ConnectionSupervisor.MAX_RETRY_DELAY_MILLIS, ConnectionSupervisor.getRetryDelay(100));
+	}
+
+	@Test
+	public void testShouldDisableAccountAfterMaxAttempts() throws Exception {
+		final AccountConnection connection = newBrokenConnection(account);
+
+		supervisor.start(connection);
+		timer.advance(60L * 60L * 1000L);
+
+		// first attempt + 5 retries
+		verify(connection, times(6)).start();
+		verify(connection, times(1)).stop();
+		assertTrue(connection.isStopped());
+		verify(App.getAccountService(), times(1)).changeAccountState(account, AccountState.disabled_by_app);
+		assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test
+	public void testShouldNotRetryAfterStop() throws Exception {
+		final AccountConnection connection = newBrokenConnection(account);
+
+		supervisor.start(connection);
+		supervisor.stop(connection);
+		timer.advance(60L * 60L * 1000L);
+
+		verify(connection, times(1)).start();
+		assertEquals(ConnectionSupervisor.State.stopped, supervisor.getState(connection));
+	}
+
+	@Test
+	public void testShouldCheckConnectionPeriodically() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(account);
+
+		supervisor.start(connection);
+		assertEquals(1, connection.reconnects);
+
+		timer.advance(CHECK_INTERVAL - 1);
+		assertEquals(1, connection.reconnects);
+		timer.advance(1);
+		assertEquals(2, connection.reconnects);
+		timer.advance(CHECK_INTERVAL);
+		assertEquals(3, connection.reconnects);
+	}
+
+	@Test
+	public void testShouldCheckConnectionOnRequest() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(account);
+
+		supervisor.start(connection);
+		connection.continueLoop();
+		timer.advance(0);
+		assertEquals(2, connection.reconnects);
+
+		// next check is scheduled from the last one
+		timer.advance(CHECK_INTERVAL);
+		assertEquals(3, connection.reconnects);
+	}
+
+	@Test
+	public void testShouldReconnectAfterFailedCheck() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(account);
+		connection.failOnReconnect = 2;
+
+		supervisor.start(connection);
+		timer.advance(CHECK_INTERVAL);
+		assertEquals(2, connection.reconnects);
+		assertEquals(ConnectionSupervisor.State.waiting_for_retry, supervisor.getState(connection));
+
+		timer.advance(MIN_RETRY_DELAY_MILLIS);
+		assertEquals(3, connection.reconnects);
+		assertEquals(ConnectionSupervisor.State.connected, supervisor.getState(connection));
+	}
+
+	@Test
+	public void testIdleConnectionsShouldNotOccupyThreads() throws Exception {
+		final List<TestLoopedConnection> connections = new ArrayList<TestLoopedConnection>();
+		for (int i = 0; i < 10; i++) {
+			final TestLoopedConnection connection = new TestLoopedConnection(newMockAccountWithStaticConnection());
+			connections.add(connection);
+			supervisor.start(connection);
+		}
+
+		for (int i = 0; i < 10; i++) {
+			timer.advance(CHECK_INTERVAL);
+
+			// only scheduled checks are left, no task is running on I/O executor between checks
+			assertEquals(0, executor.running);
+			assertEquals(connections.size(), timer.getPendingCount());
+		}
+
+		for (TestLoopedConnection connection : connections) {
+			assertEquals(11, connection.reconnects);
+		}
+		assertEquals(connections.size() * 11, executor.executed);
+	}
+
+	@Nonnull
+	private AccountConnection newBrokenConnection(@Nonnull Account account) throws AccountConnectionException {
+		final AccountConnection connection = account.newConnection(application);
+		doAnswer(new Answer() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				when(connection.isStopped()).thenReturn(false);
+				throw new RuntimeException("test");
+			}
+		}).when(connection).start();
+		return connection;
+	}
+
+	private static final class TestLoopedConnection extends LoopedAccountConnection<Account> {
+
+		private int reconnects;
+
+		// number of reconnect on which exception should be thrown
+		private int failOnReconnect = -1;
+
+		private TestLoopedConnection(@Nonnull Account account) {
+			super(account, mock(Context.class), CHECK_INTERVAL);
+		}
+
+		@Override
+		protected void disconnect() {
+		}
+
+		@Override
+		protected void reconnectIfDisconnected() throws AccountConnectionException {
+			reconnects++;
+			if (reconnects == failOnReconnect) {
+				throw new AccountConnectionException("test");
+			}
+		}
+	}
+
+	private static final class CountingExecutor implements Executor {
+
+		private int running;
+
+		private int executed;
+
+		@Override
+		public void execute(@Nonnull Runnable command) {
+			running++;
+			try {
+				command.run();
+			} finally {
+				running--;
+				executed++;
+			}
+		}
+	}
+
+	private static final class FakeTimer implements ConnectionTimer {
+
+		private long now;
+
+		@Nonnull
+		private final List<ScheduledTask> tasks = new ArrayList<ScheduledTask>();
+
+		@Override
+		public long currentTimeMillis() {
+			return now;
+		}
+
+		@Nonnull
+		@Override
+		public Future<?> schedule(@Nonnull Runnable task, long delayMillis) {
+			final ScheduledTask scheduledTask = new ScheduledTask(task, now + delayMillis);
+			tasks.add(scheduledTask);
+			return scheduledTask;
+		}
+
+		public void advance(long millis) {
+			final long target = now + millis;
+
+			ScheduledTask next = pollNext(target);
+			while (next != null) {
+				now = next.time;
+				next.run();
+				next = pollNext(target);
+			}
+
+			now = target;
+		}
+
+		private ScheduledTask pollNext(long target) {
+			ScheduledTask result = null;
+			for (Iterator<ScheduledTask> it = tasks.iterator(); it.hasNext(); ) {
+				final ScheduledTask task = it.next();
+				if (task.isCancelled()) {
+					it.remove();
+				} else if (task.time <= target && (result == null || task.time < result.time)) {
+					result = task;
+				}
+			}
+			tasks.remove(result);
+			return result;
+		}
+
+		public int getPendingCount() {
+			int result = 0;
+			for (ScheduledTask task : tasks) {
+				if (!task.isCancelled()) {
+					result++;
+				}
+			}
+			return result;
+		}
+	}
+
+	private static final class ScheduledTask extends FutureTask<Object> {
+
+		private final long time;
+
+		private ScheduledTask(@Nonnull Runnable runnable, long time) {
+			super(runnable, null);
+			this.time = time;
+		}
+	}
+}
@@ -23,8 +23,8 @@ import org.robolectric.RobolectricTestRunner;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 
-import static java.util.concurrent.Executors.newScheduledThreadPool;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
 
@@ -34,10 +34,23 @@ public class LoopedAccountConnectionTest {
 	public static final int LOOP_TIME = 50;
 
 	@Test
-	public void testShouldRunInfinitely() throws Exception {
+	public void testShouldNotBlockOnStart() throws Exception {
 		final TestLoopedConnection connection = new TestLoopedConnection(10);
+		connection.start();
+		assertFalse(connection.isStopped());
+		assertEquals(1, connection.count);
+		assertEquals(LOOP_TIME, connection.getCheckIntervalMillis());
+	}
+
+	@Test
+	public void testShouldReconnectOnCheck() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(3);
+		connection.start();
+		connection.check();
+		assertEquals(2, connection.count);
+
 		try {
-			connection.start();
+			connection.check();
 			fail();
 		} catch (AccountConnectionException e) {
 			assertEquals("test", e.getAccountId());
@@ -45,44 +58,31 @@ public class LoopedAccountConnectionTest {
 	}
 
 	@Test
-	public void testShouldStopOnStop() throws Exception {
-		int maxCount = 20;
-		final TestLoopedConnection connection = new TestLoopedConnection(maxCount);
-		newScheduledThreadPool(1).schedule(new Runnable() {
-			@Override
-			public void run() {
-				connection.stop();
-			}
-		}, maxCount * LOOP_TIME / 2, MILLISECONDS);
-
+	public void testShouldNotReconnectAfterStop() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(10);
 		connection.start();
+		connection.stop();
 		assertTrue(connection.isStopped());
-		assertTrue(connection.count < maxCount);
 		assertTrue(connection.disconnectCalled);
+
+		connection.check();
+		assertEquals(1, connection.count);
 	}
 
 	@Test
-	public void testShouldContinueWorkAfterInterruption() throws Exception {
-		int maxCount = 20;
-		final TestLoopedConnection connection = new TestLoopedConnection(maxCount);
-		final Thread connectionThread = Thread.currentThread();
-		newScheduledThreadPool(1).schedule(new Runnable() {
+	public void testShouldRequestCheckOnContinueLoop() throws Exception {
+		final TestLoopedConnection connection = new TestLoopedConnection(10);
+		final AtomicInteger requests = new AtomicInteger();
+		connection.setCheckRequestListener(new Runnable() {
 			@Override
 			public void run() {
-				connectionThread.interrupt();
+				requests.incrementAndGet();
 			}
-		}, maxCount * LOOP_TIME / 2, MILLISECONDS);
+		});
 
-		try {
-			connection.start();
-			fail();
-		} catch (AccountConnectionException e) {
-			assertEquals("test", e.getAccountId());
-		}
-
-		assertFalse(connection.isStopped());
-		assertTrue(connection.count == maxCount);
-		assertFalse(connection.disconnectCalled);
+		connection.start();
+		connection.continueLoop();
+		assertEquals(1, requests.get());
 	}
 
 	private static final class TestLoopedConnection extends LoopedAccountConnection {
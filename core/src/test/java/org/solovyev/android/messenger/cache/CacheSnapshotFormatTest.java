@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.cache;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageState;
+import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
+
+import java.io.*;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.solovyev.android.messenger.chats.Chats.newChat;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+import static org.solovyev.android.messenger.users.Users.newUser;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+public class CacheSnapshotFormatTest {
+
+	@Test
+	public void testShouldReadWrittenSnapshot() throws Exception {
+		final Entity user = newEntity("test~1", "user");
+		final Entity contact = newEntity("test~1", "contact");
+		final User contactUser = newUser(contact, Arrays.<AProperty>asList(newProperty(User.PROPERTY_FIRST_NAME, "Name"), newProperty(User.PROPERTY_PHONE, "123")));
+		final Chat chat = newChat(newEntity("test~1", "user:contact"), Collections.<AProperty>emptyList(), new DateTime(1000L));
+
+		final MutableMessage message = newMessage(newEntity("test~1", "message"));
+		message.setChat(chat.getEntity());
+		message.setAuthor(contact);
+		message.setRecipient(user);
+		message.setState(MessageState.received);
+		message.setSendDate(new DateTime(2000L));
+		message.setBody("Body");
+		message.setRead(true);
+
+		final Map<Entity, Integer> unreadChats = new HashMap<Entity, Integer>();
+		unreadChats.put(chat.getEntity(), 5);
+
+		final CacheSnapshot expected = new CacheSnapshot(42,
+				new HashSet<String>(asList("test~1")),
+				asList(contactUser),
+				asList(new CacheSnapshot.ChatEntry(chat, message, asList(user, contact))),
+				unreadChats);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CacheSnapshotFormat.write(expected, new DataOutputStream(bytes));
+		final CacheSnapshot actual = CacheSnapshotFormat.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertNotNull(actual);
+		assertEquals(42, actual.getGeneration());
+		assertEquals(expected.getAccountIds(), actual.getAccountIds());
+		assertEquals(contact, actual.getUsers().get(0).getEntity());
+		assertEquals("Name", actual.getUsers().get(0).getPropertyValueByName(User.PROPERTY_FIRST_NAME));
+		assertEquals(expected.getUnreadChats(), actual.getUnreadChats());
+
+		final CacheSnapshot.ChatEntry chatEntry = actual.getChats().get(0);
+		assertEquals(chat.getEntity(), chatEntry.getChat().getEntity());
+		assertEquals(chat.getLastMessagesSyncDate(), chatEntry.getChat().getLastMessagesSyncDate());
+		assertEquals(asList(user, contact), chatEntry.getParticipants());
+
+		final Message actualMessage = chatEntry.getLastMessage();
+		assertNotNull(actualMessage);
+		assertEquals(message.getEntity(), actualMessage.getEntity());
+		assertEquals(message.getAuthor(), actualMessage.getAuthor());
+		assertEquals(message.getRecipient(), actualMessage.getRecipient());
+		assertEquals(message.getState(), actualMessage.getState());
+		assertEquals(message.getSendDate(), actualMessage.getSendDate());
+		assertEquals(message.getBody(), actualMessage.getBody());
+		assertTrue(actualMessage.isRead());
+	}
+
+	@Test
+	public void testShouldNotReadSnapshotInUnknownFormat() throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeInt(0);
+		assertNull(CacheSnapshotFormat.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+	}
+}
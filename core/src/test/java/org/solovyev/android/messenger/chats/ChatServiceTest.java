@@ -20,11 +20,13 @@ import com.google.common.base.Predicate;
 import com.google.inject.Inject;
 import org.joda.time.DateTime;
 import org.junit.Test;
+import org.robolectric.Robolectric;
 import org.solovyev.android.messenger.DefaultMessengerTest;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MessageService;
 import org.solovyev.android.messenger.messages.MutableMessage;
 import org.solovyev.android.messenger.realms.test.TestAccount;
 import org.solovyev.android.messenger.users.User;
@@ -59,6 +61,14 @@ public class ChatServiceTest extends DefaultMessengerTest {
 	@Nonnull
 	private UserService userService;
 
+	@Inject
+	@Nonnull
+	private MessageService messageService;
+
+	@Inject
+	@Nonnull
+	private DraftDao draftDao;
+
 	@Test
 	public void testMessagesShouldBeReturnedInDescendingOrder() throws Exception {
 		final Account account = getAccount2();
@@ -203,4 +213,99 @@ public class ChatServiceTest extends DefaultMessengerTest {
 		assertEquals("test1", addedMessages.getObject().get(0).getBody());
 		assertEquals("test2", addedMessages.getObject().get(1).getBody());
 	}
+
+	@Test
+	public void testShouldMarkMessagesReadAtOnce() throws Exception {
+		final AccountData ad = getAccountData1();
+		final Chat chat = ad.getChats().get(0).getChat();
+
+		final List<Message> unreadMessages = new ArrayList<Message>();
+		for (Message message : messageService.getMessages(chat.getEntity())) {
+			if (!message.isRead()) {
+				unreadMessages.add(message);
+			}
+		}
+		assertFalse(unreadMessages.isEmpty());
+
+		final List<ChatEvent> readEvents = new ArrayList<ChatEvent>();
+		chatService.addListener(new AbstractJEventListener<ChatEvent>(ChatEvent.class) {
+			@Override
+			public void onEvent(@Nonnull ChatEvent event) {
+				switch (event.getType()) {
+					case messages_read:
+						readEvents.add(event);
+						break;
+				}
+			}
+		});
+
+		chatService.markMessagesRead(chat, unreadMessages);
+
+		assertEquals(1, readEvents.size());
+		assertEquals(unreadMessages.size(), readEvents.get(0).getDataAsMessages().size());
+		for (Message message : messageService.getMessages(chat.getEntity())) {
+			assertTrue(message.isRead());
+		}
+
+		// nothing is changed => no events
+		chatService.markMessagesRead(chat, unreadMessages);
+		assertEquals(1, readEvents.size());
+	}
+
+	@Test
+	public void testDraftShouldBeSavedWithoutChangingChat() throws Exception {
+		final Chat chat = getAccountData1().getChats().get(0).getChat();
+
+		final List<ChatEvent> events = new ArrayList<ChatEvent>();
+		chatService.addListener(new AbstractJEventListener<ChatEvent>(ChatEvent.class) {
+			@Override
+			public void onEvent(@Nonnull ChatEvent event) {
+				events.add(event);
+			}
+		});
+
+		chatService.saveDraftMessage(chat, "t");
+		chatService.saveDraftMessage(chat, "te");
+		chatService.saveDraftMessage(chat, "tes");
+		chatService.saveDraftMessage(chat, "test");
+
+		assertEquals("test", chatService.getDraftMessage(chat));
+		// only presence of draft is published
+		assertEquals(1, events.size());
+		assertEquals(ChatEventType.draft_message_changed, events.get(0).getType());
+		assertEquals(Boolean.TRUE, events.get(0).getData());
+
+		// delayed save
+		Robolectric.runUiThreadTasksIncludingDelayedTasks();
+		assertEquals("test", draftDao.readDrafts().get(chat.getId()));
+
+		chatService.removeDraftMessage(chat);
+		assertNull(chatService.getDraftMessage(chat));
+		assertEquals(2, events.size());
+		assertEquals(Boolean.FALSE, events.get(1).getData());
+
+		Robolectric.runUiThreadTasksIncludingDelayedTasks();
+		assertFalse(draftDao.readDrafts().containsKey(chat.getId()));
+	}
+
+	@Test
+	public void testDraftShouldBeSavedOnFlushWithoutDelay() throws Exception {
+		final Chat chat = getAccountData1().getChats().get(0).getChat();
+
+		chatService.saveDraftMessage(chat, "test");
+		chatService.flushDraftMessages();
+		assertEquals("test", draftDao.readDrafts().get(chat.getId()));
+	}
+
+	@Test
+	public void testDraftShouldBeForgottenOnChatRemoval() throws Exception {
+		final Chat chat = getAccountData1().getChats().get(0).getChat();
+
+		chatService.saveDraftMessage(chat, "test");
+		chatService.removeChat(chat.getEntity());
+		assertNull(chatService.getDraftMessage(chat));
+
+		Robolectric.runUiThreadTasksIncludingDelayedTasks();
+		assertFalse(draftDao.readDrafts().containsKey(chat.getId()));
+	}
 }
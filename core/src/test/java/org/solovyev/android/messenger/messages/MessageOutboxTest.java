@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.messages;
+
+import com.google.inject.Inject;
+import org.junit.Test;
+import org.solovyev.android.messenger.DefaultMessengerTest;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.chats.AccountChat;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatService;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.solovyev.android.messenger.messages.Messages.newOutgoingMessage;
+
+public class MessageOutboxTest extends DefaultMessengerTest {
+
+	@Inject
+	@Nonnull
+	private MessageOutbox outbox;
+
+	@Inject
+	@Nonnull
+	private OutboxDao outboxDao;
+
+	@Inject
+	@Nonnull
+	private MessageDao messageDao;
+
+	@Inject
+	@Nonnull
+	private MessageService messageService;
+
+	@Inject
+	@Nonnull
+	private ChatService chatService;
+
+	@Test
+	public void testShouldSendMessage() throws Exception {
+		final Account account = getAccount1();
+		// only chats known by test realm can be used for sending
+		final List<AccountChat> accountChats = account.getAccountChatService().getChats();
+		chatService.mergeChats(account.getUser().getEntity(), accountChats);
+		final Chat chat = chatService.getChatById(accountChats.get(0).getChat().getEntity());
+		assertNotNull(chat);
+
+		final Message message = outbox.enqueue(newOutgoingMessage(account, chat, "test", null));
+
+		assertTrue(outboxDao.readEntries(account.getId()).isEmpty());
+
+		boolean sent = false;
+		for (Message chatMessage : messageService.getMessages(chat.getEntity())) {
+			if (chatMessage.getBody().equals("test")) {
+				assertEquals(MessageState.sent, chatMessage.getState());
+				sent = true;
+			}
+		}
+		assertTrue(sent);
+
+		final Message queuedMessage = messageDao.read(message.getId());
+		assertTrue(queuedMessage == null || queuedMessage.getState() == MessageState.removed);
+	}
+
+	@Test
+	public void testShouldKeepMessageInOutboxIfSendingFailed() throws Exception {
+		final Account account = getAccount1();
+		// chat is unknown to test realm => sending fails
+		final Chat chat = getAccountData1().getChats().get(0).getChat();
+
+		final Message message = outbox.enqueue(newOutgoingMessage(account, chat, "test", null));
+
+		final List<OutboxEntry> entries = outboxDao.readEntries(account.getId());
+		assertEquals(1, entries.size());
+		assertEquals(message.getId(), entries.get(0).getMessageId());
+		assertEquals(1, entries.get(0).getAttempts());
+		assertTrue(entries.get(0).getNextAttemptTime() > System.currentTimeMillis());
+
+		final Message queuedMessage = messageDao.read(message.getId());
+		assertNotNull(queuedMessage);
+		assertEquals(MessageState.created, queuedMessage.getState());
+	}
+
+	@Test
+	public void testShouldFailMessageAfterMaxAttempts() throws Exception {
+		final Account account = getAccount1();
+		// chat is unknown to test realm => sending fails
+		final Chat chat = getAccountData1().getChats().get(0).getChat();
+
+		final Message message = newOutgoingMessage(account, chat, "test", null).cloneWithNewState(MessageState.created);
+		chatService.saveMessages(chat.getEntity(), asList(message));
+		final OutboxEntry entry = OutboxEntry.newOutboxEntry(message);
+		outboxDao.insert(new OutboxEntry(entry.getMessageId(), entry.getAccountId(), entry.getChatId(), MessageOutbox.MAX_ATTEMPTS - 1, 0));
+		outbox.init();
+
+		assertTrue(outboxDao.readEntries(account.getId()).isEmpty());
+		final Message failedMessage = messageDao.read(message.getId());
+		assertNotNull(failedMessage);
+		assertEquals(MessageState.failed, failedMessage.getState());
+	}
+
+	@Test
+	public void testShouldExpireEntryIfMessageIsNotFound() throws Exception {
+		final Account account = getAccount1();
+		final Chat chat = getAccountData1().getChats().get(0).getChat();
+
+		// message is not stored => entry is checked again later
+		final OutboxEntry entry = OutboxEntry.newOutboxEntry(newOutgoingMessage(account, chat, "test", null));
+		outboxDao.insert(entry);
+		outbox.init();
+
+		final List<OutboxEntry> entries = outboxDao.readEntries(account.getId());
+		assertEquals(1, entries.size());
+		assertEquals(entry.getMessageId(), entries.get(0).getMessageId());
+		assertEquals(1, entries.get(0).getAttempts());
+
+		// last attempt => entry is removed
+		outboxDao.delete(asList(entry.getMessageId()));
+		outboxDao.insert(new OutboxEntry(entry.getMessageId(), entry.getAccountId(), entry.getChatId(), MessageOutbox.MAX_ATTEMPTS - 1, 0));
+		outbox.init();
+
+		assertTrue(outboxDao.readEntries(account.getId()).isEmpty());
+	}
+
+	@Test
+	public void testRetryDelayShouldGrowExponentially() throws Exception {
+		assertEquals(MessageOutbox.MIN_RETRY_DELAY_MILLIS, MessageOutbox.getRetryDelay(1));
+		assertEquals(2 * MessageOutbox.MIN_RETRY_DELAY_MILLIS, MessageOutbox.getRetryDelay(2));
+		assertEquals(4 * MessageOutbox.MIN_RETRY_DELAY_MILLIS, MessageOutbox.getRetryDelay(3));
+		assertEquals(MessageOutbox.MAX_RETRY_DELAY_MILLIS, MessageOutbox.getRetryDelay(100));
+	}
+}
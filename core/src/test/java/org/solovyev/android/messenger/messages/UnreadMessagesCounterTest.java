@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.messenger.messages;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.solovyev.android.messenger.MessengerEvent;
+import org.solovyev.android.messenger.MessengerListeners;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.accounts.AccountEvent;
+import org.solovyev.android.messenger.accounts.AccountEventType;
+import org.solovyev.android.messenger.accounts.AccountService;
+import org.solovyev.android.messenger.accounts.AccountState;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatEvent;
+import org.solovyev.android.messenger.chats.ChatEventType;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.users.PersistenceLock;
+import org.solovyev.common.listeners.JEventListener;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+
+public class UnreadMessagesCounterTest {
+
+	private static final int CHATS_COUNT = 500;
+
+	@Nonnull
+	private ChatService chatService;
+
+	@Nonnull
+	private MessengerListeners messengerListeners;
+
+	@Nonnull
+	private UnreadMessagesCounter counter;
+
+	@Nonnull
+	private JEventListener<ChatEvent> chatListener;
+
+	@Nonnull
+	private JEventListener<AccountEvent> accountListener;
+
+	@Nonnull
+	private Account account;
+
+	@Nonnull
+	private final List<Entity> chats = new ArrayList<Entity>();
+
+	@Before
+	public void setUp() throws Exception {
+		final AccountService accountService = mock(AccountService.class);
+		account = mock(Account.class);
+		when(account.isEnabled()).thenReturn(true);
+		when(account.getState()).thenReturn(AccountState.disabled_by_user);
+		when(accountService.getAccountByEntity(any(Entity.class))).thenReturn(account);
+
+		chatService = mock(ChatService.class);
+		messengerListeners = mock(MessengerListeners.class);
+
+		final Map<Entity, Integer> unreadChats = new HashMap<Entity, Integer>();
+		for (int i = 0; i < CHATS_COUNT; i++) {
+			final Entity chat = newEntity("test~1", "chat" + i);
+			chats.add(chat);
+			unreadChats.put(chat, 1);
+		}
+		when(chatService.getUnreadChats()).thenReturn(unreadChats);
+
+		// events are dispatched manually
+		counter = new UnreadMessagesCounter(new PersistenceLock(), mock(ScheduledExecutorService.class));
+		Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(AccountService.class).toInstance(accountService);
+				bind(ChatService.class).toInstance(chatService);
+				bind(MessageService.class).toInstance(mock(MessageService.class));
+				bind(MessengerListeners.class).toInstance(messengerListeners);
+			}
+		}).injectMembers(counter);
+
+		counter.init();
+
+		final ArgumentCaptor<JEventListener> captor = ArgumentCaptor.forClass(JEventListener.class);
+		verify(chatService).addListener(captor.capture());
+		chatListener = captor.getValue();
+
+		final ArgumentCaptor<JEventListener> accountCaptor = ArgumentCaptor.forClass(JEventListener.class);
+		verify(accountService).addListener(accountCaptor.capture());
+		accountListener = accountCaptor.getValue();
+
+		counter.dispatch();
+		verify(chatService, times(CHATS_COUNT)).onUnreadMessagesCountChanged(any(Entity.class), anyInt());
+		reset(chatService, messengerListeners);
+	}
+
+	@Test
+	public void testOnlyChangedChatsShouldBeDispatched() throws Exception {
+		// 50 messages in 10 chats
+		for (int i = 0; i < 50; i++) {
+			chatListener.onEvent(ChatEventType.message_added.newEvent(newMockChat(chats.get(i % 10)), newMockUnreadMessage()));
+		}
+
+		assertEquals(CHATS_COUNT + 50, counter.getUnreadMessagesCount());
+
+		counter.dispatch();
+
+		verify(chatService, times(10)).onUnreadMessagesCountChanged(any(Entity.class), anyInt());
+		for (int i = 0; i < 10; i++) {
+			verify(chatService).onUnreadMessagesCountChanged(chats.get(i), 6);
+		}
+		verify(messengerListeners, times(1)).fireEvent(any(MessengerEvent.class));
+
+		// nothing changed => nothing dispatched
+		reset(chatService, messengerListeners);
+		counter.dispatch();
+		verify(chatService, never()).onUnreadMessagesCountChanged(any(Entity.class), anyInt());
+		verify(messengerListeners, never()).fireEvent(any(MessengerEvent.class));
+	}
+
+	@Test
+	public void testCounterShouldNotBeNegative() throws Exception {
+		final Chat chat = newMockChat(chats.get(0));
+		chatListener.onEvent(ChatEventType.messages_read.newEvent(chat, asList(newMockUnreadMessage())));
+		chatListener.onEvent(ChatEventType.messages_read.newEvent(chat, asList(newMockUnreadMessage())));
+
+		assertEquals(0, counter.getUnreadMessagesCountForChat(chat.getEntity()));
+		assertEquals(CHATS_COUNT - 1, counter.getUnreadMessagesCount());
+
+		counter.dispatch();
+		verify(chatService, times(1)).onUnreadMessagesCountChanged(eq(chat.getEntity()), eq(0));
+	}
+
+	@Test
+	public void testAllReadMessagesShouldBeAppliedAtOnce() throws Exception {
+		final Chat chat = newMockChat(chats.get(0));
+		final List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 10; i++) {
+			messages.add(newMockUnreadMessage());
+		}
+		chatListener.onEvent(ChatEventType.message_added.newEvent(chat, newMockUnreadMessage()));
+		chatListener.onEvent(ChatEventType.messages_added.newEvent(chat, messages));
+		assertEquals(12, counter.getUnreadMessagesCountForChat(chat.getEntity()));
+
+		chatListener.onEvent(ChatEventType.messages_read.newEvent(chat, messages));
+
+		assertEquals(2, counter.getUnreadMessagesCountForChat(chat.getEntity()));
+		assertEquals(CHATS_COUNT + 1, counter.getUnreadMessagesCount());
+
+		counter.dispatch();
+		verify(chatService, times(1)).onUnreadMessagesCountChanged(eq(chat.getEntity()), eq(2));
+	}
+
+	@Test
+	public void testTotalCounterShouldBeSumOfChatCountersAfterConcurrentReload() throws Exception {
+		final List<Chat> changedChats = new ArrayList<Chat>();
+		for (int i = 0; i < 10; i++) {
+			changedChats.add(newMockChat(chats.get(i)));
+		}
+		final Message message = newMockUnreadMessage();
+
+		final Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 2000; i++) {
+					chatListener.onEvent(ChatEventType.message_added.newEvent(changedChats.get(i % 10), message));
+				}
+			}
+		});
+		writer.start();
+		// counters are reloaded while they are being changed
+		for (int i = 0; i < 20; i++) {
+			accountListener.onEvent(AccountEventType.state_changed.newEvent(account, null));
+		}
+		writer.join();
+
+		int sum = 0;
+		for (Integer counterByChat : counter.getUnreadChats().values()) {
+			sum += counterByChat;
+		}
+		assertEquals(sum, counter.getUnreadMessagesCount());
+	}
+
+	@Nonnull
+	private static Chat newMockChat(@Nonnull Entity entity) {
+		final Chat chat = mock(Chat.class);
+		when(chat.getEntity()).thenReturn(entity);
+		return chat;
+	}
+
+	@Nonnull
+	private static Message newMockUnreadMessage() {
+		final Message message = mock(Message.class);
+		when(message.canRead()).thenReturn(true);
+		return message;
+	}
+}
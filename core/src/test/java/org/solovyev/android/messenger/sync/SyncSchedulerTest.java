@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.sync;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.*;
+import static org.solovyev.android.messenger.sync.SyncTask.chat_messages;
+import static org.solovyev.android.messenger.sync.SyncTask.user_contacts;
+
+public class SyncSchedulerTest {
+
+	private static final long NOW = 1000000000L;
+
+	@Test
+	public void testShouldRunNeverRunTask() throws Exception {
+		assertTrue(SyncScheduler.isTime(user_contacts, null, NOW, false));
+	}
+
+	@Test
+	public void testIntervalShouldGrowIfDataIsNotChanged() throws Exception {
+		SyncTaskSchedule schedule = SyncScheduler.onSuccess(user_contacts, null, 42, NOW);
+		assertEquals(user_contacts.getMinInterval(), schedule.getInterval());
+		assertFalse(SyncScheduler.isTime(user_contacts, schedule, NOW + 1, false));
+		assertTrue(SyncScheduler.isTime(user_contacts, schedule, NOW + user_contacts.getMinInterval(), false));
+
+		schedule = SyncScheduler.onSuccess(user_contacts, schedule, 42, NOW);
+		assertEquals(2 * user_contacts.getMinInterval(), schedule.getInterval());
+
+		for (int i = 0; i < 100; i++) {
+			schedule = SyncScheduler.onSuccess(user_contacts, schedule, 42, NOW);
+		}
+		assertEquals(user_contacts.getMaxInterval(), schedule.getInterval());
+
+		// data changed => start from the beginning
+		schedule = SyncScheduler.onSuccess(user_contacts, schedule, 43, NOW);
+		assertEquals(user_contacts.getMinInterval(), schedule.getInterval());
+	}
+
+	@Test
+	public void testIntervalShouldNotGrowIfTaskHasNoFingerprint() throws Exception {
+		SyncTaskSchedule schedule = SyncScheduler.onSuccess(user_contacts, null, SyncTaskSchedule.NO_FINGERPRINT, NOW);
+		schedule = SyncScheduler.onSuccess(user_contacts, schedule, SyncTaskSchedule.NO_FINGERPRINT, NOW);
+		assertEquals(user_contacts.getMinInterval(), schedule.getInterval());
+	}
+
+	@Test
+	public void testFailedTaskShouldBeRetriedWithBackoff() throws Exception {
+		final Random random = new Random(0);
+
+		SyncTaskSchedule schedule = SyncScheduler.onSuccess(user_contacts, null, 42, NOW);
+		long previousDelay = 0;
+		for (int i = 1; i <= 5; i++) {
+			schedule = SyncScheduler.onFailure(user_contacts, schedule, NOW, random);
+			assertEquals(i, schedule.getFailures());
+
+			final long delay = schedule.getNextRunTime() - NOW;
+			final long backoff = MINUTES.toMillis(1) << (i - 1);
+			assertTrue(delay >= backoff * 0.8 && delay <= backoff * 1.2);
+			assertTrue(delay > previousDelay);
+			previousDelay = delay;
+		}
+
+		// last successful run should be kept
+		assertEquals(NOW, schedule.getLastRunTime());
+
+		for (int i = 0; i < 100; i++) {
+			schedule = SyncScheduler.onFailure(user_contacts, schedule, NOW, random);
+		}
+		assertTrue(schedule.getNextRunTime() - NOW <= SyncScheduler.MAX_BACKOFF * 1.2);
+
+		schedule = SyncScheduler.onSuccess(user_contacts, schedule, 42, NOW);
+		assertEquals(0, schedule.getFailures());
+	}
+
+	@Test
+	public void testTaskCoveredByPushShouldNotBeRunWhileConnected() throws Exception {
+		final SyncTaskSchedule schedule = SyncScheduler.onSuccess(chat_messages, null, 42, NOW);
+		final long time = NOW + chat_messages.getMinInterval();
+
+		assertTrue(SyncScheduler.isTime(chat_messages, schedule, time, false));
+		assertFalse(SyncScheduler.isTime(chat_messages, schedule, time, true));
+		assertTrue(SyncScheduler.isTime(chat_messages, schedule, NOW + chat_messages.getMaxInterval(), true));
+	}
+
+	@Test
+	public void testScheduleShouldBeRestoredFromJson() throws Exception {
+		final SyncTaskSchedule taskSchedule = new SyncTaskSchedule(1, 2, 3, 4, 5);
+		final SyncSchedule schedule = SyncSchedule.fromJson(SyncSchedule.newEmptySchedule().with(user_contacts, taskSchedule).toJson());
+
+		final SyncTaskSchedule actual = schedule.get(user_contacts);
+		assertNotNull(actual);
+		assertEquals(1, actual.getLastRunTime());
+		assertEquals(2, actual.getNextRunTime());
+		assertEquals(3, actual.getInterval());
+		assertEquals(4, actual.getFailures());
+		assertEquals(5, actual.getFingerprint());
+		assertNull(schedule.get(chat_messages));
+
+		assertNull(SyncSchedule.fromJson("not a json").get(user_contacts));
+		assertNull(SyncSchedule.fromJson(null).get(user_contacts));
+	}
+}
@@ -20,6 +20,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.solovyev.android.messenger.users.PhoneNumber.newPhoneNumber;
 
@@ -31,4 +32,10 @@ public class PhoneNumberTest {
 		assertTrue(newPhoneNumber("345-67-89").same(newPhoneNumber("3456789")));
 		assertTrue(newPhoneNumber("+345  67-89").same(newPhoneNumber("+345  6789")));
 	}
+
+	@Test
+	public void testSameNumbersShouldHaveSameCanonicalNumber() throws Exception {
+		assertEquals(newPhoneNumber("345-67-89").getCanonicalNumber(), newPhoneNumber("3456789").getCanonicalNumber());
+		assertEquals(newPhoneNumber("+345  67-89").getCanonicalNumber(), newPhoneNumber("+345  6789").getCanonicalNumber());
+	}
 }
@@ -163,6 +163,22 @@ public class UserDaoTest extends DefaultDaoTest<User> {
 		}
 	}
 
+	@Test
+	public void testShouldChangeUserStatusesInBatch() throws Exception {
+		final List<User> users = new ArrayList<User>();
+		for (User user : getAccountData1().getUsers()) {
+			users.add(user.cloneWithNewStatus(!user.isOnline()));
+		}
+
+		dao.updateOnlineStatuses(users);
+
+		for (User user : users) {
+			final User userFromDb = dao.read(user.getId());
+			assertNotNull(userFromDb);
+			assertEquals(user.isOnline(), userFromDb.isOnline());
+		}
+	}
+
 	@Nonnull
 	@Override
 	protected Collection<User> populateEntities(@Nonnull Dao<User> dao) {
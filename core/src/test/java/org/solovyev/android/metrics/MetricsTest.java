@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.solovyev.android.metrics;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetricsTest {
+
+	@Test
+	public void testHistogramShouldEstimatePercentiles() throws Exception {
+		final Histogram histogram = new Metrics().getHistogram("test");
+		for (int i = 0; i < 90; i++) {
+			histogram.update(3);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.update(400);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(400, histogram.getMax());
+		assertEquals(42, histogram.getMean());
+		assertEquals(5, histogram.getPercentile(50));
+		assertEquals(5, histogram.getPercentile(90));
+		assertEquals(400, histogram.getPercentile(95));
+		assertEquals(400, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testSameMetricShouldBeReturnedForSameName() throws Exception {
+		final Metrics metrics = new Metrics();
+		metrics.getCounter("test").inc();
+		metrics.getCounter("test").add(2);
+		assertEquals(3, metrics.getCounter("test").getValue());
+
+		metrics.reset();
+		assertEquals(0, metrics.getCounter("test").getValue());
+	}
+
+	@Test
+	public void testJsonShouldContainHitRatio() throws Exception {
+		final Metrics metrics = new Metrics();
+		metrics.getCounter("cache.test.hit").add(3);
+		metrics.getCounter("cache.test.miss").add(1);
+		metrics.registerGauge("cache.test.size", new Gauge() {
+			@Override
+			public long getValue() {
+				return 10;
+			}
+		});
+
+		final JsonObject json = metrics.toJson();
+		assertEquals(0.75d, json.getAsJsonObject("hit_ratios").get("cache.test").getAsDouble(), 0.0001d);
+		assertEquals(10, json.getAsJsonObject("gauges").get("cache.test.size").getAsLong());
+	}
+}
@@ -0,0 +1 @@
+CREATE TABLE outbox (message_id text PRIMARY KEY, account_id text NOT NULL, chat_id text NOT NULL, attempts integer NOT NULL, next_attempt_time integer NOT NULL, FOREIGN KEY (account_id) REFERENCES accounts (id) ON DELETE CASCADE);
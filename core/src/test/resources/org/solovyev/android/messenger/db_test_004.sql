@@ -0,0 +1,3 @@
+CREATE TABLE drafts (chat_id text PRIMARY KEY, message text NOT NULL, FOREIGN KEY (chat_id) REFERENCES chats (id) ON DELETE CASCADE);
+INSERT INTO drafts (chat_id, message) SELECT chat_id, property_value FROM chat_properties WHERE property_name = 'draft_message' AND property_value IS NOT NULL AND property_value <> '';
+DELETE FROM chat_properties WHERE property_name = 'draft_message';
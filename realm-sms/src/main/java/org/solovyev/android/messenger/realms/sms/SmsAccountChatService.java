@@ -34,6 +34,7 @@ import org.solovyev.common.text.Strings;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -216,6 +217,16 @@ final class SmsAccountChatService implements AccountChatService {
 		return true;
 	}
 
+	@Nonnull
+	@Override
+	public Collection<Message> markMessagesRead(@Nonnull Collection<Message> messages) throws AccountConnectionException {
+		// local content provider, no network round trips => one update per message is fine
+		for (Message message : messages) {
+			markMessageRead(message);
+		}
+		return messages;
+	}
+
 	private int findMessageId(@Nonnull Message message, @Nonnull ContentResolver cr) {
 		int messageId = -1;
 
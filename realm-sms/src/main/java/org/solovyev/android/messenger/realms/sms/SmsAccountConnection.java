@@ -27,9 +27,7 @@ import android.telephony.PhoneStateListener;
 import android.telephony.SmsMessage;
 import android.telephony.TelephonyManager;
 import android.util.Log;
-import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import org.joda.time.DateTime;
 import org.solovyev.android.Threads;
@@ -46,8 +44,10 @@ import org.solovyev.android.messenger.messages.MutableMessage;
 import org.solovyev.android.messenger.users.MutableUser;
 import org.solovyev.android.messenger.users.PhoneNumber;
 import org.solovyev.android.messenger.users.User;
-import org.solovyev.android.messenger.users.UserService;
+import org.solovyev.android.messenger.users.UserEvent;
 import org.solovyev.android.properties.MutableAProperties;
+import org.solovyev.common.listeners.AbstractJEventListener;
+import org.solovyev.common.listeners.JEventListener;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -62,7 +62,6 @@ import static android.telephony.PhoneStateListener.LISTEN_CALL_STATE;
 import static android.telephony.PhoneStateListener.LISTEN_NONE;
 import static android.telephony.SmsMessage.createFromPdu;
 import static android.telephony.TelephonyManager.*;
-import static com.google.common.collect.Iterables.any;
 import static java.util.Arrays.asList;
 import static org.solovyev.android.messenger.App.*;
 import static org.solovyev.android.messenger.accounts.AccountService.NO_ACCOUNT_ID;
@@ -89,9 +88,16 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 	@Nonnull
 	private final CallListener callListener;
 
+	@Nonnull
+	private final SmsContactsIndex contactsIndex;
+
+	@Nonnull
+	private final JEventListener<UserEvent> userEventListener = new UserEventListener();
+
 	SmsAccountConnection(@Nonnull SmsAccount account, @Nonnull Context context) {
 		super(account, context);
 		callListener = new CallListener(context);
+		contactsIndex = new SmsContactsIndex(account.getId());
 	}
 
 	public void setCallFromUs(@Nonnull String number) {
@@ -107,6 +113,8 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 			final IntentFilter intentReceivedFilter = new IntentFilter(INTENT_RECEIVED);
 			intentReceivedFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
 			application.registerReceiver(receiver, intentReceivedFilter);
+
+			getUserService().addListener(userEventListener);
 		}
 
 		getTelephonyManager().listen(callListener.phoneStateListener, LISTEN_CALL_STATE);
@@ -137,6 +145,10 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 		if (receiver != null) {
 			getApplication().unregisterReceiver(receiver);
 			receiver = null;
+
+			getUserService().removeListener(userEventListener);
+			// events will not be received => index might become outdated
+			contactsIndex.clear();
 		}
 	}
 
@@ -175,13 +187,10 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 
 		if (!messagesByPhoneNumber.isEmpty()) {
 			final User user = account.getUser();
-			final UserService userService = getUserService();
 			final ChatService chatService = getChatService();
 
-			final List<User> contacts = userService.getContacts(user.getEntity());
-
 			for (Map.Entry<String, Collection<SmsData>> entry : messagesByPhoneNumber.asMap().entrySet()) {
-				final User contact = findOrCreateContact(entry.getKey(), contacts);
+				final User contact = findOrCreateContact(entry.getKey());
 				final Chat chat = chatService.getOrCreatePrivateChat(user.getEntity(), contact.getEntity());
 
 				final List<Message> messages = new ArrayList<Message>(entry.getValue().size());
@@ -260,13 +269,23 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 	}
 
 	@Nonnull
-	public User findOrCreateContact(@Nonnull final String phone, @Nonnull List<User> contacts) {
-		User result = findContactByPhone(phone, contacts);
+	public User findOrCreateContact(@Nonnull final String phone) {
+		return findOrCreateContact(phone, getContactsIndex());
+	}
+
+	/**
+	 * Same as {@link #findOrCreateContact(String)} but contact is looked up in the given <var>index</var> (see
+	 * {@link #getContactsIndex()}). Should be used if many contacts are looked up at once (e.g. while SMS are imported).
+	 */
+	@Nonnull
+	User findOrCreateContact(@Nonnull String phone, @Nonnull SmsContactsIndex index) {
+		User result = index.find(phone);
 		if (result == null) {
 			result = toUser(phone);
 
 			final SmsAccount account = getAccount();
 			App.getUserService().mergeContacts(account, asList(result), false, false);
+			index.put(result);
 		}
 		return result;
 	}
@@ -292,25 +311,27 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 		return user;
 	}
 
-	@Nullable
-	private static User findContactByPhone(@Nonnull final String phone, @Nonnull List<User> contacts) {
-		final SamePhonePredicate predicate = new SamePhonePredicate(newPhoneNumber(phone));
+	/**
+	 * @return loaded index of contacts. If connection is started index is kept up to date by user events. Otherwise new
+	 * index is loaded and is not updated afterwards (except for contacts created through it) => it should be used only
+	 * for one operation (e.g. one import of SMS)
+	 */
+	@Nonnull
+	SmsContactsIndex getContactsIndex() {
+		final SmsContactsIndex result;
+		if (receiver != null) {
+			// connection is started => index is kept up to date by user events
+			result = contactsIndex;
+		} else {
+			// connection is stopped => index can't be reused
+			result = new SmsContactsIndex(getAccount().getId());
+		}
 
-		return Iterables.find(contacts, new Predicate<User>() {
-			@Override
-			public boolean apply(@Nullable User contact) {
-				if (contact != null) {
-					// first try to find by default phone property
-					if (predicate.apply(contact.getPropertyValueByName(PROPERTY_PHONE))) {
-						return true;
-					} else {
-						return any(contact.getPhoneNumbers(), predicate);
-					}
-				} else {
-					return false;
-				}
-			}
-		}, null);
+		if (!result.isLoaded()) {
+			final User user = getAccount().getUser();
+			result.load(getUserService().getContacts(user.getEntity()));
+		}
+		return result;
 	}
 
 	private void onCall(@Nonnull Call call) {
@@ -318,8 +339,7 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 		if (!isEmpty(number)) {
 			final SmsAccount account = getAccount();
 			final User user = account.getUser();
-			final List<User> contacts = getUserService().getContacts(user.getEntity());
-			final User contact = findOrCreateContact(number, contacts);
+			final User contact = findOrCreateContact(number);
 			try {
 				final Chat chat = getChatService().getOrCreatePrivateChat(user.getEntity(), contact.getEntity());
 
@@ -360,24 +380,15 @@ final class SmsAccountConnection extends BaseAccountConnection<SmsAccount> {
 		return String.format("%dm %ds", minutes, seconds);
 	}
 
-	private static class SamePhonePredicate implements Predicate<String> {
-
-		@Nonnull
-		private final PhoneNumber phoneNumber;
+	private final class UserEventListener extends AbstractJEventListener<UserEvent> {
 
-		public SamePhonePredicate(@Nonnull PhoneNumber phoneNumber) {
-			this.phoneNumber = phoneNumber;
+		private UserEventListener() {
+			super(UserEvent.class);
 		}
 
 		@Override
-		public boolean apply(@Nullable String phone) {
-			if (phone != null) {
-				if (newPhoneNumber(phone).same(phoneNumber)) {
-					return true;
-				}
-			}
-
-			return false;
+		public void onEvent(@Nonnull UserEvent event) {
+			contactsIndex.onEvent(event);
 		}
 	}
 
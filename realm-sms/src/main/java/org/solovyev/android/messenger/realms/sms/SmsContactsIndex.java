@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.sms;
+
+import org.solovyev.android.messenger.users.PhoneNumber;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserEvent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.solovyev.android.messenger.users.PhoneNumber.newPhoneNumber;
+import static org.solovyev.android.messenger.users.User.PROPERTY_PHONE;
+import static org.solovyev.common.text.Strings.isEmpty;
+
+/**
+ * Index of contacts of SMS account by their phone numbers. Phone numbers are stored in canonical form
+ * (see {@link PhoneNumber#getCanonicalNumber()}) => lookup of a contact is a single hash probe.
+ * Index is loaded lazily and is updated incrementally by {@link UserEvent}s.
+ */
+@ThreadSafe
+final class SmsContactsIndex {
+
+	@Nonnull
+	private final String accountId;
+
+	// key: canonical phone number, value: contact
+	@GuardedBy("this")
+	@Nonnull
+	private final Map<String, User> contactsByPhone = new HashMap<String, User>();
+
+	// key: contact id, value: contact which was indexed (is needed to remove old phone numbers)
+	@GuardedBy("this")
+	@Nonnull
+	private final Map<String, User> contactsById = new HashMap<String, User>();
+
+	@GuardedBy("this")
+	private boolean loaded = false;
+
+	SmsContactsIndex(@Nonnull String accountId) {
+		this.accountId = accountId;
+	}
+
+	public synchronized boolean isLoaded() {
+		return loaded;
+	}
+
+	public synchronized void load(@Nonnull List<User> contacts) {
+		contactsByPhone.clear();
+		contactsById.clear();
+		for (User contact : contacts) {
+			put(contact);
+		}
+		loaded = true;
+	}
+
+	public synchronized void clear() {
+		contactsByPhone.clear();
+		contactsById.clear();
+		loaded = false;
+	}
+
+	@Nullable
+	public synchronized User find(@Nonnull String phone) {
+		return contactsByPhone.get(newPhoneNumber(phone).getCanonicalNumber());
+	}
+
+	public synchronized void put(@Nonnull User contact) {
+		remove(contact.getId());
+
+		contactsById.put(contact.getId(), contact);
+
+		// default phone property has priority over other phones
+		for (String phone : contact.getPhoneNumbers()) {
+			putPhone(phone, contact, false);
+		}
+		putPhone(contact.getPropertyValueByName(PROPERTY_PHONE), contact, true);
+	}
+
+	private void putPhone(@Nullable String phone, @Nonnull User contact, boolean overwrite) {
+		if (!isEmpty(phone)) {
+			final String key = newPhoneNumber(phone).getCanonicalNumber();
+			if (!isEmpty(key)) {
+				if (overwrite || !contactsByPhone.containsKey(key)) {
+					contactsByPhone.put(key, contact);
+				}
+			}
+		}
+	}
+
+	public synchronized void remove(@Nonnull String contactId) {
+		final User oldContact = contactsById.remove(contactId);
+		if (oldContact != null) {
+			for (String phone : oldContact.getPhoneNumbers()) {
+				removePhone(phone, oldContact);
+			}
+			removePhone(oldContact.getPropertyValueByName(PROPERTY_PHONE), oldContact);
+		}
+	}
+
+	private void removePhone(@Nullable String phone, @Nonnull User contact) {
+		if (!isEmpty(phone)) {
+			final String key = newPhoneNumber(phone).getCanonicalNumber();
+			final User indexedContact = contactsByPhone.get(key);
+			if (indexedContact != null && indexedContact.getId().equals(contact.getId())) {
+				contactsByPhone.remove(key);
+			}
+		}
+	}
+
+	public void onEvent(@Nonnull UserEvent event) {
+		final User user = event.getUser();
+		switch (event.getType()) {
+			case changed:
+				if (isIndexed(user)) {
+					put(user);
+				}
+				break;
+			case contacts_added:
+				if (isOwnAccount(user)) {
+					putAll(event.getDataAsUsers());
+				}
+				break;
+			case contacts_changed:
+				if (isOwnAccount(user)) {
+					putAll(event.getDataAsUsers());
+				}
+				break;
+			case contact_removed:
+				if (isOwnAccount(user)) {
+					remove(event.getDataAsUserId());
+				}
+				break;
+		}
+	}
+
+	private synchronized void putAll(@Nonnull List<User> contacts) {
+		if (loaded) {
+			for (User contact : contacts) {
+				put(contact);
+			}
+		}
+	}
+
+	private synchronized boolean isIndexed(@Nonnull User user) {
+		return loaded && contactsById.containsKey(user.getId());
+	}
+
+	private boolean isOwnAccount(@Nonnull User user) {
+		return user.getEntity().getAccountId().equals(accountId);
+	}
+}
@@ -27,14 +27,16 @@ import org.solovyev.android.messenger.messages.MutableMessage;
 import org.solovyev.common.Converter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
 
 import static org.solovyev.android.messenger.App.getChatService;
-import static org.solovyev.android.messenger.App.getUserService;
 import static org.solovyev.android.messenger.entities.Entities.generateEntity;
 import static org.solovyev.android.messenger.messages.Messages.newMessage;
 import static org.solovyev.android.messenger.realms.sms.SmsAccount.TAG;
 import static org.solovyev.common.text.Strings.isEmpty;
 
+@NotThreadSafe
 class SmsMessageConverter implements Converter<Cursor, MutableMessage> {
 
 	@Nonnull
@@ -43,6 +45,10 @@ class SmsMessageConverter implements Converter<Cursor, MutableMessage> {
 	@Nonnull
 	private final MessageService messageService;
 
+	// loaded once per conversion session (e.g. import of all SMS), see SmsAccountConnection#getContactsIndex()
+	@Nullable
+	private SmsContactsIndex contactsIndex;
+
 	SmsMessageConverter(@Nonnull SmsAccount account, @Nonnull MessageService messageService) {
 		this.account = account;
 		this.messageService = messageService;
@@ -110,7 +116,11 @@ class SmsMessageConverter implements Converter<Cursor, MutableMessage> {
 
 		final String address = cursor.getString(cursor.getColumnIndexOrThrow("address"));
 		if (!isEmpty(address)) {
-			participant = connection.findOrCreateContact(address, getUserService().getContacts(user)).getEntity();
+			if (contactsIndex == null || !contactsIndex.isLoaded()) {
+				// index of the started connection is cleared when connection stops
+				contactsIndex = connection.getContactsIndex();
+			}
+			participant = connection.findOrCreateContact(address, contactsIndex).getEntity();
 			if (!participant.isAccountEntityIdSet()) {
 				throw new IllegalArgumentException("No account entity id is set");
 			}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.solovyev.android.messenger.realms.sms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.solovyev.android.messenger.users.User.PROPERTY_PHONE;
+import static org.solovyev.android.messenger.users.User.PROPERTY_PHONES;
+import static org.solovyev.android.messenger.users.UserEventType.changed;
+import static org.solovyev.android.messenger.users.UserEventType.contact_removed;
+import static org.solovyev.android.messenger.users.UserEventType.contacts_added;
+import static org.solovyev.android.messenger.users.UserEventType.contacts_changed;
+import static org.solovyev.android.messenger.users.Users.newUser;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+@RunWith(RobolectricTestRunner.class)
+public class SmsContactsIndexTest {
+
+	private static final String ACCOUNT_ID = "sms~1";
+
+	private static final String OTHER_ACCOUNT_ID = "sms~2";
+
+	private Locale defaultLocale;
+
+	private User account;
+
+	private SmsContactsIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		// formatting of phone numbers depends on default locale
+		defaultLocale = Locale.getDefault();
+		Locale.setDefault(Locale.US);
+
+		account = newUser(ACCOUNT_ID, "self", new ArrayList<AProperty>());
+		index = new SmsContactsIndex(ACCOUNT_ID);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Locale.setDefault(defaultLocale);
+	}
+
+	@Test
+	public void testShouldFindContactByDifferentlyFormattedNumber() throws Exception {
+		final User contact = newContact(ACCOUNT_ID, "1", "5551234567");
+		index.load(asList(contact));
+
+		assertEquals(contact, index.find("5551234567"));
+		assertEquals(contact, index.find("555-123-4567"));
+		assertEquals(contact, index.find("555 123 4567"));
+		assertNull(index.find("5557654321"));
+	}
+
+	@Test
+	public void testShouldFindContactByAnyOfItsNumbers() throws Exception {
+		final User contact = newUser(ACCOUNT_ID, "1", Arrays.<AProperty>asList(newProperty(PROPERTY_PHONE, "5551234567"),
+				newProperty(PROPERTY_PHONES, "5551234567;5557654321")));
+		index.load(asList(contact));
+
+		assertEquals(contact, index.find("555-123-4567"));
+		assertEquals(contact, index.find("555-765-4321"));
+	}
+
+	@Test
+	public void testDefaultPhoneShouldHavePriority() throws Exception {
+		final User first = newUser(ACCOUNT_ID, "1", Arrays.<AProperty>asList(newProperty(PROPERTY_PHONES, "5551234567")));
+		final User second = newContact(ACCOUNT_ID, "2", "555-123-4567");
+		index.load(asList(first, second));
+
+		assertEquals(second, index.find("5551234567"));
+	}
+
+	@Test
+	public void testShouldAddContactsFromEvents() throws Exception {
+		index.load(new ArrayList<User>());
+
+		final User contact = newContact(ACCOUNT_ID, "1", "5551234567");
+		index.onEvent(contacts_added.newEvent(account, asList(contact)));
+
+		assertEquals(contact, index.find("555-123-4567"));
+	}
+
+	@Test
+	public void testShouldUpdateContactsFromEvents() throws Exception {
+		final User contact = newContact(ACCOUNT_ID, "1", "5551234567");
+		index.load(asList(contact));
+
+		final User changedContact = newContact(ACCOUNT_ID, "1", "5557654321");
+		index.onEvent(contacts_changed.newEvent(account, asList(changedContact)));
+
+		assertNull(index.find("5551234567"));
+		assertEquals(changedContact, index.find("555-765-4321"));
+
+		final User changedAgain = newContact(ACCOUNT_ID, "1", "5550000000");
+		index.onEvent(changed.newEvent(changedAgain));
+
+		assertNull(index.find("5557654321"));
+		assertEquals(changedAgain, index.find("555-000-0000"));
+	}
+
+	@Test
+	public void testShouldRemoveContactsFromEvents() throws Exception {
+		final User contact = newContact(ACCOUNT_ID, "1", "5551234567");
+		index.load(asList(contact));
+
+		index.onEvent(contact_removed.newEvent(account, contact.getId()));
+
+		assertNull(index.find("5551234567"));
+	}
+
+	@Test
+	public void testShouldIgnoreNotIndexedUsersAndOtherAccounts() throws Exception {
+		index.load(new ArrayList<User>());
+
+		index.onEvent(changed.newEvent(newContact(ACCOUNT_ID, "1", "5551234567")));
+		assertNull(index.find("5551234567"));
+
+		final User otherAccount = newUser(OTHER_ACCOUNT_ID, "self", new ArrayList<AProperty>());
+		index.onEvent(contacts_added.newEvent(otherAccount, asList(newContact(OTHER_ACCOUNT_ID, "2", "5557654321"))));
+		assertNull(index.find("5557654321"));
+	}
+
+	@Test
+	public void testShouldIgnoreEventsUntilLoaded() throws Exception {
+		index.onEvent(contacts_added.newEvent(account, asList(newContact(ACCOUNT_ID, "1", "5551234567"))));
+		assertNull(index.find("5551234567"));
+	}
+
+	@Nonnull
+	private static User newContact(@Nonnull String accountId, @Nonnull String contactId, @Nonnull String phone) {
+		final List<AProperty> properties = new ArrayList<AProperty>();
+		properties.add(newProperty(PROPERTY_PHONE, phone));
+		return newUser(accountId, contactId, properties);
+	}
+}
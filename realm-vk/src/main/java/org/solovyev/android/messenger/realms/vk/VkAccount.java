@@ -24,6 +24,7 @@ import org.solovyev.android.messenger.accounts.connection.AccountConnection;
 import org.solovyev.android.messenger.chats.AccountChatService;
 import org.solovyev.android.messenger.realms.Realm;
 import org.solovyev.android.messenger.realms.vk.chats.VkAccountChatService;
+import org.solovyev.android.messenger.realms.vk.http.VkRequestBatcher;
 import org.solovyev.android.messenger.realms.vk.users.VkAccountUserService;
 import org.solovyev.android.messenger.users.AccountUserService;
 import org.solovyev.android.messenger.users.User;
@@ -32,6 +33,10 @@ import javax.annotation.Nonnull;
 
 public final class VkAccount extends AbstractAccount<VkAccountConfiguration> {
 
+	// services are created for each call => batcher must be shared through the account (copies of the account share it too)
+	@Nonnull
+	private final VkRequestBatcher requestBatcher = new VkRequestBatcher();
+
 	public VkAccount(@Nonnull String id, @Nonnull Realm realm, @Nonnull User user, @Nonnull VkAccountConfiguration configuration, @Nonnull AccountState state, @Nonnull AccountSyncData syncData) {
 		super(id, realm, user, configuration, state, syncData);
 	}
@@ -52,6 +57,14 @@ public final class VkAccount extends AbstractAccount<VkAccountConfiguration> {
 		return sb.toString();
 	}
 
+	/**
+	 * @return batcher through which all VK API calls of this account should be executed
+	 */
+	@Nonnull
+	public VkRequestBatcher getRequestBatcher() {
+		return requestBatcher;
+	}
+
 	@Nonnull
 	@Override
 	public AccountUserService getAccountUserService() {
@@ -18,7 +18,7 @@ package org.solovyev.android.messenger.realms.vk;
 
 import android.util.Log;
 import org.solovyev.android.captcha.ResolvedCaptcha;
-import org.solovyev.android.http.AHttpClient;
+import org.solovyev.android.http.PooledHttpClient.Profile;
 import org.solovyev.android.messenger.accounts.AbstractAccountBuilder;
 import org.solovyev.android.messenger.accounts.AccountRuntimeException;
 import org.solovyev.android.messenger.accounts.AccountState;
@@ -36,8 +36,7 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.List;
 
-import static org.solovyev.android.http.HttpTransactions.execute;
-import static org.solovyev.android.http.HttpTransactions.newHttpClient;
+import static org.solovyev.android.http.MeasuredHttpTransactions.execute;
 import static org.solovyev.android.messenger.accounts.Accounts.newNeverSyncedData;
 import static org.solovyev.android.messenger.entities.Entities.newEntity;
 import static org.solovyev.android.messenger.users.Users.newEmptyUser;
@@ -57,7 +56,7 @@ public class VkAccountBuilder extends AbstractAccountBuilder<VkAccount, VkAccoun
 
 		MutableUser result;
 		try {
-			final List<User> users = execute(VkUsersGetHttpTransaction.newInstance(new VkAccount(accountId, getRealm(), defaultUser, getConfiguration(), AccountState.removed, newNeverSyncedData()), userId, null));
+			final List<User> users = execute(VkUsersGetHttpTransaction.newInstance(new VkAccount(accountId, getRealm(), defaultUser, getConfiguration(), AccountState.removed, newNeverSyncedData()), userId, null), Profile.api_read);
 			if (users.isEmpty()) {
 				result = defaultUser;
 			} else {
@@ -91,8 +90,7 @@ public class VkAccountBuilder extends AbstractAccountBuilder<VkAccount, VkAccoun
 		final VkAccountConfiguration configuration = getConfiguration();
 
 		try {
-			final AHttpClient httpClient = newHttpClient();
-			final JsonAuthResult authResult = httpClient.execute(new VkOauthHttpTransaction(configuration.getLogin(), configuration.getPassword()));
+			final JsonAuthResult authResult = execute(new VkOauthHttpTransaction(configuration.getLogin(), configuration.getPassword()));
 			if (authResult != null) {
 				final String accessToken = authResult.getAccessToken();
 				final String userId = authResult.getUserId();
@@ -16,12 +16,15 @@
 
 package org.solovyev.android.messenger.realms.vk;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import org.solovyev.android.captcha.Captcha;
 import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * User: serso
@@ -30,6 +33,15 @@ import javax.annotation.Nullable;
  */
 public class VkError {
 
+	// error code of VK API: "Too many requests per second"
+	@Nonnull
+	private static final String TOO_MANY_REQUESTS = "6";
+
+	// error codes of VK API after which the same request might succeed later: "Unknown error occurred",
+	// "User authorization failed", "Too many requests per second", "Internal server error"
+	@Nonnull
+	private static final List<String> TEMPORARY_ERRORS = Arrays.asList("1", "5", TOO_MANY_REQUESTS, "10");
+
 	@Nonnull
 	private String errorId;
 
@@ -51,8 +63,7 @@ public class VkError {
 
 	@Nonnull
 	public static VkError fromJson(@Nonnull String json) throws IllegalJsonException {
-		final Gson gson = new Gson();
-		final VkErrorJsonWrapper vkErrorJsonWrapper = gson.fromJson(json, VkErrorJsonWrapper.class);
+		final VkErrorJsonWrapper vkErrorJsonWrapper = VkJson.getGson().fromJson(json, VkErrorJsonWrapper.class);
 		if (vkErrorJsonWrapper.error == null) {
 			throw new IllegalJsonException();
 		} else if (vkErrorJsonWrapper.error.error_code == null) {
@@ -61,6 +72,20 @@ public class VkError {
 		return fromJson(vkErrorJsonWrapper.error);
 	}
 
+	/**
+	 * @param reader reader positioned at the value of "error" field of VK response
+	 * @return error read from <var>reader</var>
+	 * @throws IllegalJsonException if error can't be read
+	 */
+	@Nonnull
+	public static VkError fromJson(@Nonnull JsonReader reader) throws IllegalJsonException {
+		final VkErrorJson vkErrorJson = VkJson.getGson().fromJson(reader, VkErrorJson.class);
+		if (vkErrorJson == null || vkErrorJson.error_code == null) {
+			throw new IllegalJsonException();
+		}
+		return fromJson(vkErrorJson);
+	}
+
 	@Nonnull
 	private static VkError fromJson(@Nonnull VkErrorJson json) throws IllegalJsonException {
 		final VkError result = new VkError();
@@ -114,4 +139,18 @@ public class VkError {
 	public Captcha getCaptcha() {
 		return captcha;
 	}
+
+	/**
+	 * @return true if request has been rejected because request rate limit is exceeded (request can be retried later)
+	 */
+	public boolean isTooManyRequests() {
+		return TOO_MANY_REQUESTS.equals(errorId);
+	}
+
+	/**
+	 * @return true if the same request might succeed later, false if it has been rejected (e.g. access is denied)
+	 */
+	public boolean isTemporary() {
+		return TEMPORARY_ERRORS.contains(errorId);
+	}
 }
@@ -18,12 +18,15 @@ package org.solovyev.android.messenger.realms.vk;
 
 import android.app.Application;
 import android.content.Context;
+import android.content.SharedPreferences;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.solovyev.android.http.ImageLoader;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountBuilder;
+import org.solovyev.android.messenger.accounts.AccountEvent;
+import org.solovyev.android.messenger.accounts.AccountEventType;
 import org.solovyev.android.messenger.accounts.AccountState;
 import org.solovyev.android.messenger.accounts.AccountSyncData;
 import org.solovyev.android.messenger.icons.HttpRealmIconService;
@@ -33,8 +36,11 @@ import org.solovyev.android.messenger.notifications.NotificationService;
 import org.solovyev.android.messenger.notifications.Notifications;
 import org.solovyev.android.messenger.realms.AbstractRealm;
 import org.solovyev.android.messenger.realms.vk.http.VkResponseErrorException;
+import org.solovyev.android.messenger.realms.vk.longpoll.VkRealmLongPollService;
+import org.solovyev.android.messenger.realms.vk.users.VkAccountUserService;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.properties.AProperty;
+import org.solovyev.common.listeners.AbstractJEventListener;
 import org.solovyev.common.msg.MessageType;
 import org.solovyev.common.security.Cipherer;
 import org.solovyev.common.security.CiphererException;
@@ -190,6 +196,8 @@ public class VkRealm extends AbstractRealm<VkAccountConfiguration> {
 	@Override
 	public void init(@Nonnull Context context) {
 		super.init(context);
+
+		App.getAccountService().addListener(new AccountEventListener());
 	}
 
 	@Nonnull
@@ -243,6 +251,26 @@ public class VkRealm extends AbstractRealm<VkAccountConfiguration> {
     **********************************************************************
     */
 
+	/**
+	 * Removes data which is stored in preferences per account when account is removed
+	 */
+	private static final class AccountEventListener extends AbstractJEventListener<AccountEvent> {
+
+		private AccountEventListener() {
+			super(AccountEvent.class);
+		}
+
+		@Override
+		public void onEvent(@Nonnull AccountEvent event) {
+			final Account account = event.getAccount();
+			if (event.getType() == AccountEventType.state_changed && account.getState() == AccountState.removed && REALM_ID.equals(account.getRealm().getId())) {
+				final SharedPreferences preferences = App.getPreferences();
+				VkAccountUserService.removeContactsSlice(preferences, account.getId());
+				VkRealmLongPollService.removePosition(preferences, account.getId());
+			}
+		}
+	}
+
 	private static final class VkPhotoUrlGetter implements HttpRealmIconService.UrlGetter {
 
 		@Nullable
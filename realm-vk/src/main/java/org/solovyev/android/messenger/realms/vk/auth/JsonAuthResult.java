@@ -16,8 +16,8 @@
 
 package org.solovyev.android.messenger.realms.vk.auth;
 
-import com.google.gson.Gson;
 import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -40,9 +40,7 @@ public final class JsonAuthResult {
 
 	@Nonnull
 	public static JsonAuthResult fromJson(@Nonnull String json) throws IllegalJsonException {
-		final Gson gson = new Gson();
-
-		final JsonAuthResult result = gson.fromJson(json, JsonAuthResult.class);
+		final JsonAuthResult result = VkJson.getGson().fromJson(json, JsonAuthResult.class);
 
 		if (result.access_token == null || result.expires_in == null || result.user_id == null) {
 			throw new IllegalJsonException();
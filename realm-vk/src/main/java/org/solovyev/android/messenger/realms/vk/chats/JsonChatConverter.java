@@ -20,8 +20,8 @@ import android.util.Log;
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.chats.AccountChat;
@@ -30,8 +30,8 @@ import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 import org.solovyev.android.messenger.realms.vk.messages.JsonMessage;
-import org.solovyev.android.messenger.realms.vk.messages.JsonMessageTypedAttachment;
 import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.users.UserService;
@@ -41,6 +41,7 @@ import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -87,88 +88,124 @@ public class JsonChatConverter implements Converter<String, List<AccountChat>> {
 	@Override
 	public List<AccountChat> convert(@Nonnull String json) {
 		// todo serso: we need to save title for chat somewhere
-		final Gson gson = new GsonBuilder()
-				.registerTypeAdapter(JsonMessages.class, new JsonMessages.Adapter())
-				.registerTypeAdapter(JsonMessageTypedAttachment.class, new JsonMessageTypedAttachment.Adapter())
-				.create();
-
-		final JsonMessages jsonMessagesResult = gson.fromJson(json, JsonMessages.class);
+		final JsonMessages jsonMessagesResult = VkJson.getGson().fromJson(json, JsonMessages.class);
 
 		final List<JsonMessage> jsonMessages = jsonMessagesResult.getResponse();
 
-		// key: chat id, value: chat
-		final Map<String, MutableAccountChat> chats = new HashMap<String, MutableAccountChat>();
-
-		// key: id of second user, value: chat
-		final Map<String, MutableAccountChat> fakeChats = new HashMap<String, MutableAccountChat>();
-
+		final ChatsBuilder chats = new ChatsBuilder();
 		try {
 			if (!Collections.isEmpty(jsonMessages)) {
 				for (JsonMessage jsonMessage : jsonMessages) {
-					final MutableMessage message = jsonMessage.toMessage(user, explicitUserId, account);
+					chats.addMessage(jsonMessage);
+				}
+			}
+		} catch (IllegalJsonException e) {
+			throw new IllegalJsonRuntimeException(e);
+		}
 
-					final Integer apiChatId = jsonMessage.getChat_id();
-					if (apiChatId == null && explicitChatId == null) {
+		return chats.getResult();
+	}
 
-						// fake chat (message from user to another without explicitly created chat)
-						final Entity secondUser = message.getSecondUser(user.getEntity());
+	/**
+	 * Streaming version of {@link #convert(String)}: messages are converted one by one while they are read
+	 *
+	 * @param reader reader positioned at the value of "response" field: [count, message, message, ...]
+	 * @return chats with messages
+	 */
+	@Nonnull
+	public List<AccountChat> read(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final ChatsBuilder chats = new ChatsBuilder();
+
+		reader.beginArray();
+		boolean first = true;
+		while (reader.hasNext()) {
+			if (first && reader.peek() != JsonToken.BEGIN_OBJECT) {
+				// count of messages
+				reader.skipValue();
+			} else {
+				chats.addMessage(JsonMessage.read(reader));
+			}
+			first = false;
+		}
+		reader.endArray();
 
-						if (secondUser != null) {
-							// vk allows to have messages sent to person self himself - we don't
-							if (!secondUser.getAccountEntityId().equals(user.getEntity().getAccountEntityId())) {
-								final Entity userId = user.getEntity();
-								final Entity chatId = App.getChatService().getPrivateChatId(userId, secondUser);
+		return chats.getResult();
+	}
 
-								MutableAccountChat chat = fakeChats.get(chatId.getEntityId());
-								if (chat == null) {
-									chat = newAccountChat(chatId, true);
+	private final class ChatsBuilder {
 
-									chat.addParticipant(user);
-									chat.addParticipant(userService.getUserById(secondUser, true));
+		// key: chat id, value: chat
+		@Nonnull
+		private final Map<String, MutableAccountChat> chats = new HashMap<String, MutableAccountChat>();
 
-									fakeChats.put(chatId.getEntityId(), chat);
-								}
+		// key: id of second user, value: chat
+		@Nonnull
+		private final Map<String, MutableAccountChat> fakeChats = new HashMap<String, MutableAccountChat>();
 
-								chat.addMessage(message);
-							}
-						} else {
-							Log.e(this.getClass().getSimpleName(), "Recipient is null for message " + message);
-						}
+		private void addMessage(@Nonnull JsonMessage jsonMessage) throws IllegalJsonException {
+			final MutableMessage message = jsonMessage.toMessage(user, explicitUserId, account);
 
-					} else {
-						// real chat
-						final String accountChatId = apiChatId == null ? explicitChatId : String.valueOf(apiChatId);
+			final Integer apiChatId = jsonMessage.getChat_id();
+			if (apiChatId == null && explicitChatId == null) {
 
-						MutableAccountChat chat = chats.get(accountChatId);
-						if (chat == null) {
-							// create new chat object
-							chat = newAccountChat(account.newChatEntity(accountChatId), false);
+				// fake chat (message from user to another without explicitly created chat)
+				final Entity secondUser = message.getSecondUser(user.getEntity());
 
-							final String title = jsonMessage.getTitle();
-							if (!isEmpty(title)) {
-								chat.getChat().setTitle(title);
-							}
+				if (secondUser != null) {
+					// vk allows to have messages sent to person self himself - we don't
+					if (!secondUser.getAccountEntityId().equals(user.getEntity().getAccountEntityId())) {
+						final Entity userId = user.getEntity();
+						final Entity chatId = App.getChatService().getPrivateChatId(userId, secondUser);
 
-							for (Integer participantId : jsonMessage.getParticipantIds()) {
-								chat.addParticipant(userService.getUserById(account.newUserEntity(String.valueOf(participantId)), true));
-							}
+						MutableAccountChat chat = fakeChats.get(chatId.getEntityId());
+						if (chat == null) {
+							chat = newAccountChat(chatId, true);
 
 							chat.addParticipant(user);
+							chat.addParticipant(userService.getUserById(secondUser, true));
 
-							chats.put(accountChatId, chat);
+							fakeChats.put(chatId.getEntityId(), chat);
 						}
 
 						chat.addMessage(message);
 					}
+				} else {
+					Log.e(JsonChatConverter.class.getSimpleName(), "Recipient is null for message " + message);
+				}
+
+			} else {
+				// real chat
+				final String accountChatId = apiChatId == null ? explicitChatId : String.valueOf(apiChatId);
+
+				MutableAccountChat chat = chats.get(accountChatId);
+				if (chat == null) {
+					// create new chat object
+					chat = newAccountChat(account.newChatEntity(accountChatId), false);
+
+					final String title = jsonMessage.getTitle();
+					if (!isEmpty(title)) {
+						chat.getChat().setTitle(title);
+					}
+
+					for (Integer participantId : jsonMessage.getParticipantIds()) {
+						chat.addParticipant(userService.getUserById(account.newUserEntity(String.valueOf(participantId)), true));
+					}
+
+					chat.addParticipant(user);
+
+					chats.put(accountChatId, chat);
 				}
+
+				chat.addMessage(message);
 			}
-		} catch (IllegalJsonException e) {
-			throw new IllegalJsonRuntimeException(e);
 		}
 
-		final List<AccountChat> result = new ArrayList<AccountChat>(chats.size() + fakeChats.size());
-		result.addAll(chats.values());
-		result.addAll(fakeChats.values());
-		return result;
+		@Nonnull
+		private List<AccountChat> getResult() {
+			final List<AccountChat> result = new ArrayList<AccountChat>(chats.size() + fakeChats.size());
+			result.addAll(chats.values());
+			result.addAll(fakeChats.values());
+			return result;
+		}
 	}
 }
@@ -17,16 +17,19 @@
 package org.solovyev.android.messenger.realms.vk.chats;
 
 import android.util.Log;
+import com.google.common.collect.Lists;
 import org.solovyev.android.http.HttpRuntimeIoException;
-import org.solovyev.android.http.HttpTransaction;
-import org.solovyev.android.http.HttpTransactions;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.accounts.AccountRuntimeException;
 import org.solovyev.android.messenger.chats.*;
 import org.solovyev.android.messenger.entities.Entity;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.messages.MutableMessage;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.VkRequestBatcher.Priority;
+import org.solovyev.android.messenger.realms.vk.http.VkResponseErrorException;
 import org.solovyev.android.messenger.realms.vk.messages.VkMessagesMarkAsReadHttpTransaction;
 import org.solovyev.android.messenger.realms.vk.messages.VkMessagesSendHttpTransaction;
 import org.solovyev.android.messenger.users.User;
@@ -36,8 +39,11 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class VkAccountChatService implements AccountChatService {
 
@@ -57,7 +63,7 @@ public class VkAccountChatService implements AccountChatService {
 	@Nonnull
 	@Override
 	public List<Message> getMessages() throws AccountConnectionException {
-		return executeHttpRequest(new VkMessagesGetHttpTransaction(account));
+		return executeBatched(new VkMessagesGetHttpTransaction(account));
 	}
 
 	@Nonnull
@@ -66,18 +72,65 @@ public class VkAccountChatService implements AccountChatService {
 		return getMessagesForChat(accountChatId, new VkHttpTransactionForMessagesForChatProvider() {
 			@Nonnull
 			@Override
-			public List<? extends HttpTransaction<List<Message>>> getForPrivateChat(@Nonnull User user, @Nonnull String secondUserId) {
+			public List<? extends AbstractVkStreamingHttpTransaction<List<Message>>> getForPrivateChat(@Nonnull User user, @Nonnull String secondUserId) {
 				return Arrays.asList(VkMessagesGetHistoryHttpTransaction.forUser(account, secondUserId, user));
 			}
 
 			@Nonnull
 			@Override
-			public List<? extends HttpTransaction<List<Message>>> getForChat(@Nonnull User user, @Nonnull String chatId) {
+			public List<? extends AbstractVkStreamingHttpTransaction<List<Message>>> getForChat(@Nonnull User user, @Nonnull String chatId) {
 				return Arrays.asList(VkMessagesGetHistoryHttpTransaction.forChat(account, chatId, user));
 			}
 		});
 	}
 
+	/**
+	 * Method loads newer messages for several chats at once: history calls are packed into as few requests as possible
+	 *
+	 * @param chats chats of the account
+	 * @return newer messages for each of the <var>chats</var> (in the same order), malformed chats are skipped
+	 * @throws AccountConnectionException if messages can't be loaded
+	 */
+	@Nonnull
+	public Map<Entity, List<Message>> getNewerMessagesForChats(@Nonnull Collection<Chat> chats) throws AccountConnectionException {
+		final List<Chat> loadedChats = new ArrayList<Chat>(chats.size());
+		final List<VkMessagesGetHistoryHttpTransaction> transactions = new ArrayList<VkMessagesGetHistoryHttpTransaction>(chats.size());
+		for (Chat chat : chats) {
+			final String accountChatId = chat.getEntity().getAccountEntityId();
+			if (chat.isPrivate()) {
+				final int index = accountChatId.indexOf(CHAT_DELIMITER);
+				if (index >= 0) {
+					transactions.add(VkMessagesGetHistoryHttpTransaction.forUser(account, accountChatId.substring(index + 1), account.getUser()));
+					loadedChats.add(chat);
+				} else {
+					Log.e(TAG, "Chat is private but don't have ':', chat id: " + accountChatId);
+				}
+			} else {
+				transactions.add(VkMessagesGetHistoryHttpTransaction.forChat(account, accountChatId, account.getUser()));
+				loadedChats.add(chat);
+			}
+		}
+
+		if (transactions.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		final List<List<Message>> messages;
+		try {
+			messages = account.getRequestBatcher().execute(transactions);
+		} catch (HttpRuntimeIoException e) {
+			throw new AccountConnectionException(account.getId(), e);
+		} catch (IOException e) {
+			throw new AccountConnectionException(account.getId(), e);
+		}
+
+		final Map<Entity, List<Message>> result = new LinkedHashMap<Entity, List<Message>>(loadedChats.size());
+		for (int i = 0; i < loadedChats.size(); i++) {
+			result.put(loadedChats.get(i).getEntity(), messages.get(i));
+		}
+		return result;
+	}
+
 	private List<Message> getMessagesForChat(@Nonnull String accountChatId, @Nonnull VkHttpTransactionForMessagesForChatProvider p) throws AccountConnectionException {
 		final Chat chat = getChatService().getChatById(account.newChatEntity(accountChatId));
 
@@ -89,7 +142,7 @@ public class VkAccountChatService implements AccountChatService {
 
 						final String secondUserId = accountChatId.substring(index + 1, accountChatId.length());
 						final List<Message> result = new ArrayList<Message>(100);
-						for (List<Message> messages : HttpTransactions.execute(p.getForPrivateChat(account.getUser(), secondUserId))) {
+						for (List<Message> messages : account.getRequestBatcher().execute(p.getForPrivateChat(account.getUser(), secondUserId))) {
 							result.addAll(messages);
 						}
 						return result;
@@ -101,7 +154,7 @@ public class VkAccountChatService implements AccountChatService {
 
 				} else {
 					final List<Message> result = new ArrayList<Message>(100);
-					for (List<Message> messages : HttpTransactions.execute(p.getForChat(account.getUser(), accountChatId))) {
+					for (List<Message> messages : account.getRequestBatcher().execute(p.getForChat(account.getUser(), accountChatId))) {
 						result.addAll(messages);
 					}
 					return result;
@@ -123,13 +176,13 @@ public class VkAccountChatService implements AccountChatService {
 		return getMessagesForChat(accountChatId, new VkHttpTransactionForMessagesForChatProvider() {
 			@Nonnull
 			@Override
-			public List<? extends HttpTransaction<List<Message>>> getForPrivateChat(@Nonnull User user, @Nonnull String secondUserId) {
+			public List<? extends AbstractVkStreamingHttpTransaction<List<Message>>> getForPrivateChat(@Nonnull User user, @Nonnull String secondUserId) {
 				return Arrays.asList(VkMessagesGetHistoryHttpTransaction.forUser(account, secondUserId, user, offset));
 			}
 
 			@Nonnull
 			@Override
-			public List<? extends HttpTransaction<List<Message>>> getForChat(@Nonnull User user, @Nonnull String chatId) {
+			public List<? extends AbstractVkStreamingHttpTransaction<List<Message>>> getForChat(@Nonnull User user, @Nonnull String chatId) {
 				return Arrays.asList(VkMessagesGetHistoryHttpTransaction.forChat(account, chatId, user, offset));
 			}
 		});
@@ -137,10 +190,10 @@ public class VkAccountChatService implements AccountChatService {
 
 	private static interface VkHttpTransactionForMessagesForChatProvider {
 		@Nonnull
-		List<? extends HttpTransaction<List<Message>>> getForPrivateChat(@Nonnull User user, @Nonnull String secondUserId);
+		List<? extends AbstractVkStreamingHttpTransaction<List<Message>>> getForPrivateChat(@Nonnull User user, @Nonnull String secondUserId);
 
 		@Nonnull
-		List<? extends HttpTransaction<List<Message>>> getForChat(@Nonnull User user, @Nonnull String chatId);
+		List<? extends AbstractVkStreamingHttpTransaction<List<Message>>> getForChat(@Nonnull User user, @Nonnull String chatId);
 
 	}
 
@@ -153,22 +206,40 @@ public class VkAccountChatService implements AccountChatService {
 	@Nonnull
 	@Override
 	public List<AccountChat> getChats() throws AccountConnectionException {
-		return executeHttpRequest(VkMessagesGetDialogsHttpTransaction.newInstance(account));
+		return executeBatched(VkMessagesGetDialogsHttpTransaction.newInstance(account));
 	}
 
 	@Nonnull
 	@Override
 	public String sendMessage(@Nonnull Chat chat, @Nonnull Message message) throws AccountConnectionException {
-		final String messageId = executeHttpRequest(new VkMessagesSendHttpTransaction(account, message, chat));
-		if (messageId == null) {
-			throw new AccountConnectionException("Messages was not sent - no id was found in response");
+		// messages.send is not idempotent => it is sent in its own request ahead of background calls and is retried by
+		// batcher only if VK has throttled it, other failures are retried by outbox (VK drops repeated sends by guid)
+		try {
+			return account.getRequestBatcher().executeAlone(new VkMessagesSendHttpTransaction(account, message, chat));
+		} catch (AccountRuntimeException e) {
+			if (isRejected(e)) {
+				// sending the same message again won't help
+				throw e;
+			}
+			throw new AccountConnectionException(account.getId(), e);
+		} catch (Exception e) {
+			throw new AccountConnectionException(account.getId(), e);
 		}
-		return messageId;
 	}
 
-	private <R> R executeHttpRequest(HttpTransaction<R> transaction) throws AccountConnectionException {
+	private static boolean isRejected(@Nonnull AccountRuntimeException e) {
+		final Throwable cause = e.getCause();
+		return cause instanceof VkResponseErrorException && !((VkResponseErrorException) cause).getError().isTemporary();
+	}
+
+	private <R> R executeBatched(@Nonnull AbstractVkStreamingHttpTransaction<R> transaction) throws AccountConnectionException {
+		return executeBatched(transaction, Priority.background);
+	}
+
+	// call might be packed together with other pending calls of the account into one request
+	private <R> R executeBatched(@Nonnull AbstractVkStreamingHttpTransaction<R> transaction, @Nonnull Priority priority) throws AccountConnectionException {
 		try {
-			return HttpTransactions.execute(transaction);
+			return account.getRequestBatcher().execute(transaction, priority);
 		} catch (Exception e) {
 			throw new AccountConnectionException(account.getId(), e);
 		}
@@ -186,6 +257,38 @@ public class VkAccountChatService implements AccountChatService {
 
 	@Override
 	public boolean markMessageRead(@Nonnull Message message) throws AccountConnectionException {
-		return executeHttpRequest(new VkMessagesMarkAsReadHttpTransaction(account, message.getEntity().getAccountEntityId()));
+		return executeBatched(new VkMessagesMarkAsReadHttpTransaction(account, message.getEntity().getAccountEntityId()), Priority.interactive);
+	}
+
+	@Nonnull
+	@Override
+	public Collection<Message> markMessagesRead(@Nonnull Collection<Message> messages) throws AccountConnectionException {
+		final List<List<Message>> chunks = Lists.partition(new ArrayList<Message>(messages), VkMessagesMarkAsReadHttpTransaction.MAX_MESSAGES);
+
+		final List<VkMessagesMarkAsReadHttpTransaction> transactions = new ArrayList<VkMessagesMarkAsReadHttpTransaction>(chunks.size());
+		for (List<Message> chunk : chunks) {
+			final List<String> messageIds = new ArrayList<String>(chunk.size());
+			for (Message message : chunk) {
+				messageIds.add(message.getEntity().getAccountEntityId());
+			}
+			transactions.add(new VkMessagesMarkAsReadHttpTransaction(account, messageIds));
+		}
+
+		final List<Boolean> results;
+		try {
+			// all chunks are sent in one request
+			results = account.getRequestBatcher().execute(transactions, Priority.interactive);
+		} catch (Exception e) {
+			throw new AccountConnectionException(account.getId(), e);
+		}
+
+		// chunks are accepted or rejected by server independently => only accepted ones are reported
+		final List<Message> result = new ArrayList<Message>(messages.size());
+		for (int i = 0; i < chunks.size(); i++) {
+			if (results.get(i)) {
+				result.addAll(chunks.get(i));
+			}
+		}
+		return result;
 	}
 }
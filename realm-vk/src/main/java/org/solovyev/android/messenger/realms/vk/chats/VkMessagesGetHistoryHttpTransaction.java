@@ -16,21 +16,22 @@
 
 package org.solovyev.android.messenger.realms.vk.chats;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
-import org.solovyev.android.http.HttpTransaction;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.chats.AccountChat;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 import org.solovyev.android.messenger.realms.vk.users.ApiUserField;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -41,7 +42,7 @@ import java.util.List;
  * Time: 10:15 PM
  */
 
-public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransaction<List<Message>> {
+public class VkMessagesGetHistoryHttpTransaction extends AbstractVkStreamingHttpTransaction<List<Message>> {
 
 	@Nonnull
 	private static final Integer MAX_COUNT = 100;
@@ -66,7 +67,7 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 	}
 
 	@Nonnull
-	public static HttpTransaction<List<Message>> forChat(@Nonnull VkAccount realm, @Nonnull String chatId, @Nonnull User user) {
+	public static VkMessagesGetHistoryHttpTransaction forChat(@Nonnull VkAccount realm, @Nonnull String chatId, @Nonnull User user) {
 		final VkMessagesGetHistoryHttpTransaction result = new VkMessagesGetHistoryHttpTransaction(realm);
 
 		result.chatId = chatId;
@@ -76,7 +77,7 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 	}
 
 	@Nonnull
-	public static HttpTransaction<List<Message>> forChat(@Nonnull VkAccount realm, @Nonnull String chatId, @Nonnull User user, @Nonnull Integer offset) {
+	public static VkMessagesGetHistoryHttpTransaction forChat(@Nonnull VkAccount realm, @Nonnull String chatId, @Nonnull User user, @Nonnull Integer offset) {
 		final VkMessagesGetHistoryHttpTransaction result = new VkMessagesGetHistoryHttpTransaction(realm);
 
 		result.chatId = chatId;
@@ -87,7 +88,7 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 	}
 
 	@Nonnull
-	public static HttpTransaction<List<Message>> forUser(@Nonnull VkAccount realm, @Nonnull String userId, @Nonnull User user) {
+	public static VkMessagesGetHistoryHttpTransaction forUser(@Nonnull VkAccount realm, @Nonnull String userId, @Nonnull User user) {
 		final VkMessagesGetHistoryHttpTransaction result = new VkMessagesGetHistoryHttpTransaction(realm);
 
 		result.userId = userId;
@@ -97,7 +98,7 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 	}
 
 	@Nonnull
-	public static HttpTransaction<List<Message>> forUser(@Nonnull VkAccount realm, @Nonnull String userId, @Nonnull User user, @Nonnull Integer offset) {
+	public static VkMessagesGetHistoryHttpTransaction forUser(@Nonnull VkAccount realm, @Nonnull String userId, @Nonnull User user, @Nonnull Integer offset) {
 		final VkMessagesGetHistoryHttpTransaction result = new VkMessagesGetHistoryHttpTransaction(realm);
 
 		result.userId = userId;
@@ -133,9 +134,10 @@ public class VkMessagesGetHistoryHttpTransaction extends AbstractVkHttpTransacti
 		return requestParameters;
 	}
 
+	@Nonnull
 	@Override
-	protected List<Message> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final List<AccountChat> chats = new JsonChatConverter(user, chatId, userId, App.getUserService(), getAccount()).convert(json);
+	protected List<Message> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final List<AccountChat> chats = new JsonChatConverter(user, chatId, userId, App.getUserService(), getAccount()).read(reader);
 
 		// todo serso: optimize - convert json to the messages directly
 		final List<Message> messages = new ArrayList<Message>(chats.size() * 10);
@@ -16,6 +16,7 @@
 
 package org.solovyev.android.messenger.realms.vk.chats;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.App;
@@ -23,14 +24,15 @@ import org.solovyev.android.messenger.chats.AccountChat;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.messages.Message;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-public class VkMessagesGetHttpTransaction extends AbstractVkHttpTransaction<List<Message>> {
+public class VkMessagesGetHttpTransaction extends AbstractVkStreamingHttpTransaction<List<Message>> {
 
 	@Nullable
 	private Integer count;
@@ -51,9 +53,10 @@ public class VkMessagesGetHttpTransaction extends AbstractVkHttpTransaction<List
 		return requestParameters;
 	}
 
+	@Nonnull
 	@Override
-	protected List<Message> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final List<AccountChat> chats = new JsonChatConverter(getAccount().getUser(), null, null, App.getUserService(), getAccount()).convert(json);
+	protected List<Message> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		final List<AccountChat> chats = new JsonChatConverter(getAccount().getUser(), null, null, App.getUserService(), getAccount()).read(reader);
 
 		// todo serso: optimize - convert json to the messages directly
 		final List<Message> messages = new ArrayList<Message>(chats.size() * 10);
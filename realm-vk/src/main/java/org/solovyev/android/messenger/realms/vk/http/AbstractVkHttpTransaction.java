@@ -44,6 +44,9 @@ public abstract class AbstractVkHttpTransaction<R> extends AbstractHttpTransacti
 	@Nonnull
 	private final VkAccount account;
 
+	@Nonnull
+	private final String method;
+
 	protected AbstractVkHttpTransaction(@Nonnull VkAccount account, @Nonnull String method) {
 		this(account, method, HttpMethod.GET);
 	}
@@ -51,6 +54,7 @@ public abstract class AbstractVkHttpTransaction<R> extends AbstractHttpTransacti
 	protected AbstractVkHttpTransaction(@Nonnull VkAccount account, @Nonnull String method, @Nonnull HttpMethod httpMethod) {
 		super(URI + method, httpMethod);
 		this.account = account;
+		this.method = method;
 	}
 
 	@Nonnull
@@ -58,6 +62,22 @@ public abstract class AbstractVkHttpTransaction<R> extends AbstractHttpTransacti
 		return account;
 	}
 
+	/**
+	 * @return name of VK API method, e.g. "messages.getHistory"
+	 */
+	@Nonnull
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return true if VK API method doesn't change anything on the server (e.g. "users.get", "messages.getHistory"),
+	 * such call can be safely repeated
+	 */
+	public boolean isReadOnly() {
+		return method.substring(method.indexOf('.') + 1).startsWith("get");
+	}
+
 	@Nonnull
 	@Override
 	public List<NameValuePair> getRequestParameters() {
@@ -70,30 +90,47 @@ public abstract class AbstractVkHttpTransaction<R> extends AbstractHttpTransacti
 	public R getResponse(@Nonnull HttpResponse response) {
 		try {
 			final HttpEntity httpEntity = response.getEntity();
-			final String entity = EntityUtils.toString(httpEntity);
 
-			checkStatusCode(response, entity);
+			checkStatusCode(response, httpEntity);
 
-			Log.d(getClass().getSimpleName(), "Json: " + entity);
-
-			try {
-				return getResponseFromJson(entity);
-			} catch (JsonParseException e) {
-				throw new AccountRuntimeException(account.getId(), VkResponseErrorException.newInstance(entity, this));
-			} catch (IllegalJsonException e) {
-				throw new AccountRuntimeException(account.getId(), VkResponseErrorException.newInstance(entity, this));
-			}
+			return getResponseFromEntity(httpEntity);
 		} catch (IOException e) {
 			throw new HttpRuntimeIoException(e);
 		}
 	}
 
-	private void checkStatusCode(@Nonnull HttpResponse response, @Nullable String entity) {
+	/**
+	 * Method reads the whole entity to the string and converts it with {@link #getResponseFromJson(String)}.
+	 * Subclasses might override this method in order to decode content of the entity without loading it in memory.
+	 */
+	protected R getResponseFromEntity(@Nonnull HttpEntity httpEntity) throws IOException {
+		final String entity = EntityUtils.toString(httpEntity);
+
+		if (VkJson.isPayloadLogged()) {
+			Log.d(VkJson.TAG, getClass().getSimpleName() + ": " + entity);
+		}
+
+		try {
+			return getResponseFromJson(entity);
+		} catch (JsonParseException e) {
+			throw new AccountRuntimeException(account.getId(), VkResponseErrorException.newInstance(entity, this));
+		} catch (IllegalJsonException e) {
+			throw new AccountRuntimeException(account.getId(), VkResponseErrorException.newInstance(entity, this));
+		}
+	}
+
+	private void checkStatusCode(@Nonnull HttpResponse response, @Nullable HttpEntity httpEntity) throws IOException {
 		final int statusCode = response.getStatusLine().getStatusCode();
 		final boolean ok = statusCode == HttpStatus.SC_OK;
 		if (!ok) {
 			Log.e(getClass().getSimpleName(), "Error in HTTP request: " + createRequest().getURI());
-			Log.e(getClass().getSimpleName(), "Got response: " + entity);
+			if (httpEntity != null) {
+				if (VkJson.isPayloadLogged()) {
+					Log.e(getClass().getSimpleName(), "Got response: " + EntityUtils.toString(httpEntity));
+				} else {
+					httpEntity.consumeContent();
+				}
+			}
 			throw new HttpRuntimeIoException(new IOException("Error status code: " + statusCode));
 		}
 	}
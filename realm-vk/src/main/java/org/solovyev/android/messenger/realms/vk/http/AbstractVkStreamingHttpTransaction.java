@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+import org.apache.http.HttpEntity;
+import org.solovyev.android.http.HttpMethod;
+import org.solovyev.android.messenger.accounts.AccountRuntimeException;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.VkError;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * VK transaction which decodes response directly from the content of HTTP entity: neither the whole payload string
+ * nor JSON tree is created, values are mapped to the result as soon as they are read.
+ * Envelope of VK response ({"response": ...} or {"error": ...}) is handled here, subclasses only read the value of
+ * "response" field in {@link #readResponse(JsonReader)}.
+ */
+public abstract class AbstractVkStreamingHttpTransaction<R> extends AbstractVkHttpTransaction<R> {
+
+	protected AbstractVkStreamingHttpTransaction(@Nonnull VkAccount account, @Nonnull String method) {
+		super(account, method);
+	}
+
+	protected AbstractVkStreamingHttpTransaction(@Nonnull VkAccount account, @Nonnull String method, @Nonnull HttpMethod httpMethod) {
+		super(account, method, httpMethod);
+	}
+
+	@Override
+	protected R getResponseFromEntity(@Nonnull HttpEntity httpEntity) throws IOException {
+		if (VkJson.isPayloadLogged()) {
+			// payload must be logged => string is needed anyway
+			return super.getResponseFromEntity(httpEntity);
+		}
+
+		final JsonReader reader = VkJson.newReader(httpEntity);
+		try {
+			return read(reader);
+		} catch (MalformedJsonException e) {
+			throw newUnparsableException();
+		} catch (IllegalJsonException e) {
+			throw newUnparsableException();
+		} catch (JsonParseException e) {
+			throw newUnparsableException();
+		} catch (IllegalStateException e) {
+			// unexpected token
+			throw newUnparsableException();
+		} catch (NumberFormatException e) {
+			throw newUnparsableException();
+		} finally {
+			VkJson.closeQuietly(reader);
+		}
+	}
+
+	@Override
+	protected final R getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
+		final JsonReader reader = new JsonReader(new StringReader(json));
+		try {
+			return read(reader);
+		} catch (IOException e) {
+			throw new IllegalJsonException();
+		} catch (IllegalStateException e) {
+			throw new IllegalJsonException();
+		} catch (NumberFormatException e) {
+			throw new IllegalJsonException();
+		}
+	}
+
+	@Nonnull
+	private R read(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		R result = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if ("response".equals(name)) {
+				result = readResponse(reader);
+			} else if ("error".equals(name)) {
+				final VkError error = VkError.fromJson(reader);
+				throw new AccountRuntimeException(getAccount().getId(), new VkResponseErrorException(error, this));
+			} else {
+				readField(name, reader);
+			}
+		}
+		reader.endObject();
+
+		if (result == null) {
+			throw new IllegalJsonException();
+		}
+
+		return result;
+	}
+
+	@Nonnull
+	private AccountRuntimeException newUnparsableException() {
+		return new AccountRuntimeException(getAccount().getId(), VkResponseErrorException.newUnparsableInstance(this));
+	}
+
+	/**
+	 * Method is called for each field of VK response other than "response" and "error". Default implementation skips
+	 * the value.
+	 *
+	 * @param name   name of the field
+	 * @param reader reader positioned at the value of the field
+	 */
+	protected void readField(@Nonnull String name, @Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		reader.skipValue();
+	}
+
+	/**
+	 * @param reader reader positioned at the value of "response" field
+	 * @return result converted from the value of "response" field
+	 */
+	@Nonnull
+	protected abstract R readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException;
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.solovyev.android.http.HttpMethod;
+import org.solovyev.android.messenger.accounts.AccountRuntimeException;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.VkError;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transaction which executes several VK API methods in one HTTP request through "execute" method: request
+ * parameters of each call are packed into VKScript which returns array of results, i.e.
+ * <pre>
+ * return [API.messages.getHistory({"uid":"1"}), API.users.get({"uids":"2,3"})];
+ * </pre>
+ * Each element of the array is read by the corresponding call. Failed calls are returned as "false" and their errors
+ * are listed in "execute_errors" field in the same order.
+ */
+final class VkExecuteHttpTransaction extends AbstractVkStreamingHttpTransaction<VkExecuteHttpTransaction.Results> {
+
+	// max number of API methods VK allows to be called from one "execute"
+	static final int MAX_CALLS = 25;
+
+	@Nonnull
+	private static final String ACCESS_TOKEN = "access_token";
+
+	@Nonnull
+	private final List<? extends AbstractVkStreamingHttpTransaction<?>> calls;
+
+	@Nonnull
+	private final Results results;
+
+	VkExecuteHttpTransaction(@Nonnull VkAccount account, @Nonnull List<? extends AbstractVkStreamingHttpTransaction<?>> calls) {
+		super(account, "execute", HttpMethod.POST);
+		assert !calls.isEmpty();
+		assert calls.size() <= MAX_CALLS;
+		this.calls = calls;
+		this.results = new Results(calls);
+	}
+
+	@Nonnull
+	@Override
+	public List<NameValuePair> getRequestParameters() {
+		final List<NameValuePair> result = super.getRequestParameters();
+		result.add(new BasicNameValuePair("code", newCode(calls)));
+		return result;
+	}
+
+	@Nonnull
+	static String newCode(@Nonnull List<? extends AbstractVkHttpTransaction<?>> calls) {
+		final Gson gson = VkJson.getGson();
+
+		final StringBuilder sb = new StringBuilder(64 * calls.size());
+		sb.append("return [");
+		for (int i = 0; i < calls.size(); i++) {
+			final AbstractVkHttpTransaction<?> call = calls.get(i);
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("API.").append(call.getMethod()).append("({");
+
+			boolean first = true;
+			for (NameValuePair parameter : call.getRequestParameters()) {
+				if (ACCESS_TOKEN.equals(parameter.getName())) {
+					// token is sent only once with "execute" itself
+					continue;
+				}
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				// names and values are written as JSON strings => all special characters are escaped
+				sb.append(gson.toJson(parameter.getName())).append(':').append(gson.toJson(parameter.getValue()));
+			}
+
+			sb.append("})");
+		}
+		sb.append("];");
+		return sb.toString();
+	}
+
+	@Nonnull
+	@Override
+	protected Results readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		reader.beginArray();
+		for (AbstractVkStreamingHttpTransaction<?> call : calls) {
+			if (!reader.hasNext()) {
+				throw new IllegalJsonException();
+			}
+
+			if (reader.peek() == JsonToken.BOOLEAN && !reader.nextBoolean()) {
+				// error is described in "execute_errors"
+				results.addFailure();
+			} else {
+				results.addResult(call.readResponse(reader));
+			}
+		}
+		while (reader.hasNext()) {
+			reader.skipValue();
+		}
+		reader.endArray();
+
+		return results;
+	}
+
+	@Override
+	protected void readField(@Nonnull String name, @Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		if ("execute_errors".equals(name)) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				results.errors.add(VkError.fromJson(reader));
+			}
+			reader.endArray();
+		} else {
+			super.readField(name, reader);
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	/**
+	 * Results of the calls in the same order as the calls were passed to {@link VkExecuteHttpTransaction}
+	 */
+	static final class Results {
+
+		@Nonnull
+		private final List<? extends AbstractVkStreamingHttpTransaction<?>> calls;
+
+		@Nonnull
+		private final List<Object> values;
+
+		// null for succeeded calls, index of the error in "execute_errors" for failed calls
+		@Nonnull
+		private final List<Integer> failures;
+
+		@Nonnull
+		private final List<VkError> errors = new ArrayList<VkError>();
+
+		private int failuresCount;
+
+		private Results(@Nonnull List<? extends AbstractVkStreamingHttpTransaction<?>> calls) {
+			this.calls = calls;
+			this.values = new ArrayList<Object>(calls.size());
+			this.failures = new ArrayList<Integer>(calls.size());
+		}
+
+		private void addResult(@Nonnull Object value) {
+			values.add(value);
+			failures.add(null);
+		}
+
+		private void addFailure() {
+			values.add(null);
+			failures.add(failuresCount++);
+		}
+
+		int size() {
+			return values.size();
+		}
+
+		/**
+		 * @param i index of the call
+		 * @return result of the call
+		 * @throws AccountRuntimeException if call has failed
+		 */
+		@Nonnull
+		Object get(int i) {
+			final Integer failure = failures.get(i);
+			if (failure == null) {
+				return values.get(i);
+			}
+
+			final AbstractVkStreamingHttpTransaction<?> call = calls.get(i);
+			final VkError error;
+			if (failure < errors.size()) {
+				error = errors.get(failure);
+			} else {
+				error = VkError.newInstance("ExecuteError", "Method " + call.getMethod() + " has failed in execute");
+			}
+			throw new AccountRuntimeException(call.getAccount().getId(), new VkResponseErrorException(error, call));
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import android.util.Log;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessage;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
+import org.solovyev.android.messenger.realms.vk.users.JsonUser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Helpers for streaming decoding of VK responses: JSON is read directly from the content of HTTP entity without
+ * building intermediate string or tree. Payloads are logged only if debug logging is enabled for {@link #TAG}
+ * (adb shell setprop log.tag.VkJson DEBUG) as logging requires the whole payload to be loaded in memory.
+ * <p/>
+ * All JSON of VK realm must be parsed with {@link #getGson()}: {@link Gson} is thread safe and caches type adapters
+ * => reflection is done only once per type. Hot types have hand-written adapters registered here.
+ */
+public final class VkJson {
+
+	@Nonnull
+	public static final String TAG = "VkJson";
+
+	@Nonnull
+	private static final String DEFAULT_CHARSET = "UTF-8";
+
+	@Nonnull
+	private static final Gson gson = new GsonBuilder()
+			.registerTypeAdapter(JsonUser.class, new JsonUser.Adapter())
+			.registerTypeAdapter(JsonMessage.class, new JsonMessage.Adapter())
+			.registerTypeAdapter(JsonMessages.class, new JsonMessages.Adapter())
+			.create();
+
+	private VkJson() {
+		throw new AssertionError();
+	}
+
+	@Nonnull
+	public static Gson getGson() {
+		return gson;
+	}
+
+	public static boolean isPayloadLogged() {
+		return Log.isLoggable(TAG, Log.DEBUG);
+	}
+
+	@Nonnull
+	public static JsonReader newReader(@Nonnull HttpEntity httpEntity) throws IOException {
+		String charset = EntityUtils.getContentCharSet(httpEntity);
+		if (charset == null) {
+			charset = DEFAULT_CHARSET;
+		}
+		return new JsonReader(new InputStreamReader(httpEntity.getContent(), charset));
+	}
+
+	@Nullable
+	public static String nextStringOrNull(@Nonnull JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		} else {
+			return reader.nextString();
+		}
+	}
+
+	@Nullable
+	public static Integer nextIntOrNull(@Nonnull JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		} else {
+			return reader.nextInt();
+		}
+	}
+
+	public static void closeQuietly(@Nonnull JsonReader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			Log.e(TAG, e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import com.google.common.base.Ticker;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket which limits the rate of requests made with one access token: bucket holds up to
+ * <var>requestsPerSecond</var> tokens (so short bursts are allowed) and is refilled with the same rate. Each request
+ * takes one token, if bucket is empty request must wait until the token is available.
+ */
+@ThreadSafe
+final class VkRateLimiter {
+
+	// VK allows 3 requests per second for one access token
+	static final int REQUESTS_PER_SECOND = 3;
+
+	@Nonnull
+	private final Ticker ticker;
+
+	private final int capacity;
+
+	// time needed to refill one token
+	private final long intervalNanos;
+
+	// might be negative: tokens are reserved in advance by the waiting requests
+	@GuardedBy("this")
+	private double tokens;
+
+	@GuardedBy("this")
+	private long lastRefillNanos;
+
+	VkRateLimiter(int requestsPerSecond, @Nonnull Ticker ticker) {
+		this.ticker = ticker;
+		this.capacity = requestsPerSecond;
+		this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+		this.tokens = capacity;
+		this.lastRefillNanos = ticker.read();
+	}
+
+	/**
+	 * Takes one token from the bucket
+	 *
+	 * @return time in nanoseconds the request must wait before it can be sent, 0 if request can be sent immediately
+	 */
+	synchronized long reserve() {
+		refill();
+		tokens -= 1;
+		return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * intervalNanos);
+	}
+
+	/**
+	 * Method must be called if request has been rejected by VK as too frequent: the burst is over, next request must
+	 * wait for the refill
+	 */
+	synchronized void onThrottled() {
+		refill();
+		tokens = Math.min(tokens, 0);
+	}
+
+	@GuardedBy("this")
+	private void refill() {
+		final long now = ticker.read();
+		tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / (double) intervalNanos);
+		lastRefillNanos = now;
+	}
+}
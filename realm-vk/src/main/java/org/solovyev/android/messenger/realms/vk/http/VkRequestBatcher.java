@@ -0,0 +1,543 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.SettableFuture;
+import org.solovyev.android.http.MeasuredHttpTransactions;
+import org.solovyev.android.http.PooledHttpClient.Profile;
+import org.solovyev.android.messenger.accounts.AccountRuntimeException;
+import org.solovyev.android.metrics.Gauge;
+import org.solovyev.android.metrics.Metrics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static android.os.SystemClock.elapsedRealtime;
+import static org.solovyev.android.metrics.Metrics.getMetrics;
+
+/**
+ * Schedules VK API calls of one account: calls are packed into "execute" requests (up to
+ * {@link VkExecuteHttpTransaction#MAX_CALLS} calls per request), requests are sent not faster than VK allows for one
+ * access token and calls rejected by VK as too frequent are retried. Batcher of the account is returned by
+ * {@link org.solovyev.android.messenger.realms.vk.VkAccount#getRequestBatcher()}.
+ * <p/>
+ * Only one request per account is executed at a time: calls made while request is running are queued and the first
+ * caller which finds nothing running waits for the rate limit, takes up to {@link VkExecuteHttpTransaction#MAX_CALLS}
+ * queued calls (its own and calls of others, {@link Priority#interactive} calls first) and executes them in one
+ * request. Other callers wait for the results of their calls. Thus N concurrent calls (or one list of N calls) take
+ * about N / {@link VkExecuteHttpTransaction#MAX_CALLS} round-trips instead of N.
+ * <p/>
+ * Large calls (e.g. users.get for 1000 users) are not worth packing: they are executed concurrently by
+ * {@link #executeConcurrently(List)}, not more than {@link #MAX_CONCURRENT_CALLS} at a time, each call still waits for
+ * the rate limit of the account.
+ * <p/>
+ * Non-idempotent calls (e.g. messages.send) are executed by {@link #executeAlone(AbstractVkStreamingHttpTransaction)}:
+ * they are queued as {@link Priority#interactive} calls but are never packed with other calls and are retried only if
+ * VK has rejected them as too frequent (such call has not been executed by VK).
+ */
+@ThreadSafe
+public final class VkRequestBatcher {
+
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	// max number of times call is retried after it has been rejected as too frequent
+	private static final int MAX_RETRIES = 3;
+
+	// max number of large calls executed at the same time (by all accounts)
+	private static final int MAX_CONCURRENT_CALLS = 3;
+
+	// seconds
+	private static final int KEEP_ALIVE_TIME = 30;
+
+	// number of calls waiting in the queues of all accounts
+	@Nonnull
+	private static final AtomicInteger queued = new AtomicInteger();
+
+	@Nonnull
+	private static final ThreadPoolExecutor concurrentExecutor = newConcurrentExecutor();
+
+	static {
+		getMetrics().registerGauge("vk.requests.queue", new Gauge() {
+			@Override
+			public long getValue() {
+				return queued.get();
+			}
+		});
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final VkRateLimiter rateLimiter;
+
+	@Nonnull
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	@Nonnull
+	private final LinkedList<Call<?>> interactiveCalls = new LinkedList<Call<?>>();
+
+	@GuardedBy("lock")
+	@Nonnull
+	private final LinkedList<Call<?>> backgroundCalls = new LinkedList<Call<?>>();
+
+	@GuardedBy("lock")
+	private boolean executing;
+
+	public VkRequestBatcher() {
+		this(VkRateLimiter.REQUESTS_PER_SECOND);
+	}
+
+	/**
+	 * @param requestsPerSecond max number of requests per second sent with the access token of the account
+	 */
+	public VkRequestBatcher(int requestsPerSecond) {
+		this.rateLimiter = new VkRateLimiter(requestsPerSecond, Ticker.systemTicker());
+	}
+
+	public <R> R execute(@Nonnull AbstractVkStreamingHttpTransaction<R> transaction) throws IOException {
+		return execute(transaction, Priority.background);
+	}
+
+	public <R> R execute(@Nonnull AbstractVkStreamingHttpTransaction<R> transaction, @Nonnull Priority priority) throws IOException {
+		return execute(Collections.singletonList(transaction), priority).get(0);
+	}
+
+	@Nonnull
+	public <R> List<R> execute(@Nonnull List<? extends AbstractVkStreamingHttpTransaction<R>> transactions) throws IOException {
+		return execute(transactions, Priority.background);
+	}
+
+	/**
+	 * @param transactions transactions to be executed
+	 * @param priority     priority of the transactions
+	 * @param <R>          type of result
+	 * @return results of <var>transactions</var> in the same order
+	 * @throws IOException if any of the transactions has failed to execute
+	 */
+	@Nonnull
+	public <R> List<R> execute(@Nonnull List<? extends AbstractVkStreamingHttpTransaction<R>> transactions, @Nonnull Priority priority) throws IOException {
+		final List<Call<R>> calls = new ArrayList<Call<R>>(transactions.size());
+		for (AbstractVkStreamingHttpTransaction<R> transaction : transactions) {
+			calls.add(new Call<R>(transaction, priority));
+		}
+
+		synchronized (lock) {
+			getQueue(priority).addAll(calls);
+			queued.addAndGet(calls.size());
+		}
+
+		final List<R> result = new ArrayList<R>(calls.size());
+		for (Call<R> call : calls) {
+			await(call);
+			result.add(getResult(call));
+		}
+		return result;
+	}
+
+	/**
+	 * Executes <var>transaction</var> in its own request before queued background calls. Call is not packed with other
+	 * calls (failure of another call or loss of the response would leave its result unknown) and is retried only after
+	 * "Too many requests per second" error (VK rejects such call before executing it => retry can't repeat it).
+	 *
+	 * @param transaction transaction to be executed
+	 * @param <R>         type of result
+	 * @return result of <var>transaction</var>
+	 * @throws IOException if transaction has failed to execute
+	 */
+	public <R> R executeAlone(@Nonnull AbstractVkStreamingHttpTransaction<R> transaction) throws IOException {
+		final Call<R> call = new Call<R>(transaction, Priority.interactive, true);
+
+		synchronized (lock) {
+			interactiveCalls.add(call);
+			queued.incrementAndGet();
+		}
+
+		await(call);
+		return getResult(call);
+	}
+
+	/**
+	 * Executes <var>transactions</var> concurrently without packing them into "execute" requests. Should be used for
+	 * large calls (e.g. chunks of bulk users.get) for which round-trip is dominated by the size of the response.
+	 *
+	 * @param transactions transactions to be executed
+	 * @param <R>          type of result
+	 * @return results of <var>transactions</var> in the same order
+	 * @throws IOException if any of the transactions has failed to execute
+	 */
+	@Nonnull
+	public <R> List<R> executeConcurrently(@Nonnull List<? extends AbstractVkStreamingHttpTransaction<R>> transactions) throws IOException {
+		final List<Call<R>> calls = new ArrayList<Call<R>>(transactions.size());
+		for (AbstractVkStreamingHttpTransaction<R> transaction : transactions) {
+			final Call<R> call = new Call<R>(transaction, Priority.background);
+			calls.add(call);
+			queued.incrementAndGet();
+			concurrentExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					queued.decrementAndGet();
+					getMetrics().getHistogram("vk.requests.wait.concurrent").update(elapsedRealtime() - call.queuedTime);
+					executeConcurrently(call);
+				}
+			});
+		}
+
+		final List<R> result = new ArrayList<R>(calls.size());
+		for (Call<R> call : calls) {
+			result.add(getResult(call));
+		}
+		return result;
+	}
+
+	private void executeConcurrently(@Nonnull Call<?> call) {
+		final List<Call<?>> throttled = new ArrayList<Call<?>>(1);
+		try {
+			do {
+				throttled.clear();
+				waitForRateLimit();
+				try {
+					call.execute();
+				} catch (IOException e) {
+					onFailure(call, e, throttled);
+				} catch (RuntimeException e) {
+					onFailure(call, e, throttled);
+				}
+
+				if (!throttled.isEmpty()) {
+					onThrottled(throttled);
+				}
+			} while (!throttled.isEmpty());
+		} catch (InterruptedIOException e) {
+			call.future.setException(e);
+		} finally {
+			if (!call.future.isDone()) {
+				// caller must not wait forever
+				call.future.setException(new IllegalStateException("Call has not been executed"));
+			}
+		}
+	}
+
+	private void await(@Nonnull Call<?> call) throws InterruptedIOException {
+		while (!call.future.isDone()) {
+			synchronized (lock) {
+				while (executing && !call.future.isDone()) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+
+				if (call.future.isDone()) {
+					return;
+				}
+
+				executing = true;
+			}
+
+			try {
+				// calls are taken after the wait => calls made in the meantime get into the same request
+				waitForRateLimit();
+				final List<Call<?>> batch = pollBatch();
+				if (!batch.isEmpty()) {
+					executeBatch(batch);
+				}
+			} finally {
+				synchronized (lock) {
+					executing = false;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void waitForRateLimit() throws InterruptedIOException {
+		final long waitNanos = rateLimiter.reserve();
+		if (waitNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	@Nonnull
+	private List<Call<?>> pollBatch() {
+		final List<Call<?>> batch = new ArrayList<Call<?>>(VkExecuteHttpTransaction.MAX_CALLS);
+		synchronized (lock) {
+			pollCalls(interactiveCalls, batch);
+			if (!isAlone(batch)) {
+				pollCalls(backgroundCalls, batch);
+			}
+			queued.addAndGet(-batch.size());
+		}
+
+		final Metrics metrics = getMetrics();
+		final long now = elapsedRealtime();
+		for (Call<?> call : batch) {
+			metrics.getHistogram("vk.requests.wait." + call.priority).update(now - call.queuedTime);
+		}
+		metrics.getHistogram("vk.execute.calls").update(batch.size());
+
+		return batch;
+	}
+
+	@GuardedBy("lock")
+	private static void pollCalls(@Nonnull LinkedList<Call<?>> queue, @Nonnull List<Call<?>> batch) {
+		while (batch.size() < VkExecuteHttpTransaction.MAX_CALLS && !queue.isEmpty()) {
+			if (queue.peek().alone) {
+				// call which must be executed alone is either the only call of the request or waits for the next one
+				if (batch.isEmpty()) {
+					batch.add(queue.poll());
+				}
+				break;
+			}
+			batch.add(queue.poll());
+		}
+	}
+
+	private static boolean isAlone(@Nonnull List<Call<?>> batch) {
+		return batch.size() == 1 && batch.get(0).alone;
+	}
+
+	@GuardedBy("lock")
+	@Nonnull
+	private LinkedList<Call<?>> getQueue(@Nonnull Priority priority) {
+		switch (priority) {
+			case interactive:
+				return interactiveCalls;
+			default:
+				return backgroundCalls;
+		}
+	}
+
+	private void executeBatch(@Nonnull List<Call<?>> batch) {
+		final List<Call<?>> throttled = new ArrayList<Call<?>>();
+
+		boolean handled = false;
+		try {
+			if (batch.size() == 1) {
+				// no need to wrap single call
+				batch.get(0).execute();
+			} else {
+				final List<AbstractVkStreamingHttpTransaction<?>> transactions = new ArrayList<AbstractVkStreamingHttpTransaction<?>>(batch.size());
+				for (Call<?> call : batch) {
+					transactions.add(call.transaction);
+				}
+
+				final VkExecuteHttpTransaction.Results results = MeasuredHttpTransactions.execute(new VkExecuteHttpTransaction(transactions.get(0).getAccount(), transactions));
+				for (int i = 0; i < batch.size(); i++) {
+					final Call<?> call = batch.get(i);
+					try {
+						call.set(results, i);
+					} catch (RuntimeException e) {
+						onFailure(call, e, throttled);
+					}
+				}
+			}
+			handled = true;
+		} catch (IOException e) {
+			onFailure(batch, e, throttled);
+			handled = true;
+		} catch (RuntimeException e) {
+			onFailure(batch, e, throttled);
+			handled = true;
+		} finally {
+			if (!handled) {
+				// calls must not be left without result, otherwise their callers will wait forever
+				for (Call<?> call : batch) {
+					call.future.setException(new IllegalStateException("Call has not been executed"));
+				}
+			}
+		}
+
+		if (!throttled.isEmpty()) {
+			retry(throttled);
+		}
+	}
+
+	private static void onFailure(@Nonnull List<Call<?>> batch, @Nonnull Exception e, @Nonnull List<Call<?>> throttled) {
+		for (Call<?> call : batch) {
+			onFailure(call, e, throttled);
+		}
+	}
+
+	private static void onFailure(@Nonnull Call<?> call, @Nonnull Exception e, @Nonnull List<Call<?>> throttled) {
+		if (isTooManyRequests(e) && call.retries < MAX_RETRIES) {
+			call.retries++;
+			throttled.add(call);
+		} else {
+			call.future.setException(e);
+		}
+	}
+
+	private void retry(@Nonnull List<Call<?>> calls) {
+		onThrottled(calls);
+
+		synchronized (lock) {
+			// calls are returned to the head of the queues in the same order
+			for (int i = calls.size() - 1; i >= 0; i--) {
+				final Call<?> call = calls.get(i);
+				getQueue(call.priority).addFirst(call);
+			}
+			queued.addAndGet(calls.size());
+		}
+	}
+
+	private void onThrottled(@Nonnull List<Call<?>> calls) {
+		final Metrics metrics = getMetrics();
+		metrics.getCounter("vk.requests.throttled").inc();
+		metrics.getCounter("vk.requests.retried").add(calls.size());
+
+		rateLimiter.onThrottled();
+	}
+
+	private static boolean isTooManyRequests(@Nonnull Exception e) {
+		if (e instanceof AccountRuntimeException) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof VkResponseErrorException) {
+				return ((VkResponseErrorException) cause).getError().isTooManyRequests();
+			}
+		}
+		return false;
+	}
+
+	private static <R> R getResult(@Nonnull Call<R> call) throws IOException {
+		try {
+			return call.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else {
+				throw new IOException(cause);
+			}
+		}
+	}
+
+	@Nonnull
+	private static ThreadPoolExecutor newConcurrentExecutor() {
+		final ThreadPoolExecutor result = new ThreadPoolExecutor(MAX_CONCURRENT_CALLS, MAX_CONCURRENT_CALLS, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ConcurrentCallsThreadFactory());
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	public static enum Priority {
+		// calls made by user (e.g. marking message as read), executed before other calls
+		interactive,
+
+		// synchronization and other calls user doesn't wait for
+		background
+	}
+
+	private static final class Call<R> {
+
+		@Nonnull
+		private final AbstractVkStreamingHttpTransaction<R> transaction;
+
+		@Nonnull
+		private final Priority priority;
+
+		@Nonnull
+		private final SettableFuture<R> future = SettableFuture.create();
+
+		private final long queuedTime = elapsedRealtime();
+
+		// call must not be packed with other calls
+		private final boolean alone;
+
+		// accessed only by the thread executing the call
+		private int retries;
+
+		private Call(@Nonnull AbstractVkStreamingHttpTransaction<R> transaction, @Nonnull Priority priority) {
+			this(transaction, priority, false);
+		}
+
+		private Call(@Nonnull AbstractVkStreamingHttpTransaction<R> transaction, @Nonnull Priority priority, boolean alone) {
+			this.transaction = transaction;
+			this.priority = priority;
+			this.alone = alone;
+		}
+
+		private void execute() throws IOException {
+			future.set(MeasuredHttpTransactions.execute(transaction, transaction.isReadOnly() ? Profile.api_read : Profile.api_write));
+		}
+
+		@SuppressWarnings("unchecked")
+		private void set(@Nonnull VkExecuteHttpTransaction.Results results, int i) {
+			// result has been read by the transaction of this call => it has type R
+			future.set((R) results.get(i));
+		}
+	}
+
+	private static final class ConcurrentCallsThreadFactory implements ThreadFactory {
+
+		@Nonnull
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(@Nonnull Runnable r) {
+			final Thread thread = new Thread(r, "VK concurrent calls thread #" + count.getAndIncrement());
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+}
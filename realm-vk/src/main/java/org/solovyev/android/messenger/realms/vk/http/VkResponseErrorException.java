@@ -56,10 +56,15 @@ public class VkResponseErrorException extends RuntimeException {
 		VkResponseErrorException result;
 		Log.e(VkResponseErrorException.class.getSimpleName(), json);
 		Log.e(VkResponseErrorException.class.getSimpleName(), e.getMessage());
-		result = new VkResponseErrorException(VkError.newInstance("UnableToParseJson", "Unable to parse JSON from server!"), httpTransaction);
+		result = newUnparsableInstance(httpTransaction);
 		return result;
 	}
 
+	@Nonnull
+	public static VkResponseErrorException newUnparsableInstance(@Nonnull HttpTransaction<?> httpTransaction) {
+		return new VkResponseErrorException(VkError.newInstance("UnableToParseJson", "Unable to parse JSON from server!"), httpTransaction);
+	}
+
 	public VkResponseErrorException(@Nonnull VkError error, @Nonnull HttpTransaction<?> httpTransaction) {
 		this.error = error;
 		this.httpTransaction = httpTransaction;
@@ -46,6 +46,6 @@ public class JsonLongPollResponse {
 			throw new IllegalJsonException();
 		}
 
-		return new LongPollServerData(response.getKey(), response.getServer(), response.getTs());
+		return new LongPollServerData(response.getKey(), response.getServer(), response.getTs(), response.getPts());
 	}
 }
@@ -34,6 +34,9 @@ public class JsonLongPollServerData {
 	@Nullable
 	private Long ts;
 
+	@Nullable
+	private Long pts;
+
 	@Nullable
 	public String getKey() {
 		return key;
@@ -48,4 +51,9 @@ public class JsonLongPollServerData {
 	public Long getTs() {
 		return ts;
 	}
+
+	@Nullable
+	public Long getPts() {
+		return pts;
+	}
 }
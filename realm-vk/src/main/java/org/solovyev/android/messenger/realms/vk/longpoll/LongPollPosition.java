@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import android.content.SharedPreferences;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Position of the last processed long poll update of the account. Position is stored in preferences and is used after
+ * reconnect (or application restart) to load only updates missed while long poll session was not active, see
+ * {@link VkGetLongPollHistoryHttpTransaction}. If some updates have not been applied stored position is pinned: it is
+ * not moved forward by the next polls until the updates after it are replayed
+ */
+@Immutable
+final class LongPollPosition {
+
+	private static final long NO_VALUE = -1L;
+
+	private final long ts;
+
+	// persistent timestamp of the message box, null if it was not returned by VK
+	@Nullable
+	private final Long pts;
+
+	LongPollPosition(long ts, @Nullable Long pts) {
+		this.ts = ts;
+		this.pts = pts;
+	}
+
+	long getTs() {
+		return ts;
+	}
+
+	@Nullable
+	Long getPts() {
+		return pts;
+	}
+
+	@Nullable
+	static LongPollPosition load(@Nonnull SharedPreferences preferences, @Nonnull String accountId) {
+		final long ts = preferences.getLong(getTsKey(accountId), NO_VALUE);
+		if (ts == NO_VALUE) {
+			return null;
+		}
+
+		final long pts = preferences.getLong(getPtsKey(accountId), NO_VALUE);
+		return new LongPollPosition(ts, pts == NO_VALUE ? null : pts);
+	}
+
+	/**
+	 * Saves position even if stored position is pinned, should be used after all the updates before this position have
+	 * been applied or have been given up
+	 */
+	void save(@Nonnull SharedPreferences preferences, @Nonnull String accountId) {
+		final SharedPreferences.Editor editor = preferences.edit();
+		editor.remove(getPinnedKey(accountId));
+		editor.putLong(getTsKey(accountId), ts);
+		if (pts != null) {
+			editor.putLong(getPtsKey(accountId), pts);
+		} else {
+			editor.remove(getPtsKey(accountId));
+		}
+		editor.apply();
+	}
+
+	/**
+	 * Saves position if stored position is not pinned
+	 */
+	void advance(@Nonnull SharedPreferences preferences, @Nonnull String accountId) {
+		if (!preferences.getBoolean(getPinnedKey(accountId), false)) {
+			save(preferences, accountId);
+		}
+	}
+
+	/**
+	 * Pins stored position: updates after it have not been applied and should be loaded again after reconnect
+	 */
+	static void pin(@Nonnull SharedPreferences preferences, @Nonnull String accountId) {
+		if (preferences.contains(getTsKey(accountId))) {
+			preferences.edit().putBoolean(getPinnedKey(accountId), true).apply();
+		}
+	}
+
+	static void remove(@Nonnull SharedPreferences preferences, @Nonnull String accountId) {
+		preferences.edit().remove(getTsKey(accountId)).remove(getPtsKey(accountId)).remove(getPinnedKey(accountId)).apply();
+	}
+
+	@Nonnull
+	private static String getTsKey(@Nonnull String accountId) {
+		return "vk.longPoll." + accountId + ".ts";
+	}
+
+	@Nonnull
+	private static String getPtsKey(@Nonnull String accountId) {
+		return "vk.longPoll." + accountId + ".pts";
+	}
+
+	@Nonnull
+	private static String getPinnedKey(@Nonnull String accountId) {
+		return "vk.longPoll." + accountId + ".pinned";
+	}
+}
@@ -17,6 +17,7 @@
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * User: serso
@@ -34,10 +35,15 @@ public class LongPollServerData {
 	@Nonnull
 	private Long timeStamp;
 
-	public LongPollServerData(@Nonnull String key, @Nonnull String serverUri, @Nonnull Long timeStamp) {
+	// persistent timestamp of the message box, null if it was not returned by VK
+	@Nullable
+	private Long pts;
+
+	public LongPollServerData(@Nonnull String key, @Nonnull String serverUri, @Nonnull Long timeStamp, @Nullable Long pts) {
 		this.key = key;
 		this.serverUri = serverUri;
 		this.timeStamp = timeStamp;
+		this.pts = pts;
 	}
 
 	@Nonnull
@@ -54,4 +60,9 @@ public class LongPollServerData {
 	public Long getTimeStamp() {
 		return timeStamp;
 	}
+
+	@Nullable
+	public Long getPts() {
+		return pts;
+	}
 }
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import org.solovyev.android.messenger.ExceptionHandler;
+import org.solovyev.android.messenger.accounts.AccountException;
+import org.solovyev.android.messenger.accounts.AccountRuntimeException;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatEventType;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.chats.MutableAccountChat;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.chats.VkAccountChatService;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserService;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.solovyev.android.messenger.chats.Chats.newAccountChat;
+
+/**
+ * Updates of one long poll response are reduced before they are applied: one burst might contain hundreds of updates
+ * and applying them one by one results in HTTP request for each new message and DB transaction for each presence change.
+ * Instead, each chat is synced once (history calls of all chats are packed into as few requests as possible), presence
+ * changes are saved in one transaction with one event and repeated typing notifications are collapsed.
+ * Failure of one chat doesn't prevent other chats from being updated. Updates are collected as int ids and only
+ * distinct ids are converted to strings; batch is empty after {@link #apply(VkAccount)} and is reused by the session.
+ */
+public final class LongPollUpdateBatch {
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final ChatService chatService;
+
+	@Nonnull
+	private final UserService userService;
+
+	@Nonnull
+	private final ExceptionHandler exceptionHandler;
+
+	// account ids of group chats with new messages (chats are created if needed)
+	@Nonnull
+	private final IdSet chatsWithNewMessages = new IdSet();
+
+	// account ids of friends with new messages in private chats (chats are created if needed)
+	@Nonnull
+	private final IdSet friendsWithNewMessages = new IdSet();
+
+	// account ids of changed group chats (only existing chats are synced)
+	@Nonnull
+	private final IdSet changedChats = new IdSet();
+
+	// account ids of friends with changed presence
+	@Nonnull
+	private final IdSet presences = new IdSet();
+
+	// presence of the friend with the same index in presences (only the last one is important)
+	@Nonnull
+	private boolean[] onlines = new boolean[IdSet.INITIAL_CAPACITY];
+
+	// pairs of account chat id and account id of typing user, see toPair(int, int)
+	@Nonnull
+	private final IdSet typingInChats = new IdSet();
+
+	// account ids of users typing in private chats
+	@Nonnull
+	private final IdSet typingInPrivateChats = new IdSet();
+
+	LongPollUpdateBatch(@Nonnull ChatService chatService, @Nonnull UserService userService, @Nonnull ExceptionHandler exceptionHandler) {
+		this.chatService = chatService;
+		this.userService = userService;
+		this.exceptionHandler = exceptionHandler;
+	}
+
+	void addNewMessageInChat(int accountChatId) {
+		chatsWithNewMessages.add(accountChatId);
+	}
+
+	void addNewMessageInPrivateChat(int accountFriendId) {
+		friendsWithNewMessages.add(accountFriendId);
+	}
+
+	void addChangedChat(int accountChatId) {
+		changedChats.add(accountChatId);
+	}
+
+	void addPresence(int accountFriendId, boolean online) {
+		final int i = presences.add(accountFriendId);
+		if (i == onlines.length) {
+			onlines = Arrays.copyOf(onlines, i * 2);
+		}
+		onlines[i] = online;
+	}
+
+	void addTypingInChat(int accountChatId, int accountUserId) {
+		typingInChats.add(toPair(accountChatId, accountUserId));
+	}
+
+	void addTypingInPrivateChat(int accountUserId) {
+		typingInPrivateChats.add(accountUserId);
+	}
+
+	boolean isEmpty() {
+		return chatsWithNewMessages.size() == 0
+				&& friendsWithNewMessages.size() == 0
+				&& changedChats.size() == 0
+				&& presences.size() == 0
+				&& typingInChats.size() == 0
+				&& typingInPrivateChats.size() == 0;
+	}
+
+	/**
+	 * Method removes all collected updates, batch is reused by all polls of the long poll session
+	 */
+	void clear() {
+		chatsWithNewMessages.clear();
+		friendsWithNewMessages.clear();
+		changedChats.clear();
+		presences.clear();
+		typingInChats.clear();
+		typingInPrivateChats.clear();
+	}
+
+	/**
+	 * Method applies all the collected updates. Presences and typing notifications are applied first as they don't
+	 * require network and can't fail. Failures of separate chats are passed to exception handler.
+	 *
+	 * @param account account for which updates have been received
+	 * @return true if all updates have been applied, false if some chats have failed
+	 * @throws AccountException if new messages can't be loaded at all (e.g. connection is lost)
+	 */
+	boolean apply(@Nonnull VkAccount account) throws AccountException {
+		try {
+			applyPresences(account);
+			applyTypings(account);
+			return applyNewMessages(account);
+		} finally {
+			clear();
+		}
+	}
+
+	private void applyPresences(@Nonnull VkAccount account) {
+		final int size = presences.size();
+		if (size > 0) {
+			final List<User> contacts = new ArrayList<User>(size);
+			for (int i = 0; i < size; i++) {
+				final User contact = userService.getUserById(account.newUserEntity(presences.getString(i)), true);
+				contacts.add(contact.cloneWithNewStatus(onlines[i]));
+			}
+			userService.onContactsPresenceChanged(account.getUser(), contacts);
+		}
+	}
+
+	private void applyTypings(@Nonnull VkAccount account) {
+		final String accountUserId = account.getUser().getEntity().getAccountEntityId();
+
+		for (int i = 0; i < typingInChats.size(); i++) {
+			final long pair = typingInChats.get(i);
+			final String typingUserId = String.valueOf(getSecond(pair));
+			// not self
+			if (!accountUserId.equals(typingUserId)) {
+				final Chat chat = chatService.getChatById(account.newChatEntity(String.valueOf(getFirst(pair))));
+				if (chat != null) {
+					chatService.fireEvent(ChatEventType.user_is_typing.newEvent(chat, account.newUserEntity(typingUserId)));
+				}
+			}
+		}
+
+		for (int i = 0; i < typingInPrivateChats.size(); i++) {
+			final String typingUserId = typingInPrivateChats.getString(i);
+			// not self
+			if (!accountUserId.equals(typingUserId)) {
+				final Entity typingUser = account.newUserEntity(typingUserId);
+				final Chat chat = chatService.getChatById(chatService.getPrivateChatId(account.getUser().getEntity(), typingUser));
+				if (chat != null) {
+					chatService.fireEvent(ChatEventType.user_is_typing.newEvent(chat, typingUser));
+				}
+			}
+		}
+	}
+
+	private boolean applyNewMessages(@Nonnull VkAccount account) throws AccountException {
+		final User user = account.getUser();
+
+		boolean applied = true;
+
+		final Map<Entity, Chat> chats = new LinkedHashMap<Entity, Chat>();
+		for (int i = 0; i < chatsWithNewMessages.size(); i++) {
+			try {
+				final Entity chatId = account.newChatEntity(chatsWithNewMessages.getString(i));
+				Chat chat = chatService.getChatById(chatId);
+				if (chat == null) {
+					final MutableAccountChat newChat = newAccountChat(chatId, false);
+					newChat.addParticipant(user);
+					chat = chatService.saveChat(user.getEntity(), newChat);
+				}
+				if (chat != null) {
+					chats.put(chat.getEntity(), chat);
+				}
+			} catch (AccountException e) {
+				exceptionHandler.handleException(e);
+				applied = false;
+			}
+		}
+
+		for (int i = 0; i < friendsWithNewMessages.size(); i++) {
+			try {
+				final Chat chat = chatService.getOrCreatePrivateChat(user.getEntity(), account.newUserEntity(friendsWithNewMessages.getString(i)));
+				if (chat != null) {
+					chats.put(chat.getEntity(), chat);
+				}
+			} catch (AccountException e) {
+				exceptionHandler.handleException(e);
+				applied = false;
+			}
+		}
+
+		for (int i = 0; i < changedChats.size(); i++) {
+			final Chat chat = chatService.getChatById(account.newChatEntity(changedChats.getString(i)));
+			if (chat != null) {
+				chats.put(chat.getEntity(), chat);
+			}
+		}
+
+		if (!chats.isEmpty()) {
+			final VkAccountChatService accountChatService = (VkAccountChatService) account.getAccountChatService();
+
+			Map<Entity, List<Message>> messages;
+			try {
+				messages = accountChatService.getNewerMessagesForChats(chats.values());
+			} catch (AccountRuntimeException e) {
+				// VK has rejected the call of some chat (e.g. user has left it) => chats are loaded one by one
+				messages = new LinkedHashMap<Entity, List<Message>>(chats.size());
+				applied &= loadNewMessagesForEachChat(accountChatService, chats.values(), messages);
+			}
+
+			for (Map.Entry<Entity, List<Message>> entry : messages.entrySet()) {
+				chatService.saveMessages(entry.getKey(), entry.getValue(), true);
+			}
+		}
+
+		return applied;
+	}
+
+	private boolean loadNewMessagesForEachChat(@Nonnull VkAccountChatService accountChatService, @Nonnull Collection<Chat> chats, @Nonnull Map<Entity, List<Message>> messages) throws AccountException {
+		boolean loaded = true;
+		for (Chat chat : chats) {
+			try {
+				messages.putAll(accountChatService.getNewerMessagesForChats(Collections.singletonList(chat)));
+			} catch (AccountRuntimeException e) {
+				exceptionHandler.handleException(new AccountException(e));
+				loaded = false;
+			}
+		}
+		return loaded;
+	}
+
+	private static long toPair(int first, int second) {
+		return ((long) first << 32) | (second & 0xFFFFFFFFL);
+	}
+
+	private static int getFirst(long pair) {
+		return (int) (pair >>> 32);
+	}
+
+	private static int getSecond(long pair) {
+		return (int) pair;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC/INNER
+	*
+	**********************************************************************
+	*/
+
+	/**
+	 * Set of ids which preserves insertion order and keeps its array after {@link #clear()}. Number of distinct ids in
+	 * one response is small (only chats and friends active in it) => linear search is cheaper than hashing of boxed ids.
+	 */
+	private static final class IdSet {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		@Nonnull
+		private long[] ids = new long[INITIAL_CAPACITY];
+
+		private int size;
+
+		/**
+		 * @return index of the <var>id</var> in this set
+		 */
+		private int add(long id) {
+			for (int i = 0; i < size; i++) {
+				if (ids[i] == id) {
+					return i;
+				}
+			}
+
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size] = id;
+			return size++;
+		}
+
+		private long get(int i) {
+			return ids[i];
+		}
+
+		@Nonnull
+		private String getString(int i) {
+			return String.valueOf(ids[i]);
+		}
+
+		private int size() {
+			return size;
+		}
+
+		private void clear() {
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import com.google.gson.stream.JsonReader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Updates of one long poll response stored in primitive arrays: update is read from the stream directly into the
+ * arrays without creating an object (and boxed/string ids) for each update. Instance is reused by the long poll session
+ * => after arrays have grown to the size of a usual response no garbage is produced while reading. Updates of unknown
+ * types are skipped.
+ */
+@NotThreadSafe
+public final class LongPollUpdates {
+
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	// codes of VK long poll updates
+	static final int MESSAGE_REMOVED = 0;
+	static final int MESSAGE_ADDED = 4;
+	static final int FRIEND_ONLINE = 8;
+	static final int FRIEND_OFFLINE = 9;
+	static final int CHAT_CHANGED = 51;
+	static final int TYPING_IN_PRIVATE_CHAT = 61;
+	static final int TYPING_IN_CHAT = 62;
+
+	// peer ids of group chats are shifted by this value
+	private static final int CHAT_PEER_ID_OFFSET = 2000000000;
+
+	private static final int INITIAL_CAPACITY = 32;
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	private int size;
+
+	@Nonnull
+	private int[] types = new int[INITIAL_CAPACITY];
+
+	// message id for messages, user id for presences and typings, chat id for changed chats
+	@Nonnull
+	private int[] ids = new int[INITIAL_CAPACITY];
+
+	// peer id for new messages, chat id for typings in chats
+	@Nonnull
+	private int[] peerIds = new int[INITIAL_CAPACITY];
+
+	@Nonnull
+	private int[] flags = new int[INITIAL_CAPACITY];
+
+	public LongPollUpdates() {
+	}
+
+	public int size() {
+		return size;
+	}
+
+	int getType(int i) {
+		return types[i];
+	}
+
+	int getId(int i) {
+		return ids[i];
+	}
+
+	int getPeerId(int i) {
+		return peerIds[i];
+	}
+
+	int getFlags(int i) {
+		return flags[i];
+	}
+
+	// number of updates which can be stored without growing the arrays
+	int getCapacity() {
+		return types.length;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Method reads array of updates (e.g. "updates" of long poll response) and adds them to the end of this list
+	 *
+	 * @param in reader positioned at the beginning of the array
+	 * @throws IOException if updates can't be read
+	 */
+	void read(@Nonnull JsonReader in) throws IOException {
+		in.beginArray();
+		while (in.hasNext()) {
+			in.beginArray();
+			readUpdate(in);
+			// skip the rest of the update
+			while (in.hasNext()) {
+				in.skipValue();
+			}
+			in.endArray();
+		}
+		in.endArray();
+	}
+
+	private void readUpdate(@Nonnull JsonReader in) throws IOException {
+		final int type = in.nextInt();
+		switch (type) {
+			case MESSAGE_REMOVED:
+			case CHAT_CHANGED:
+			case TYPING_IN_PRIVATE_CHAT:
+				add(type, in.nextInt(), 0, 0);
+				break;
+			case MESSAGE_ADDED:
+				final int messageId = in.nextInt();
+				final int messageFlags = in.nextInt();
+				add(type, messageId, in.nextInt(), messageFlags);
+				break;
+			case FRIEND_ONLINE:
+			case FRIEND_OFFLINE:
+				// VK sends negative user id
+				add(type, -in.nextInt(), 0, 0);
+				break;
+			case TYPING_IN_CHAT:
+				final int userId = in.nextInt();
+				add(type, userId, in.nextInt(), 0);
+				break;
+		}
+	}
+
+	private void add(int type, int id, int peerId, int flags) {
+		if (size == types.length) {
+			final int capacity = size * 2;
+			this.types = Arrays.copyOf(this.types, capacity);
+			this.ids = Arrays.copyOf(this.ids, capacity);
+			this.peerIds = Arrays.copyOf(this.peerIds, capacity);
+			this.flags = Arrays.copyOf(this.flags, capacity);
+		}
+
+		this.types[size] = type;
+		this.ids[size] = id;
+		this.peerIds[size] = peerId;
+		this.flags[size] = flags;
+		size++;
+	}
+
+	/**
+	 * Method adds all updates to the <var>batch</var> in which they are reduced (by int ids) and applied
+	 */
+	void addTo(@Nonnull LongPollUpdateBatch batch) {
+		for (int i = 0; i < size; i++) {
+			switch (types[i]) {
+				case MESSAGE_ADDED:
+					final int peerId = peerIds[i];
+					if (peerId >= CHAT_PEER_ID_OFFSET) {
+						batch.addNewMessageInChat(peerId - CHAT_PEER_ID_OFFSET);
+					} else {
+						batch.addNewMessageInPrivateChat(peerId);
+					}
+					break;
+				case FRIEND_ONLINE:
+					batch.addPresence(ids[i], true);
+					break;
+				case FRIEND_OFFLINE:
+					batch.addPresence(ids[i], false);
+					break;
+				case CHAT_CHANGED:
+					batch.addChangedChat(ids[i]);
+					break;
+				case TYPING_IN_PRIVATE_CHAT:
+					batch.addTypingInPrivateChat(ids[i]);
+					break;
+				case TYPING_IN_CHAT:
+					batch.addTypingInChat(peerIds[i], ids[i]);
+					break;
+				case MESSAGE_REMOVED:
+					// todo serso: implement
+					break;
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import com.google.gson.stream.JsonReader;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Loads updates which have been missed since <var>position</var> (e.g. while long poll session was not active).
+ * Updates are returned in the same format as by long poll server and are applied through {@link VkLongPollResult}.
+ */
+public class VkGetLongPollHistoryHttpTransaction extends AbstractVkStreamingHttpTransaction<VkLongPollResult> {
+
+	@Nonnull
+	private final LongPollPosition position;
+
+	// timestamp from which new long poll session starts
+	private final long ts;
+
+	@Nonnull
+	private final LongPollUpdateBatch batch;
+
+	VkGetLongPollHistoryHttpTransaction(@Nonnull VkAccount account, @Nonnull LongPollPosition position, long ts, @Nonnull LongPollUpdateBatch batch) {
+		super(account, "messages.getLongPollHistory");
+		this.position = position;
+		this.ts = ts;
+		this.batch = batch;
+	}
+
+	@Nonnull
+	@Override
+	public List<NameValuePair> getRequestParameters() {
+		final List<NameValuePair> result = super.getRequestParameters();
+
+		result.add(new BasicNameValuePair("ts", String.valueOf(position.getTs())));
+		final Long pts = position.getPts();
+		if (pts != null) {
+			result.add(new BasicNameValuePair("pts", String.valueOf(pts)));
+		}
+		// friends online/offline events are needed too
+		result.add(new BasicNameValuePair("onlines", "1"));
+
+		return result;
+	}
+
+	@Nonnull
+	@Override
+	protected VkLongPollResult readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		LongPollUpdates updates = null;
+		Long newPts = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if ("history".equals(name)) {
+				updates = new LongPollUpdates();
+				updates.read(reader);
+			} else if ("new_pts".equals(name)) {
+				newPts = reader.nextLong();
+			} else {
+				// messages and profiles are loaded by the updates themselves
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (updates == null) {
+			throw new IllegalJsonException();
+		}
+
+		return new VkLongPollResult(ts, newPts != null ? newPts : position.getPts(), updates, batch);
+	}
+}
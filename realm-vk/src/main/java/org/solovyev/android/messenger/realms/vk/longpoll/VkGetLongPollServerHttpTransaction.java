@@ -16,12 +16,15 @@
 
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
-import com.google.gson.Gson;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
 import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 
 /**
  * User: serso
@@ -34,10 +37,18 @@ public class VkGetLongPollServerHttpTransaction extends AbstractVkHttpTransactio
 		super(realm, "messages.getLongPollServer");
 	}
 
+	@Nonnull
+	@Override
+	public List<NameValuePair> getRequestParameters() {
+		final List<NameValuePair> result = super.getRequestParameters();
+		// pts is needed to load missed updates after reconnect, see VkGetLongPollHistoryHttpTransaction
+		result.add(new BasicNameValuePair("need_pts", "1"));
+		return result;
+	}
+
 	@Override
 	protected LongPollServerData getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		final Gson gson = new Gson();
-		final JsonLongPollResponse jsonLongPollResponse = gson.fromJson(json, JsonLongPollResponse.class);
+		final JsonLongPollResponse jsonLongPollResponse = VkJson.getGson().fromJson(json, JsonLongPollResponse.class);
 		return jsonLongPollResponse.toLongPollServerData();
 	}
 }
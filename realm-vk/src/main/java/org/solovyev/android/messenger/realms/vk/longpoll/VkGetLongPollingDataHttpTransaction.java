@@ -17,8 +17,7 @@
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
 import android.util.Log;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -31,9 +30,11 @@ import org.solovyev.android.http.HttpRuntimeIoException;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.longpoll.LongPollResult;
+import org.solovyev.android.messenger.realms.vk.http.VkJson;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,30 +48,74 @@ public class VkGetLongPollingDataHttpTransaction extends AbstractHttpTransaction
 	@Nonnull
 	private final LongPollServerData longPollServerData;
 
-	VkGetLongPollingDataHttpTransaction(@Nonnull LongPollServerData longPollServerData) {
+	// reused by all polls of the session
+	@Nonnull
+	private final LongPollUpdates updates;
+
+	// reused by all polls of the session
+	@Nonnull
+	private final LongPollUpdateBatch batch;
+
+	VkGetLongPollingDataHttpTransaction(@Nonnull LongPollServerData longPollServerData, @Nonnull LongPollUpdates updates, @Nonnull LongPollUpdateBatch batch) {
 		super("http://" + longPollServerData.getServerUri(), HttpMethod.GET);
 		this.longPollServerData = longPollServerData;
+		this.updates = updates;
+		this.batch = batch;
 	}
 
 	@Override
 	public LongPollResult getResponse(@Nonnull HttpResponse response) {
+		final HttpEntity httpEntity = response.getEntity();
+		JsonReader reader = null;
 		try {
-			final HttpEntity httpEntity = response.getEntity();
-			final String json = EntityUtils.toString(httpEntity);
-			Log.i("LongPolling", json);
+			if (VkJson.isPayloadLogged()) {
+				final String json = EntityUtils.toString(httpEntity);
+				Log.d(VkJson.TAG, "LongPolling: " + json);
+				reader = new JsonReader(new StringReader(json));
+			} else {
+				reader = VkJson.newReader(httpEntity);
+			}
 
-			// prepare builder
-			final GsonBuilder builder = new GsonBuilder();
-			builder.registerTypeAdapter(LongPollUpdate.class, new LongPollUpdate.Adapter());
-			final Gson gson = builder.create();
-
-			final JsonLongPollData jsonLongPollData = gson.fromJson(json, JsonLongPollData.class);
-			return jsonLongPollData.toResult();
+			return readResult(reader);
 		} catch (IOException e) {
 			throw new HttpRuntimeIoException(e);
 		} catch (IllegalJsonException e) {
 			throw new IllegalJsonRuntimeException(e);
+		} finally {
+			if (reader != null) {
+				VkJson.closeQuietly(reader);
+			}
+		}
+	}
+
+	@Nonnull
+	private VkLongPollResult readResult(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		updates.clear();
+
+		Long ts = null;
+		Long pts = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if ("ts".equals(name)) {
+				ts = reader.nextLong();
+			} else if ("pts".equals(name)) {
+				pts = reader.nextLong();
+			} else if ("updates".equals(name)) {
+				updates.read(reader);
+			} else {
+				reader.skipValue();
+			}
 		}
+		reader.endObject();
+
+		if (ts == null) {
+			// e.g. {"failed":2}: key is expired
+			throw new IllegalJsonException();
+		}
+
+		return new VkLongPollResult(ts, pts, updates, batch);
 	}
 
 	@Nonnull
@@ -82,7 +127,8 @@ public class VkGetLongPollingDataHttpTransaction extends AbstractHttpTransaction
 		result.add(new BasicNameValuePair("key", longPollServerData.getKey()));
 		result.add(new BasicNameValuePair("ts", String.valueOf(longPollServerData.getTimeStamp())));
 		result.add(new BasicNameValuePair("wait", "20"));
-		result.add(new BasicNameValuePair("mode", "0"));
+		// 32: return pts of the message box
+		result.add(new BasicNameValuePair("mode", "32"));
 		//todo serso: check if necessary
 		result.add(new BasicNameValuePair(CoreConnectionPNames.SO_TIMEOUT, "30000"));
 
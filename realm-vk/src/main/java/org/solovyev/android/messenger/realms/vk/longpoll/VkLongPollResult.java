@@ -16,14 +16,15 @@
 
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
+import android.content.SharedPreferences;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.longpoll.LongPollResult;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.List;
 
 /**
  * User: serso
@@ -35,12 +36,33 @@ public class VkLongPollResult implements LongPollResult {
 	@Nonnull
 	private Long lastUpdate;
 
+	// persistent timestamp of the message box, null if it was not returned by VK
+	@Nullable
+	private Long pts;
+
+	// might be reused by the next poll => must be applied before the next poll starts
+	@Nonnull
+	private LongPollUpdates updates;
+
+	// reused by all polls of the session, empty after updates have been applied
 	@Nonnull
-	private List<LongPollUpdate> updates;
+	private LongPollUpdateBatch batch;
 
-	public VkLongPollResult(@Nonnull Long lastUpdate, @Nonnull List<LongPollUpdate> updates) {
+	public VkLongPollResult(@Nonnull Long lastUpdate, @Nullable Long pts, @Nonnull LongPollUpdates updates, @Nonnull LongPollUpdateBatch batch) {
 		this.lastUpdate = lastUpdate;
+		this.pts = pts;
 		this.updates = updates;
+		this.batch = batch;
+	}
+
+	@Nonnull
+	LongPollUpdates getUpdates() {
+		return updates;
+	}
+
+	@Nullable
+	Long getPts() {
+		return pts;
 	}
 
 	@Override
@@ -48,7 +70,7 @@ public class VkLongPollResult implements LongPollResult {
 		if (longPollServerData instanceof LongPollServerData) {
 			final LongPollServerData lpsd = (LongPollServerData) longPollServerData;
 			// NOTE: new timestamp
-			return new LongPollServerData(lpsd.getKey(), lpsd.getServerUri(), lastUpdate);
+			return new LongPollServerData(lpsd.getKey(), lpsd.getServerUri(), lastUpdate, pts != null ? pts : lpsd.getPts());
 		}
 
 		return longPollServerData;
@@ -56,12 +78,35 @@ public class VkLongPollResult implements LongPollResult {
 
 	@Override
 	public void doUpdates(@Nonnull Account account) {
-		for (LongPollUpdate update : updates) {
-			try {
-				update.doUpdate(account);
-			} catch (AccountException e) {
-				App.getExceptionHandler().handleException(e);
-			}
+		final SharedPreferences preferences = App.getPreferences();
+		// long poll results are received only by VK accounts
+		if (apply((VkAccount) account)) {
+			// updates are processed => missed updates should be loaded from this position after reconnect (unless
+			// updates before it have failed)
+			getPosition().advance(preferences, account.getId());
+		} else {
+			// stored position is kept until failed updates are loaded again after reconnect
+			LongPollPosition.pin(preferences, account.getId());
 		}
 	}
+
+	/**
+	 * @return true if all updates have been applied
+	 */
+	boolean apply(@Nonnull VkAccount account) {
+		updates.addTo(batch);
+
+		try {
+			return batch.apply(account);
+		} catch (AccountException e) {
+			App.getExceptionHandler().handleException(e);
+			return false;
+		}
+	}
+
+	// position right after the updates of this result
+	@Nonnull
+	LongPollPosition getPosition() {
+		return new LongPollPosition(lastUpdate, pts);
+	}
 }
@@ -16,7 +16,11 @@
 
 package org.solovyev.android.messenger.realms.vk.longpoll;
 
-import org.solovyev.android.http.HttpTransactions;
+import android.content.SharedPreferences;
+import android.util.Log;
+import org.solovyev.android.http.MeasuredHttpTransactions;
+import org.solovyev.android.http.PooledHttpClient.Profile;
+import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.AccountException;
 import org.solovyev.android.messenger.longpoll.LongPollResult;
 import org.solovyev.android.messenger.longpoll.RealmLongPollService;
@@ -32,27 +36,92 @@ import javax.annotation.Nullable;
  */
 public class VkRealmLongPollService implements RealmLongPollService {
 
+	@Nonnull
+	private static final String TAG = App.newTag("VkLongPoll");
+
 	@Nonnull
 	private final VkAccount account;
 
+	// polls are done one after another and result is applied before the next poll => arrays can be reused
+	@Nonnull
+	private final LongPollUpdates updates = new LongPollUpdates();
+
+	// updates of each poll (and missed updates) are reduced in the same batch
+	@Nonnull
+	private final LongPollUpdateBatch batch;
+
 	public VkRealmLongPollService(@Nonnull VkAccount account) {
 		this.account = account;
+		this.batch = new LongPollUpdateBatch(App.getChatService(), App.getUserService(), App.getExceptionHandler());
 	}
 
 	@Override
 	public Object startLongPolling() throws AccountException {
+		final LongPollServerData serverData;
+		try {
+			serverData = MeasuredHttpTransactions.execute(new VkGetLongPollServerHttpTransaction(account), Profile.api_read);
+		} catch (Exception e) {
+			throw new AccountException(account.getId(), e);
+		}
+
+		final SharedPreferences preferences = App.getPreferences();
+		final LongPollPosition position = LongPollPosition.load(preferences, account.getId());
+		if (position != null) {
+			loadMissedUpdates(position, serverData);
+		} else {
+			savePosition(serverData);
+		}
+
+		return serverData;
+	}
+
+	/**
+	 * Method loads and applies updates which have been missed since <var>position</var>: one request instead of full
+	 * resync. Updates received by new session might be applied twice which is harmless. Position is moved only if all
+	 * missed updates have been applied, otherwise they are loaded again after the next reconnect.
+	 */
+	private void loadMissedUpdates(@Nonnull LongPollPosition position, @Nonnull LongPollServerData serverData) throws AccountException {
+		final VkLongPollResult missed;
 		try {
-			return HttpTransactions.execute(new VkGetLongPollServerHttpTransaction(account));
+			missed = account.getRequestBatcher().execute(new VkGetLongPollHistoryHttpTransaction(account, position, serverData.getTimeStamp(), batch));
 		} catch (Exception e) {
+			// history is too old or unavailable => missed updates will be loaded by regular sync
+			Log.w(TAG, "Missed long poll updates can't be loaded for " + account.getId() + ": " + e.getMessage());
+			savePosition(serverData);
+			return;
+		}
+
+		Log.i(TAG, "Missed long poll updates: " + missed.getUpdates().size());
+		try {
+			if (missed.apply(account)) {
+				missed.getPosition().save(App.getPreferences(), account.getId());
+			} else {
+				Log.w(TAG, "Missed long poll updates have not been applied for " + account.getId());
+				LongPollPosition.pin(App.getPreferences(), account.getId());
+			}
+		} catch (RuntimeException e) {
+			// same updates would fail again after reconnect => they are skipped and left to regular sync
+			savePosition(serverData);
 			throw new AccountException(account.getId(), e);
 		}
 	}
 
+	private void savePosition(@Nonnull LongPollServerData serverData) {
+		new LongPollPosition(serverData.getTimeStamp(), serverData.getPts()).save(App.getPreferences(), account.getId());
+	}
+
+	/**
+	 * Removes position of the long poll session stored for the account, should be called when account is removed
+	 */
+	public static void removePosition(@Nonnull SharedPreferences preferences, @Nonnull String accountId) {
+		LongPollPosition.remove(preferences, accountId);
+	}
+
 	@Override
 	public LongPollResult waitForResult(@Nullable Object longPollingData) throws AccountException {
 		try {
 			if (longPollingData instanceof LongPollServerData) {
-				return HttpTransactions.execute(new VkGetLongPollingDataHttpTransaction((LongPollServerData) longPollingData));
+				return MeasuredHttpTransactions.execute(new VkGetLongPollingDataHttpTransaction((LongPollServerData) longPollingData, updates, batch), Profile.long_poll);
 			} else {
 				return null;
 			}
@@ -18,6 +18,7 @@ package org.solovyev.android.messenger.realms.vk.messages;
 
 import android.util.Log;
 
+import java.io.IOException;
 import java.util.Collections;
 
 import org.joda.time.DateTime;
@@ -33,10 +34,16 @@ import javax.annotation.Nullable;
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import static org.solovyev.android.messenger.chats.MessageDirection.in;
 import static org.solovyev.android.messenger.messages.MessageState.*;
 import static org.solovyev.android.messenger.messages.Messages.newMessage;
+import static org.solovyev.android.messenger.realms.vk.http.VkJson.nextIntOrNull;
+import static org.solovyev.android.messenger.realms.vk.http.VkJson.nextStringOrNull;
 import static org.solovyev.common.text.Strings.getNotEmpty;
 import static org.solovyev.common.text.Strings.isEmpty;
 
@@ -65,12 +72,6 @@ public class JsonMessage {
 	@Nullable
 	private String body;
 
-	@Nullable
-	private JsonMessageTypedAttachment[] attachments;
-
-	@Nullable
-	private JsonMessage[] fwd_messages;
-
 	@Nullable
 	private Integer chat_id;
 
@@ -118,16 +119,6 @@ public class JsonMessage {
 		return body;
 	}
 
-	@Nullable
-	public JsonMessageTypedAttachment[] getAttachments() {
-		return attachments;
-	}
-
-	@Nullable
-	public JsonMessage[] getFwd_messages() {
-		return fwd_messages;
-	}
-
 	@Nullable
 	public Integer getChat_id() {
 		return chat_id;
@@ -148,6 +139,51 @@ public class JsonMessage {
 		return admin_id;
 	}
 
+	/**
+	 * Method reads message from <var>reader</var> field by field. Attachments and forwarded messages are skipped as
+	 * they are not used in {@link #toMessage(User, String, Account)}.
+	 *
+	 * @param reader reader positioned at the beginning of message object
+	 * @return message read from <var>reader</var>
+	 */
+	@Nonnull
+	public static JsonMessage read(@Nonnull JsonReader reader) throws IOException {
+		final JsonMessage result = new JsonMessage();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if ("mid".equals(name)) {
+				result.mid = nextStringOrNull(reader);
+			} else if ("uid".equals(name)) {
+				result.uid = nextStringOrNull(reader);
+			} else if ("date".equals(name)) {
+				result.date = nextStringOrNull(reader);
+			} else if ("read_state".equals(name)) {
+				result.read_state = nextIntOrNull(reader);
+			} else if ("out".equals(name)) {
+				result.out = nextIntOrNull(reader);
+			} else if ("title".equals(name)) {
+				result.title = nextStringOrNull(reader);
+			} else if ("body".equals(name)) {
+				result.body = nextStringOrNull(reader);
+			} else if ("chat_id".equals(name)) {
+				result.chat_id = nextIntOrNull(reader);
+			} else if ("chat_active".equals(name)) {
+				result.chat_active = nextStringOrNull(reader);
+			} else if ("users_count".equals(name)) {
+				result.users_count = nextIntOrNull(reader);
+			} else if ("admin_id".equals(name)) {
+				result.admin_id = nextIntOrNull(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return result;
+	}
+
 	@Nonnull
 	public MutableMessage toMessage(@Nonnull User user,
 									@Nullable String explicitUserId,
@@ -248,6 +284,28 @@ public class JsonMessage {
 		}
 	}
 
+	/**
+	 * Hand-written adapter: Gson doesn't need to discover fields of {@link JsonMessage} through reflection
+	 */
+	public static class Adapter extends TypeAdapter<JsonMessage> {
+
+		@Override
+		public JsonMessage read(@Nonnull JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			} else {
+				return JsonMessage.read(in);
+			}
+		}
+
+		@Override
+		public void write(@Nonnull JsonWriter out, @Nullable JsonMessage message) throws IOException {
+			// adapter is registered only for reading of VK responses
+			throw new UnsupportedOperationException("Messages are sent to VK as request parameters, not serialized to JSON");
+		}
+	}
+
 	private static class ToIntFunction implements Function<String, Integer> {
 
 		@Nonnull
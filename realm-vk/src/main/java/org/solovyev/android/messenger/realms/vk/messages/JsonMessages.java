@@ -16,11 +16,15 @@
 
 package org.solovyev.android.messenger.realms.vk.messages;
 
-import com.google.gson.*;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,37 +46,57 @@ public class JsonMessages {
 		return response;
 	}
 
-	public static class Adapter implements JsonDeserializer<JsonMessages> {
+	/**
+	 * Hand-written adapter: messages are read from the stream without building intermediate {@link com.google.gson.JsonArray}
+	 */
+	public static class Adapter extends TypeAdapter<JsonMessages> {
 
 		@Override
-		public JsonMessages deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+		public JsonMessages read(@Nonnull JsonReader in) throws IOException {
 			final JsonMessages result = new JsonMessages();
 
-			if (json.isJsonObject()) {
-				final JsonObject response = json.getAsJsonObject();
-				final JsonArray responseArray = response.getAsJsonArray("response");
-				if (responseArray != null && responseArray.isJsonArray()) {
-					boolean first = true;
+			if (in.peek() != JsonToken.BEGIN_OBJECT) {
+				throw new JsonParseException("Unexpected JSON type: " + in.peek());
+			}
+
+			in.beginObject();
+			while (in.hasNext()) {
+				if ("response".equals(in.nextName())) {
+					if (in.peek() != JsonToken.BEGIN_ARRAY) {
+						throw new JsonParseException("Unexpected JSON type: " + in.peek());
+					}
 
 					result.response = new ArrayList<JsonMessage>();
-					for (JsonElement e : responseArray.getAsJsonArray()) {
+
+					in.beginArray();
+					boolean first = true;
+					while (in.hasNext()) {
 						if (first) {
-							result.count = e.getAsInt();
+							result.count = in.nextInt();
 							first = false;
 						} else {
-							result.response.add((JsonMessage) context.deserialize(e, JsonMessage.class));
+							result.response.add(JsonMessage.read(in));
 						}
 					}
+					in.endArray();
 				} else {
-					throw new JsonParseException("Unexpected JSON type: " + (responseArray == null ? null : responseArray.getClass()));
+					in.skipValue();
 				}
+			}
+			in.endObject();
 
-			} else {
-				throw new JsonParseException("Unexpected JSON type: " + json.getClass());
+			if (result.response == null) {
+				throw new JsonParseException("Unexpected JSON type: null");
 			}
 
 			return result;
 		}
+
+		@Override
+		public void write(@Nonnull JsonWriter out, @Nullable JsonMessages messages) throws IOException {
+			// adapter is registered only for reading of VK responses
+			throw new UnsupportedOperationException("Messages are sent to VK as request parameters, not serialized to JSON");
+		}
 	}
 
 	@Nonnull
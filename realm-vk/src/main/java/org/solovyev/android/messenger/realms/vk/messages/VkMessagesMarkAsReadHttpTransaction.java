@@ -16,37 +16,50 @@
 
 package org.solovyev.android.messenger.realms.vk.messages;
 
+import com.google.common.base.Joiner;
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.realms.vk.JsonResult;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
-public class VkMessagesMarkAsReadHttpTransaction extends AbstractVkHttpTransaction<Boolean> {
+public class VkMessagesMarkAsReadHttpTransaction extends AbstractVkStreamingHttpTransaction<Boolean> {
+
+	// max number of messages marked as read by one request
+	public static final int MAX_MESSAGES = 100;
 
 	@Nonnull
-	private final String messageId;
+	private final Collection<String> messageIds;
 
 	public VkMessagesMarkAsReadHttpTransaction(@Nonnull VkAccount account, @Nonnull String messageId) {
+		this(account, Collections.singletonList(messageId));
+	}
+
+	public VkMessagesMarkAsReadHttpTransaction(@Nonnull VkAccount account, @Nonnull Collection<String> messageIds) {
 		super(account, "messages.markAsRead");
-		this.messageId = messageId;
+		this.messageIds = messageIds;
 	}
 
 	@Nonnull
 	@Override
 	public List<NameValuePair> getRequestParameters() {
 		final List<NameValuePair> result = super.getRequestParameters();
-		result.add(new BasicNameValuePair("mids", messageId));
+		result.add(new BasicNameValuePair("mids", Joiner.on(',').join(messageIds)));
 		return result;
 	}
 
+	@Nonnull
 	@Override
-	protected Boolean getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		return JsonResult.asBoolean(json);
+	protected Boolean readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		// numbers are also read as strings
+		return "1".equals(reader.nextString());
 	}
 
 }
@@ -16,20 +16,20 @@
 
 package org.solovyev.android.messenger.realms.vk.messages;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.chats.Chat;
 import org.solovyev.android.messenger.http.IllegalJsonException;
 import org.solovyev.android.messenger.messages.Message;
-import org.solovyev.android.messenger.realms.vk.JsonResult;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
 
-public class VkMessagesSendHttpTransaction extends AbstractVkHttpTransaction<String> {
+public class VkMessagesSendHttpTransaction extends AbstractVkStreamingHttpTransaction<String> {
 
 	@Nonnull
 	private final Message message;
@@ -59,13 +59,17 @@ public class VkMessagesSendHttpTransaction extends AbstractVkHttpTransaction<Str
 		result.add(new BasicNameValuePair("message", message.getBody()));
 		result.add(new BasicNameValuePair("title", message.getTitle()));
 		result.add(new BasicNameValuePair("type", message.isPrivate() ? "0" : "1"));
+		// VK doesn't send the message again if the same guid is received (e.g. message is resent by outbox after
+		// response has been lost)
+		result.add(new BasicNameValuePair("guid", message.getId()));
 
 		return result;
 	}
 
-	@Nullable
+	@Nonnull
 	@Override
-	protected String getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		return JsonResult.asString(json);
+	protected String readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		// id of the sent message
+		return reader.nextString();
 	}
 }
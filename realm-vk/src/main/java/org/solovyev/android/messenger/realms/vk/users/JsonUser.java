@@ -16,6 +16,10 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import org.joda.time.DateTime;
 import org.solovyev.android.messenger.accounts.Account;
 import org.solovyev.android.messenger.accounts.AccountSyncData;
@@ -26,11 +30,14 @@ import org.solovyev.android.properties.MutableAProperties;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.Collections;
 
+import static org.solovyev.android.messenger.realms.vk.http.VkJson.nextIntOrNull;
+import static org.solovyev.android.messenger.realms.vk.http.VkJson.nextStringOrNull;
 import static org.solovyev.android.properties.Properties.newProperty;
 
-class JsonUser {
+public class JsonUser {
 
 	@Nullable
 	private String uid;
@@ -74,6 +81,50 @@ class JsonUser {
 	@Nullable
 	private String photo_rec;
 
+	@Nonnull
+	static JsonUser read(@Nonnull JsonReader reader) throws IOException {
+		final JsonUser result = new JsonUser();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if ("uid".equals(name)) {
+				result.uid = nextStringOrNull(reader);
+			} else if ("first_name".equals(name)) {
+				result.first_name = nextStringOrNull(reader);
+			} else if ("last_name".equals(name)) {
+				result.last_name = nextStringOrNull(reader);
+			} else if ("nickname".equals(name)) {
+				result.nickname = nextStringOrNull(reader);
+			} else if ("sex".equals(name)) {
+				result.sex = nextIntOrNull(reader);
+			} else if ("online".equals(name)) {
+				result.online = nextIntOrNull(reader);
+			} else if ("bdate".equals(name)) {
+				result.bdate = nextStringOrNull(reader);
+			} else if ("city".equals(name)) {
+				result.city = nextIntOrNull(reader);
+			} else if ("country".equals(name)) {
+				result.country = nextIntOrNull(reader);
+			} else if ("timezone".equals(name)) {
+				result.timezone = nextStringOrNull(reader);
+			} else if ("photo".equals(name)) {
+				result.photo = nextStringOrNull(reader);
+			} else if ("photo_medium".equals(name)) {
+				result.photo_medium = nextStringOrNull(reader);
+			} else if ("photo_big".equals(name)) {
+				result.photo_big = nextStringOrNull(reader);
+			} else if ("photo_rec".equals(name)) {
+				result.photo_rec = nextStringOrNull(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return result;
+	}
+
 	@Nonnull
 	public User toUser(@Nonnull Account account) throws IllegalJsonException {
 		if (uid == null) {
@@ -155,4 +206,25 @@ class JsonUser {
 		}
 	}
 
+	/**
+	 * Hand-written adapter: Gson doesn't need to discover fields of {@link JsonUser} through reflection
+	 */
+	public static class Adapter extends TypeAdapter<JsonUser> {
+
+		@Override
+		public JsonUser read(@Nonnull JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			} else {
+				return JsonUser.read(in);
+			}
+		}
+
+		@Override
+		public void write(@Nonnull JsonWriter out, @Nullable JsonUser user) throws IOException {
+			// adapter is registered only for reading of VK responses
+			throw new UnsupportedOperationException("Users are never sent to VK, not serialized to JSON");
+		}
+	}
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.users;
+
+import com.google.gson.stream.JsonReader;
+import org.solovyev.android.messenger.accounts.Account;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming counterpart of {@link JsonUsers}: users are read from {@link JsonReader} one by one and converted to
+ * {@link User}s while the rest of the response is still being received
+ */
+final class JsonUserReader {
+
+	private JsonUserReader() {
+		throw new AssertionError();
+	}
+
+	@Nonnull
+	static List<User> readUsers(@Nonnull JsonReader reader, @Nonnull Account account) throws IOException, IllegalJsonException {
+		final List<User> users = new ArrayList<User>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			users.add(readUser(reader, account));
+		}
+		reader.endArray();
+
+		return users;
+	}
+
+	@Nonnull
+	static List<String> readUserIds(@Nonnull JsonReader reader) throws IOException {
+		final List<String> userIds = new ArrayList<String>();
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			userIds.add(reader.nextString());
+		}
+		reader.endArray();
+
+		return userIds;
+	}
+
+	@Nonnull
+	static User readUser(@Nonnull JsonReader reader, @Nonnull Account account) throws IOException, IllegalJsonException {
+		return JsonUser.read(reader).toUser(account);
+	}
+}
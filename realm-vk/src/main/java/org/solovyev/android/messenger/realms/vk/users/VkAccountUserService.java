@@ -16,10 +16,11 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
-import org.solovyev.android.http.HttpTransaction;
+import android.content.SharedPreferences;
 import org.solovyev.android.messenger.App;
 import org.solovyev.android.messenger.accounts.AccountConnectionException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 import org.solovyev.android.messenger.users.AccountUserService;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.users.UserService;
@@ -27,12 +28,18 @@ import org.solovyev.common.collections.Collections;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import static org.solovyev.android.http.HttpTransactions.execute;
+import static java.util.Collections.emptyList;
 
 public class VkAccountUserService implements AccountUserService {
 
+	// contacts sync is done about once an hour => profile of each contact is reloaded about once a day
+	static final int STALE_SLICES = 24;
+
 	@Nonnull
 	private final VkAccount account;
 
@@ -46,16 +53,114 @@ public class VkAccountUserService implements AccountUserService {
 		return Collections.getFirstListElement(users);
 	}
 
+	/**
+	 * Same as {@link #getContacts(List, SharedPreferences)} for contacts stored in the database
+	 */
 	@Nonnull
 	@Override
 	public List<User> getContacts() throws AccountConnectionException {
-		return executeHttpTransaction(VkFriendsGetHttpTransaction.newInstance(account, account.getUser().getEntity().getAccountEntityId()));
+		return getContacts(App.getUserService().getContacts(account.getUser().getEntity()), App.getPreferences());
+	}
+
+	/**
+	 * Method loads full profiles only if they are needed: first only ids of friends are loaded, then profiles of new
+	 * friends and of a slice of known friends (each sync next slice is loaded, see {@link #STALE_SLICES}). Profiles of
+	 * other friends are taken from the storage.
+	 *
+	 * @param storedContacts contacts of the account stored in the database
+	 * @param preferences    preferences where number of the next slice is stored
+	 * @return friends of the account
+	 * @throws AccountConnectionException if friends can't be loaded
+	 */
+	@Nonnull
+	List<User> getContacts(@Nonnull List<User> storedContacts, @Nonnull SharedPreferences preferences) throws AccountConnectionException {
+		if (storedContacts.isEmpty()) {
+			// first synchronization
+			return executeHttpTransaction(VkFriendsGetHttpTransaction.newInstance(account, account.getUser().getEntity().getAccountEntityId()));
+		}
+
+		final Map<String, User> contacts = new HashMap<String, User>(storedContacts.size());
+		for (User contact : storedContacts) {
+			contacts.put(contact.getEntity().getAccountEntityId(), contact);
+		}
+
+		final String sliceKey = getSliceKey(account.getId());
+		final int slice = preferences.getInt(sliceKey, 0);
+
+		final List<String> friendIds = executeHttpTransaction(new VkFriendsGetIdsHttpTransaction(account));
+		for (User loadedContact : getUsersByIds(getIdsToLoad(friendIds, contacts.keySet(), slice))) {
+			contacts.put(loadedContact.getEntity().getAccountEntityId(), loadedContact);
+		}
+
+		final List<User> result = new ArrayList<User>(friendIds.size());
+		for (String friendId : friendIds) {
+			final User contact = contacts.get(friendId);
+			if (contact != null) {
+				result.add(contact);
+			}
+		}
+
+		preferences.edit().putInt(sliceKey, (slice + 1) % STALE_SLICES).apply();
+		return result;
+	}
+
+	/**
+	 * Removes number of the next slice of contacts stored for the account, should be called when account is removed
+	 */
+	public static void removeContactsSlice(@Nonnull SharedPreferences preferences, @Nonnull String accountId) {
+		preferences.edit().remove(getSliceKey(accountId)).apply();
+	}
+
+	@Nonnull
+	private static String getSliceKey(@Nonnull String accountId) {
+		return "vk.contacts." + accountId + ".slice";
+	}
+
+	/**
+	 * @return ids of friends which are not stored yet or which belong to the <var>slice</var>
+	 */
+	@Nonnull
+	static List<String> getIdsToLoad(@Nonnull List<String> friendIds, @Nonnull Set<String> storedIds, int slice) {
+		final List<String> result = new ArrayList<String>();
+		for (String friendId : friendIds) {
+			if (!storedIds.contains(friendId) || (friendId.hashCode() & Integer.MAX_VALUE) % STALE_SLICES == slice) {
+				result.add(friendId);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Method loads users in chunks of 1000, chunks are loaded concurrently (see {@link org.solovyev.android.messenger.realms.vk.http.VkRequestBatcher#executeConcurrently(List)})
+	 *
+	 * @param accountUserIds ids of users to be loaded
+	 * @return loaded users
+	 * @throws AccountConnectionException if users can't be loaded
+	 */
+	@Nonnull
+	public List<User> getUsersByIds(@Nonnull List<String> accountUserIds) throws AccountConnectionException {
+		if (accountUserIds.isEmpty()) {
+			return emptyList();
+		}
+
+		final List<List<User>> chunks;
+		try {
+			chunks = account.getRequestBatcher().executeConcurrently(VkUsersGetHttpTransaction.newInstancesForUserIds(account, accountUserIds, null));
+		} catch (Exception e) {
+			throw new AccountConnectionException(account.getId(), e);
+		}
+
+		final List<User> result = new ArrayList<User>(accountUserIds.size());
+		for (List<User> chunk : chunks) {
+			result.addAll(chunk);
+		}
+		return result;
 	}
 
 	@Nonnull
-	private <R> R executeHttpTransaction(@Nonnull HttpTransaction<R> transaction) throws AccountConnectionException {
+	private <R> R executeHttpTransaction(@Nonnull AbstractVkStreamingHttpTransaction<R> transaction) throws AccountConnectionException {
 		try {
-			return execute(transaction);
+			return account.getRequestBatcher().execute(transaction);
 		} catch (Exception e) {
 			throw new AccountConnectionException(account.getId(), e);
 		}
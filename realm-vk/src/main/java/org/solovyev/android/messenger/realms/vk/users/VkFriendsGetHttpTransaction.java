@@ -16,18 +16,19 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 import org.solovyev.android.messenger.users.User;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.List;
 
-public class VkFriendsGetHttpTransaction extends AbstractVkHttpTransaction<List<User>> {
+public class VkFriendsGetHttpTransaction extends AbstractVkStreamingHttpTransaction<List<User>> {
 
 	@Nonnull
 	private final String userId;
@@ -42,13 +43,10 @@ public class VkFriendsGetHttpTransaction extends AbstractVkHttpTransaction<List<
 		return new VkFriendsGetHttpTransaction(realm, userId);
 	}
 
+	@Nonnull
 	@Override
-	protected List<User> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		try {
-			return JsonUserConverter.newInstance(getAccount()).convert(json);
-		} catch (IllegalJsonRuntimeException e) {
-			throw e.getIllegalJsonException();
-		}
+	protected List<User> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		return JsonUserReader.readUsers(reader, getAccount());
 	}
 
 	@Nonnull
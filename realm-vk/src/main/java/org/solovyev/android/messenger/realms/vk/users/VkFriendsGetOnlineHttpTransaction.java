@@ -16,17 +16,18 @@
 
 package org.solovyev.android.messenger.realms.vk.users;
 
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.List;
 
-public class VkFriendsGetOnlineHttpTransaction extends AbstractVkHttpTransaction<List<String>> {
+public class VkFriendsGetOnlineHttpTransaction extends AbstractVkStreamingHttpTransaction<List<String>> {
 
 	@Nonnull
 	private final String userId;
@@ -42,13 +43,10 @@ public class VkFriendsGetOnlineHttpTransaction extends AbstractVkHttpTransaction
 	}
 
 
+	@Nonnull
 	@Override
-	protected List<String> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		try {
-			return JsonUserIds.newFromJson(json).getIds();
-		} catch (IllegalJsonRuntimeException e) {
-			throw e.getIllegalJsonException();
-		}
+	protected List<String> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		return JsonUserReader.readUserIds(reader);
 	}
 
 	@Nonnull
@@ -17,25 +17,26 @@
 package org.solovyev.android.messenger.realms.vk.users;
 
 import com.google.common.base.Function;
+import com.google.gson.stream.JsonReader;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.solovyev.android.messenger.http.IllegalJsonException;
-import org.solovyev.android.messenger.http.IllegalJsonRuntimeException;
 import org.solovyev.android.messenger.realms.vk.VkAccount;
-import org.solovyev.android.messenger.realms.vk.http.AbstractVkHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.http.AbstractVkStreamingHttpTransaction;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.common.collections.Collections;
 import org.solovyev.common.text.Strings;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static com.google.common.collect.Lists.transform;
 
-public class VkUsersGetHttpTransaction extends AbstractVkHttpTransaction<List<User>> {
+public class VkUsersGetHttpTransaction extends AbstractVkStreamingHttpTransaction<List<User>> {
 
 	@Nonnull
 	private static final Integer MAX_CHUNK = 1000;
@@ -95,13 +96,10 @@ public class VkUsersGetHttpTransaction extends AbstractVkHttpTransaction<List<Us
 		return result;
 	}
 
+	@Nonnull
 	@Override
-	protected List<User> getResponseFromJson(@Nonnull String json) throws IllegalJsonException {
-		try {
-			return JsonUserConverter.newInstance(getAccount()).convert(json);
-		} catch (IllegalJsonRuntimeException e) {
-			throw e.getIllegalJsonException();
-		}
+	protected List<User> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+		return JsonUserReader.readUsers(reader, getAccount());
 	}
 
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk;
+
+import org.solovyev.android.messenger.accounts.AccountState;
+import org.solovyev.android.messenger.realms.test.TestRealm;
+import org.solovyev.android.messenger.realms.vk.http.VkRequestBatcher;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.solovyev.android.messenger.accounts.Accounts.newNeverSyncedData;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+/**
+ * Recorded VK responses stored in test resources next to the tests which use them and objects shared by VK tests
+ */
+public final class Fixtures {
+
+	// id of the account returned by newVkAccount()
+	@Nonnull
+	public static final String ACCOUNT_ID = "vk~1";
+
+	private Fixtures() {
+		throw new AssertionError();
+	}
+
+	@Nonnull
+	public static byte[] read(@Nonnull Class<?> testClass, @Nonnull String name) throws IOException {
+		final InputStream in = testClass.getResourceAsStream(name);
+		if (in == null) {
+			throw new IOException("No fixture: " + name);
+		}
+
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	@Nonnull
+	public static String readString(@Nonnull Class<?> testClass, @Nonnull String name) throws IOException {
+		return new String(read(testClass, name), "UTF-8");
+	}
+
+	/**
+	 * @return enabled VK account with id {@link #ACCOUNT_ID} and access token "token" of user "1"
+	 */
+	@Nonnull
+	public static VkAccount newVkAccount() {
+		final VkAccountConfiguration configuration = new VkAccountConfiguration("login", "password");
+		configuration.setAccessParameters("token", "1");
+		return new VkAccount(ACCOUNT_ID, new TestRealm(), newEmptyUser(newEntity(ACCOUNT_ID, "1")), configuration, AccountState.enabled, newNeverSyncedData());
+	}
+
+	/**
+	 * @return batcher which doesn't wait for the rate limit: only requests and their content are checked
+	 */
+	@Nonnull
+	public static VkRequestBatcher newFastBatcher() {
+		return new VkRequestBatcher(1000);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.solovyev.android.messenger.realms.vk.chats;
+
+import org.apache.http.NameValuePair;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+import org.solovyev.android.messenger.accounts.AccountRuntimeException;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.messages.MutableMessage;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.messages.VkMessagesMarkAsReadHttpTransaction;
+import org.solovyev.android.messenger.realms.vk.messages.VkMessagesSendHttpTransaction;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.solovyev.android.messenger.chats.Chats.newChat;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.messages.Messages.newMessage;
+import static org.solovyev.android.messenger.realms.vk.Fixtures.ACCOUNT_ID;
+
+/**
+ * Calls are sent through fake HTTP layer of Robolectric
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VkAccountChatServiceTest {
+
+	private VkAccount account;
+
+	private List<Message> messages;
+
+	@Before
+	public void setUp() throws Exception {
+		account = Fixtures.newVkAccount();
+
+		// two chunks: full and half-full
+		messages = new ArrayList<Message>();
+		for (int i = 0; i < VkMessagesMarkAsReadHttpTransaction.MAX_MESSAGES * 3 / 2; i++) {
+			messages.add(newMessage(newEntity(ACCOUNT_ID, String.valueOf(i))));
+		}
+	}
+
+	@Test
+	public void testAllMessagesShouldBeReturnedIfAllChunksAreAccepted() throws Exception {
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[1,1]}");
+
+		final Collection<Message> readMessages = new VkAccountChatService(account).markMessagesRead(messages);
+
+		assertEquals(messages, new ArrayList<Message>(readMessages));
+		assertEquals(1, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+	}
+
+	@Test
+	public void testOnlyMessagesOfAcceptedChunksShouldBeReturned() throws Exception {
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[0,1]}");
+
+		final Collection<Message> readMessages = new VkAccountChatService(account).markMessagesRead(messages);
+
+		assertEquals(messages.subList(VkMessagesMarkAsReadHttpTransaction.MAX_MESSAGES, messages.size()), new ArrayList<Message>(readMessages));
+	}
+
+	@Test
+	public void testLocalIdShouldBeSentAsGuid() throws Exception {
+		final MutableMessage message = newSentMessage();
+
+		String guid = null;
+		for (NameValuePair parameter : new VkMessagesSendHttpTransaction(account, message, newGroupChat()).getRequestParameters()) {
+			if (parameter.getName().equals("guid")) {
+				guid = parameter.getValue();
+			}
+		}
+		assertEquals(message.getId(), guid);
+	}
+
+	@Test
+	public void testMessageRejectedByVkShouldNotBeRetried() throws Exception {
+		// "Permission to perform this action is denied"
+		Robolectric.addPendingHttpResponse(200, "{\"error\":{\"error_code\":7,\"error_msg\":\"Permission denied\"}}");
+		try {
+			new VkAccountChatService(account).sendMessage(newGroupChat(), newSentMessage());
+			fail();
+		} catch (AccountRuntimeException e) {
+			// ok
+		}
+	}
+
+	@Test
+	public void testMessageShouldBeRetriedAfterTemporaryError() throws Exception {
+		// "Internal server error"
+		Robolectric.addPendingHttpResponse(200, "{\"error\":{\"error_code\":10,\"error_msg\":\"Internal server error\"}}");
+		try {
+			new VkAccountChatService(account).sendMessage(newGroupChat(), newSentMessage());
+			fail();
+		} catch (AccountConnectionException e) {
+			// ok
+		}
+	}
+
+	@Nonnull
+	private Chat newGroupChat() {
+		return newChat(account.newChatEntity("2"), Collections.<AProperty>emptyList(), null);
+	}
+
+	@Nonnull
+	private static MutableMessage newSentMessage() {
+		final MutableMessage result = newMessage(newEntity(ACCOUNT_ID, "local"));
+		result.setBody("test");
+		result.setTitle("");
+		return result;
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.realms.test.TestAccount;
+import org.solovyev.android.messenger.realms.test.TestRealm;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessage;
+import org.solovyev.android.messenger.realms.vk.messages.JsonMessages;
+import org.solovyev.android.messenger.realms.vk.users.JsonUser;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compares parsing with shared {@link VkJson#getGson()} (and its hand-written adapters) to parsing with new
+ * {@link Gson} created for each response (as it was done before)
+ */
+public class VkJsonTest {
+
+	private TestAccount account;
+
+	private String users;
+	private String messages;
+
+	@Before
+	public void setUp() throws Exception {
+		account = new TestAccount(new TestRealm());
+		users = Fixtures.readString(getClass(), "/org/solovyev/android/messenger/realms/vk/users/friends_get.json");
+		messages = Fixtures.readString(getClass(), "messages_get.json");
+	}
+
+	@Test
+	public void testSharedGsonShouldReadSameUsers() throws Exception {
+		final List<JsonUser> expected = new Gson().fromJson(users, Users.class).response;
+		final List<JsonUser> actual = VkJson.getGson().fromJson(users, Users.class).response;
+
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final User expectedUser = expected.get(i).toUser(account);
+			final User actualUser = actual.get(i).toUser(account);
+			assertEquals(expectedUser.getEntity(), actualUser.getEntity());
+			assertEquals(expectedUser.getFirstName(), actualUser.getFirstName());
+			assertEquals(expectedUser.getLastName(), actualUser.getLastName());
+			assertEquals(expectedUser.getPropertiesCollection().size(), actualUser.getPropertiesCollection().size());
+		}
+	}
+
+	@Test
+	public void testSharedGsonShouldReadSameMessages() throws Exception {
+		final List<JsonMessage> expected = parseMessagesWithNewGson(messages);
+		final List<JsonMessage> actual = VkJson.getGson().fromJson(messages, JsonMessages.class).getResponse();
+
+		assertNotNull(actual);
+		assertEquals(100, actual.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final JsonMessage expectedMessage = expected.get(i);
+			final JsonMessage actualMessage = actual.get(i);
+			assertEquals(expectedMessage.getMid(), actualMessage.getMid());
+			assertEquals(expectedMessage.getUid(), actualMessage.getUid());
+			assertEquals(expectedMessage.getDate(), actualMessage.getDate());
+			assertEquals(expectedMessage.getOut(), actualMessage.getOut());
+			assertEquals(expectedMessage.getRead_state(), actualMessage.getRead_state());
+			assertEquals(expectedMessage.getTitle(), actualMessage.getTitle());
+			assertEquals(expectedMessage.getBody(), actualMessage.getBody());
+			assertEquals(expectedMessage.getChat_id(), actualMessage.getChat_id());
+			assertEquals(expectedMessage.getChat_active(), actualMessage.getChat_active());
+		}
+	}
+
+	@Test
+	public void testGsonShouldBeShared() throws Exception {
+		assertSame(VkJson.getGson(), VkJson.getGson());
+	}
+
+	/**
+	 * Messages are parsed as they were parsed before: JSON tree is built and each message is converted through reflection
+	 */
+	@Nonnull
+	private static List<JsonMessage> parseMessagesWithNewGson(@Nonnull String json) {
+		final Gson gson = new Gson();
+
+		final JsonArray response = new JsonParser().parse(json).getAsJsonObject().getAsJsonArray("response");
+		final List<JsonMessage> result = new ArrayList<JsonMessage>(response.size());
+		// first element is count
+		for (int i = 1; i < response.size(); i++) {
+			result.add(gson.fromJson(response.get(i), JsonMessage.class));
+		}
+		return result;
+	}
+
+	private static final class Users {
+		private List<JsonUser> response;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class VkRateLimiterTest {
+
+	private static final long INTERVAL = TimeUnit.SECONDS.toNanos(1) / 3;
+
+	private FakeTicker ticker;
+
+	private VkRateLimiter rateLimiter;
+
+	@Before
+	public void setUp() throws Exception {
+		ticker = new FakeTicker();
+		rateLimiter = new VkRateLimiter(3, ticker);
+	}
+
+	@Test
+	public void testBurstShouldNotWait() throws Exception {
+		assertEquals(0, rateLimiter.reserve());
+		assertEquals(0, rateLimiter.reserve());
+		assertEquals(0, rateLimiter.reserve());
+		assertEquals(INTERVAL, rateLimiter.reserve());
+		assertEquals(2 * INTERVAL, rateLimiter.reserve());
+	}
+
+	@Test
+	public void testBucketShouldBeRefilled() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			rateLimiter.reserve();
+		}
+
+		ticker.time += INTERVAL;
+		assertEquals(0, rateLimiter.reserve());
+		assertEquals(INTERVAL, rateLimiter.reserve());
+
+		// bucket can't hold more than 3 tokens
+		ticker.time += TimeUnit.SECONDS.toNanos(10);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, rateLimiter.reserve());
+		}
+		assertEquals(INTERVAL, rateLimiter.reserve());
+	}
+
+	@Test
+	public void testBurstShouldBeOverAfterThrottling() throws Exception {
+		assertEquals(0, rateLimiter.reserve());
+
+		rateLimiter.onThrottled();
+		assertEquals(INTERVAL, rateLimiter.reserve());
+	}
+
+	private static final class FakeTicker extends Ticker {
+
+		private long time;
+
+		@Override
+		public long read() {
+			return time;
+		}
+	}
+}
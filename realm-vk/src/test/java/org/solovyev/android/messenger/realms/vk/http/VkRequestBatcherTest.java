@@ -0,0 +1,418 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.http;
+
+import com.google.gson.stream.JsonReader;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.accounts.AccountRuntimeException;
+import org.solovyev.android.messenger.http.IllegalJsonException;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.realms.vk.http.VkRequestBatcher.Priority;
+import org.solovyev.android.messenger.realms.vk.users.VkFriendsGetOnlineHttpTransaction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * Calls are executed through fake HTTP layer of Robolectric which serves recorded VK responses
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VkRequestBatcherTest {
+
+	@Nonnull
+	private static final String TOO_MANY_REQUESTS = "{\"error\":{\"error_code\":6,\"error_msg\":\"Too many requests per second\"}}";
+
+	private VkAccount account;
+
+	private VkRequestBatcher batcher;
+
+	@Before
+	public void setUp() throws Exception {
+		account = Fixtures.newVkAccount();
+		batcher = new VkRequestBatcher();
+	}
+
+	@Test
+	public void testSingleCallShouldNotBePacked() throws Exception {
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[101,102]}");
+
+		assertEquals(asList("101", "102"), batcher.execute(new VkFriendsGetOnlineHttpTransaction(account, "2")));
+
+		final HttpRequest request = Robolectric.getSentHttpRequest(0);
+		assertTrue(request.getRequestLine().getUri().contains("friends.getOnline"));
+	}
+
+	@Test
+	public void testCallsShouldBePackedIntoOneExecute() throws Exception {
+		Robolectric.addPendingHttpResponse(200, Fixtures.readString(getClass(), "execute_friends_get_online.json"));
+
+		final List<List<String>> actual = batcher.execute(asList(
+				new VkFriendsGetOnlineHttpTransaction(account, "2"),
+				new VkFriendsGetOnlineHttpTransaction(account, "3"),
+				new VkFriendsGetOnlineHttpTransaction(account, "4")));
+
+		assertEquals(asList(asList("101", "102"), asList("201"), new ArrayList<String>()), actual);
+		assertEquals(1, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+
+		final HttpRequest request = Robolectric.getSentHttpRequest(0);
+		assertTrue(request.getRequestLine().getUri().endsWith("/execute"));
+		assertEquals("token", getParameter(request, "access_token"));
+		assertEquals("return [" +
+				"API.friends.getOnline({\"uid\":\"2\"})," +
+				"API.friends.getOnline({\"uid\":\"3\"})," +
+				"API.friends.getOnline({\"uid\":\"4\"})" +
+				"];", getParameter(request, "code"));
+	}
+
+	@Test
+	public void testErrorShouldBePassedOnlyToFailedCall() throws Exception {
+		final List<VkFriendsGetOnlineHttpTransaction> calls = asList(
+				new VkFriendsGetOnlineHttpTransaction(account, "2"),
+				new VkFriendsGetOnlineHttpTransaction(account, "3"),
+				new VkFriendsGetOnlineHttpTransaction(account, "4"));
+		final VkExecuteHttpTransaction.Results results = new VkExecuteHttpTransaction(account, calls).getResponseFromJson(Fixtures.readString(getClass(), "execute_errors.json"));
+
+		assertEquals(3, results.size());
+		assertEquals(asList("101"), results.get(0));
+		assertEquals(asList("301"), results.get(2));
+		try {
+			results.get(1);
+			fail();
+		} catch (AccountRuntimeException e) {
+			final VkResponseErrorException cause = (VkResponseErrorException) e.getCause();
+			assertEquals("15", cause.getError().getErrorId());
+		}
+	}
+
+	@Test
+	public void testErrorOfExecuteShouldBePassedToAllCalls() throws Exception {
+		Robolectric.addPendingHttpResponse(200, "{\"error\":{\"error_code\":5,\"error_msg\":\"User authorization failed\"}}");
+
+		try {
+			batcher.execute(asList(new VkFriendsGetOnlineHttpTransaction(account, "2"), new VkFriendsGetOnlineHttpTransaction(account, "3")));
+			fail();
+		} catch (AccountRuntimeException e) {
+			assertEquals("5", ((VkResponseErrorException) e.getCause()).getError().getErrorId());
+		}
+	}
+
+	@Test
+	public void testSixtyCallsShouldTakeThreeRoundTrips() throws Exception {
+		final List<VkFriendsGetOnlineHttpTransaction> calls = new ArrayList<VkFriendsGetOnlineHttpTransaction>();
+		for (int i = 0; i < 60; i++) {
+			calls.add(new VkFriendsGetOnlineHttpTransaction(account, String.valueOf(i)));
+		}
+		Robolectric.addPendingHttpResponse(200, newResponse(0, 25));
+		Robolectric.addPendingHttpResponse(200, newResponse(25, 50));
+		Robolectric.addPendingHttpResponse(200, newResponse(50, 60));
+
+		final List<List<String>> actual = batcher.execute(calls);
+
+		assertEquals(3, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		assertEquals(60, actual.size());
+		for (int i = 0; i < actual.size(); i++) {
+			assertEquals(asList(String.valueOf(i)), actual.get(i));
+		}
+	}
+
+	@Test
+	public void testCallsMadeDuringExecutionShouldBePackedTogether() throws Exception {
+		final BlockingTransaction blocking = new BlockingTransaction(account);
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[\"0\"]}");
+		Robolectric.addPendingHttpResponse(200, newResponse(1, 5));
+
+		final Caller first = new Caller(blocking);
+		first.start();
+		assertTrue(blocking.entered.await(10, TimeUnit.SECONDS));
+
+		// first call is being executed => calls of other threads must wait
+		final List<Caller> callers = new ArrayList<Caller>();
+		for (int i = 1; i < 5; i++) {
+			final Caller caller = new Caller(new VkFriendsGetOnlineHttpTransaction(account, String.valueOf(i)));
+			caller.start();
+			// calls must be queued in order of the recorded response
+			waitForState(caller, Thread.State.WAITING);
+			callers.add(caller);
+		}
+
+		blocking.release.countDown();
+		first.join();
+		for (Caller caller : callers) {
+			caller.join();
+		}
+
+		assertEquals(asList("0"), first.result);
+		for (int i = 0; i < callers.size(); i++) {
+			assertEquals(asList(String.valueOf(i + 1)), callers.get(i).result);
+		}
+		assertEquals(2, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		assertTrue(Robolectric.getSentHttpRequest(1).getRequestLine().getUri().endsWith("/execute"));
+	}
+
+	@Test
+	public void testThrottledCallShouldBeRetried() throws Exception {
+		batcher = Fixtures.newFastBatcher();
+		Robolectric.addPendingHttpResponse(200, TOO_MANY_REQUESTS);
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[101]}");
+
+		assertEquals(asList("101"), batcher.execute(new VkFriendsGetOnlineHttpTransaction(account, "2")));
+		assertEquals(2, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+	}
+
+	@Test
+	public void testOnlyThrottledCallsOfExecuteShouldBeRetried() throws Exception {
+		batcher = Fixtures.newFastBatcher();
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[[101],false]," +
+				"\"execute_errors\":[{\"method\":\"friends.getOnline\",\"error_code\":6,\"error_msg\":\"Too many requests per second\"}]}");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[201]}");
+
+		final List<List<String>> actual = batcher.execute(asList(
+				new VkFriendsGetOnlineHttpTransaction(account, "2"),
+				new VkFriendsGetOnlineHttpTransaction(account, "3")));
+
+		assertEquals(asList(asList("101"), asList("201")), actual);
+		assertEquals(2, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		assertTrue(Robolectric.getSentHttpRequest(1).getRequestLine().getUri().contains("friends.getOnline"));
+	}
+
+	@Test
+	public void testCallShouldFailIfStillThrottledAfterRetries() throws Exception {
+		batcher = Fixtures.newFastBatcher();
+		for (int i = 0; i < 4; i++) {
+			Robolectric.addPendingHttpResponse(200, TOO_MANY_REQUESTS);
+		}
+
+		try {
+			batcher.execute(new VkFriendsGetOnlineHttpTransaction(account, "2"));
+			fail();
+		} catch (AccountRuntimeException e) {
+			assertTrue(((VkResponseErrorException) e.getCause()).getError().isTooManyRequests());
+		}
+		assertEquals(4, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+	}
+
+	@Test
+	public void testAloneCallShouldBeExecutedInItsOwnRequest() throws Exception {
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[101]}");
+
+		assertEquals(asList("101"), batcher.executeAlone(new VkFriendsGetOnlineHttpTransaction(account, "2")));
+
+		assertEquals(1, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		assertTrue(Robolectric.getSentHttpRequest(0).getRequestLine().getUri().contains("friends.getOnline"));
+	}
+
+	@Test
+	public void testThrottledAloneCallShouldBeRetried() throws Exception {
+		batcher = Fixtures.newFastBatcher();
+		Robolectric.addPendingHttpResponse(200, TOO_MANY_REQUESTS);
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[101]}");
+
+		assertEquals(asList("101"), batcher.executeAlone(new VkFriendsGetOnlineHttpTransaction(account, "2")));
+		assertEquals(2, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+	}
+
+	@Test
+	public void testFailedAloneCallShouldNotBeRetried() throws Exception {
+		batcher = Fixtures.newFastBatcher();
+		Robolectric.addPendingHttpResponse(200, "{\"error\":{\"error_code\":10,\"error_msg\":\"Internal server error\"}}");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[101]}");
+
+		try {
+			batcher.executeAlone(new VkFriendsGetOnlineHttpTransaction(account, "2"));
+			fail();
+		} catch (AccountRuntimeException e) {
+			assertEquals("10", ((VkResponseErrorException) e.getCause()).getError().getErrorId());
+		}
+		assertEquals(1, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+	}
+
+	@Test
+	public void testAloneCallShouldBeExecutedBeforeBackgroundCallsAndNotPacked() throws Exception {
+		final BlockingTransaction blocking = new BlockingTransaction(account);
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[\"0\"]}");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[2]}");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[1]}");
+
+		final Caller first = new Caller(blocking, Priority.background);
+		first.start();
+		assertTrue(blocking.entered.await(10, TimeUnit.SECONDS));
+
+		final Caller background = new Caller(new VkFriendsGetOnlineHttpTransaction(account, "1"), Priority.background);
+		background.start();
+		waitForState(background, Thread.State.WAITING);
+
+		final Caller alone = new Caller(new VkFriendsGetOnlineHttpTransaction(account, "2"), null);
+		alone.start();
+		waitForState(alone, Thread.State.WAITING);
+
+		blocking.release.countDown();
+		first.join();
+		background.join();
+		alone.join();
+
+		assertEquals(asList("1"), background.result);
+		assertEquals(asList("2"), alone.result);
+		assertEquals(3, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		assertTrue(Robolectric.getSentHttpRequest(1).getRequestLine().getUri().contains("friends.getOnline"));
+		assertTrue(Robolectric.getSentHttpRequest(2).getRequestLine().getUri().contains("friends.getOnline"));
+	}
+
+	@Test
+	public void testInteractiveCallsShouldBeExecutedFirst() throws Exception {
+		final BlockingTransaction blocking = new BlockingTransaction(account);
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[\"0\"]}");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[[2],[1]]}");
+
+		final Caller first = new Caller(blocking, Priority.background);
+		first.start();
+		assertTrue(blocking.entered.await(10, TimeUnit.SECONDS));
+
+		final Caller background = new Caller(new VkFriendsGetOnlineHttpTransaction(account, "1"), Priority.background);
+		background.start();
+		waitForState(background, Thread.State.WAITING);
+
+		final Caller interactive = new Caller(new VkFriendsGetOnlineHttpTransaction(account, "2"), Priority.interactive);
+		interactive.start();
+		waitForState(interactive, Thread.State.WAITING);
+
+		blocking.release.countDown();
+		first.join();
+		background.join();
+		interactive.join();
+
+		assertEquals(asList("1"), background.result);
+		assertEquals(asList("2"), interactive.result);
+		assertEquals("return [" +
+				"API.friends.getOnline({\"uid\":\"2\"})," +
+				"API.friends.getOnline({\"uid\":\"1\"})" +
+				"];", getParameter(Robolectric.getSentHttpRequest(1), "code"));
+	}
+
+	// response of "execute" for calls made by friends.getOnline where each call returns its index
+	@Nonnull
+	private static String newResponse(int from, int to) {
+		final StringBuilder sb = new StringBuilder("{\"response\":[");
+		for (int i = from; i < to; i++) {
+			if (i > from) {
+				sb.append(',');
+			}
+			sb.append('[').append(i).append(']');
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	@Nonnull
+	private static String getParameter(@Nonnull HttpRequest request, @Nonnull String name) throws IOException {
+		for (NameValuePair parameter : URLEncodedUtils.parse(((HttpEntityEnclosingRequest) request).getEntity())) {
+			if (parameter.getName().equals(name)) {
+				return parameter.getValue();
+			}
+		}
+		throw new AssertionError("No parameter " + name + " in request");
+	}
+
+	private static void waitForState(@Nonnull Thread thread, @Nonnull Thread.State state) throws InterruptedException {
+		final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (thread.getState() != state) {
+			assertTrue(System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+	}
+
+	private final class Caller extends Thread {
+
+		@Nonnull
+		private final AbstractVkStreamingHttpTransaction<List<String>> transaction;
+
+		// null if call must be executed alone
+		@Nullable
+		private final Priority priority;
+
+		private volatile List<String> result;
+
+		private Caller(@Nonnull AbstractVkStreamingHttpTransaction<List<String>> transaction) {
+			this(transaction, Priority.background);
+		}
+
+		private Caller(@Nonnull AbstractVkStreamingHttpTransaction<List<String>> transaction, @Nullable Priority priority) {
+			this.transaction = transaction;
+			this.priority = priority;
+		}
+
+		@Override
+		public void run() {
+			try {
+				result = priority != null ? batcher.execute(transaction, priority) : batcher.executeAlone(transaction);
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		}
+	}
+
+	/**
+	 * Same as friends.getOnline but reading of the response is blocked until {@link #release} is opened
+	 */
+	private static final class BlockingTransaction extends AbstractVkStreamingHttpTransaction<List<String>> {
+
+		@Nonnull
+		private final CountDownLatch entered = new CountDownLatch(1);
+
+		@Nonnull
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		private BlockingTransaction(@Nonnull VkAccount account) {
+			super(account, "friends.getOnline");
+		}
+
+		@Nonnull
+		@Override
+		protected List<String> readResponse(@Nonnull JsonReader reader) throws IOException, IllegalJsonException {
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new AssertionError(e);
+			}
+
+			final List<String> result = new ArrayList<String>();
+			reader.beginArray();
+			while (reader.hasNext()) {
+				result.add(reader.nextString());
+			}
+			reader.endArray();
+			return result;
+		}
+	}
+}
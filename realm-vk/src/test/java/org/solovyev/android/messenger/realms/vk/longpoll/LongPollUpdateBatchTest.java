@@ -0,0 +1,286 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.ExceptionHandler;
+import org.solovyev.android.messenger.accounts.AccountException;
+import org.solovyev.android.messenger.chats.AccountChat;
+import org.solovyev.android.messenger.chats.Chat;
+import org.solovyev.android.messenger.chats.ChatEvent;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.entities.Entity;
+import org.solovyev.android.messenger.messages.Message;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.messenger.users.UserService;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+import static org.solovyev.android.messenger.chats.Chats.newChat;
+import static org.solovyev.android.messenger.chats.Chats.newPrivateChat;
+import static org.solovyev.android.messenger.realms.vk.Fixtures.ACCOUNT_ID;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+/**
+ * Burst of long poll updates is replayed through {@link LongPollUpdateBatch}, history calls are served by fake HTTP
+ * layer of Robolectric
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LongPollUpdateBatchTest {
+
+	private static final int BURST_SIZE = 500;
+
+	private static final int FRIENDS = 30;
+
+	private static final int CHATS = 10;
+
+	private static final int ONLINE_FRIENDS = 25;
+
+	private VkAccount account;
+
+	private ChatService chatService;
+
+	private UserService userService;
+
+	private ExceptionHandler exceptionHandler;
+
+	@Before
+	public void setUp() throws Exception {
+		account = Fixtures.newVkAccount();
+
+		chatService = mock(ChatService.class);
+		when(chatService.getChatById(any(Entity.class))).thenAnswer(new Answer<Chat>() {
+			@Override
+			public Chat answer(InvocationOnMock invocation) throws Throwable {
+				final Entity chat = (Entity) invocation.getArguments()[0];
+				if (chat.getAccountEntityId().contains(":")) {
+					return newPrivateChat(chat);
+				} else {
+					return newChat(chat, Collections.<AProperty>emptyList(), null);
+				}
+			}
+		});
+		when(chatService.getPrivateChatId(any(Entity.class), any(Entity.class))).thenAnswer(new Answer<Entity>() {
+			@Override
+			public Entity answer(InvocationOnMock invocation) throws Throwable {
+				final Entity user1 = (Entity) invocation.getArguments()[0];
+				final Entity user2 = (Entity) invocation.getArguments()[1];
+				return account.newChatEntity(user1.getAccountEntityId() + ":" + user2.getAccountEntityId());
+			}
+		});
+		when(chatService.getOrCreatePrivateChat(any(Entity.class), any(Entity.class))).thenAnswer(new Answer<Chat>() {
+			@Override
+			public Chat answer(InvocationOnMock invocation) throws Throwable {
+				final Entity user1 = (Entity) invocation.getArguments()[0];
+				final Entity user2 = (Entity) invocation.getArguments()[1];
+				return newPrivateChat(account.newChatEntity(user1.getAccountEntityId() + ":" + user2.getAccountEntityId()));
+			}
+		});
+
+		userService = mock(UserService.class);
+		when(userService.getUserById(any(Entity.class), anyBoolean())).thenAnswer(new Answer<User>() {
+			@Override
+			public User answer(InvocationOnMock invocation) throws Throwable {
+				return newEmptyUser((Entity) invocation.getArguments()[0]);
+			}
+		});
+
+		exceptionHandler = mock(ExceptionHandler.class);
+	}
+
+	@Test
+	public void testBurstShouldBeReduced() throws Exception {
+		final LongPollUpdates updates = readUpdates(newBurst());
+		assertEquals(BURST_SIZE, updates.size());
+
+		// FRIENDS + CHATS history calls => 2 execute requests with empty histories
+		Robolectric.addPendingHttpResponse(200, newExecuteResponse(25));
+		Robolectric.addPendingHttpResponse(200, newExecuteResponse(FRIENDS + CHATS - 25));
+
+		final LongPollUpdateBatch batch = new LongPollUpdateBatch(chatService, userService, exceptionHandler);
+		updates.addTo(batch);
+		assertFalse(batch.isEmpty());
+		assertTrue(batch.apply(account));
+		// batch is reused by the next poll
+		assertTrue(batch.isEmpty());
+
+		// before: one request for each new message or changed chat
+		assertEquals(2, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+
+		// before: one transaction for each new message or changed chat
+		verify(chatService, times(FRIENDS + CHATS)).saveMessages(any(Entity.class), anyCollectionOf(Message.class), eq(true));
+		verify(chatService, times(FRIENDS)).getOrCreatePrivateChat(any(Entity.class), any(Entity.class));
+		verify(chatService, never()).saveChat(any(Entity.class), any(AccountChat.class));
+
+		// before: one transaction and one event for each presence change
+		verify(userService, times(1)).onContactsPresenceChanged(eq(account.getUser()), argThat(new HasSize(ONLINE_FRIENDS)));
+		verify(userService, never()).onContactPresenceChanged(any(User.class), any(User.class), anyBoolean());
+
+		// typing users are notified only once
+		verify(chatService, times(5)).fireEvent(any(ChatEvent.class));
+		verify(exceptionHandler, never()).handleException(any(Throwable.class));
+	}
+
+	@Test
+	public void testChatWhichCantBeCreatedShouldNotPreventOtherChatsFromUpdating() throws Exception {
+		when(chatService.getOrCreatePrivateChat(any(Entity.class), eq(account.newUserEntity("102")))).thenThrow(new AccountException(ACCOUNT_ID));
+		Robolectric.addPendingHttpResponse(200, newExecuteResponse(2));
+
+		final LongPollUpdateBatch batch = newBatchWithPrivateChats(101, 102, 103);
+		assertFalse(batch.apply(account));
+
+		verify(chatService, times(2)).saveMessages(any(Entity.class), anyCollectionOf(Message.class), eq(true));
+		verify(exceptionHandler, times(1)).handleException(any(AccountException.class));
+	}
+
+	@Test
+	public void testRejectedHistoryCallShouldNotPreventOtherChatsFromUpdating() throws Exception {
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[[0],false,[0]],\"execute_errors\":[{\"method\":\"messages.getHistory\",\"error_code\":15,\"error_msg\":\"Access denied\"}]}");
+		// chats are loaded one by one
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[0]}");
+		Robolectric.addPendingHttpResponse(200, "{\"error\":{\"error_code\":15,\"error_msg\":\"Access denied\"}}");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[0]}");
+
+		final LongPollUpdateBatch batch = newBatchWithPrivateChats(101, 102, 103);
+		assertFalse(batch.apply(account));
+
+		assertEquals(4, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		verify(chatService, times(2)).saveMessages(any(Entity.class), anyCollectionOf(Message.class), eq(true));
+		verify(exceptionHandler, times(1)).handleException(any(AccountException.class));
+	}
+
+	@Nonnull
+	private LongPollUpdateBatch newBatchWithPrivateChats(@Nonnull int... accountFriendIds) {
+		final LongPollUpdateBatch result = new LongPollUpdateBatch(chatService, userService, exceptionHandler);
+		for (int accountFriendId : accountFriendIds) {
+			result.addNewMessageInPrivateChat(accountFriendId);
+		}
+		return result;
+	}
+
+	/**
+	 * @return long poll response with {@link #BURST_SIZE} updates: new messages in {@link #FRIENDS} private and
+	 * {@link #CHATS} group chats, changes of the same group chats, presence changes of {@link #ONLINE_FRIENDS} friends
+	 * and typing notifications of 5 friends
+	 */
+	@Nonnull
+	private static String newBurst() {
+		final StringBuilder result = new StringBuilder();
+		result.append("{\"ts\":1000,\"updates\":[");
+
+		int messages = 0;
+		int changes = 0;
+		int presences = 0;
+		int typings = 0;
+		for (int i = 0; i < BURST_SIZE; i++) {
+			if (i > 0) {
+				result.append(",");
+			}
+
+			final int type = i % 10;
+			if (type < 5) {
+				final int chatUserId;
+				if (messages % 4 == 0) {
+					chatUserId = 2000000000 + 1 + (messages / 4) % CHATS;
+				} else {
+					chatUserId = 100 + messages % FRIENDS;
+				}
+				result.append("[4,").append(10000 + i).append(",1,").append(chatUserId).append(",1380000000,\" ... \",\"Hi\"]");
+				messages++;
+			} else if (type == 5) {
+				result.append("[51,").append(1 + changes % CHATS).append(",1]");
+				changes++;
+			} else if (type < 9) {
+				final boolean online = (presences / ONLINE_FRIENDS) % 2 == 0;
+				result.append("[").append(online ? 8 : 9).append(",-").append(100 + presences % ONLINE_FRIENDS).append(",0]");
+				presences++;
+			} else {
+				result.append("[61,").append(100 + typings % 5).append(",1]");
+				typings++;
+			}
+		}
+
+		result.append("]}");
+		return result.toString();
+	}
+
+	@Nonnull
+	private static String newExecuteResponse(int calls) {
+		final StringBuilder result = new StringBuilder();
+		result.append("{\"response\":[");
+		for (int i = 0; i < calls; i++) {
+			if (i > 0) {
+				result.append(",");
+			}
+			result.append("[0]");
+		}
+		result.append("]}");
+		return result.toString();
+	}
+
+	private static final class HasSize extends ArgumentMatcher<Collection<User>> {
+
+		private final int size;
+
+		private HasSize(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public boolean matches(Object argument) {
+			return ((Collection<?>) argument).size() == size;
+		}
+	}
+
+	@Nonnull
+	private static LongPollUpdates readUpdates(@Nonnull String json) throws IOException {
+		final LongPollUpdates result = new LongPollUpdates();
+
+		final JsonReader reader = new JsonReader(new StringReader(json));
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if ("updates".equals(reader.nextName())) {
+				result.read(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		reader.close();
+
+		return result;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+
+import javax.annotation.Nonnull;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Long poll updates are decoded into reused {@link LongPollUpdates} and compared with updates decoded through JSON tree
+ */
+public class LongPollUpdatesTest {
+
+	private String longPoll;
+
+	@Before
+	public void setUp() throws Exception {
+		longPoll = Fixtures.readString(getClass(), "/org/solovyev/android/messenger/realms/vk/http/long_poll.json");
+	}
+
+	@Test
+	public void testKnownUpdatesShouldBeReadInOrder() throws Exception {
+		final LongPollUpdates actual = new LongPollUpdates();
+		read(longPoll, actual);
+
+		int i = 0;
+		for (JsonElement element : getUpdates(longPoll)) {
+			final JsonArray update = element.getAsJsonArray();
+			final int type = update.get(0).getAsInt();
+			switch (type) {
+				case LongPollUpdates.MESSAGE_ADDED:
+					assertEquals(type, actual.getType(i));
+					assertEquals(update.get(1).getAsInt(), actual.getId(i));
+					assertEquals(update.get(2).getAsInt(), actual.getFlags(i));
+					assertEquals(update.get(3).getAsInt(), actual.getPeerId(i));
+					i++;
+					break;
+				case LongPollUpdates.FRIEND_ONLINE:
+				case LongPollUpdates.FRIEND_OFFLINE:
+					assertEquals(type, actual.getType(i));
+					assertEquals(-update.get(1).getAsInt(), actual.getId(i));
+					i++;
+					break;
+				case LongPollUpdates.TYPING_IN_CHAT:
+					assertEquals(type, actual.getType(i));
+					assertEquals(update.get(1).getAsInt(), actual.getId(i));
+					assertEquals(update.get(2).getAsInt(), actual.getPeerId(i));
+					i++;
+					break;
+				case LongPollUpdates.MESSAGE_REMOVED:
+				case LongPollUpdates.CHAT_CHANGED:
+				case LongPollUpdates.TYPING_IN_PRIVATE_CHAT:
+					assertEquals(type, actual.getType(i));
+					assertEquals(update.get(1).getAsInt(), actual.getId(i));
+					i++;
+					break;
+				default:
+					// unknown updates are skipped
+			}
+		}
+		assertEquals(i, actual.size());
+		assertTrue(actual.size() < getUpdates(longPoll).size());
+	}
+
+	@Test
+	public void testUpdatesShouldBeClearedBeforeNextPoll() throws Exception {
+		final LongPollUpdates updates = new LongPollUpdates();
+		read(longPoll, updates);
+		final int size = updates.size();
+
+		updates.clear();
+		read(longPoll, updates);
+		assertEquals(size, updates.size());
+	}
+
+	@Test
+	public void testReusedUpdatesShouldNotGrowAfterFirstPoll() throws Exception {
+		final LongPollUpdates updates = new LongPollUpdates();
+		read(longPoll, updates);
+		final int capacity = updates.getCapacity();
+
+		for (int i = 0; i < 10; i++) {
+			updates.clear();
+			read(longPoll, updates);
+			assertEquals(capacity, updates.getCapacity());
+		}
+	}
+
+	@Test
+	public void testUpdatesShouldBeKeptWhenArraysGrow() throws Exception {
+		final LongPollUpdates updates = new LongPollUpdates();
+		final int initialCapacity = updates.getCapacity();
+
+		final StringBuilder json = new StringBuilder("{\"updates\":[");
+		for (int i = 0; i < initialCapacity * 3; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("[4,").append(i).append(",1,").append(100 + i).append(",1380000000,\" ... \",\"Hi\"]");
+		}
+		json.append("]}");
+		read(json.toString(), updates);
+
+		assertEquals(initialCapacity * 3, updates.size());
+		assertTrue(updates.getCapacity() > initialCapacity);
+		for (int i = 0; i < updates.size(); i++) {
+			assertEquals(i, updates.getId(i));
+			assertEquals(100 + i, updates.getPeerId(i));
+			assertEquals(1, updates.getFlags(i));
+		}
+	}
+
+	private static void read(@Nonnull String json, @Nonnull LongPollUpdates updates) throws Exception {
+		final JsonReader reader = new JsonReader(new StringReader(json));
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if ("updates".equals(reader.nextName())) {
+				updates.read(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		reader.close();
+	}
+
+	@Nonnull
+	private static JsonArray getUpdates(@Nonnull String json) {
+		return new JsonParser().parse(json).getAsJsonObject().getAsJsonArray("updates");
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.longpoll;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import org.apache.http.HttpRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.ExceptionHandler;
+import org.solovyev.android.messenger.chats.ChatService;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.users.UserService;
+
+import javax.annotation.Nonnull;
+import java.net.URI;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.solovyev.android.messenger.realms.vk.Fixtures.ACCOUNT_ID;
+
+@RunWith(RobolectricTestRunner.class)
+public class VkGetLongPollHistoryHttpTransactionTest {
+
+	private VkAccount account;
+
+	private LongPollUpdateBatch batch;
+
+	@Before
+	public void setUp() throws Exception {
+		account = Fixtures.newVkAccount();
+		batch = new LongPollUpdateBatch(mock(ChatService.class), mock(UserService.class), mock(ExceptionHandler.class));
+	}
+
+	@Test
+	public void testMissedUpdatesShouldBeLoadedFromPosition() throws Exception {
+		Robolectric.addPendingHttpResponse(200, Fixtures.readString(getClass(), "long_poll_history.json"));
+
+		final VkLongPollResult result = account.getRequestBatcher().execute(new VkGetLongPollHistoryHttpTransaction(account, new LongPollPosition(1700000000L, 5000L), 1700000100L, batch));
+
+		final LongPollUpdates updates = result.getUpdates();
+		assertEquals(5, updates.size());
+		assertEquals(LongPollUpdates.MESSAGE_ADDED, updates.getType(0));
+		assertEquals(7399, updates.getPeerId(0));
+		assertEquals(LongPollUpdates.FRIEND_ONLINE, updates.getType(1));
+		assertEquals(1595, updates.getId(1));
+		assertEquals(LongPollUpdates.MESSAGE_ADDED, updates.getType(2));
+		assertEquals(LongPollUpdates.FRIEND_OFFLINE, updates.getType(3));
+		assertEquals(LongPollUpdates.TYPING_IN_PRIVATE_CHAT, updates.getType(4));
+		assertEquals(Long.valueOf(5203), result.getPts());
+
+		// new session continues from the timestamp of the new long poll server
+		final LongPollServerData serverData = (LongPollServerData) result.updateLongPollServerData(new LongPollServerData("key", "server", 1L, 1L));
+		assertNotNull(serverData);
+		assertEquals(Long.valueOf(1700000100L), serverData.getTimeStamp());
+		assertEquals(Long.valueOf(5203), serverData.getPts());
+
+		assertEquals(1, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		final HttpRequest request = Robolectric.getSentHttpRequest(0);
+		assertTrue(request.getRequestLine().getUri().contains("messages.getLongPollHistory"));
+		assertEquals("1700000000", getParameter(request, "ts"));
+		assertEquals("5000", getParameter(request, "pts"));
+		assertEquals("1", getParameter(request, "onlines"));
+	}
+
+	@Test
+	public void testPositionShouldBeStoredForAccount() throws Exception {
+		final SharedPreferences preferences = Robolectric.application.getSharedPreferences("test", Context.MODE_PRIVATE);
+		assertNull(LongPollPosition.load(preferences, ACCOUNT_ID));
+
+		new LongPollPosition(1700000000L, 5000L).save(preferences, ACCOUNT_ID);
+		new LongPollPosition(1800000000L, null).save(preferences, "vk~2");
+
+		final LongPollPosition position = LongPollPosition.load(preferences, ACCOUNT_ID);
+		assertNotNull(position);
+		assertEquals(1700000000L, position.getTs());
+		assertEquals(Long.valueOf(5000L), position.getPts());
+
+		final LongPollPosition otherPosition = LongPollPosition.load(preferences, "vk~2");
+		assertNotNull(otherPosition);
+		assertEquals(1800000000L, otherPosition.getTs());
+		assertNull(otherPosition.getPts());
+
+		LongPollPosition.remove(preferences, ACCOUNT_ID);
+		assertNull(LongPollPosition.load(preferences, ACCOUNT_ID));
+	}
+
+	@Test
+	public void testPinnedPositionShouldNotBeAdvancedUntilReplayed() throws Exception {
+		final SharedPreferences preferences = Robolectric.application.getSharedPreferences("test", Context.MODE_PRIVATE);
+		new LongPollPosition(1700000000L, 5000L).save(preferences, ACCOUNT_ID);
+
+		// updates after the stored position have failed => next polls don't move it
+		LongPollPosition.pin(preferences, ACCOUNT_ID);
+		new LongPollPosition(1700000100L, 5010L).advance(preferences, ACCOUNT_ID);
+		assertEquals(1700000000L, LongPollPosition.load(preferences, ACCOUNT_ID).getTs());
+
+		// missed updates are replayed => position is saved and is not pinned anymore
+		new LongPollPosition(1700000200L, 5020L).save(preferences, ACCOUNT_ID);
+		new LongPollPosition(1700000300L, 5030L).advance(preferences, ACCOUNT_ID);
+		assertEquals(1700000300L, LongPollPosition.load(preferences, ACCOUNT_ID).getTs());
+	}
+
+	@Nonnull
+	private static String getParameter(@Nonnull HttpRequest request, @Nonnull String name) {
+		for (NameValuePair parameter : URLEncodedUtils.parse(URI.create(request.getRequestLine().getUri()), "UTF-8")) {
+			if (parameter.getName().equals(name)) {
+				return parameter.getValue();
+			}
+		}
+		throw new AssertionError("No parameter " + name);
+	}
+}
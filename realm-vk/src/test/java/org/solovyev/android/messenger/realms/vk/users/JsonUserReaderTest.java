@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.users;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.realms.test.TestAccount;
+import org.solovyev.android.messenger.realms.test.TestRealm;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonUserReaderTest {
+
+	// recorded response of friends.get with all user fields
+	private static final String FIXTURE = "friends_get.json";
+
+	private TestAccount account;
+
+	private byte[] payload;
+
+	@Before
+	public void setUp() throws Exception {
+		account = new TestAccount(new TestRealm());
+		payload = Fixtures.read(getClass(), FIXTURE);
+	}
+
+	@Test
+	public void testShouldReadSameUsersAsGson() throws Exception {
+		final List<User> expected = parseString();
+		final List<User> actual = parseStream();
+
+		assertEquals(300, expected.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final User expectedUser = expected.get(i);
+			final User actualUser = actual.get(i);
+			assertEquals(expectedUser.getEntity(), actualUser.getEntity());
+			assertEquals(expectedUser.getFirstName(), actualUser.getFirstName());
+			assertEquals(expectedUser.getLastName(), actualUser.getLastName());
+			assertEquals(toMap(expectedUser), toMap(actualUser));
+		}
+	}
+
+	@Test
+	public void testShouldStopAfterUsers() throws Exception {
+		final String json = "{"response":[{"uid":1,"first_name":"Name","last_name":"Surname"}],"next":2}";
+		final JsonReader reader = new JsonReader(new StringReader(json));
+		reader.beginObject();
+		assertEquals("response", reader.nextName());
+
+		final List<User> users = JsonUserReader.readUsers(reader, account);
+		assertEquals(1, users.size());
+		assertEquals("Name", users.get(0).getFirstName());
+
+		// rest of the response must be left for the caller
+		assertEquals("next", reader.nextName());
+		assertEquals(2, reader.nextInt());
+	}
+
+	@Nonnull
+	private List<User> parseString() throws Exception {
+		final List<User> result = new ArrayList<User>();
+		for (JsonUser jsonUser : JsonUsers.newFromJson(new String(payload, "UTF-8")).getUsers()) {
+			result.add(jsonUser.toUser(account));
+		}
+		return result;
+	}
+
+	@Nonnull
+	private List<User> parseStream() throws Exception {
+		final JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(payload), "UTF-8"));
+		try {
+			reader.beginObject();
+			assertEquals("response", reader.nextName());
+			return JsonUserReader.readUsers(reader, account);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Nonnull
+	private static Map<String, String> toMap(@Nonnull User user) {
+		final Map<String, String> result = new HashMap<String, String>();
+		for (AProperty property : user.getPropertiesCollection()) {
+			result.put(property.getName(), property.getValue());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.users;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.realms.test.TestAccount;
+import org.solovyev.android.messenger.realms.test.TestRealm;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.solovyev.android.messenger.realms.vk.Fixtures.ACCOUNT_ID;
+import static org.solovyev.android.messenger.users.Users.newEmptyUser;
+
+/**
+ * Contacts sync which loads only ids of friends and profiles of new friends and of one slice (see
+ * {@link VkAccountUserService#getContacts()}) is checked against fake HTTP layer of Robolectric and is compared to sync
+ * which loads all friends with all fields
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VkAccountUserServiceTest {
+
+	// recorded response of friends.get with all user fields
+	private static final String FIXTURE = "friends_get.json";
+
+	private TestAccount account;
+
+	private VkAccount vkAccount;
+
+	private SharedPreferences preferences;
+
+	private String fullResponse;
+
+	private List<String> friendIds;
+
+	@Before
+	public void setUp() throws Exception {
+		account = new TestAccount(new TestRealm());
+		fullResponse = Fixtures.readString(getClass(), FIXTURE);
+
+		friendIds = new ArrayList<String>();
+		for (JsonElement user : getUsers(fullResponse)) {
+			friendIds.add(user.getAsJsonObject().get("uid").getAsString());
+		}
+
+		vkAccount = Fixtures.newVkAccount();
+		preferences = Robolectric.application.getSharedPreferences("test", Context.MODE_PRIVATE);
+		preferences.edit().clear().commit();
+	}
+
+	/*
+	 * Slices of ids used below: "1" -> 1, "2" -> 2, "3" -> 3, "4" -> 4
+	 */
+
+	@Test
+	public void testNewFriendsShouldBeLoadedAndRemovedFriendsShouldBeDropped() throws Exception {
+		final List<User> storedContacts = newStoredContacts("1", "2", "3");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[1,3,4]}");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[{\"uid\":4,\"first_name\":\"New\"}]}");
+
+		final List<User> contacts = new VkAccountUserService(vkAccount).getContacts(storedContacts, preferences);
+
+		assertEquals(3, contacts.size());
+		assertSame(storedContacts.get(0), contacts.get(0));
+		assertSame(storedContacts.get(2), contacts.get(1));
+		assertEquals("4", contacts.get(2).getEntity().getAccountEntityId());
+		assertEquals("New", contacts.get(2).getFirstName());
+
+		// friends.get + users.get for new friend only
+		assertEquals(2, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		assertEquals("4", getParameter(1, "uids"));
+		assertEquals(1, preferences.getInt("vk.contacts." + ACCOUNT_ID + ".slice", -1));
+	}
+
+	@Test
+	public void testStaleSliceShouldBeReloaded() throws Exception {
+		final List<User> storedContacts = newStoredContacts("1", "2", "3");
+		preferences.edit().putInt("vk.contacts." + ACCOUNT_ID + ".slice", 2).commit();
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[1,2,3]}");
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[{\"uid\":2,\"first_name\":\"Reloaded\"}]}");
+
+		final List<User> contacts = new VkAccountUserService(vkAccount).getContacts(storedContacts, preferences);
+
+		assertEquals(3, contacts.size());
+		assertSame(storedContacts.get(0), contacts.get(0));
+		assertEquals("Reloaded", contacts.get(1).getFirstName());
+		assertSame(storedContacts.get(2), contacts.get(2));
+
+		assertEquals("2", getParameter(1, "uids"));
+		assertEquals(3, preferences.getInt("vk.contacts." + ACCOUNT_ID + ".slice", -1));
+	}
+
+	@Test
+	public void testNothingShouldBeLoadedIfNoNewFriendsAndSliceIsEmpty() throws Exception {
+		final List<User> storedContacts = newStoredContacts("1", "2", "3");
+		preferences.edit().putInt("vk.contacts." + ACCOUNT_ID + ".slice", VkAccountUserService.STALE_SLICES - 1).commit();
+		Robolectric.addPendingHttpResponse(200, "{\"response\":[1,2,3]}");
+
+		final List<User> contacts = new VkAccountUserService(vkAccount).getContacts(storedContacts, preferences);
+
+		assertEquals(storedContacts, contacts);
+		// only friends.get
+		assertEquals(1, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		// rotation starts from the beginning
+		assertEquals(0, preferences.getInt("vk.contacts." + ACCOUNT_ID + ".slice", -1));
+	}
+
+	@Test
+	public void testSliceShouldBeRemovedWithAccount() throws Exception {
+		preferences.edit().putInt("vk.contacts." + ACCOUNT_ID + ".slice", 5).putInt("vk.contacts.vk~2.slice", 7).commit();
+
+		VkAccountUserService.removeContactsSlice(preferences, ACCOUNT_ID);
+
+		assertFalse(preferences.contains("vk.contacts." + ACCOUNT_ID + ".slice"));
+		assertEquals(7, preferences.getInt("vk.contacts.vk~2.slice", -1));
+	}
+
+	@Test
+	public void testNewFriendsShouldBeLoaded() throws Exception {
+		final Set<String> storedIds = new HashSet<String>(friendIds.subList(10, friendIds.size()));
+
+		final List<String> idsToLoad = VkAccountUserService.getIdsToLoad(friendIds, storedIds, 0);
+		for (String newId : friendIds.subList(0, 10)) {
+			assertTrue(idsToLoad.contains(newId));
+		}
+	}
+
+	@Test
+	public void testEachStoredFriendShouldBeLoadedOncePerRotation() throws Exception {
+		final Set<String> storedIds = new HashSet<String>(friendIds);
+
+		final Map<String, Integer> loads = new HashMap<String, Integer>();
+		for (int slice = 0; slice < VkAccountUserService.STALE_SLICES; slice++) {
+			final List<String> idsToLoad = VkAccountUserService.getIdsToLoad(friendIds, storedIds, slice);
+			assertFalse(idsToLoad.size() > friendIds.size() / 4);
+			for (String id : idsToLoad) {
+				final Integer count = loads.get(id);
+				loads.put(id, count == null ? 1 : count + 1);
+			}
+		}
+
+		assertEquals(friendIds.size(), loads.size());
+		for (Integer count : loads.values()) {
+			assertEquals(Integer.valueOf(1), count);
+		}
+	}
+
+	@Test
+	public void testDeltaSyncShouldReadLessThanFullSync() throws Exception {
+		final Set<String> idsToLoad = new HashSet<String>(VkAccountUserService.getIdsToLoad(friendIds, new HashSet<String>(friendIds), 0));
+		final String idsResponse = newIdsResponse(friendIds);
+		final String sliceResponse = newUsersResponse(fullResponse, idsToLoad);
+
+		parseFull();
+		parseDelta(idsResponse, sliceResponse, idsToLoad.size());
+
+		assertTrue((idsResponse.length() + sliceResponse.length()) * 10 < fullResponse.length());
+	}
+
+	private void parseFull() throws Exception {
+		final JsonReader reader = newResponseReader(fullResponse);
+		assertEquals(friendIds.size(), JsonUserReader.readUsers(reader, account).size());
+		reader.close();
+	}
+
+	private void parseDelta(@Nonnull String idsResponse, @Nonnull String sliceResponse, int sliceSize) throws Exception {
+		JsonReader reader = newResponseReader(idsResponse);
+		assertEquals(friendIds.size(), JsonUserReader.readUserIds(reader).size());
+		reader.close();
+
+		reader = newResponseReader(sliceResponse);
+		assertEquals(sliceSize, JsonUserReader.readUsers(reader, account).size());
+		reader.close();
+	}
+
+	@Nonnull
+	private List<User> newStoredContacts(@Nonnull String... ids) {
+		final List<User> result = new ArrayList<User>(ids.length);
+		for (String id : ids) {
+			result.add(newEmptyUser(vkAccount.newUserEntity(id)));
+		}
+		return result;
+	}
+
+	@Nonnull
+	private static String getParameter(int request, @Nonnull String name) throws Exception {
+		final HttpEntityEnclosingRequest sentRequest = (HttpEntityEnclosingRequest) Robolectric.getSentHttpRequest(request);
+		for (NameValuePair parameter : URLEncodedUtils.parse(sentRequest.getEntity())) {
+			if (parameter.getName().equals(name)) {
+				return parameter.getValue();
+			}
+		}
+		fail("No parameter " + name + " in request");
+		return null;
+	}
+
+	@Nonnull
+	private static JsonReader newResponseReader(@Nonnull String json) throws Exception {
+		final JsonReader result = new JsonReader(new StringReader(json));
+		result.beginObject();
+		assertEquals("response", result.nextName());
+		return result;
+	}
+
+	@Nonnull
+	private static JsonArray getUsers(@Nonnull String json) {
+		return new JsonParser().parse(json).getAsJsonObject().getAsJsonArray("response");
+	}
+
+	// response of friends.get without fields
+	@Nonnull
+	private static String newIdsResponse(@Nonnull List<String> ids) {
+		final JsonArray response = new JsonArray();
+		for (String id : ids) {
+			response.add(new JsonParser().parse(id));
+		}
+
+		final JsonObject result = new JsonObject();
+		result.add("response", response);
+		return result.toString();
+	}
+
+	// response of users.get for users with <var>ids</var> taken from <var>json</var>
+	@Nonnull
+	private static String newUsersResponse(@Nonnull String json, @Nonnull Set<String> ids) {
+		final JsonArray response = new JsonArray();
+		for (JsonElement user : getUsers(json)) {
+			if (ids.contains(user.getAsJsonObject().get("uid").getAsString())) {
+				response.add(user);
+			}
+		}
+
+		final JsonObject result = new JsonObject();
+		result.add("response", response);
+		return result.toString();
+	}
+}
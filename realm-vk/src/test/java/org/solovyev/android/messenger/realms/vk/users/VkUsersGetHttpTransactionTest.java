@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.vk.users;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.solovyev.android.messenger.realms.vk.Fixtures;
+import org.solovyev.android.messenger.realms.vk.VkAccount;
+import org.solovyev.android.messenger.users.User;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Bulk users.get is executed through fake HTTP layer of Robolectric which answers each request after {@link #LATENCY}
+ * and counts requests which are executed at the same time.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VkUsersGetHttpTransactionTest {
+
+	private static final int USERS = 10000;
+
+	private static final int CHUNKS = USERS / 1000;
+
+	// ms
+	private static final long LATENCY = 20;
+
+	@Nonnull
+	private static final AtomicInteger outstanding = new AtomicInteger();
+
+	@Nonnull
+	private static final AtomicInteger maxOutstanding = new AtomicInteger();
+
+	private VkAccount account;
+
+	private List<String> userIds;
+
+	@Before
+	public void setUp() throws Exception {
+		account = Fixtures.newVkAccount();
+
+		userIds = new ArrayList<String>(USERS);
+		for (int i = 0; i < USERS; i++) {
+			userIds.add(String.valueOf(i));
+		}
+
+		final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(new SlowEntity(newPresenceResponse()));
+		Robolectric.setDefaultHttpResponse(response);
+
+		outstanding.set(0);
+		maxOutstanding.set(0);
+	}
+
+	@Test
+	public void testShouldRequestOnlyProjectedFields() throws Exception {
+		final List<VkUsersGetHttpTransaction> transactions = VkUsersGetHttpTransaction.newInstancesForUserIds(account, userIds, asList(ApiUserField.uid, ApiUserField.online));
+		assertEquals(CHUNKS, transactions.size());
+
+		Fixtures.newFastBatcher().execute(transactions.get(0));
+
+		final HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) Robolectric.getSentHttpRequest(0);
+		assertEquals("uid,online", getParameter(request, "fields"));
+	}
+
+	@Test
+	public void testShouldRequestAllFieldsIfNoProjection() throws Exception {
+		Fixtures.newFastBatcher().execute(VkUsersGetHttpTransaction.newInstance(account, "1", null));
+
+		final HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) Robolectric.getSentHttpRequest(0);
+		assertEquals(ApiUserField.getAllFieldsRequestParameter(), getParameter(request, "fields"));
+	}
+
+	@Test
+	public void testChunksShouldBeExecutedConcurrentlyInOwnRequests() throws Exception {
+		final List<User> users = new ArrayList<User>(USERS);
+		for (List<User> chunk : Fixtures.newFastBatcher().executeConcurrently(VkUsersGetHttpTransaction.newInstancesForUserIds(account, userIds, null))) {
+			assertEquals(1000, chunk.size());
+			users.addAll(chunk);
+		}
+
+		assertEquals(USERS, users.size());
+		assertEquals(CHUNKS, Robolectric.getFakeHttpLayer().getSentHttpRequestInfos().size());
+		for (int i = 0; i < CHUNKS; i++) {
+			final String uids = getParameter((HttpEntityEnclosingRequest) Robolectric.getSentHttpRequest(i), "uids");
+			assertEquals(1000, uids.split(",").length);
+		}
+
+		// not more than VkRequestBatcher.MAX_CONCURRENT_CALLS
+		assertTrue(maxOutstanding.get() <= 3);
+		assertEquals(0, outstanding.get());
+	}
+
+	@Nonnull
+	private static String getParameter(@Nonnull HttpEntityEnclosingRequest request, @Nonnull String name) throws IOException {
+		for (NameValuePair parameter : URLEncodedUtils.parse(request.getEntity())) {
+			if (parameter.getName().equals(name)) {
+				return parameter.getValue();
+			}
+		}
+		fail("No parameter " + name + " in request");
+		return null;
+	}
+
+	// response of users.get with presence projection for one chunk
+	@Nonnull
+	private static byte[] newPresenceResponse() {
+		final StringBuilder sb = new StringBuilder("{\"response\":[");
+		for (int i = 0; i < 1000; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"uid\":").append(i).append(",\"online\":").append(i % 2).append('}');
+		}
+		sb.append("]}");
+		return sb.toString().getBytes();
+	}
+
+	/**
+	 * Entity which emulates network latency (content is available only after {@link #LATENCY}) and tracks the number
+ * of requests being answered at the same time
+	 */
+	private static final class SlowEntity extends AbstractHttpEntity {
+
+		@Nonnull
+		private final byte[] content;
+
+		private SlowEntity(@Nonnull byte[] content) {
+			this.content = content;
+			setContentType("application/json; charset=UTF-8");
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public long getContentLength() {
+			return content.length;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			final int current = outstanding.incrementAndGet();
+			while (true) {
+				final int max = maxOutstanding.get();
+				if (current <= max || maxOutstanding.compareAndSet(max, current)) {
+					break;
+				}
+			}
+
+			try {
+				Thread.sleep(LATENCY);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} finally {
+				outstanding.decrementAndGet();
+			}
+			return new ByteArrayInputStream(content);
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			out.write(content);
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return false;
+		}
+	}
+}
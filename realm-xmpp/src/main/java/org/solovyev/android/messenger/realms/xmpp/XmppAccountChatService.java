@@ -32,6 +32,7 @@ import org.solovyev.android.messenger.users.User;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -113,4 +114,10 @@ class XmppAccountChatService extends AbstractXmppAccountService implements Accou
 	public boolean markMessageRead(@Nonnull Message message) throws AccountConnectionException {
 		return true;
 	}
+
+	@Nonnull
+	@Override
+	public Collection<Message> markMessagesRead(@Nonnull Collection<Message> messages) throws AccountConnectionException {
+		return messages;
+	}
 }
@@ -21,6 +21,8 @@ import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.Roster;
 import org.jivesoftware.smack.RosterEntry;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.DefaultPacketExtension;
+import org.jivesoftware.smack.packet.PacketExtension;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smackx.packet.VCard;
 import org.solovyev.android.messenger.accounts.Account;
@@ -34,7 +36,11 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.solovyev.android.messenger.App.newSubTag;
 import static org.solovyev.android.messenger.entities.Entities.newEntity;
@@ -45,6 +51,15 @@ import static org.solovyev.common.text.Strings.isEmpty;
 
 class XmppAccountUserService extends AbstractXmppAccountService implements AccountUserService {
 
+	// number of users with loaded vCards merged at once
+	private static final int VCARD_BATCH_SIZE = 50;
+
+	@Nonnull
+	private static final String VCARD_UPDATE_ELEMENT = "x";
+
+	@Nonnull
+	private static final String VCARD_UPDATE_NAMESPACE = "vcard-temp:x:update";
+
 	@Nonnull
 	private final UserService userService;
 
@@ -103,7 +118,103 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 	@Nonnull
 	@Override
 	public List<User> getContacts() throws AccountConnectionException {
-		return doOnConnection(new UserContactsLoader(getAccount()));
+		final XmppAccount account = getAccount();
+
+		final Map<String, User> storedContacts = new HashMap<String, User>();
+		for (User contact : userService.getContacts(account.getUser().getEntity())) {
+			storedContacts.put(contact.getEntity().getAccountEntityId(), contact);
+		}
+
+		// roster is read under the connection lock, vCards are loaded without holding it
+		final List<String> vCardsToLoad = new ArrayList<String>();
+		final List<User> contacts = doOnConnection(new UserContactsLoader(account, storedContacts, vCardsToLoad));
+		if (vCardsToLoad.isEmpty()) {
+			// contacts are merged by the caller (see UserService#syncContacts)
+			return contacts;
+		}
+
+		final List<User> newContacts = new ArrayList<User>();
+		for (User contact : contacts) {
+			if (!storedContacts.containsKey(contact.getEntity().getAccountEntityId())) {
+				newContacts.add(contact);
+			}
+		}
+
+		if (!newContacts.isEmpty()) {
+			// new contacts are shown with the names from the roster until their vCards are loaded
+			userService.mergeContacts(account, newContacts, false, true);
+		}
+
+		final Set<String> mergedContacts = loadVCards(contacts, vCardsToLoad);
+
+		// contacts merged above are not returned => caller doesn't merge them again
+		final List<User> result = new ArrayList<User>(contacts.size());
+		for (User contact : contacts) {
+			final String accountUserId = contact.getEntity().getAccountEntityId();
+			if (storedContacts.containsKey(accountUserId) && !mergedContacts.contains(accountUserId)) {
+				result.add(contact);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Method loads vCards of <var>accountUserIds</var> and merges users with loaded vCards in batches of
+	 * {@link #VCARD_BATCH_SIZE}. Users whose vCards cannot be loaded are left intact.
+	 *
+	 * @return ids of the merged users
+	 */
+	@Nonnull
+	private Set<String> loadVCards(@Nonnull List<User> contacts, @Nonnull List<String> accountUserIds) {
+		final XmppAccount account = getAccount();
+
+		final Map<String, User> contactsById = new HashMap<String, User>(contacts.size());
+		for (User contact : contacts) {
+			contactsById.put(contact.getEntity().getAccountEntityId(), contact);
+		}
+
+		final Set<String> result = new HashSet<String>();
+		final List<User> batch = new ArrayList<User>(VCARD_BATCH_SIZE);
+		try {
+			new XmppVCardLoader(getConnectionAware()).load(accountUserIds, new XmppVCardLoader.Listener() {
+				@Override
+				public void onVCardLoaded(@Nonnull String accountUserId, @Nullable VCard vCard) {
+					final User contact = contactsById.get(accountUserId);
+					if (vCard != null && contact != null) {
+						final List<AProperty> properties = new ArrayList<AProperty>();
+						addVCardProperties(properties, vCard);
+						final MutableUser user = newUser(contact.getEntity(), properties);
+						user.setOnline(contact.isOnline());
+
+						batch.add(user);
+						if (batch.size() >= VCARD_BATCH_SIZE) {
+							mergeVCards(account, batch, result);
+						}
+					}
+				}
+			});
+		} catch (XMPPException e) {
+			// contacts from the roster are still valid
+			Log.w(TAG, e.getMessage(), e);
+		} catch (AccountConnectionException e) {
+			Log.w(TAG, e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (!batch.isEmpty()) {
+			mergeVCards(account, batch, result);
+		}
+
+		return result;
+	}
+
+	private void mergeVCards(@Nonnull XmppAccount account, @Nonnull List<User> batch, @Nonnull Set<String> mergedContacts) {
+		userService.mergeContacts(account, new ArrayList<User>(batch), false, true);
+		for (User user : batch) {
+			mergedContacts.add(user.getEntity().getAccountEntityId());
+		}
+		batch.clear();
 	}
 
 	@Nonnull
@@ -192,21 +303,7 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 
 				userCard.load(connection, accountUserId);
 
-				result.add(newProperty(User.PROPERTY_FIRST_NAME, userCard.getFirstName()));
-				result.add(newProperty(User.PROPERTY_LAST_NAME, userCard.getLastName()));
-				result.add(newProperty(User.PROPERTY_NICKNAME, userCard.getNickName()));
-				result.add(newProperty(User.PROPERTY_EMAIL, userCard.getEmailHome()));
-				result.add(newProperty(User.PROPERTY_PHONE, userCard.getPhoneHome("VOICE")));
-				result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_HASH, userCard.getAvatarHash()));
-
-				final byte[] avatar = userCard.getAvatar();
-				if (avatar != null) {
-					result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_BASE64, ABase64StringEncoder.getInstance().convert(avatar)));
-				}
-
-				// full name
-				final String fullName = userCard.getField("FN");
-				Users.tryParseNameProperties(result, fullName);
+				addVCardProperties(result, userCard);
 			} catch (XMPPException e) {
 				if (!isEmpty(name)) {
 					Users.tryParseNameProperties(result, name);
@@ -223,13 +320,74 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 		return result;
 	}
 
+	private static void addVCardProperties(@Nonnull List<AProperty> result, @Nonnull VCard userCard) {
+		result.add(newProperty(User.PROPERTY_FIRST_NAME, userCard.getFirstName()));
+		result.add(newProperty(User.PROPERTY_LAST_NAME, userCard.getLastName()));
+		result.add(newProperty(User.PROPERTY_NICKNAME, userCard.getNickName()));
+		result.add(newProperty(User.PROPERTY_EMAIL, userCard.getEmailHome()));
+		result.add(newProperty(User.PROPERTY_PHONE, userCard.getPhoneHome("VOICE")));
+		result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_HASH, userCard.getAvatarHash()));
+
+		final byte[] avatar = userCard.getAvatar();
+		if (avatar != null) {
+			result.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_BASE64, ABase64StringEncoder.getInstance().convert(avatar)));
+		}
+
+		// full name
+		final String fullName = userCard.getField("FN");
+		Users.tryParseNameProperties(result, fullName);
+	}
+
+	/**
+	 * @return hash of the user's avatar announced in the <var>presence</var> (see XEP-0153), null if presence doesn't
+	 * contain it
+	 */
+	@Nullable
+	static String getPhotoHash(@Nonnull Presence presence) {
+		final PacketExtension extension = presence.getExtension(VCARD_UPDATE_ELEMENT, VCARD_UPDATE_NAMESPACE);
+		if (extension instanceof DefaultPacketExtension) {
+			return ((DefaultPacketExtension) extension).getValue("photo");
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if vCard of the <var>storedContact</var> should be loaded again: avatar hash announced in the
+	 * <var>presence</var> differs from the stored one. If hash is not announced (e.g. contact is offline) stored vCard
+	 * is kept
+	 */
+	static boolean isVCardChanged(@Nonnull User storedContact, @Nonnull Presence presence) {
+		final String photoHash = getPhotoHash(presence);
+		if (photoHash == null) {
+			return false;
+		}
+
+		// empty hash is announced if user has no avatar
+		final String storedPhotoHash = storedContact.getPropertyValueByName(XmppRealm.USER_PROPERTY_AVATAR_HASH);
+		return !photoHash.equals(storedPhotoHash == null ? "" : storedPhotoHash);
+	}
+
+	/**
+	 * Creates contacts from the roster without loading of their vCards: stored contact is used if it exists (its vCard
+	 * is loaded again only if avatar announced in the presence has been changed), otherwise contact is created from the
+	 * name in the roster. Ids of the contacts which vCards should be loaded are added to <var>vCardsToLoad</var>.
+	 */
 	private static class UserContactsLoader implements XmppConnectedCallable<List<User>> {
 
 		@Nonnull
 		private final Account account;
 
-		private UserContactsLoader(@Nonnull Account account) {
+		@Nonnull
+		private final Map<String, User> storedContacts;
+
+		@Nonnull
+		private final List<String> vCardsToLoad;
+
+		private UserContactsLoader(@Nonnull Account account, @Nonnull Map<String, User> storedContacts, @Nonnull List<String> vCardsToLoad) {
 			this.account = account;
+			this.storedContacts = storedContacts;
+			this.vCardsToLoad = vCardsToLoad;
 		}
 
 		@Override
@@ -239,7 +397,24 @@ class XmppAccountUserService extends AbstractXmppAccountService implements Accou
 
 			final List<User> result = new ArrayList<User>(entries.size());
 			for (RosterEntry entry : entries) {
-				result.add(toUser(account.getId(), entry.getUser(), entry.getName(), connection, account));
+				final String accountUserId = entry.getUser();
+				final Presence presence = roster.getPresence(accountUserId);
+
+				final User storedContact = storedContacts.get(accountUserId);
+				if (storedContact != null) {
+					result.add(storedContact.cloneWithNewStatus(presence.isAvailable()));
+
+					if (isVCardChanged(storedContact, presence)) {
+						vCardsToLoad.add(accountUserId);
+					}
+				} else {
+					final Entity entity = newEntity(account.getId(), accountUserId);
+					final MutableUser user = newUser(entity, loadUserProperties(false, accountUserId, connection, entry.getName()));
+					user.setOnline(presence.isAvailable());
+					result.add(user);
+
+					vCardsToLoad.add(accountUserId);
+				}
 			}
 
 			return result;
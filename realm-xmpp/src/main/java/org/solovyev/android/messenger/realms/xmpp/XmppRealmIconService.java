@@ -22,6 +22,7 @@ import android.graphics.drawable.BitmapDrawable;
 import android.util.Log;
 import android.widget.ImageView;
 import org.solovyev.android.messenger.App;
+import org.solovyev.android.messenger.Background;
 import org.solovyev.android.messenger.icons.RealmIconService;
 import org.solovyev.android.messenger.users.User;
 import org.solovyev.android.messenger.view.IconGenerator;
@@ -30,6 +31,8 @@ import org.solovyev.android.security.base64.ABase64StringDecoder;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class XmppRealmIconService implements RealmIconService {
 
@@ -39,18 +42,44 @@ public class XmppRealmIconService implements RealmIconService {
 	@Nonnull
 	private final IconGenerator iconGenerator;
 
+	// key: image view, value: id of the user whose icon should be shown in the view. Accessed only from the main thread
+	@Nonnull
+	private final Map<ImageView, String> viewUsers = new WeakHashMap<ImageView, String>();
+
 	public XmppRealmIconService(@Nonnull Context context) {
 		this.context = context;
 		this.iconGenerator = App.getIconGenerator();
 	}
 
 	@Override
-	public void setUserIcon(@Nonnull User user, @Nonnull ImageView imageView) {
-		final BitmapDrawable drawable = getUserIcon(user);
-		if (drawable != null) {
-			imageView.setImageDrawable(drawable);
+	public void setUserIcon(@Nonnull final User user, @Nonnull final ImageView imageView) {
+		final Background background = App.getBackground();
+
+		viewUsers.put(imageView, user.getId());
+		imageView.setImageDrawable(iconGenerator.getIcon(user));
+
+		final String userIconBase64 = user.getPropertyValueByName(XmppRealm.USER_PROPERTY_AVATAR_BASE64);
+		if (userIconBase64 != null) {
+			// avatar is decoded in background, view is used as a key => if view is recycled before the avatar is decoded
+			// the task is replaced by the task for the new user
+			background.submit(Background.Lane.prefetch, imageView, new Runnable() {
+				@Override
+				public void run() {
+					final BitmapDrawable drawable = decodeUserIcon(userIconBase64);
+					if (drawable != null) {
+						imageView.post(new Runnable() {
+							@Override
+							public void run() {
+								if (user.getId().equals(viewUsers.get(imageView))) {
+									imageView.setImageDrawable(drawable);
+								}
+							}
+						});
+					}
+				}
+			});
 		} else {
-			imageView.setImageDrawable(iconGenerator.getIcon(user));
+			background.cancel(Background.Lane.prefetch, imageView);
 		}
 	}
 
@@ -70,17 +99,14 @@ public class XmppRealmIconService implements RealmIconService {
 	}
 
 	@Nullable
-	private BitmapDrawable getUserIcon(@Nonnull User user) {
+	private static BitmapDrawable decodeUserIcon(@Nonnull String userIconBase64) {
 		BitmapDrawable result = null;
 
-		final String userIconBase64 = user.getPropertyValueByName(XmppRealm.USER_PROPERTY_AVATAR_BASE64);
-		if (userIconBase64 != null) {
-			try {
-				final byte[] userIconBytes = ABase64StringDecoder.getInstance().convert(userIconBase64);
-				result = new BitmapDrawable(BitmapFactory.decodeByteArray(userIconBytes, 0, userIconBytes.length));
-			} catch (IllegalArgumentException e) {
-				Log.e("XmppRealm", e.getMessage(), e);
-			}
+		try {
+			final byte[] userIconBytes = ABase64StringDecoder.getInstance().convert(userIconBase64);
+			result = new BitmapDrawable(BitmapFactory.decodeByteArray(userIconBytes, 0, userIconBytes.length));
+		} catch (IllegalArgumentException e) {
+			Log.e("XmppRealm", e.getMessage(), e);
 		}
 
 		return result;
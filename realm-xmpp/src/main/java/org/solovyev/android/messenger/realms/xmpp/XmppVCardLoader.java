@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.SmackConfiguration;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.PacketTypeFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smackx.packet.VCard;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Loads vCards of several users: next vCard request is sent without waiting for the responses of the previous ones
+ * (but not more than <var>maxOutstanding</var> requests wait for the responses at the same time). Connection is
+ * locked only while requests are sent, responses are awaited in the calling thread without holding the lock.
+ */
+@NotThreadSafe
+final class XmppVCardLoader {
+
+	static final int MAX_OUTSTANDING = 8;
+
+	@Nonnull
+	private final XmppConnectionAware connectionAware;
+
+	private final int maxOutstanding;
+
+	private final long timeoutMillis;
+
+	// packet id => account user id, for requests waiting for the responses
+	@Nonnull
+	private final Map<String, String> outstanding = new ConcurrentHashMap<String, String>();
+
+	// responses are added from the packet reader thread of the connection
+	@Nonnull
+	private final BlockingQueue<IQ> responses = new LinkedBlockingQueue<IQ>();
+
+	@Nonnull
+	private final PacketListener responseListener = new ResponseListener();
+
+	@Nullable
+	private Connection listenedConnection;
+
+	XmppVCardLoader(@Nonnull XmppConnectionAware connectionAware) {
+		this(connectionAware, MAX_OUTSTANDING, SmackConfiguration.getPacketReplyTimeout());
+	}
+
+	XmppVCardLoader(@Nonnull XmppConnectionAware connectionAware, int maxOutstanding, long timeoutMillis) {
+		this.connectionAware = connectionAware;
+		this.maxOutstanding = maxOutstanding;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Method loads vCards of <var>accountUserIds</var>, each vCard is passed to the <var>listener</var> in the calling
+	 * thread as soon as it is received (not necessary in the order of <var>accountUserIds</var>)
+	 *
+	 * @param accountUserIds ids of the users
+	 * @param listener       listener to be notified about each of the <var>accountUserIds</var>
+	 */
+	void load(@Nonnull List<String> accountUserIds, @Nonnull Listener listener) throws XMPPException, AccountConnectionException, InterruptedException {
+		final Iterator<String> ids = accountUserIds.iterator();
+		try {
+			while (ids.hasNext() || !outstanding.isEmpty()) {
+				if (ids.hasNext() && outstanding.size() < maxOutstanding) {
+					connectionAware.doOnConnection(new RequestsSender(ids));
+				}
+
+				final IQ response = responses.poll(timeoutMillis, MILLISECONDS);
+				if (response != null) {
+					final String accountUserId = outstanding.remove(response.getPacketID());
+					if (accountUserId != null) {
+						listener.onVCardLoaded(accountUserId, toVCard(response));
+					}
+				} else {
+					// no response for too long => server is not going to answer outstanding requests
+					for (String accountUserId : outstanding.values()) {
+						listener.onVCardLoaded(accountUserId, null);
+					}
+					outstanding.clear();
+				}
+			}
+		} finally {
+			if (listenedConnection != null) {
+				listenedConnection.removePacketListener(responseListener);
+				listenedConnection = null;
+			}
+			outstanding.clear();
+			responses.clear();
+		}
+	}
+
+	@Nullable
+	private static VCard toVCard(@Nonnull IQ response) {
+		if (response.getType() == IQ.Type.RESULT && response instanceof VCard) {
+			return (VCard) response;
+		} else {
+			return null;
+		}
+	}
+
+    /*
+	**********************************************************************
+    *
+    *                           STATIC/INNER
+    *
+    **********************************************************************
+    */
+
+	static interface Listener {
+
+		/**
+		 * @param accountUserId id of the user
+		 * @param vCard         vCard of the user, null if it cannot be loaded
+		 */
+		void onVCardLoaded(@Nonnull String accountUserId, @Nullable VCard vCard);
+	}
+
+	private final class RequestsSender implements XmppConnectedCallable<Void> {
+
+		@Nonnull
+		private final Iterator<String> ids;
+
+		private RequestsSender(@Nonnull Iterator<String> ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public Void call(@Nonnull Connection connection) {
+			if (listenedConnection != connection) {
+				if (listenedConnection != null) {
+					// connection has been reestablished => responses will not come through the old one
+					listenedConnection.removePacketListener(responseListener);
+				}
+				connection.addPacketListener(responseListener, new PacketTypeFilter(IQ.class));
+				listenedConnection = connection;
+			}
+
+			while (ids.hasNext() && outstanding.size() < maxOutstanding) {
+				final String accountUserId = ids.next();
+
+				final VCard request = new VCard();
+				request.setTo(accountUserId);
+				outstanding.put(request.getPacketID(), accountUserId);
+				// packet is only queued here, it is written by the packet writer thread of the connection
+				connection.sendPacket(request);
+			}
+			return null;
+		}
+	}
+
+	private final class ResponseListener implements PacketListener {
+
+		@Override
+		public void processPacket(@Nonnull Packet packet) {
+			if (outstanding.containsKey(packet.getPacketID())) {
+				responses.add((IQ) packet);
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import org.jivesoftware.smack.packet.DefaultPacketExtension;
+import org.jivesoftware.smack.packet.Presence;
+import org.junit.Test;
+import org.solovyev.android.messenger.users.User;
+import org.solovyev.android.properties.AProperty;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.messenger.entities.Entities.newEntity;
+import static org.solovyev.android.messenger.users.Users.newUser;
+import static org.solovyev.android.properties.Properties.newProperty;
+
+public class XmppAccountUserServiceTest {
+
+	@Nonnull
+	private static final String HASH = "sha1-hash-of-image";
+
+	@Test
+	public void testPhotoHashShouldBeReadFromPresence() throws Exception {
+		assertEquals(HASH, XmppAccountUserService.getPhotoHash(newPresence(HASH)));
+		assertNull(XmppAccountUserService.getPhotoHash(newPresence(null)));
+	}
+
+	@Test
+	public void testVCardShouldNotBeLoadedIfStoredHashMatches() throws Exception {
+		assertFalse(XmppAccountUserService.isVCardChanged(newStoredContact(HASH), newPresence(HASH)));
+	}
+
+	@Test
+	public void testVCardShouldBeLoadedIfHashIsChanged() throws Exception {
+		assertTrue(XmppAccountUserService.isVCardChanged(newStoredContact(HASH), newPresence("sha1-hash-of-new-image")));
+		assertTrue(XmppAccountUserService.isVCardChanged(newStoredContact(null), newPresence(HASH)));
+	}
+
+	@Test
+	public void testVCardShouldNotBeLoadedIfHashIsNotAnnounced() throws Exception {
+		// e.g. contact is offline
+		assertFalse(XmppAccountUserService.isVCardChanged(newStoredContact(HASH), newPresence(null)));
+		assertFalse(XmppAccountUserService.isVCardChanged(newStoredContact(null), newPresence(null)));
+	}
+
+	@Test
+	public void testVCardShouldNotBeLoadedIfUserStillHasNoAvatar() throws Exception {
+		assertFalse(XmppAccountUserService.isVCardChanged(newStoredContact(null), newPresence("")));
+		assertTrue(XmppAccountUserService.isVCardChanged(newStoredContact(HASH), newPresence("")));
+	}
+
+	@Nonnull
+	private static User newStoredContact(@Nullable String avatarHash) {
+		final List<AProperty> properties = new ArrayList<AProperty>();
+		if (avatarHash != null) {
+			properties.add(newProperty(XmppRealm.USER_PROPERTY_AVATAR_HASH, avatarHash));
+		}
+		return newUser(newEntity("xmpp~1", "user@localhost"), properties);
+	}
+
+	// presence with vCard-based avatar update (XEP-0153)
+	@Nonnull
+	private static Presence newPresence(@Nullable String photoHash) {
+		final Presence result = new Presence(Presence.Type.available);
+		if (photoHash != null) {
+			final DefaultPacketExtension extension = new DefaultPacketExtension("x", "vcard-temp:x:update");
+			extension.setValue("photo", photoHash);
+			result.addExtension(extension);
+		}
+		return result;
+	}
+}
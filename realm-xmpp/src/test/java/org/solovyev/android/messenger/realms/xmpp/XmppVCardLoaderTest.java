@@ -0,0 +1,303 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.solovyev.android.messenger.realms.xmpp;
+
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.Roster;
+import org.jivesoftware.smack.RosterStorage;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smackx.packet.VCard;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.messenger.accounts.AccountConnectionException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.singleton;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loads vCards from {@link LocalXmppServer} which answers vCard requests with injected latency and counts requests
+ * waiting for the response
+ */
+public class XmppVCardLoaderTest {
+
+	private static final int USERS = 40;
+	private static final long LATENCY_MILLIS = 50;
+	private static final long TIMEOUT_MILLIS = 1000;
+
+	private LocalXmppServer server;
+
+	private XmppConnectionAware connectionAware;
+
+	private List<String> accountUserIds;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new LocalXmppServer(LATENCY_MILLIS);
+		connectionAware = new XmppConnectionAware() {
+			@Override
+			public <R> R doOnConnection(@Nonnull XmppConnectedCallable<R> callable) throws XMPPException, AccountConnectionException {
+				synchronized (server) {
+					return callable.call(server);
+				}
+			}
+		};
+
+		accountUserIds = new ArrayList<String>();
+		for (int i = 0; i < USERS; i++) {
+			accountUserIds.add("user" + i + "@localhost");
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.shutdown();
+	}
+
+	@Test
+	public void testShouldLoadVCardOfEachUser() throws Exception {
+		final Map<String, VCard> vCards = load(XmppVCardLoader.MAX_OUTSTANDING);
+
+		assertEquals(USERS, vCards.size());
+		for (String accountUserId : accountUserIds) {
+			assertEquals(accountUserId, vCards.get(accountUserId).getFirstName());
+		}
+		assertTrue(server.getMaxOutstanding() <= XmppVCardLoader.MAX_OUTSTANDING);
+	}
+
+	@Test
+	public void testShouldNotHoldConnectionLockWhileWaitingForResponses() throws Exception {
+		server.setUnanswered(new HashSet<String>(accountUserIds));
+
+		final Thread loader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					load(XmppVCardLoader.MAX_OUTSTANDING);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		loader.start();
+		try {
+			Thread.sleep(LATENCY_MILLIS);
+			final long start = System.currentTimeMillis();
+			synchronized (server) {
+				assertTrue(System.currentTimeMillis() - start < TIMEOUT_MILLIS / 2);
+			}
+		} finally {
+			loader.join();
+		}
+	}
+
+	@Test
+	public void testShouldReportUnansweredRequests() throws Exception {
+		final String unanswered = accountUserIds.get(3);
+		server.setUnanswered(singleton(unanswered));
+
+		final Map<String, VCard> vCards = load(XmppVCardLoader.MAX_OUTSTANDING);
+
+		assertEquals(USERS, vCards.size());
+		assertTrue(vCards.containsKey(unanswered));
+		assertNull(vCards.get(unanswered));
+	}
+
+	@Test
+	public void testRequestsShouldBePipelined() throws Exception {
+		load(XmppVCardLoader.MAX_OUTSTANDING);
+
+		// one request per user, responses are delayed => loader fills the whole window
+		assertEquals(USERS, server.getRequests());
+		assertEquals(XmppVCardLoader.MAX_OUTSTANDING, server.getMaxOutstanding());
+	}
+
+	@Test
+	public void testRequestsShouldBeSequentialIfOnlyOneIsAllowed() throws Exception {
+		load(1);
+
+		assertEquals(USERS, server.getRequests());
+		assertEquals(1, server.getMaxOutstanding());
+	}
+
+	@Nonnull
+	private Map<String, VCard> load(int maxOutstanding) throws Exception {
+		final Map<String, VCard> result = new HashMap<String, VCard>();
+		new XmppVCardLoader(connectionAware, maxOutstanding, TIMEOUT_MILLIS).load(accountUserIds, new XmppVCardLoader.Listener() {
+			@Override
+			public void onVCardLoaded(@Nonnull String accountUserId, @Nullable VCard vCard) {
+				result.put(accountUserId, vCard);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * In-process stand-in of the XMPP server: vCard requests sent through this connection are answered after the
+	 * latency, responses are delivered to the packet listeners of the connection from the separate threads (as it is
+	 * done by the packet reader of the real connection)
+	 */
+	private static final class LocalXmppServer extends Connection {
+
+		private final long latencyMillis;
+
+		@Nonnull
+		private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+
+		@Nonnull
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		@Nonnull
+		private final AtomicInteger maxOutstanding = new AtomicInteger();
+
+		@Nonnull
+		private final AtomicInteger requests = new AtomicInteger();
+
+		@Nonnull
+		private volatile Set<String> unanswered = new HashSet<String>();
+
+		private LocalXmppServer(long latencyMillis) {
+			super(new ConnectionConfiguration("localhost", 5222, "localhost"));
+			this.latencyMillis = latencyMillis;
+		}
+
+		@Override
+		public void sendPacket(@Nonnull Packet packet) {
+			if (packet instanceof VCard && ((VCard) packet).getType() == IQ.Type.GET && !unanswered.contains(packet.getTo())) {
+				requests.incrementAndGet();
+				final int current = outstanding.incrementAndGet();
+				while (true) {
+					final int max = maxOutstanding.get();
+					if (current <= max || maxOutstanding.compareAndSet(max, current)) {
+						break;
+					}
+				}
+
+				final VCard response = new VCard();
+				response.setType(IQ.Type.RESULT);
+				response.setPacketID(packet.getPacketID());
+				response.setFrom(packet.getTo());
+				response.setFirstName(packet.getTo());
+
+				executor.schedule(new Runnable() {
+					@Override
+					public void run() {
+						outstanding.decrementAndGet();
+						for (ListenerWrapper listener : recvListeners.values()) {
+							listener.notifyListener(response);
+						}
+					}
+				}, latencyMillis, MILLISECONDS);
+			}
+		}
+
+		void setUnanswered(@Nonnull Set<String> unanswered) {
+			this.unanswered = unanswered;
+		}
+
+		int getMaxOutstanding() {
+			return maxOutstanding.get();
+		}
+
+		int getRequests() {
+			return requests.get();
+		}
+
+		void shutdown() {
+			executor.shutdownNow();
+		}
+
+		@Override
+		public String getUser() {
+			return "test@localhost";
+		}
+
+		@Override
+		public String getConnectionID() {
+			return "test";
+		}
+
+		@Override
+		public boolean isConnected() {
+			return true;
+		}
+
+		@Override
+		public boolean isAuthenticated() {
+			return true;
+		}
+
+		@Override
+		public boolean isAnonymous() {
+			return false;
+		}
+
+		@Override
+		public boolean isSecureConnection() {
+			return false;
+		}
+
+		@Override
+		public boolean isUsingCompression() {
+			return false;
+		}
+
+		@Override
+		public void connect() {
+		}
+
+		@Override
+		public void login(String username, String password, String resource) {
+		}
+
+		@Override
+		public void loginAnonymously() {
+		}
+
+		@Override
+		public Roster getRoster() {
+			return null;
+		}
+
+		@Override
+		public void setRosterStorage(RosterStorage storage) {
+		}
+
+		@Override
+		public void disconnect(Presence unavailablePresence) {
+		}
+	}
+}